@@ -25,6 +25,10 @@ android {
             )
         }
     }
+    testOptions {
+        // Plain JVM tests construct classes that hold a Handler (e.g. TelemetryDispatcher)
+        unitTests.isReturnDefaultValues = true
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
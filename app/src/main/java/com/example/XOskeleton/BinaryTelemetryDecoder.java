@@ -0,0 +1,251 @@
+package com.example.XOskeleton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the fixed-width binary payloads described in {@link TelemetryProtocol}.
+ * A schema frame announces field names and types once; every sample frame after it is
+ * just the packed values, read straight into the reused {@link TelemetrySample}.
+ * A batch frame carries several samples; they are read one at a time, each into that
+ * same sample, by {@link #decodeBatch} and then {@link #nextInBatch}.
+ *
+ * In keyframe/delta mode each schema (a device sending channel groups has several) keeps a
+ * sample of its own that is the device's current state: a keyframe sets every value, a delta
+ * overwrites only the values that changed, so what comes out is always a complete sample.
+ */
+public class BinaryTelemetryDecoder {
+
+    private static class Layout {
+        final TelemetrySchema schema;
+        final byte[] types;
+        final int frameSize;
+        final int timestampSlot; // -1 if the schema has none
+        final int batchRecordSize;
+        // Keyframe/delta state: the values so far, and the sequence number of the frame that
+        // left them (-1 if out of step)
+        TelemetrySample state;
+        int stateSeq = -1;
+
+        Layout(TelemetrySchema schema, byte[] types, int frameSize) {
+            this.schema = schema;
+            this.types = types;
+            this.frameSize = frameSize;
+            timestampSlot = schema.indexOf(TelemetryProtocol.TIMESTAMP_KEY);
+            int timestampWidth = timestampSlot >= 0 ? TelemetryProtocol.fieldWidth(types[timestampSlot]) : 0;
+            batchRecordSize = 4 + frameSize - 2 - timestampWidth;
+        }
+    }
+
+    private final Layout[] layouts = new Layout[256];
+    private final TelemetrySample sample = new TelemetrySample();
+
+    // The batch being read: its frame buffer is only valid until the frame listener returns
+    private byte[] batchBuffer;
+    private int batchPos;
+    private int batchLeft;
+    private double batchBase;
+    private Layout batchLayout;
+
+    private volatile long droppedDeltas = 0;
+
+    // Deltas thrown away: the frame before them was lost or corrupt, or they were malformed themselves
+    public long getDroppedDeltaCount() { return droppedDeltas; }
+
+    public void readSchema(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        if (length < 4 || buf[offset] != TelemetryProtocol.TYPE_SCHEMA) {
+            throw new IllegalArgumentException("Not a schema frame");
+        }
+        int schemaId = buf[offset + 1] & 0xFF;
+        int count = (buf[offset + 2] & 0xFF) | ((buf[offset + 3] & 0xFF) << 8);
+
+        List<String> names = new ArrayList<>(count);
+        byte[] types = new byte[count];
+        boolean[] singlePrecision = new boolean[count];
+        int frameSize = 2;
+        int pos = offset + 4;
+        for (int i = 0; i < count; i++) {
+            if (pos + 2 > end) throw new IllegalArgumentException("Truncated schema frame");
+            byte type = buf[pos];
+            int width = TelemetryProtocol.fieldWidth(type);
+            if (width < 0) throw new IllegalArgumentException("Unknown field type '" + (char) type + "'");
+            int nameLength = buf[pos + 1] & 0xFF;
+            if (pos + 2 + nameLength > end) throw new IllegalArgumentException("Truncated schema frame");
+            names.add(new String(buf, pos + 2, nameLength, StandardCharsets.UTF_8));
+            types[i] = type;
+            singlePrecision[i] = type == TelemetryProtocol.FIELD_F32;
+            frameSize += width;
+            pos += 2 + nameLength;
+        }
+
+        // Keep the existing schema object when the sender merely repeats itself
+        TelemetrySchema schema = new TelemetrySchema(names, singlePrecision);
+        Layout previous = layouts[schemaId];
+        if (previous != null && previous.schema.hasSameLayout(schema)) schema = previous.schema;
+        layouts[schemaId] = new Layout(schema, types, frameSize);
+    }
+
+    public TelemetrySample decodeSample(byte[] buf, int offset, int length) {
+        if (length < 2 || buf[offset] != TelemetryProtocol.TYPE_BINARY_SAMPLE) {
+            throw new IllegalArgumentException("Not a binary sample frame");
+        }
+        batchLeft = 0;
+        Layout layout = layoutFor(buf[offset + 1]);
+        layout.stateSeq = -1; // Not a keyframe/delta stream (any more)
+        if (length != layout.frameSize) {
+            throw new IllegalArgumentException("Sample is " + length + " bytes, schema expects " + layout.frameSize);
+        }
+
+        if (sample.getSchema() != layout.schema) sample.setSchema(layout.schema);
+        readValues(buf, offset + 2, layout.types, -1, sample.getValues());
+        return sample;
+    }
+
+    /**
+     * Starts reading a batch frame and returns its first sample (null for an empty batch).
+     * Call {@link #nextInBatch} for the rest before the frame buffer is reused.
+     */
+    public TelemetrySample decodeBatch(byte[] buf, int offset, int length) {
+        if (length < TelemetryProtocol.BATCH_HEADER_SIZE || buf[offset] != TelemetryProtocol.TYPE_BINARY_BATCH) {
+            throw new IllegalArgumentException("Not a batch frame");
+        }
+        batchLeft = 0;
+        Layout layout = layoutFor(buf[offset + 1]);
+        layout.stateSeq = -1;
+        int count = buf[offset + 2] & 0xFF;
+        int expected = TelemetryProtocol.BATCH_HEADER_SIZE + count * layout.batchRecordSize;
+        if (length != expected) {
+            throw new IllegalArgumentException("Batch is " + length + " bytes, " + count + " samples of its schema take " + expected);
+        }
+
+        batchBuffer = buf;
+        batchPos = offset + TelemetryProtocol.BATCH_HEADER_SIZE;
+        batchLeft = count;
+        batchBase = readDouble(buf, offset + 3);
+        batchLayout = layout;
+        return nextInBatch();
+    }
+
+    // The next sample of the current batch, null once it is used up
+    public TelemetrySample nextInBatch() {
+        if (batchLeft == 0) {
+            batchBuffer = null;
+            return null;
+        }
+        batchLeft--;
+        Layout layout = batchLayout;
+        if (sample.getSchema() != layout.schema) sample.setSchema(layout.schema);
+        double[] values = sample.getValues();
+        float delta = Float.intBitsToFloat(readInt(batchBuffer, batchPos));
+        batchPos = readValues(batchBuffer, batchPos + 4, layout.types, layout.timestampSlot, values);
+        if (layout.timestampSlot >= 0) values[layout.timestampSlot] = batchBase + delta;
+        return sample;
+    }
+
+    public TelemetrySample decodeKeyframe(byte[] buf, int offset, int length) {
+        if (length < 3 || buf[offset] != TelemetryProtocol.TYPE_KEYFRAME) {
+            throw new IllegalArgumentException("Not a keyframe");
+        }
+        batchLeft = 0;
+        Layout layout = layoutFor(buf[offset + 1]);
+        layout.stateSeq = -1;
+        if (length != layout.frameSize + 1) {
+            throw new IllegalArgumentException("Keyframe is " + length + " bytes, schema expects " + (layout.frameSize + 1));
+        }
+
+        if (layout.state == null) layout.state = new TelemetrySample(layout.schema);
+        readValues(buf, offset + 3, layout.types, -1, layout.state.getValues());
+        layout.stateSeq = buf[offset + 2] & 0xFF;
+        return layout.state;
+    }
+
+    /**
+     * Applies a delta to the state the schema's previous keyframe/delta left and returns it,
+     * or returns null (and counts it) if that frame is missing or the delta's length does not
+     * match its bitmap.
+     */
+    public TelemetrySample decodeDelta(byte[] buf, int offset, int length) {
+        if (length < 3 || buf[offset] != TelemetryProtocol.TYPE_DELTA) {
+            throw new IllegalArgumentException("Not a delta frame");
+        }
+        batchLeft = 0;
+        Layout layout = layoutFor(buf[offset + 1]);
+        int seq = buf[offset + 2] & 0xFF;
+        if (layout.stateSeq < 0 || seq != ((layout.stateSeq + 1) & 0xFF)) {
+            // Out of step until the next keyframe
+            layout.stateSeq = -1;
+            droppedDeltas++;
+            return null;
+        }
+
+        byte[] types = layout.types;
+        int bitmap = offset + 3;
+        int pos = bitmap + (types.length + 7) / 8;
+        int end = offset + length;
+        int needed = pos;
+        for (int i = 0; i < types.length && needed <= end; i++) {
+            if ((buf[bitmap + (i >> 3)] & (1 << (i & 7))) != 0) needed += TelemetryProtocol.fieldWidth(types[i]);
+        }
+        if (needed != end) {
+            // Truncated or damaged: nothing to build the next delta on either
+            layout.stateSeq = -1;
+            droppedDeltas++;
+            return null;
+        }
+
+        double[] values = layout.state.getValues();
+        for (int i = 0; i < types.length; i++) {
+            if ((buf[bitmap + (i >> 3)] & (1 << (i & 7))) == 0) continue;
+            pos = readValue(buf, pos, types[i], values, i);
+        }
+        layout.stateSeq = seq;
+        return layout.state;
+    }
+
+    private Layout layoutFor(byte schemaId) {
+        Layout layout = layouts[schemaId & 0xFF];
+        if (layout == null) throw new IllegalArgumentException("Sample for unknown schema " + (schemaId & 0xFF));
+        return layout;
+    }
+
+    // Packed values in schema order, except slot 'skip'; returns the position after them
+    private static int readValues(byte[] buf, int pos, byte[] types, int skip, double[] values) {
+        for (int i = 0; i < types.length; i++) {
+            if (i != skip) pos = readValue(buf, pos, types[i], values, i);
+        }
+        return pos;
+    }
+
+    private static int readValue(byte[] buf, int pos, byte type, double[] values, int slot) {
+        switch (type) {
+            case TelemetryProtocol.FIELD_U8:
+                values[slot] = buf[pos] & 0xFF;
+                return pos + 1;
+            case TelemetryProtocol.FIELD_I16:
+                values[slot] = (short) ((buf[pos] & 0xFF) | (buf[pos + 1] << 8));
+                return pos + 2;
+            case TelemetryProtocol.FIELD_I32:
+                values[slot] = readInt(buf, pos);
+                return pos + 4;
+            case TelemetryProtocol.FIELD_U32:
+                values[slot] = readInt(buf, pos) & 0xFFFFFFFFL;
+                return pos + 4;
+            case TelemetryProtocol.FIELD_F32:
+                values[slot] = Float.intBitsToFloat(readInt(buf, pos));
+                return pos + 4;
+            default: // FIELD_F64
+                values[slot] = readDouble(buf, pos);
+                return pos + 8;
+        }
+    }
+
+    private static double readDouble(byte[] buf, int pos) {
+        return Double.longBitsToDouble((readInt(buf, pos) & 0xFFFFFFFFL) | ((long) readInt(buf, pos + 4) << 32));
+    }
+
+    private static int readInt(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16) | (buf[pos + 3] << 24);
+    }
+}
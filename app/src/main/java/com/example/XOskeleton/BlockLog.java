@@ -0,0 +1,809 @@
+package com.example.XOskeleton;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block-compressed session log ("Log_*.xlog"), the logger's on-disk format.
+ *
+ * Rows are numbers only (the columns are fixed by the header), buffered into blocks of up
+ * to BLOCK_ROWS rows. Each block is stored column by column, every column in the cheapest
+ * of a few lossless encodings, and the result is deflated at its fastest level:
+ *   DECIMAL_DELTA / DECIMAL_DOD  values that are exact decimals with at most 9 places
+ *                                (counters, JSON values, timestamps) as scaled integers:
+ *                                zigzag varint deltas, or deltas of deltas for steady clocks
+ *   FLOAT_XOR                    values that are exact floats (binary telemetry): float bits
+ *                                XOR the previous value's
+ *   DOUBLE_XOR                   anything else, NaN included: double bits XOR the previous
+ *
+ * Every block carries the time range of its rows, and close() appends an index of all
+ * blocks, so a reader can jump to a time range and inflate only the blocks it overlaps.
+ * A log whose writer never closed it (the app was killed) has no index; the reader then
+ * walks the block headers instead and stops at the first incomplete block.
+ *
+ * Columns can be added mid-session (a new joint, a new diagnostic field) without touching
+ * what is already written: addColumns() ends the block and writes a schema segment naming
+ * the new columns, and every block records how many columns it holds. Columns are never
+ * removed, so readers see the union of all fields; a block from before a column existed
+ * reads as NaN in it, as does a row that lacks a field.
+ *
+ * Rows that only ever hold some of the columns (a channel group the device sends at its own
+ * rate) go in a stream of their own (addStream()): the stream's blocks store just its
+ * columns, instead of every other column as NaN on every row. Streams interleave their
+ * blocks, so block times are only ordered within a stream; readers see the other columns
+ * of a stream's rows as NaN.
+ *
+ * Layout (little-endian):
+ *   "XOBLK3\0\0" | u16 columnCount | per column: u16 nameLength, name (UTF-8) | i16 timeColumn
+ *   per block:   u32 compressedLength | u32 rowCount | f64 firstTime | f64 lastTime
+ *                | u32 CRC32 of the compressed bytes | compressed bytes
+ *                (inflated: varint columnCount << 1 | listed, with listed set the indexes of
+ *                those columns as varint gaps, then the encoded columns; not listed: the first
+ *                columnCount columns)
+ *   segment:     u32 0xFFFFFFFF | u16 addedCount | per column: u16 nameLength, name
+ *   index:       per block: u64 offset | u32 rowCount | f64 firstTime | f64 lastTime
+ *                then u16 addedCount | added names as in a segment
+ *                then u32 blockCount | u64 indexOffset | "XOBLKIDX"
+ * Version 1 ("XOBLK1") had neither segments nor per-block column counts, version 2 stored
+ * the plain columnCount (always the first columns); both are still read.
+ */
+public class BlockLog {
+
+    public static final String EXTENSION = ".xlog";
+    public static final int BLOCK_ROWS = 4096;
+
+    private static final byte[] MAGIC = {'X', 'O', 'B', 'L', 'K', '3', 0, 0};
+    private static final byte[] MAGIC_V2 = {'X', 'O', 'B', 'L', 'K', '2', 0, 0};
+    private static final byte[] MAGIC_V1 = {'X', 'O', 'B', 'L', 'K', '1', 0, 0};
+    private static final int SEGMENT_MARK = 0xFFFFFFFF;
+    private static final byte[] INDEX_MAGIC = {'X', 'O', 'B', 'L', 'K', 'I', 'D', 'X'};
+    private static final int BLOCK_HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 8 + 8;
+    private static final int TRAILER_SIZE = 4 + 8 + INDEX_MAGIC.length;
+
+    static final byte DECIMAL_DELTA = 0;
+    static final byte DECIMAL_DOD = 1;
+    static final byte FLOAT_XOR = 2;
+    static final byte DOUBLE_XOR = 3;
+
+    private static final int MAX_SCALE = 9;
+    private static final double[] POW10 = new double[MAX_SCALE + 1];
+    static {
+        for (int i = 0; i <= MAX_SCALE; i++) POW10[i] = Math.pow(10, i);
+    }
+    private static final double MAX_EXACT = 1L << 53;
+
+    private final List<String> names;
+    private final int timeColumn;
+    private final int version;
+    private final RandomAccessFile file;
+    private final long[] offsets;
+    private final int[] rowCounts;
+    private final double[] firstTimes;
+    private final double[] lastTimes;
+    private final long rowCount;
+    // With streams the blocks are not in time order, so range searches go by the latest time
+    // of any block up to each one and the earliest of any block from it on (NaN-free)
+    private final double[] lastTimeSoFar;
+    private final double[] firstTimeFromHere;
+
+    private BlockLog(List<String> names, int timeColumn, int version, RandomAccessFile file,
+                     long[] offsets, int[] rowCounts, double[] firstTimes, double[] lastTimes) {
+        this.names = names;
+        this.timeColumn = timeColumn;
+        this.version = version;
+        this.file = file;
+        this.offsets = offsets;
+        this.rowCounts = rowCounts;
+        this.firstTimes = firstTimes;
+        this.lastTimes = lastTimes;
+        long rows = 0;
+        for (int count : rowCounts) rows += count;
+        this.rowCount = rows;
+
+        int n = offsets.length;
+        lastTimeSoFar = new double[n];
+        firstTimeFromHere = new double[n];
+        double latest = Double.NEGATIVE_INFINITY, earliest = Double.POSITIVE_INFINITY;
+        for (int b = 0; b < n; b++) {
+            if (lastTimes[b] > latest) latest = lastTimes[b];
+            lastTimeSoFar[b] = latest;
+        }
+        for (int b = n - 1; b >= 0; b--) {
+            if (firstTimes[b] < earliest) earliest = firstTimes[b];
+            firstTimeFromHere[b] = earliest;
+        }
+    }
+
+    // ==========================================
+    //           READING
+    // ==========================================
+    // Reads the header and the block index (or the block headers of an unclosed log); close() when done
+    public static BlockLog open(File path) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            ByteBuffer head = read(channel, 0, (int) Math.min(size, 64 * 1024));
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            int version = Arrays.equals(magic, MAGIC) ? 3 : Arrays.equals(magic, MAGIC_V2) ? 2 : Arrays.equals(magic, MAGIC_V1) ? 1 : 0;
+            if (version == 0) throw new IOException("Not a block log: " + path.getName());
+            List<String> names = new ArrayList<>();
+            readNames(head, names);
+            int timeColumn = head.getShort();
+            long blocksStart = head.position();
+
+            // The index repeats the names the segments added, so those are only read without one
+            int headerColumns = names.size();
+            List<long[]> blocks = readIndex(channel, size, blocksStart, version == 1, names);
+            if (blocks == null) {
+                names.subList(headerColumns, names.size()).clear();
+                blocks = scanBlocks(channel, size, blocksStart, names);
+            }
+
+            int n = blocks.size();
+            long[] offsets = new long[n];
+            int[] rowCounts = new int[n];
+            double[] firstTimes = new double[n];
+            double[] lastTimes = new double[n];
+            for (int i = 0; i < n; i++) {
+                long[] b = blocks.get(i);
+                offsets[i] = b[0];
+                rowCounts[i] = (int) b[1];
+                firstTimes[i] = Double.longBitsToDouble(b[2]);
+                lastTimes[i] = Double.longBitsToDouble(b[3]);
+            }
+            return new BlockLog(Collections.unmodifiableList(names), timeColumn, version, raf, offsets, rowCounts, firstTimes, lastTimes);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            if (e instanceof IOException) throw (IOException) e;
+            // BufferUnderflowException etc. from a truncated header
+            throw new IOException("Corrupt block log: " + path.getName(), e);
+        }
+    }
+
+    // {offset, rows, firstTime bits, lastTime bits} per block, or null without a valid index
+    private static List<long[]> readIndex(FileChannel channel, long size, long blocksStart, boolean v1, List<String> names) throws IOException {
+        if (size < blocksStart + TRAILER_SIZE) return null;
+        ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+        int count = trailer.getInt();
+        long indexOffset = trailer.getLong();
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        trailer.get(magic);
+        long indexLength = size - TRAILER_SIZE - indexOffset;
+        long entriesLength = (long) count * INDEX_ENTRY_SIZE;
+        if (!Arrays.equals(magic, INDEX_MAGIC) || count < 0 || indexOffset < blocksStart
+                || (v1 ? indexLength != entriesLength : indexLength < entriesLength + 2)) {
+            return null;
+        }
+        ByteBuffer index = read(channel, indexOffset, (int) indexLength);
+        List<long[]> blocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            blocks.add(new long[]{index.getLong(), index.getInt(), index.getLong(), index.getLong()});
+        }
+        if (!v1) {
+            readNames(index, names);
+            if (index.hasRemaining()) return null;
+        }
+        return blocks;
+    }
+
+    private static List<long[]> scanBlocks(FileChannel channel, long size, long blocksStart, List<String> names) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        long offset = blocksStart;
+        while (offset + BLOCK_HEADER_SIZE <= size) {
+            ByteBuffer header = read(channel, offset, BLOCK_HEADER_SIZE);
+            if (header.getInt(0) == SEGMENT_MARK) {
+                long end = scanSegment(channel, size, offset + 4, names);
+                if (end < 0) break; // Cut short
+                offset = end;
+                continue;
+            }
+            long compressed = header.getInt() & 0xFFFFFFFFL;
+            int rows = header.getInt();
+            long first = header.getLong();
+            long last = header.getLong();
+            if (rows <= 0 || rows > BLOCK_ROWS || offset + BLOCK_HEADER_SIZE + compressed > size) break;
+            blocks.add(new long[]{offset, rows, first, last});
+            offset += BLOCK_HEADER_SIZE + compressed;
+        }
+        return blocks;
+    }
+
+    // Adds a segment's names and returns where it ends, or -1 (and adds nothing) if the file ends first
+    private static long scanSegment(FileChannel channel, long size, long offset, List<String> names) throws IOException {
+        if (offset + 2 > size) return -1;
+        int count = read(channel, offset, 2).getShort() & 0xFFFF;
+        offset += 2;
+        List<String> added = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (offset + 2 > size) return -1;
+            int length = read(channel, offset, 2).getShort() & 0xFFFF;
+            if (offset + 2 + length > size) return -1;
+            added.add(new String(read(channel, offset + 2, length).array(), StandardCharsets.UTF_8));
+            offset += 2 + length;
+        }
+        names.addAll(added);
+        return offset;
+    }
+
+    public List<String> getColumnNames() { return names; }
+
+    // Column the block time ranges come from (phone_time, else timestamp), -1 if none
+    public int getTimeColumn() { return timeColumn; }
+
+    public long getRowCount() { return rowCount; }
+
+    public int getBlockCount() { return offsets.length; }
+
+    public int getBlockRows(int block) { return rowCounts[block]; }
+
+    // Time range of a block's rows (NaN if none of them has a time)
+    public double getBlockFirstTime(int block) { return firstTimes[block]; }
+
+    public double getBlockLastTime(int block) { return lastTimes[block]; }
+
+    /**
+     * Inflates one block into columns[c][0..rows); columns must have getColumnNames().size()
+     * arrays of at least getBlockRows(block) each. Columns the block does not hold (it predates
+     * them, or belongs to a stream without them) are filled with NaN. Returns the row count.
+     */
+    public int readBlock(int block, double[][] columns) throws IOException {
+        FileChannel channel = file.getChannel();
+        ByteBuffer header = read(channel, offsets[block], BLOCK_HEADER_SIZE);
+        int compressedLength = header.getInt();
+        int rows = header.getInt();
+        header.position(header.position() + 16);
+        int crc = header.getInt();
+        ByteBuffer compressed = read(channel, offsets[block] + BLOCK_HEADER_SIZE, compressedLength);
+
+        CRC32 check = new CRC32();
+        check.update(compressed.array(), 0, compressedLength);
+        if ((int) check.getValue() != crc) throw new IOException("Block " + block + " fails its checksum");
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array(), 0, compressedLength);
+            byte[] raw = new byte[rows * names.size() * 9 + names.size() * 16 + 16];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == raw.length) raw = Arrays.copyOf(raw, raw.length * 2);
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IOException("Block " + block + " is truncated");
+                length += n;
+            }
+            decodeColumns(ByteBuffer.wrap(raw, 0, length).order(ByteOrder.LITTLE_ENDIAN), columns, rows);
+        } catch (DataFormatException | RuntimeException e) {
+            throw new IOException("Block " + block + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        return rows;
+    }
+
+    /**
+     * Rows whose time lies in [fromMillis, toMillis], as columns, in time order. Only the
+     * blocks that overlap the range are inflated.
+     */
+    public double[][] readRange(double fromMillis, double toMillis) throws IOException {
+        if (timeColumn < 0) throw new IOException("Log has no time column");
+        int columnCount = names.size();
+        double[][] out = new double[columnCount][16];
+        double[][] block = new double[columnCount][BLOCK_ROWS];
+        int count = 0;
+        for (int b = firstBlockEndingAtOrAfter(fromMillis); b < offsets.length; b++) {
+            if (firstTimeFromHere[b] > toMillis) break;
+            if (!(firstTimes[b] <= toMillis && lastTimes[b] >= fromMillis)) continue; // Another stream's, or rows without a time only
+            int rows = readBlock(b, block);
+            for (int r = 0; r < rows; r++) {
+                double t = block[timeColumn][r];
+                if (!(t >= fromMillis && t <= toMillis)) continue;
+                if (count == out[0].length) {
+                    for (int c = 0; c < columnCount; c++) out[c] = Arrays.copyOf(out[c], count * 2);
+                }
+                for (int c = 0; c < columnCount; c++) out[c][count] = block[c][r];
+                count++;
+            }
+        }
+        for (int c = 0; c < columnCount; c++) out[c] = Arrays.copyOf(out[c], count);
+        int[] order = timeOrder(out[timeColumn], count); // Streams' rows interleave
+        if (order != null) reorder(out, order, count);
+        return out;
+    }
+
+    // Every block before it ends before millis
+    private int firstBlockEndingAtOrAfter(double millis) {
+        int lo = 0, hi = offsets.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lastTimeSoFar[mid] < millis) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Row order that sorts rows by time, or null if they already are. Stable, and a row
+     * without a time stays after every row before it in the file.
+     */
+    static int[] timeOrder(double[] time, int count) {
+        double[] key = new double[count];
+        double latest = Double.NEGATIVE_INFINITY;
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            double t = time[i];
+            if (Double.isNaN(t)) {
+                key[i] = latest;
+            } else {
+                key[i] = t;
+                if (t < latest) sorted = false;
+                latest = Math.max(latest, t);
+            }
+        }
+        if (sorted) return null;
+
+        // Bottom-up merge sort of the row numbers
+        int[] order = new int[count];
+        int[] merged = new int[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        for (int width = 1; width < count; width *= 2) {
+            for (int lo = 0; lo < count; lo += 2 * width) {
+                int mid = Math.min(lo + width, count), hi = Math.min(lo + 2 * width, count);
+                int a = lo, b = mid, k = lo;
+                while (a < mid && b < hi) merged[k++] = key[order[b]] < key[order[a]] ? order[b++] : order[a++];
+                while (a < mid) merged[k++] = order[a++];
+                while (b < hi) merged[k++] = order[b++];
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    // Puts the first count rows of every column in the given order
+    static void reorder(double[][] columns, int[] order, int count) {
+        double[] scratch = new double[count];
+        for (double[] column : columns) {
+            for (int i = 0; i < count; i++) scratch[i] = column[order[i]];
+            System.arraycopy(scratch, 0, column, 0, count);
+        }
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    // u16 count, then per name: u16 length, UTF-8
+    private static void readNames(ByteBuffer buf, List<String> names) {
+        int count = buf.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buf.getShort() & 0xFFFF];
+            buf.get(name);
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void putNames(ByteBuffer buf, byte[][] names) {
+        buf.putShort((short) names.length);
+        for (byte[] name : names) buf.putShort((short) name.length).put(name);
+    }
+
+    private static byte[][] encodeNames(List<String> names) {
+        byte[][] encoded = new byte[names.size()][];
+        for (int i = 0; i < encoded.length; i++) encoded[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+
+    private static int namesSize(byte[][] names) {
+        int size = 2;
+        for (byte[] name : names) size += 2 + name.length;
+        return size;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Unexpected end of log");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ==========================================
+    //           WRITING
+    // ==========================================
+    /** Appends rows to a new log; not thread-safe (the logger's writer thread owns it). */
+    public static class Writer {
+        private final FileOutputStream out;
+        private int columnCount;
+        private final int timeColumn;
+        private final List<Stream> streams = new ArrayList<>();
+        private final List<String> added = new ArrayList<>();
+        private long position;
+
+        private final List<long[]> index = new ArrayList<>();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer raw;
+        private byte[] compressed = new byte[64 * 1024];
+        private long rawBytes = 0, writtenBytes = 0;
+
+        // Rows buffered for the next block of one stream; stream 0 holds every column
+        private static class Stream {
+            final int[] columns; // Ascending column indexes, null for every column
+            final int time;      // Row position of the time column, -1 if the rows have none
+            double[][] block;    // Allocated with the first row
+            int rows = 0;
+
+            Stream(int[] columns, int time) {
+                this.columns = columns;
+                this.time = time;
+            }
+        }
+
+        public Writer(File path, List<String> names, int timeColumn) throws IOException {
+            this.columnCount = names.size();
+            this.timeColumn = timeColumn;
+            this.raw = ByteBuffer.allocate(BLOCK_ROWS * columnCount * 4 + columnCount * 16).order(ByteOrder.LITTLE_ENDIAN);
+            streams.add(new Stream(null, timeColumn));
+
+            byte[][] encodedNames = encodeNames(names);
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + namesSize(encodedNames) + 2).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            putNames(header, encodedNames);
+            header.putShort((short) timeColumn);
+            out = new FileOutputStream(path);
+            out.write(header.array(), 0, header.position());
+            position = header.position();
+            writtenBytes = position;
+        }
+
+        /**
+         * Starts a stream of rows that only hold these columns (ascending indexes, existing
+         * columns), e.g. one channel group's fields and its time. Returns the stream for
+         * append(stream, row).
+         */
+        public int addStream(int[] columns) {
+            int time = -1;
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] < 0 || columns[i] >= columnCount || (i > 0 && columns[i] <= columns[i - 1])) {
+                    throw new IllegalArgumentException("Stream columns must be ascending, below " + columnCount);
+                }
+                if (columns[i] == timeColumn) time = i;
+            }
+            streams.add(new Stream(columns.clone(), time));
+            return streams.size() - 1;
+        }
+
+        // Row values in column order; the row is copied. A shorter row is NaN in the columns it lacks.
+        public void append(double[] row) throws IOException {
+            append(0, row);
+        }
+
+        /**
+         * A row of a stream from addStream(), its values in the order of the stream's columns.
+         * A row of every column (stream 0) goes into the file after every row
+         * appended before it and before every row appended after it.
+         */
+        public void append(int stream, double[] row) throws IOException {
+            Stream s = streams.get(stream);
+            if (stream == 0) {
+                for (int i = 1; i < streams.size(); i++) writeBlock(streams.get(i));
+            }
+            int width = width(s);
+            if (s.block == null) s.block = new double[width][BLOCK_ROWS];
+            double[][] block = s.block;
+            int n = Math.min(row.length, width);
+            for (int c = 0; c < n; c++) block[c][s.rows] = row[c];
+            for (int c = n; c < width; c++) block[c][s.rows] = Double.NaN;
+            if (++s.rows == BLOCK_ROWS) writeBlock(s);
+        }
+
+        // Ends the current blocks and starts a schema segment with these columns after the existing ones
+        public void addColumns(List<String> names) throws IOException {
+            if (names.isEmpty()) return;
+            flushBlock();
+            byte[][] encodedNames = encodeNames(names);
+            ByteBuffer segment = ByteBuffer.allocate(4 + namesSize(encodedNames)).order(ByteOrder.LITTLE_ENDIAN);
+            segment.putInt(SEGMENT_MARK);
+            putNames(segment, encodedNames);
+            out.write(segment.array());
+            position += segment.capacity();
+            writtenBytes += segment.capacity();
+
+            added.addAll(names);
+            Stream all = streams.get(0);
+            if (all.block != null) {
+                all.block = Arrays.copyOf(all.block, columnCount + names.size());
+                for (int c = columnCount; c < all.block.length; c++) all.block[c] = new double[BLOCK_ROWS];
+            }
+            columnCount += names.size();
+        }
+
+        public int getColumnCount() { return columnCount; }
+
+        public int getBufferedRows() {
+            int rows = 0;
+            for (Stream s : streams) rows += s.rows;
+            return rows;
+        }
+
+        public int getBlockCount() { return index.size(); }
+
+        // Uncompressed size of the rows written so far as 8-byte doubles, for the compression ratio
+        public long getRawBytes() { return rawBytes; }
+
+        public long getWrittenBytes() { return writtenBytes; }
+
+        // Writes the buffered rows as blocks, one per stream that has any
+        public void flushBlock() throws IOException {
+            for (Stream s : streams) writeBlock(s);
+        }
+
+        private int width(Stream s) {
+            return s.columns != null ? s.columns.length : columnCount;
+        }
+
+        private void writeBlock(Stream s) throws IOException {
+            int rows = s.rows;
+            if (rows == 0) return;
+            Stream all = streams.get(0);
+            if (s != all && all.rows > 0) writeBlock(all); // Rows of every column first, see append()
+            int width = width(s);
+            raw.clear();
+            if (s.columns == null) {
+                putVarint(raw, (long) width << 1);
+            } else {
+                ensureRaw(width * 5 + 10);
+                putVarint(raw, (long) width << 1 | 1);
+                int previous = -1;
+                for (int c : s.columns) {
+                    putVarint(raw, c - previous - 1);
+                    previous = c;
+                }
+            }
+            for (int c = 0; c < width; c++) encodeColumn(s.block[c], rows);
+
+            deflater.reset();
+            deflater.setInput(raw.array(), 0, raw.position());
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            crc.reset();
+            crc.update(compressed, 0, length);
+
+            double first = Double.NaN, last = Double.NaN;
+            if (s.time >= 0) {
+                double[] times = s.block[s.time];
+                for (int r = 0; r < rows; r++) {
+                    double t = times[r];
+                    if (Double.isNaN(t)) continue;
+                    if (Double.isNaN(first)) first = t;
+                    last = t;
+                }
+            }
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(length).putInt(rows).putDouble(first).putDouble(last).putInt((int) crc.getValue());
+            out.write(header.array());
+            out.write(compressed, 0, length);
+
+            index.add(new long[]{position, rows, Double.doubleToRawLongBits(first), Double.doubleToRawLongBits(last)});
+            position += BLOCK_HEADER_SIZE + length;
+            rawBytes += (long) rows * width * 8;
+            writtenBytes += BLOCK_HEADER_SIZE + length;
+            s.rows = 0;
+        }
+
+        // Writes the last block and the index
+        public void close() throws IOException {
+            try {
+                flushBlock();
+                byte[][] addedNames = encodeNames(added);
+                ByteBuffer trailer = ByteBuffer.allocate(index.size() * INDEX_ENTRY_SIZE + namesSize(addedNames) + TRAILER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (long[] b : index) trailer.putLong(b[0]).putInt((int) b[1]).putLong(b[2]).putLong(b[3]);
+                putNames(trailer, addedNames);
+                trailer.putInt(index.size()).putLong(position).put(INDEX_MAGIC);
+                out.write(trailer.array());
+                writtenBytes += trailer.capacity();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void ensureRaw(int bytes) {
+            if (raw.remaining() >= bytes) return;
+            ByteBuffer bigger = ByteBuffer.allocate(raw.capacity() * 2 + bytes).order(ByteOrder.LITTLE_ENDIAN);
+            raw.flip();
+            bigger.put(raw);
+            raw = bigger;
+        }
+
+        private void encodeColumn(double[] values, int count) {
+            ensureRaw(count * 10 + 16);
+            ByteBuffer buf = raw;
+            int scale = decimalScale(values, count);
+            if (scale >= 0) {
+                double p = POW10[scale];
+                // Deltas for noisy signals, deltas of deltas for clocks and counters
+                long deltaBytes = 0, dodBytes = 0;
+                long prev = 0, prevDelta = 0;
+                for (int i = 0; i < count; i++) {
+                    long v = Math.round(values[i] * p);
+                    long delta = v - prev;
+                    deltaBytes += varintSize(zigzag(delta));
+                    dodBytes += varintSize(zigzag(delta - prevDelta));
+                    prev = v;
+                    prevDelta = delta;
+                }
+                boolean dod = dodBytes < deltaBytes;
+                buf.put(dod ? DECIMAL_DOD : DECIMAL_DELTA).put((byte) scale);
+                prev = 0;
+                prevDelta = 0;
+                for (int i = 0; i < count; i++) {
+                    long v = Math.round(values[i] * p);
+                    long delta = v - prev;
+                    putVarint(buf, zigzag(dod ? delta - prevDelta : delta));
+                    prev = v;
+                    prevDelta = delta;
+                }
+            } else if (allFloats(values, count)) {
+                buf.put(FLOAT_XOR);
+                int prev = 0;
+                for (int i = 0; i < count; i++) {
+                    int bits = Float.floatToRawIntBits((float) values[i]);
+                    buf.putInt(bits ^ prev);
+                    prev = bits;
+                }
+            } else {
+                buf.put(DOUBLE_XOR);
+                long prev = 0;
+                for (int i = 0; i < count; i++) {
+                    long bits = Double.doubleToRawLongBits(values[i]);
+                    buf.putLong(bits ^ prev);
+                    prev = bits;
+                }
+            }
+        }
+    }
+
+    // Fewest decimal places that hold every value exactly as scaled / 10^scale, or -1
+    static int decimalScale(double[] values, int count) {
+        int scale = 0;
+        for (int i = 0; i < count; i++) {
+            double v = values[i];
+            if (Double.isNaN(v) || Double.isInfinite(v)) return -1;
+            while (scale <= MAX_SCALE && !isExactAt(v, scale)) scale++;
+            if (scale > MAX_SCALE) return -1;
+        }
+        // Exact at its own scale does not always mean exact at a larger one
+        for (; scale <= MAX_SCALE; scale++) {
+            boolean exact = true;
+            for (int i = 0; i < count && exact; i++) exact = isExactAt(values[i], scale);
+            if (exact) return scale;
+        }
+        return -1;
+    }
+
+    private static boolean isExactAt(double v, int scale) {
+        double scaled = v * POW10[scale];
+        if (Math.abs(scaled) >= MAX_EXACT) return false;
+        return Math.round(scaled) / POW10[scale] == v;
+    }
+
+    private static boolean allFloats(double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            double v = values[i];
+            if (!Double.isNaN(v) && (double) (float) v != v) return false;
+        }
+        return true;
+    }
+
+    private void decodeColumns(ByteBuffer buf, double[][] columns, int rows) throws IOException {
+        int count = names.size();
+        long header = version == 1 ? (long) count << 1 : version == 2 ? getVarint(buf) << 1 : getVarint(buf);
+        long stored = header >>> 1;
+        if (stored > count) throw new IOException("Block has " + stored + " columns, the log " + count);
+        int[] listed = null;
+        if ((header & 1) != 0) {
+            listed = new int[(int) stored];
+            long c = -1;
+            for (int i = 0; i < stored; i++) {
+                c += getVarint(buf) + 1;
+                if (c >= count) throw new IOException("Block has column " + c + ", the log " + count);
+                listed[i] = (int) c;
+            }
+        }
+        // Every column the block does not hold is NaN
+        for (int c = 0, next = 0; c < count; c++) {
+            boolean held = listed == null ? c < stored : next < listed.length && listed[next] == c;
+            if (held) next++;
+            else Arrays.fill(columns[c], 0, rows, Double.NaN);
+        }
+        for (int k = 0; k < stored; k++) {
+            double[] column = columns[listed != null ? listed[k] : k];
+            byte mode = buf.get();
+            switch (mode) {
+                case DECIMAL_DELTA:
+                case DECIMAL_DOD: {
+                    double p = POW10[buf.get()];
+                    long prev = 0, prevDelta = 0;
+                    for (int i = 0; i < rows; i++) {
+                        long d = unzigzag(getVarint(buf));
+                        long delta = mode == DECIMAL_DOD ? prevDelta + d : d;
+                        prev += delta;
+                        prevDelta = delta;
+                        column[i] = prev / p;
+                    }
+                    break;
+                }
+                case FLOAT_XOR: {
+                    int prev = 0;
+                    for (int i = 0; i < rows; i++) {
+                        prev ^= buf.getInt();
+                        column[i] = Float.intBitsToFloat(prev);
+                    }
+                    break;
+                }
+                case DOUBLE_XOR: {
+                    long prev = 0;
+                    for (int i = 0; i < rows; i++) {
+                        prev ^= buf.getLong();
+                        column[i] = Double.longBitsToDouble(prev);
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown column encoding " + mode);
+            }
+        }
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    private static int varintSize(long v) {
+        int size = 1;
+        while ((v >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private static long getVarint(ByteBuffer buf) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
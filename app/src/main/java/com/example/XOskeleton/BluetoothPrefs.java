@@ -3,16 +3,41 @@ package com.example.XOskeleton;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class BluetoothPrefs {
     private static final String PREF_NAME = "BluetoothPrefs";
     private static final String KEY_DEVICE_ADDRESS = "last_device_address";
     private static final String KEY_DEVICE_NAME = "last_device_name";
+    // Every device of the rig, one "address\tname" per line, in the order they were added.
+    // Tabs, newlines and backslashes in a name are escaped (see encodeDevices).
+    private static final String KEY_DEVICES = "devices";
 
+    // Replaces the rig with this one device
     public static void saveDevice(Context context, String name, String address) {
         SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         prefs.edit()
                 .putString(KEY_DEVICE_NAME, name)
                 .putString(KEY_DEVICE_ADDRESS, address)
+                .putString(KEY_DEVICES, encodeDevices(Collections.singletonList(address), Collections.singletonList(name)))
+                .apply();
+    }
+
+    // Adds another device (e.g. the controller of the other limb) to the rig
+    public static void addDevice(Context context, String name, String address) {
+        List<String> addresses = getAddresses(context);
+        if (addresses.contains(address)) return;
+        List<String> names = new ArrayList<>(getNames(context));
+        addresses = new ArrayList<>(addresses);
+        addresses.add(address);
+        names.add(name);
+
+        context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_DEVICE_NAME, name)
+                .putString(KEY_DEVICE_ADDRESS, address)
+                .putString(KEY_DEVICES, encodeDevices(addresses, names))
                 .apply();
     }
 
@@ -26,8 +51,83 @@ public class BluetoothPrefs {
                 .getString(KEY_DEVICE_NAME, "Unknown Device");
     }
 
+    public static List<String> getAddresses(Context context) {
+        return getDeviceField(context, 0);
+    }
+
+    public static List<String> getNames(Context context) {
+        return getDeviceField(context, 1);
+    }
+
+    private static List<String> getDeviceField(Context context, int field) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        List<String> values = new ArrayList<>();
+        String devices = prefs.getString(KEY_DEVICES, null);
+        if (devices == null) {
+            // Saved before multi-device support: just the last device
+            String address = prefs.getString(KEY_DEVICE_ADDRESS, null);
+            if (address != null) values.add(field == 0 ? address : getLastName(context));
+            return values;
+        }
+        for (String[] device : decodeDevices(devices)) values.add(device[field]);
+        return values;
+    }
+
     public static void clearDevice(Context context) {
         context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
                 .edit().clear().apply();
     }
-}
\ No newline at end of file
+
+    // ==========================================
+    //           "devices" FORMAT
+    // ==========================================
+    static String encodeDevices(List<String> addresses, List<String> names) {
+        StringBuilder devices = new StringBuilder();
+        for (int i = 0; i < addresses.size(); i++) {
+            if (i > 0) devices.append('\n');
+            escape(devices, addresses.get(i));
+            devices.append('\t');
+            escape(devices, names.get(i) != null ? names.get(i) : "Unknown Device");
+        }
+        return devices.toString();
+    }
+
+    // {address, name} per device; lines written before escaping read the same
+    static List<String[]> decodeDevices(String devices) {
+        List<String[]> result = new ArrayList<>();
+        for (String line : devices.split("\n")) {
+            if (line.isEmpty()) continue;
+            int tab = line.indexOf('\t');
+            String address = unescape(tab >= 0 ? line.substring(0, tab) : line);
+            String name = tab >= 0 ? unescape(line.substring(tab + 1)) : "Unknown Device";
+            result.add(new String[]{address, name});
+        }
+        return result;
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') sb.append("\\\\");
+            else if (c == '\t') sb.append("\\t");
+            else if (c == '\n') sb.append("\\n");
+            else if (c == '\r') sb.append("\\r");
+            else sb.append(c);
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.XOskeleton;
+
+import java.util.Arrays;
+
+/**
+ * The newest sample of each layout seen lately, for views that show current values rather
+ * than a series. With channel groups (see TelemetryProtocol.isPacketKey) the slow groups'
+ * values would otherwise vanish between their packets, behind the fast group's.
+ *
+ * Like JsonUiRenderer, a new layout sharing a key (other than a packet key) with a kept one
+ * replaces it: that is the device changing its packet, and the old values are gone for good.
+ * Not thread-safe; the UI thread owns it.
+ */
+public class ChannelState {
+
+    static final int MAX_LAYOUTS = 8;
+
+    // Newest first
+    private final TelemetrySample[] samples = new TelemetrySample[MAX_LAYOUTS];
+    private final long[] sampleMillis = new long[MAX_LAYOUTS];
+    private int count = 0;
+
+    public void clear() {
+        Arrays.fill(samples, null);
+        count = 0;
+    }
+
+    // Keeps a copy of the sample as its layout's newest; returns true if the layout is new
+    public boolean update(TelemetrySample sample, long millis) {
+        TelemetrySchema schema = sample.getSchema();
+        int at = 0;
+        while (at < count && samples[at].getSchema() != schema) at++;
+        boolean added = at == count;
+        TelemetrySample kept;
+        if (added) {
+            removeReplaced(schema);
+            kept = sample.copy();
+            at = Math.min(count, MAX_LAYOUTS - 1); // The oldest falls off
+            if (count < MAX_LAYOUTS) count++;
+        } else {
+            kept = samples[at];
+            kept.setValues(sample);
+        }
+        // Move to the front
+        System.arraycopy(samples, 0, samples, 1, at);
+        System.arraycopy(sampleMillis, 0, sampleMillis, 1, at);
+        samples[0] = kept;
+        sampleMillis[0] = millis;
+        return added;
+    }
+
+    private void removeReplaced(TelemetrySchema schema) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!sharesChannel(samples[i].getSchema(), schema)) {
+                samples[kept] = samples[i];
+                sampleMillis[kept++] = sampleMillis[i];
+            }
+        }
+        Arrays.fill(samples, kept, count, null);
+        count = kept;
+    }
+
+    private static boolean sharesChannel(TelemetrySchema a, TelemetrySchema b) {
+        for (int slot = 0; slot < b.size(); slot++) {
+            String[] segments = b.getSegments(slot);
+            if (TelemetryProtocol.isPacketKey(segments[segments.length - 1])) continue;
+            if (a.indexOf(b.getKey(slot)) >= 0) return true;
+        }
+        return false;
+    }
+
+    public int size() { return count; }
+
+    // 0 is the layout updated last
+    public TelemetrySample get(int i) { return samples[i]; }
+
+    public long getSampleMillis(int i) { return sampleMillis[i]; }
+}
@@ -0,0 +1,234 @@
+package com.example.XOskeleton;
+
+/**
+ * Maps one device's clock onto the phone's monotonic clock (System.nanoTime()).
+ *
+ * The app sends a time ping carrying its send time t0; the device answers with a pong that
+ * echoes t0 and adds its own receive and send times t1, t2; the pong arrives at t3. As in
+ * NTP each exchange gives a round trip (t3 - t0) - (t2 - t1) and a pair of midpoints that
+ * should read the same instant on both clocks. Queueing only ever adds delay, so of every
+ * BUCKET_MS only the exchange with the smallest round trip is kept, for the last WINDOW
+ * buckets (about five minutes), and of those only the ones close to the best round trip
+ * are trusted. A least-squares line through them gives offset and drift; until they span
+ * MIN_DRIFT_SPAN_MS the rate is taken as 1 and only the offset is estimated.
+ *
+ * Times are handed out as phone monotonic nanos, or as wall-clock millis derived from them
+ * with one anchor for the whole process, so every device of a session ends up on the same
+ * clock and a wall-clock step (NTP, time zone, the user) never bends a timeline.
+ *
+ * Everything except the getters runs on the link's receive thread.
+ */
+public class ClockSync {
+
+    public static final int WINDOW = 32;
+    public static final long BUCKET_MS = 10_000;
+    public static final long MIN_DRIFT_SPAN_MS = 30_000;
+    // Crystal drift is tens of ppm; a steeper fit means bad samples, not a bad crystal
+    public static final double MAX_DRIFT_PPM = 1000;
+
+    // Fast pings until the first estimate settles, then one per second keeps up with drift
+    private static final int FAST_PINGS = 8;
+    private static final long FAST_PING_INTERVAL_NS = 100_000_000L;
+    private static final long PING_INTERVAL_NS = 1_000_000_000L;
+
+    private static final long ANCHOR_WALL_MILLIS = System.currentTimeMillis();
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    // Best exchange per bucket, oldest overwritten first; the newest slot is the open bucket
+    private final long[] phoneMid = new long[WINDOW];     // nanos
+    private final double[] deviceMid = new double[WINDOW]; // device millis
+    private final long[] roundTrip = new long[WINDOW];    // nanos
+    private int buckets = 0;
+    private long bucketStartNanos = 0;
+    private int exchanges = 0;
+    private long lastPingNanos = 0;
+
+    // Model: deviceMillis = refDeviceMillis + rate * (phoneNanos - refPhoneNanos) / 1e6
+    private volatile boolean synced = false;
+    private volatile long refPhoneNanos;
+    private volatile double refDeviceMillis;
+    private volatile double rate = 1.0;
+    private volatile long bestRoundTripNanos = -1;
+
+    // Device timestamp unit, worked out once synced: 1000 (seconds), 1 (millis) or 0.001 (micros)
+    private double timestampScale = 0;
+    private TelemetrySchema timestampSchema = null;
+    private int timestampSlot = -1;
+    private long lastSampleNanos = Long.MIN_VALUE;
+
+    // Forget everything, e.g. when a new connection may be a rebooted device with a new clock
+    public void reset() {
+        buckets = 0;
+        exchanges = 0;
+        lastPingNanos = 0;
+        synced = false;
+        rate = 1.0;
+        bestRoundTripNanos = -1;
+        timestampScale = 0;
+        lastSampleNanos = Long.MIN_VALUE;
+    }
+
+    // True when a ping should go out now; assumes the caller sends it
+    public boolean isPingDue(long nowNanos) {
+        long interval = exchanges < FAST_PINGS ? FAST_PING_INTERVAL_NS : PING_INTERVAL_NS;
+        if (lastPingNanos != 0 && nowNanos - lastPingNanos < interval) return false;
+        lastPingNanos = nowNanos;
+        return true;
+    }
+
+    // ==========================================
+    //           EXCHANGES
+    // ==========================================
+    // Pong payload: [0x03][t0 i64 LE][t1 f64 LE][t2 f64 LE], see TelemetryProtocol.TYPE_TIME_PONG
+    public void onPong(byte[] buffer, int offset, int length, long receivedNanos) {
+        if (length < TelemetryProtocol.TIME_PONG_SIZE) return;
+        long sentNanos = readLong(buffer, offset + 1);
+        double deviceReceived = Double.longBitsToDouble(readLong(buffer, offset + 9));
+        double deviceSent = Double.longBitsToDouble(readLong(buffer, offset + 17));
+        onExchange(sentNanos, deviceReceived, deviceSent, receivedNanos);
+    }
+
+    void onExchange(long sentNanos, double deviceReceivedMillis, double deviceSentMillis, long receivedNanos) {
+        long rtt = (receivedNanos - sentNanos) - (long) ((deviceSentMillis - deviceReceivedMillis) * 1e6);
+        if (receivedNanos < sentNanos || rtt < 0 || Double.isNaN(deviceReceivedMillis) || Double.isNaN(deviceSentMillis)) return;
+
+        exchanges++;
+        long mid = sentNanos + (receivedNanos - sentNanos) / 2;
+        if (buckets == 0 || mid - bucketStartNanos >= BUCKET_MS * 1_000_000L) {
+            buckets++;
+            bucketStartNanos = mid;
+        } else if (rtt >= roundTrip[(buckets - 1) % WINDOW]) {
+            return; // The open bucket already has a better one
+        }
+        int i = (buckets - 1) % WINDOW;
+        phoneMid[i] = mid;
+        deviceMid[i] = (deviceReceivedMillis + deviceSentMillis) / 2;
+        roundTrip[i] = rtt;
+        fit();
+    }
+
+    private void fit() {
+        int n = Math.min(buckets, WINDOW);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < n; i++) best = Math.min(best, roundTrip[i]);
+        // Within twice the best round trip (and at least 1 ms of slack for a fast link)
+        long limit = best + Math.max(best, 1_000_000L);
+
+        int newest = (buckets - 1) % WINDOW;
+        long ref = phoneMid[newest];
+        double sumX = 0, sumY = 0;
+        int used = 0;
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (roundTrip[i] > limit) continue;
+            sumX += (phoneMid[i] - ref) / 1e6;
+            sumY += deviceMid[i];
+            minX = Math.min(minX, phoneMid[i]);
+            maxX = Math.max(maxX, phoneMid[i]);
+            used++;
+        }
+        double meanX = sumX / used, meanY = sumY / used;
+
+        double slope = 1.0;
+        if ((maxX - minX) / 1_000_000L >= MIN_DRIFT_SPAN_MS) {
+            double sxx = 0, sxy = 0;
+            for (int i = 0; i < n; i++) {
+                if (roundTrip[i] > limit) continue;
+                double dx = (phoneMid[i] - ref) / 1e6 - meanX;
+                sxx += dx * dx;
+                sxy += dx * (deviceMid[i] - meanY);
+            }
+            slope = sxy / sxx;
+            double maxDrift = MAX_DRIFT_PPM / 1e6;
+            slope = Math.max(1 - maxDrift, Math.min(1 + maxDrift, slope));
+        }
+
+        // Line through the mean point, re-expressed at the newest kept exchange
+        refPhoneNanos = ref;
+        refDeviceMillis = meanY - slope * meanX;
+        rate = slope;
+        bestRoundTripNanos = best;
+        synced = true;
+    }
+
+    // ==========================================
+    //           CONVERSIONS
+    // ==========================================
+    public boolean isSynced() { return synced; }
+
+    // Phone monotonic time at which the device clock read deviceMillis
+    public long toPhoneNanos(double deviceMillis) {
+        return refPhoneNanos + (long) ((deviceMillis - refDeviceMillis) / rate * 1e6);
+    }
+
+    public double toDeviceMillis(long phoneNanos) {
+        return refDeviceMillis + rate * (phoneNanos - refPhoneNanos) / 1e6;
+    }
+
+    /**
+     * When the sample was taken, on the phone's monotonic clock: its "timestamp" mapped
+     * through the model, never later than it was read and never before the previous
+     * sample (a refit must not make a series step back). Before the first pong, or without
+     * a timestamp, the read time is the best there is.
+     */
+    public long samplePhoneNanos(TelemetrySample sample, long readNanos) {
+        long nanos = estimateSampleNanos(sample, readNanos);
+        if (nanos < lastSampleNanos) nanos = lastSampleNanos;
+        lastSampleNanos = nanos;
+        return nanos;
+    }
+
+    private long estimateSampleNanos(TelemetrySample sample, long readNanos) {
+        if (!synced) return readNanos;
+        if (sample.getSchema() != timestampSchema) {
+            timestampSchema = sample.getSchema();
+            timestampSlot = timestampSchema.indexOf(TelemetryProtocol.TIMESTAMP_KEY);
+        }
+        if (timestampSlot < 0) return readNanos;
+        double ts = sample.get(timestampSlot);
+        if (Double.isNaN(ts)) return readNanos;
+        if (timestampScale == 0) timestampScale = scaleFor(ts, toDeviceMillis(readNanos));
+        return Math.min(readNanos, toPhoneNanos(ts * timestampScale));
+    }
+
+    // The unit that puts a telemetry timestamp nearest the device clock the pongs report
+    static double scaleFor(double timestamp, double deviceMillisNow) {
+        double bestScale = 1;
+        double bestError = Double.POSITIVE_INFINITY;
+        for (double scale : new double[]{1000, 1, 0.001}) {
+            double error = Math.abs(timestamp * scale - deviceMillisNow);
+            if (error < bestError) {
+                bestError = error;
+                bestScale = scale;
+            }
+        }
+        return bestScale;
+    }
+
+    // Wall-clock millis for a phone monotonic time, with one anchor for the whole process
+    public static double toWallMillis(long phoneNanos) {
+        return ANCHOR_WALL_MILLIS + (phoneNanos - ANCHOR_NANOS) / 1e6;
+    }
+
+    // ==========================================
+    //           STATS
+    // ==========================================
+    public int getExchangeCount() { return exchanges; }
+
+    // Device clock minus phone wall clock right now, in millis
+    public double getOffsetMillis() {
+        long now = System.nanoTime();
+        return toDeviceMillis(now) - toWallMillis(now);
+    }
+
+    public double getDriftPpm() { return (rate - 1) * 1e6; }
+
+    // -1 before the first exchange
+    public long getBestRoundTripNanos() { return bestRoundTripNanos; }
+
+    private static long readLong(byte[] b, int at) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) value = value << 8 | (b[at + i] & 0xFF);
+        return value;
+    }
+}
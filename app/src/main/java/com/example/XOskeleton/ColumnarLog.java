@@ -0,0 +1,325 @@
+package com.example.XOskeleton;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary column store for one session, written next to its log as "Log_*.xlog.xcol" (or
+ * "Log_*.csv.xcol" for logs from before BlockLog).
+ * Every field is one contiguous little-endian double[] so a column can be read through a
+ * memory-mapped view without parsing anything.
+ *
+ * Layout:
+ *   "XOCOL1\0\0" | int columnCount | long rowCount
+ *   per column:  short nameLength | name (UTF-8) | long dataOffset | double min | double max
+ *   padding to 8 bytes, then each column's rowCount doubles at its dataOffset
+ */
+public class ColumnarLog {
+
+    public static final String EXTENSION = ".xcol";
+    private static final byte[] MAGIC = {'X', 'O', 'C', 'O', 'L', '1', 0, 0};
+
+    private final List<String> names;
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private final long[] offsets;
+    private final double[] mins;
+    private final double[] maxs;
+    private final int rowCount;
+    private final ByteBuffer mapped;
+
+    private ColumnarLog(List<String> names, long[] offsets, double[] mins, double[] maxs, int rowCount, ByteBuffer mapped) {
+        this.names = names;
+        this.offsets = offsets;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.rowCount = rowCount;
+        this.mapped = mapped;
+        for (int i = 0; i < names.size(); i++) indexByName.put(names.get(i), i);
+    }
+
+    public static File sidecarFor(File log) {
+        return new File(log.getParentFile(), log.getName() + EXTENSION);
+    }
+
+    // ==========================================
+    //           READING
+    // ==========================================
+    public static ColumnarLog open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a columnar log: " + file.getName());
+            int columnCount = buffer.getInt();
+            long rows = buffer.getLong();
+            if (columnCount < 0 || rows < 0 || rows > Integer.MAX_VALUE) throw new IOException("Corrupt header: " + file.getName());
+
+            List<String> names = new ArrayList<>(columnCount);
+            long[] offsets = new long[columnCount];
+            double[] mins = new double[columnCount];
+            double[] maxs = new double[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+                offsets[i] = buffer.getLong();
+                mins[i] = buffer.getDouble();
+                maxs[i] = buffer.getDouble();
+                if (offsets[i] < 0 || offsets[i] + rows * 8 > buffer.capacity()) throw new IOException("Truncated column " + names.get(i));
+            }
+            return new ColumnarLog(Collections.unmodifiableList(names), offsets, mins, maxs, (int) rows, buffer);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException etc. from a truncated file
+            throw new IOException("Corrupt columnar log: " + file.getName(), e);
+        }
+    }
+
+    public List<String> getColumnNames() { return names; }
+
+    public int getRowCount() { return rowCount; }
+
+    public int indexOf(String name) {
+        Integer index = indexByName.get(name);
+        return index != null ? index : -1;
+    }
+
+    // Zero-copy view of one column; null if the column does not exist
+    public DoubleBuffer getColumn(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : getColumn(index);
+    }
+
+    public DoubleBuffer getColumn(int index) {
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) offsets[index]);
+        view.limit((int) offsets[index] + rowCount * 8);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    public double getMin(int index) { return mins[index]; }
+
+    public double getMax(int index) { return maxs[index]; }
+
+    // ==========================================
+    //           WRITING
+    // ==========================================
+    public static void write(File out, List<String> names, double[][] columns, int rows) throws IOException {
+        int columnCount = names.size();
+        double[] mins = new double[columnCount];
+        double[] maxs = new double[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            double min = Double.NaN, max = Double.NaN;
+            for (int r = 0; r < rows; r++) {
+                double v = columns[i][r];
+                if (Double.isNaN(v)) continue;
+                if (Double.isNaN(min) || v < min) min = v;
+                if (Double.isNaN(max) || v > max) max = v;
+            }
+            mins[i] = min;
+            maxs[i] = max;
+        }
+        ByteBuffer header = header(names, rows, mins, maxs);
+
+        File tmp = new File(out.getParentFile(), out.getName() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            data.write(header.array(), 0, header.limit());
+            for (int i = 0; i < columnCount; i++) {
+                for (int r = 0; r < rows; r++) writeLong(data, scratch, Double.doubleToRawLongBits(columns[i][r]));
+            }
+        }
+        moveIntoPlace(tmp, out);
+    }
+
+    // Header plus padding; column i's data follows at limit() + i * rows * 8
+    private static ByteBuffer header(List<String> names, long rows, double[] mins, double[] maxs) {
+        int columnCount = names.size();
+        byte[][] encodedNames = new byte[columnCount][];
+        int headerSize = MAGIC.length + 4 + 8;
+        for (int i = 0; i < columnCount; i++) {
+            encodedNames[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            headerSize += 2 + encodedNames[i].length + 8 + 8 + 8;
+        }
+        int dataStart = (headerSize + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(dataStart).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(columnCount);
+        header.putLong(rows);
+        for (int i = 0; i < columnCount; i++) {
+            header.putShort((short) encodedNames[i].length);
+            header.put(encodedNames[i]);
+            header.putLong(dataStart + i * rows * 8);
+            header.putDouble(mins[i]);
+            header.putDouble(maxs[i]);
+        }
+        header.clear(); // The padding is already zero
+        return header;
+    }
+
+    // Readers never see a half-written file
+    private static void moveIntoPlace(File tmp, File out) throws IOException {
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Could not move " + tmp.getName() + " into place");
+        }
+    }
+
+    // Builds the sidecar of a block log or, going by the extension, of an old CSV log
+    public static File convert(File log) throws IOException {
+        return log.getName().endsWith(BlockLog.EXTENSION) ? convertBlockLog(log) : convertCsv(log);
+    }
+
+    /**
+     * Inflates every block of a Log_*.xlog (an unclosed one too) into its columnar sidecar.
+     * Each channel group's stream writes its own blocks, so rows are put in time order on the
+     * way: a first pass reads only the times, the second writes each block's rows straight to
+     * their place in the mapped sidecar. The heap holds one block plus a few bytes per row,
+     * however many columns the log has.
+     */
+    public static File convertBlockLog(File log) throws IOException {
+        BlockLog blocks = BlockLog.open(log);
+        try {
+            List<String> names = blocks.getColumnNames();
+            int columnCount = names.size();
+            long rowCount = blocks.getRowCount();
+            if (rowCount > Integer.MAX_VALUE / 8) throw new IOException("Too many rows to map a column: " + rowCount);
+            int rows = (int) rowCount;
+            double[][] block = new double[columnCount][BlockLog.BLOCK_ROWS];
+
+            // Where each row of the file goes, null if it already is in time order
+            int[] rank = null;
+            int time = blocks.getTimeColumn();
+            if (time >= 0) {
+                double[] times = new double[rows];
+                int at = 0;
+                for (int b = 0; b < blocks.getBlockCount(); b++) {
+                    int n = blocks.readBlock(b, block);
+                    System.arraycopy(block[time], 0, times, at, n);
+                    at += n;
+                }
+                int[] order = BlockLog.timeOrder(times, rows);
+                if (order != null) {
+                    rank = new int[rows];
+                    for (int i = 0; i < rows; i++) rank[order[i]] = i;
+                }
+            }
+
+            double[] mins = new double[columnCount];
+            double[] maxs = new double[columnCount];
+            Arrays.fill(mins, Double.NaN);
+            Arrays.fill(maxs, Double.NaN);
+            ByteBuffer header = header(names, rows, mins, maxs);
+            File out = sidecarFor(log);
+            File tmp = new File(out.getParentFile(), out.getName() + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+                raf.setLength(0);
+                raf.setLength(header.limit() + (long) columnCount * rows * 8);
+                DoubleBuffer[] columns = new DoubleBuffer[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    columns[c] = channel.map(FileChannel.MapMode.READ_WRITE, header.limit() + (long) c * rows * 8, (long) rows * 8)
+                            .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                }
+                int at = 0;
+                for (int b = 0; b < blocks.getBlockCount(); b++) {
+                    int n = blocks.readBlock(b, block);
+                    for (int c = 0; c < columnCount; c++) {
+                        DoubleBuffer column = columns[c];
+                        double[] values = block[c];
+                        double min = mins[c], max = maxs[c];
+                        for (int r = 0; r < n; r++) {
+                            double v = values[r];
+                            column.put(rank != null ? rank[at + r] : at + r, v);
+                            if (Double.isNaN(v)) continue;
+                            if (Double.isNaN(min) || v < min) min = v;
+                            if (Double.isNaN(max) || v > max) max = v;
+                        }
+                        mins[c] = min;
+                        maxs[c] = max;
+                    }
+                    at += n;
+                }
+                channel.write(header(names, rows, mins, maxs), 0);
+            }
+            moveIntoPlace(tmp, out);
+            return out;
+        } finally {
+            blocks.close();
+        }
+    }
+
+    /**
+     * Converts a Log_*.csv (header row, then one row per sample) into its columnar sidecar.
+     * Cells that are not numbers are stored as NaN.
+     */
+    public static File convertCsv(File csv) throws IOException {
+        File out = sidecarFor(csv);
+        List<String> names = new ArrayList<>();
+        double[][] columns = new double[0][];
+        int rows = 0;
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 64 * 1024)) {
+            String header = br.readLine();
+            if (header != null) {
+                for (String h : header.split(",", -1)) names.add(h.trim());
+                columns = new double[names.size()][1024];
+            }
+            String line;
+            while (header != null && (line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                if (rows == columns[0].length) {
+                    for (int c = 0; c < columns.length; c++) columns[c] = Arrays.copyOf(columns[c], rows * 2);
+                }
+                int col = 0, start = 0;
+                for (int i = 0; i <= line.length() && col < columns.length; i++) {
+                    if (i == line.length() || line.charAt(i) == ',') {
+                        columns[col++][rows] = parseCell(line, start, i);
+                        start = i + 1;
+                    }
+                }
+                while (col < columns.length) columns[col++][rows] = Double.NaN; // Short row
+                rows++;
+            }
+        }
+        if (columns.length == 0) columns = new double[0][0];
+        write(out, names, columns, rows);
+        return out;
+    }
+
+    private static double parseCell(String line, int start, int end) {
+        if (start >= end) return Double.NaN;
+        try {
+            return Double.parseDouble(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void writeLong(DataOutputStream out, ByteBuffer scratch, long v) throws IOException {
+        scratch.clear();
+        scratch.putLong(v);
+        out.write(scratch.array(), 0, 8);
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.XOskeleton;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single ordered writer for device commands. Callers only enqueue; one thread frames each
+ * command as [0x10][seq][text] (see {@link TelemetryProtocol#TYPE_COMMAND}), in the framing
+ * the device streams with (see FrameDecoder), and writes it. Nothing is written until the
+ * first frame from the device shows that framing: a v2 device drops v1 frames. A setpoint that is still queued
+ * when a newer value for the same key arrives is replaced where it stands, so dragging a slider
+ * sends the latest value instead of a backlog, in the order the key was first queued.
+ *
+ * The device acknowledges by echoing the highest sequence it applied under the telemetry
+ * key "ack"; that gives the command round-trip time.
+ *
+ * Time pings for {@link ClockSync} share the queue (at most one pending) so they never
+ * interleave with a command; their send time is stamped right before the write. So do
+ * flow-control grants ({@link FlowControl}), where a newer grant replaces a pending one.
+ * The thread also runs a periodic task (setTick()), whether or not anything is queued.
+ */
+public class CommandWriter {
+
+    public interface Listener {
+        void onSendFailed(IOException e);
+    }
+
+    public static final long ACK_TIMEOUT_MS = 2000;
+
+    // Commands of the form "KEY:value" where only the newest value matters
+    private static final Set<String> COALESCED_KEYS = new HashSet<>(Arrays.asList("SET_POWER", "SET_MODE", "SET_VAL"));
+    // Queue key of the pending time ping (command keys are COALESCED_KEYS or "#n")
+    private static final String TIME_PING_KEY = "TIME_PING";
+    private static final String CREDIT_KEY = "CREDIT";
+
+    private static class InFlight {
+        final long seq;
+        final long sentNanos;
+
+        InFlight(long seq, long sentNanos) {
+            this.seq = seq;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    private final OutputStream out;
+    private final Listener listener;
+    private volatile int framingVersion = 0; // 0 until setFramingVersion()
+
+    // Guarded by 'queue'. Insertion order is send order; replacing a value keeps its place.
+    private final LinkedHashMap<String, String> queue = new LinkedHashMap<>();
+    private long uniqueKeys = 0;
+    private boolean closed = false;
+    private Thread thread;
+    private Runnable tick;
+    private long tickNanos;
+
+    // Guarded by 'inFlight'
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+    private long nextSeq = 1;
+
+    // Receive thread only
+    private TelemetrySchema ackSchema = null;
+    private int ackSlot = -1;
+    private long lastAck = 0;
+
+    // Stats
+    private volatile long sent = 0, coalesced = 0, acked = 0, timedOut = 0;
+    private volatile long lastRoundTripNanos = -1, maxRoundTripNanos = 0;
+
+    public CommandWriter(OutputStream out, Listener listener) {
+        this.out = out;
+        this.listener = listener;
+    }
+
+    // Answer in the framing the device's stream turned out to use (FrameDecoder.getVersion());
+    // called for every frame, so it only locks when the version changes
+    public void setFramingVersion(int version) {
+        if (version == 0 || version == framingVersion) return;
+        synchronized (queue) {
+            framingVersion = version;
+            queue.notifyAll(); // Releases what was held until now
+        }
+    }
+
+    // Runs 'task' on the writer thread about every intervalMillis (e.g. a flow-control grant
+    // repeated while the device is quiet); call before start()
+    public void setTick(Runnable task, long intervalMillis) {
+        tick = task;
+        tickNanos = intervalMillis * 1_000_000L;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "CommandWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Returns false once the writer is closed
+    public boolean send(String command) {
+        synchronized (queue) {
+            if (closed) return false;
+            String key = coalesceKey(command);
+            if (key == null) {
+                key = "#" + (uniqueKeys++); // Never coalesced
+            } else if (queue.containsKey(key)) {
+                coalesced++;
+            }
+            queue.put(key, command); // An existing key keeps its position
+            queue.notifyAll();
+        }
+        return true;
+    }
+
+    // Queues a time ping unless one is already waiting; false once the writer is closed
+    public boolean sendTimePing() {
+        synchronized (queue) {
+            if (closed) return false;
+            if (!queue.containsKey(TIME_PING_KEY)) {
+                queue.put(TIME_PING_KEY, TIME_PING_KEY);
+                queue.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    // Queues a flow-control grant, replacing one still waiting; false once the writer is closed
+    public boolean sendCredits(long packetId, int window) {
+        synchronized (queue) {
+            if (closed) return false;
+            queue.put(CREDIT_KEY, packetId + ":" + Math.min(window, 0xFFFF));
+            queue.notifyAll();
+        }
+        return true;
+    }
+
+    public void close() {
+        synchronized (queue) {
+            closed = true;
+            queue.clear();
+            queue.notifyAll();
+        }
+    }
+
+    private static String coalesceKey(String command) {
+        int colon = command.indexOf(':');
+        if (colon <= 0) return null;
+        String key = command.substring(0, colon);
+        return COALESCED_KEYS.contains(key) ? key : null;
+    }
+
+    // ==========================================
+    //           WRITER THREAD
+    // ==========================================
+    private void run() {
+        long nextTick = System.nanoTime() + tickNanos;
+        try {
+            while (true) {
+                String key = null, command = null;
+                synchronized (queue) {
+                    while ((queue.isEmpty() || framingVersion == 0) && !closed) {
+                        long wait = ACK_TIMEOUT_MS;
+                        if (tick != null) {
+                            long untilTick = nextTick - System.nanoTime();
+                            if (untilTick <= 0) break;
+                            wait = Math.min(wait, untilTick / 1_000_000 + 1);
+                        }
+                        queue.wait(wait);
+                        expireUnacknowledged(System.nanoTime());
+                    }
+                    if (closed) return;
+                    if (!queue.isEmpty() && framingVersion != 0) {
+                        Iterator<Map.Entry<String, String>> first = queue.entrySet().iterator();
+                        Map.Entry<String, String> entry = first.next();
+                        key = entry.getKey();
+                        command = entry.getValue();
+                        first.remove();
+                    }
+                }
+                if (tick != null && System.nanoTime() - nextTick >= 0) {
+                    tick.run(); // Outside the lock: it may queue something
+                    nextTick = System.nanoTime() + tickNanos;
+                }
+                if (key == null) continue;
+                if (key.equals(TIME_PING_KEY)) writeTimePing();
+                else if (key.equals(CREDIT_KEY)) writeCredits(command);
+                else write(command);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            close();
+            if (listener != null) listener.onSendFailed(e);
+        }
+    }
+
+    private void write(String command) throws IOException {
+        byte[] text = command.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 4 + text.length;
+        if (payloadLength > FrameDecoder.MAX_PAYLOAD_SIZE) throw new IOException("Command too long: " + text.length + " bytes");
+
+        long seq;
+        synchronized (inFlight) {
+            seq = nextSeq++;
+        }
+        byte[] payload = new byte[payloadLength];
+        payload[0] = TelemetryProtocol.TYPE_COMMAND;
+        payload[1] = (byte) seq;
+        payload[2] = (byte) (seq >> 8);
+        payload[3] = (byte) (seq >> 16);
+        payload[4] = (byte) (seq >> 24);
+        System.arraycopy(text, 0, payload, 5, text.length);
+        byte[] frame = FrameDecoder.frame(framingVersion, payload, 0, payloadLength);
+
+        long now = System.nanoTime();
+        expireUnacknowledged(now);
+        synchronized (inFlight) {
+            inFlight.addLast(new InFlight(seq, now));
+        }
+        out.write(frame);
+        out.flush();
+        sent++;
+    }
+
+    private void writeTimePing() throws IOException {
+        byte[] payload = new byte[TelemetryProtocol.TIME_PING_SIZE];
+        payload[0] = TelemetryProtocol.TYPE_TIME_PING;
+        long now = System.nanoTime();
+        for (int i = 0; i < 8; i++) payload[1 + i] = (byte) (now >> (8 * i));
+        byte[] frame = FrameDecoder.frame(framingVersion, payload, 0, payload.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    // grant: "packetId:window" as queued by sendCredits()
+    private void writeCredits(String grant) throws IOException {
+        int colon = grant.indexOf(':');
+        long packetId = Long.parseLong(grant.substring(0, colon));
+        int window = Integer.parseInt(grant.substring(colon + 1));
+        byte[] payload = new byte[TelemetryProtocol.CREDIT_SIZE];
+        payload[0] = TelemetryProtocol.TYPE_CREDIT;
+        for (int i = 0; i < 4; i++) payload[1 + i] = (byte) (packetId >> (8 * i));
+        payload[5] = (byte) window;
+        payload[6] = (byte) (window >> 8);
+        byte[] frame = FrameDecoder.frame(framingVersion, payload, 0, payload.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    private void expireUnacknowledged(long now) {
+        long limit = ACK_TIMEOUT_MS * 1_000_000L;
+        synchronized (inFlight) {
+            while (!inFlight.isEmpty() && now - inFlight.peekFirst().sentNanos > limit) {
+                inFlight.pollFirst();
+                timedOut++;
+            }
+        }
+    }
+
+    // ==========================================
+    //           ACKNOWLEDGEMENTS (receive thread)
+    // ==========================================
+    public void onTelemetry(TelemetrySample sample) {
+        if (sample.getSchema() != ackSchema) {
+            ackSchema = sample.getSchema();
+            ackSlot = ackSchema.indexOf(TelemetryProtocol.ACK_KEY);
+        }
+        if (ackSlot < 0) return;
+        double value = sample.get(ackSlot);
+        if (Double.isNaN(value) || value <= lastAck) return;
+        lastAck = (long) value;
+        acknowledge(lastAck, System.nanoTime());
+    }
+
+    // Acks are cumulative: everything up to 'seq' has been applied
+    void acknowledge(long seq, long now) {
+        synchronized (inFlight) {
+            while (!inFlight.isEmpty() && inFlight.peekFirst().seq <= seq) {
+                InFlight command = inFlight.pollFirst();
+                acked++;
+                if (command.seq == seq) {
+                    long rtt = now - command.sentNanos;
+                    lastRoundTripNanos = rtt;
+                    if (rtt > maxRoundTripNanos) maxRoundTripNanos = rtt;
+                }
+            }
+        }
+    }
+
+    public long getSentCount() { return sent; }
+
+    public long getCoalescedCount() { return coalesced; }
+
+    public long getAckedCount() { return acked; }
+
+    public long getTimedOutCount() { return timedOut; }
+
+    // -1 until the first acknowledgement
+    public long getLastRoundTripNanos() { return lastRoundTripNanos; }
+
+    public long getMaxRoundTripNanos() { return maxRoundTripNanos; }
+
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.XOskeleton;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), the checksum of v2 frames (see FrameDecoder). Same result as
+ * sender/framing.py crc32c().
+ *
+ * create() hands out java.util.zip.CRC32C where the platform has it (Android 14+, any
+ * desktop JVM), which uses the CPU's CRC instructions; older Androids get this table-driven
+ * version, eight bytes per step ("slicing-by-8"), roughly ten times slower.
+ */
+public final class Crc32c implements Checksum {
+
+    private static final int POLY = 0x82F63B78; // Reflected
+    private static final int[][] T = new int[8][256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int k = 0; k < 8; k++) crc = (crc >>> 1) ^ (POLY & -(crc & 1));
+            T[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) T[t][i] = (T[t - 1][i] >>> 8) ^ T[0][T[t - 1][i] & 0xFF];
+        }
+    }
+
+    // Looked up once: reflection on every create() would cost more than the checksum itself
+    private static final Constructor<? extends Checksum> PLATFORM = platformConstructor();
+
+    private static Constructor<? extends Checksum> platformConstructor() {
+        try {
+            return Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    // compute() reuses one per thread
+    private static final ThreadLocal<Checksum> ONE_OFF = ThreadLocal.withInitial(Crc32c::create);
+
+    // Not thread-safe, like any Checksum: one per thread
+    public static Checksum create() {
+        if (PLATFORM != null) {
+            try {
+                return PLATFORM.newInstance();
+            } catch (ReflectiveOperationException ignored) {}
+        }
+        return new Crc32c();
+    }
+
+    // One-off checksum of a buffer
+    public static int compute(byte[] b, int offset, int length) {
+        Checksum crc = ONE_OFF.get();
+        crc.reset();
+        crc.update(b, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private int crc = ~0;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ T[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int offset, int length) {
+        int[] t0 = T[0], t1 = T[1], t2 = T[2], t3 = T[3], t4 = T[4], t5 = T[5], t6 = T[6], t7 = T[7];
+        int c = crc;
+        int i = offset, end = offset + length;
+        for (; end - i >= 8; i += 8) {
+            int lo = c ^ ((b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24);
+            c = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24]
+                    ^ t3[b[i + 4] & 0xFF] ^ t2[b[i + 5] & 0xFF] ^ t1[b[i + 6] & 0xFF] ^ t0[b[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) c = (c >>> 8) ^ t0[(c ^ b[i]) & 0xFF];
+        crc = c;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = ~0;
+    }
+}
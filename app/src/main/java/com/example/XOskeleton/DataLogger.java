@@ -1,49 +1,69 @@
 package com.example.XOskeleton;
 
 import android.content.Context;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DataLogger {
+    // Rows are handed to a writer thread so a slow SD card never blocks the socket reader.
+    // 8192 rows is ~7 minutes of slack at 20 Hz and ~16 seconds at 500 Hz.
+    private static final int QUEUE_CAPACITY = 8192;
+    // A block is written when full or after this long, so a killed app loses at most ~5 s
+    private static final long BLOCK_INTERVAL_MS = 5000;
+    private static final long POLL_INTERVAL_MS = 1000;
+    private static final int BATCH_SIZE = 256;
+
     private final Context context;
-    private File currentFile;
+    private final SessionIndex sessionIndex;
+    // File work for the UI (sidecar conversion, history) runs here, one job at a time
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "DataLogger-files"));
+
+    // Last opened columnar file, so plotting several columns maps it only once
+    private ColumnarLog cachedColumns;
+    private File cachedColumnsFile;
+    private long cachedColumnsStamp;
 
     public DataLogger(Context context) {
         this.context = context;
+        this.sessionIndex = new SessionIndex(context.getExternalFilesDir(null));
         // Don't create file immediately on init, wait for connection
     }
 
-    public void createNewFile() {
+    /**
+     * Opens a new block-compressed log (see BlockLog) with its own writer thread. With several
+     * devices streaming at once each gets its own session; the label keeps their files apart
+     * ("Log_<time>_<label>.xlog").
+     */
+    public LogSession startSession(String label) {
         // Create a new file name with timestamp
-        String fileName = "Log_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".csv";
-        currentFile = new File(context.getExternalFilesDir(null), fileName);
-    }
-
-    public void save(String data) {
-        if (currentFile == null) return;
-        try (FileWriter writer = new FileWriter(currentFile, true)) {
-            writer.append(data).append("\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        String fileName = "Log_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date())
+                + (label == null || label.isEmpty() ? "" : "_" + label) + BlockLog.EXTENSION;
+        LogSession session = new LogSession(new File(context.getExternalFilesDir(null), fileName), sessionIndex);
+        new Thread(session, "DataLogger-" + fileName).start();
+        return session;
     }
 
     public List<String> getAllFiles() {
         File dir = context.getExternalFilesDir(null);
         if (dir == null) return new ArrayList<>();
 
-        String[] files = dir.list((d, name) -> name.endsWith(".csv"));
+        // Block logs, and CSV logs written before them
+        String[] files = dir.list((d, name) -> name.endsWith(BlockLog.EXTENSION) || name.endsWith(".csv"));
         if (files != null) {
             List<String> list = Arrays.asList(files);
             // Sort to show newest first
@@ -53,19 +73,45 @@ public class DataLogger {
         return new ArrayList<>();
     }
 
-    public List<String[]> readFile(String fileName) {
-        List<String[]> data = new ArrayList<>();
-        File file = new File(context.getExternalFilesDir(null), fileName);
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Split by comma, but handle empty values
-                data.add(line.split(",", -1));
+    // Runs file work off the caller's thread; callers post their results back (LiveData.postValue)
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the memory-mapped columnar view of a session, converting the log first if the
+     * sidecar is missing or older than the log (old logs, or the session still being written).
+     * Converting reads the whole log, so call this through execute(), never from the UI thread.
+     * Returns null if the file cannot be read.
+     */
+    public synchronized ColumnarLog openColumnar(String fileName) {
+        File log = new File(context.getExternalFilesDir(null), fileName);
+        File sidecar = ColumnarLog.sidecarFor(log);
+        try {
+            if (!sidecar.exists() || sidecar.lastModified() < log.lastModified()) {
+                ColumnarLog.convert(log);
             }
+            if (cachedColumns != null && sidecar.equals(cachedColumnsFile) && sidecar.lastModified() == cachedColumnsStamp) {
+                return cachedColumns;
+            }
+            cachedColumns = ColumnarLog.open(sidecar);
+            cachedColumnsFile = sidecar;
+            cachedColumnsStamp = sidecar.lastModified();
+            return cachedColumns;
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
-        return data;
+    }
+
+    // The view openColumnar last returned for this file, or null; never converts anything
+    public synchronized ColumnarLog getOpenedColumnar(String fileName) {
+        File sidecar = ColumnarLog.sidecarFor(new File(context.getExternalFilesDir(null), fileName));
+        return cachedColumns != null && sidecar.equals(cachedColumnsFile) ? cachedColumns : null;
+    }
+
+    public SessionIndex getSessionIndex() {
+        return sessionIndex;
     }
 
     // Add this method to DataLogger.java
@@ -73,4 +119,177 @@ public class DataLogger {
         // Returns the folder where logs are saved: /Android/data/com.example.XOskeleton/files/
         return context.getExternalFilesDir(null);
     }
-}
\ No newline at end of file
+
+    // ==========================================
+    //           WRITER THREAD
+    // ==========================================
+    public static class LogSession implements Runnable {
+        private static final Row END_OF_SESSION = new Row(null, new double[0]); // Compared by identity
+
+        private final File file;
+        private final SessionIndex index;
+        private final long startMillis = System.currentTimeMillis();
+        private final BlockingQueue<Row> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicLong writtenRows = new AtomicLong();
+        private final AtomicLong droppedRows = new AtomicLong();
+        private final AtomicLong flushes = new AtomicLong();
+        private volatile List<String> columns = null;
+        private volatile boolean finishing = false;
+        private volatile int highWatermark = 0;
+        private volatile long rawBytes = 0, writtenBytes = 0;
+
+        LogSession(File file, SessionIndex index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        public File getFile() { return file; }
+
+        /**
+         * Before the first row, and again whenever a sample brings new keys: the same columns
+         * with the new ones at the end. Rows queued until then are shorter; see BlockLog.addColumns.
+         */
+        public void setColumns(List<String> columns) {
+            this.columns = new ArrayList<>(columns);
+        }
+
+        // A row of every column, in column order (shorter if columns were added since)
+        public void save(double[] row) {
+            save(null, row);
+        }
+
+        /**
+         * A row of only these columns (ascending, see LogColumns.getStreamColumns), e.g. one
+         * channel group's. Each set of columns becomes a stream of its own in the log; pass the
+         * same array for the same set. Never blocks: if the writer has fallen QUEUE_CAPACITY
+         * rows behind, the row is dropped and counted.
+         */
+        public void save(int[] columns, double[] row) {
+            if (finishing) return;
+            if (!queue.offer(new Row(columns, row))) {
+                droppedRows.incrementAndGet();
+                return;
+            }
+            int depth = queue.size();
+            if (depth > highWatermark) highWatermark = depth; // Single producer, so a plain max is enough
+        }
+
+        // Flushes what is queued and closes the file on the writer thread; returns immediately
+        public void close() {
+            finishing = true;
+            // If the queue is full the writer still notices 'finishing' once it drains
+            queue.offer(END_OF_SESSION);
+        }
+
+        // --- Counters ---
+        public long getWrittenRows() { return writtenRows.get(); }
+        public long getDroppedRows() { return droppedRows.get(); }
+        public long getFlushCount() { return flushes.get(); }
+        public int getQueueDepth() { return queue.size(); }
+        // 0..1, for flow control
+        public double getQueueFill() { return queue.size() / (double) QUEUE_CAPACITY; }
+        public int getQueueHighWatermark() { return highWatermark; }
+        // Rows as plain doubles vs. what reached the file, for the compression ratio
+        public long getRawBytes() { return rawBytes; }
+        public long getWrittenBytes() { return writtenBytes; }
+
+        @Override
+        public void run() {
+            List<Row> batch = new ArrayList<>(BATCH_SIZE);
+            Map<int[], Integer> streams = new IdentityHashMap<>(); // Column set -> BlockLog stream
+            BlockLog.Writer out = null;
+            try {
+                long blockStarted = System.currentTimeMillis();
+                boolean done = false;
+
+                while (!done) {
+                    Row first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        done = finishing && queue.isEmpty();
+                    } else {
+                        batch.add(first);
+                        queue.drainTo(batch, BATCH_SIZE - 1);
+                        for (int i = 0; i < batch.size(); i++) {
+                            Row row = batch.get(i);
+                            if (row == END_OF_SESSION) {
+                                done = true;
+                                break;
+                            }
+                            if (out == null) {
+                                // The file appears with the first row, when the columns are known
+                                List<String> names = columns;
+                                int time = names.indexOf(TelemetryProtocol.PHONE_TIME_KEY);
+                                out = new BlockLog.Writer(file, names, time >= 0 ? time : names.indexOf(TelemetryProtocol.TIMESTAMP_KEY));
+                                blockStarted = System.currentTimeMillis();
+                            }
+                            int needed = row.columns == null ? row.values.length : row.columns[row.columns.length - 1] + 1;
+                            if (needed > out.getColumnCount()) {
+                                // The layout changed mid-session: a new schema segment, same file
+                                List<String> names = columns;
+                                out.addColumns(names.subList(out.getColumnCount(), needed));
+                                blockStarted = System.currentTimeMillis();
+                            }
+                            // Writes a block every BlockLog.BLOCK_ROWS rows of a stream
+                            if (row.columns == null) {
+                                out.append(row.values);
+                            } else {
+                                Integer stream = streams.get(row.columns);
+                                if (stream == null) {
+                                    stream = out.addStream(row.columns);
+                                    streams.put(row.columns, stream);
+                                }
+                                out.append(stream, row.values);
+                            }
+                            writtenRows.incrementAndGet();
+                        }
+                        batch.clear();
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (out != null && out.getBufferedRows() == 0) {
+                        blockStarted = now;
+                    } else if (out != null && now - blockStarted >= BLOCK_INTERVAL_MS) {
+                        out.flushBlock();
+                        blockStarted = now;
+                    }
+                    if (out != null) {
+                        flushes.set(out.getBlockCount());
+                        rawBytes = out.getRawBytes();
+                        writtenBytes = out.getWrittenBytes();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close(); // Last block and the block index
+                        flushes.set(out.getBlockCount());
+                        rawBytes = out.getRawBytes();
+                        writtenBytes = out.getWrittenBytes();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            long endMillis = System.currentTimeMillis();
+            if (!file.exists()) return; // Not a single row
+
+            // Session is complete: record it for usage history. The columnar copy is only built
+            // once the session is plotted (openColumnar)
+            index.add(new SessionIndex.Session(file.getName(), startMillis, endMillis, writtenRows.get(), file.length()));
+        }
+
+        // A queued row; columns null for a row of every column
+        private static class Row {
+            final int[] columns;
+            final double[] values;
+
+            Row(int[] columns, double[] values) {
+                this.columns = columns;
+                this.values = values;
+            }
+        }
+    }
+}
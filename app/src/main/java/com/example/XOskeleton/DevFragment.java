@@ -2,13 +2,17 @@ package com.example.XOskeleton;
 
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.PopupMenu;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.ToggleButton;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -24,14 +28,17 @@ import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.github.mikephil.charting.formatter.ValueFormatter;
 import com.github.mikephil.charting.interfaces.datasets.ILineDataSet;
-import org.json.JSONObject;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class DevFragment extends Fragment {
 
@@ -52,12 +59,38 @@ public class DevFragment extends Fragment {
     private final List<String> offlineHeaders = new ArrayList<>();
 
     private final List<DevPropertyAdapter.PropertyItem> currentProps = new ArrayList<>();
+    // Full keys ("right(1).Position", "left.right(1).Position"), so plots of different motors or devices overlay
     private final List<String> activeLeftPlots = new ArrayList<>();
     private final List<String> activeRightPlots = new ArrayList<>();
+    // The plotted properties of the selected motor, by short name, for the property list
+    private final List<String> shownLeftPlots = new ArrayList<>();
+    private final List<String> shownRightPlots = new ArrayList<>();
 
     private long startTime = 0;
     private float currentX = 0f;
 
+    // Newest values of each channel group, for the motor and property lists
+    private final ChannelState channelState = new ChannelState();
+    private static final long STALE_MILLIS = 2000;
+    private final Map<String, DevPropertyAdapter.PropertyItem> latestProps = new TreeMap<>();
+
+    // Offline plots keep a level-of-detail pyramid and re-query it as the user zooms/drags
+    private final Map<String, MinMaxPyramid> offlinePyramids = new HashMap<>();
+    private float[] lodX = new float[0];
+    private float[] lodY = new float[0];
+
+    // Live plots: ring-backed data set and schema slot of each active property
+    private static final int LIVE_POINTS = 2048;
+    private LiveLineDataSet[] plotSets = new LiveLineDataSet[0];
+    private int[] plotSlots = new int[0];
+
+    // Latency overlay; chart draw latency is measured from the oldest sample of the last batch
+    private static final long METRICS_REFRESH_MS = 1000;
+    private TextView textMetrics;
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final StringBuilder metricsText = new StringBuilder(512);
+    private long pendingDrawNanos = 0;
+
     private final int[] COLORS = {
             Color.parseColor("#F44336"), Color.parseColor("#2196F3"),
             Color.parseColor("#4CAF50"), Color.parseColor("#FFC107"),
@@ -77,6 +110,7 @@ public class DevFragment extends Fragment {
 
         viewModel = new ViewModelProvider(requireActivity()).get(ExoViewModel.class);
         chart = view.findViewById(R.id.devChart);
+        textMetrics = view.findViewById(R.id.textMetrics);
         setupChart();
 
         RecyclerView recycler = view.findViewById(R.id.recyclerProperties);
@@ -102,7 +136,9 @@ public class DevFragment extends Fragment {
                     String newKey = availableMotors.get(position);
                     if (!newKey.equals(selectedMotorKey)) {
                         selectedMotorKey = newKey;
-                        wipeScreen();
+                        // Keep what is plotted; only the property list follows the spinner
+                        currentProps.clear();
+                        updatePropertyList();
                         if (!isLive) updateOfflinePropertyList();
                     }
                 }
@@ -121,8 +157,7 @@ public class DevFragment extends Fragment {
                 if (position >= 0 && position < availableFiles.size()) {
                     selectedFileName = availableFiles.get(position);
                     wipeScreen();
-                    startTime = viewModel.getFileStartTime(selectedFileName); // Fix 5:30 AM
-                    loadOfflineFileHeaders(selectedFileName);
+                    viewModel.loadOfflineFile(selectedFileName); // Headers arrive through offlineFile
                 }
             }
             @Override public void onNothingSelected(AdapterView<?> parent) {}
@@ -134,6 +169,7 @@ public class DevFragment extends Fragment {
             isLive = isChecked;
             layoutFileSelector.setVisibility(isLive ? View.GONE : View.VISIBLE);
             wipeScreen();
+            channelState.clear();
             availableMotors.clear();
             motorSpinnerAdapter.notifyDataSetChanged();
             if (!isLive) {
@@ -143,23 +179,34 @@ public class DevFragment extends Fragment {
             }
         });
 
-        viewModel.liveDataPacket.observe(getViewLifecycleOwner(), this::processLivePacket);
+        viewModel.liveSamples.observe(getViewLifecycleOwner(), this::processLiveBatch);
+        viewModel.offlineFile.observe(getViewLifecycleOwner(), file -> {
+            if (isLive || !file.fileName.equals(selectedFileName)) return; // A file picked before this one
+            startTime = file.startTime; // Fix 5:30 AM
+            loadOfflineFileHeaders(file.headers);
+        });
     }
 
-    private void processLivePacket(JSONObject json) {
-        if (!isLive) return;
+    @Override
+    public void onDestroyView() {
+        metricsHandler.removeCallbacks(refreshMetrics);
+        super.onDestroyView();
+    }
 
-        long now = System.currentTimeMillis();
-        if (startTime == 0) startTime = now;
-        currentX = (now - startTime) / 1000f;
+    private void processLiveBatch(TelemetryDispatcher.Batch batch) {
+        if (!isLive) return;
 
+        // Motor list and property values only need the newest values of each layout (channel group)
         boolean listChanged = false;
-        Iterator<String> keys = json.keys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            if (json.optJSONObject(key) != null && !availableMotors.contains(key)) {
-                availableMotors.add(key);
-                listChanged = true;
+        for (int i = 0; i < batch.size(); i++) {
+            if (!channelState.update(batch.get(i), batch.getSampleMillis(i))) continue;
+            TelemetrySchema schema = batch.get(i).getSchema();
+            for (int slot = 0; slot < schema.size(); slot++) {
+                String[] segments = schema.getSegments(slot);
+                if (segments.length > 1 && !availableMotors.contains(segments[0])) {
+                    availableMotors.add(segments[0]);
+                    listChanged = true;
+                }
             }
         }
         if (listChanged) {
@@ -170,49 +217,98 @@ public class DevFragment extends Fragment {
                 selectedMotorKey = availableMotors.get(0);
             }
         }
+        if (selectedMotorKey == null) return;
 
-        if (selectedMotorKey != null) {
-            JSONObject motorData = json.optJSONObject(selectedMotorKey);
-            if (motorData != null) {
-                currentProps.clear();
-                Iterator<String> propKeys = motorData.keys();
-                while (propKeys.hasNext()) {
-                    String key = propKeys.next();
-                    String val = String.valueOf(motorData.opt(key));
-                    currentProps.add(new DevPropertyAdapter.PropertyItem(key, val));
-
-                    double doubleVal = motorData.optDouble(key, Double.NaN);
-                    if (!Double.isNaN(doubleVal)) {
-                        updateLiveChart(key, doubleVal);
-                    }
-                }
-                currentProps.sort((p1, p2) -> p1.name.compareTo(p2.name));
-                adapter.updateData(currentProps, activeLeftPlots, activeRightPlots);
+        // Oldest layout first, so a key several groups have shows its newest value
+        latestProps.clear();
+        long now = channelState.getSampleMillis(0);
+        for (int i = channelState.size() - 1; i >= 0; i--) {
+            TelemetrySample sample = channelState.get(i);
+            TelemetrySchema schema = sample.getSchema();
+            long age = now - channelState.getSampleMillis(i);
+            for (int slot = 0; slot < schema.size(); slot++) {
+                String[] segments = schema.getSegments(slot);
+                if (segments.length < 2 || !segments[0].equals(selectedMotorKey)) continue;
+                String key = schema.getKey(slot).substring(selectedMotorKey.length() + 1);
+                String value = sample.formatValue(slot);
+                if (age > STALE_MILLIS) value += String.format(Locale.US, " (%.0f s ago)", age / 1000.0);
+                latestProps.put(key, new DevPropertyAdapter.PropertyItem(key, value));
+            }
+        }
+        if (!latestProps.isEmpty()) {
+            currentProps.clear();
+            currentProps.addAll(latestProps.values()); // Sorted by name
+            updatePropertyList();
+        }
+
+        // The chart gets every sample of the frame, stamped with its time on the synchronized clock
+        int plots = activeLeftPlots.size() + activeRightPlots.size();
+        if (plots == 0) return;
+        resolvePlotSets();
+        TelemetrySchema plotSchema = null;
+        for (int i = 0; i < batch.size(); i++) {
+            TelemetrySample sample = batch.get(i);
+            if (sample.getSchema() != plotSchema) {
+                plotSchema = sample.getSchema();
+                resolvePlotSlots(plotSchema);
             }
+            if (pendingDrawNanos == 0) pendingDrawNanos = batch.getReceivedNanos(i);
+            long sampleMillis = batch.getSampleMillis(i);
+            if (startTime == 0) startTime = sampleMillis;
+            currentX = (sampleMillis - startTime) / 1000f;
+            for (int p = 0; p < plots; p++) {
+                if (plotSlots[p] < 0) continue;
+                double value = sample.get(plotSlots[p]);
+                if (!Double.isNaN(value)) plotSets[p].append(currentX, (float) value);
+            }
+        }
+        refreshLiveChart();
+    }
+
+    // Left plots first, then right, in the same order as plotSlots
+    private void resolvePlotSets() {
+        int count = activeLeftPlots.size() + activeRightPlots.size();
+        if (plotSets.length < count) plotSets = new LiveLineDataSet[count];
+        for (int p = 0; p < activeLeftPlots.size(); p++) {
+            plotSets[p] = getLiveDataSet(activeLeftPlots.get(p), true);
+        }
+        for (int p = 0; p < activeRightPlots.size(); p++) {
+            plotSets[activeLeftPlots.size() + p] = getLiveDataSet(activeRightPlots.get(p), false);
         }
     }
 
-    private void updateLiveChart(String propertyName, double value) {
-        boolean isLeft = activeLeftPlots.contains(propertyName);
-        boolean isRight = activeRightPlots.contains(propertyName);
-        if (!isLeft && !isRight) return;
+    // -1 where the property is not in this layout
+    private void resolvePlotSlots(TelemetrySchema schema) {
+        int count = activeLeftPlots.size() + activeRightPlots.size();
+        if (plotSlots.length < count) plotSlots = new int[count];
+        for (int p = 0; p < activeLeftPlots.size(); p++) {
+            plotSlots[p] = schema.indexOf(activeLeftPlots.get(p));
+        }
+        for (int p = 0; p < activeRightPlots.size(); p++) {
+            plotSlots[activeLeftPlots.size() + p] = schema.indexOf(activeRightPlots.get(p));
+        }
+    }
 
+    private LiveLineDataSet getLiveDataSet(String plotKey, boolean isLeft) {
         LineData data = chart.getData();
         if (data == null) { data = new LineData(); chart.setData(data); }
 
-        ILineDataSet set = data.getDataSetByLabel(propertyName, false);
-        if (set == null) {
-            set = createDataSet(propertyName, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
-            data.addDataSet(set);
-        }
+        ILineDataSet existing = data.getDataSetByLabel(plotKey, false);
+        if (existing instanceof LiveLineDataSet) return (LiveLineDataSet) existing;
+        if (existing != null) data.removeDataSet(existing);
+
+        LiveLineDataSet set = new LiveLineDataSet(plotKey, LIVE_POINTS);
+        styleDataSet(set, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
+        data.addDataSet(set);
 
         if (isLeft) chart.getAxisLeft().setTextColor(set.getColor());
         else chart.getAxisRight().setTextColor(set.getColor());
+        return set;
+    }
 
-        data.addEntry(new Entry(currentX, (float) value), data.getIndexOfDataSet((LineDataSet) set));
-        if (set.getEntryCount() > 100) ((LineDataSet) set).removeFirst();
-
-        data.notifyDataChanged();
+    // Once per frame, however many samples arrived: one min/max pass over O(1) series ranges
+    private void refreshLiveChart() {
+        chart.getData().notifyDataChanged();
         chart.notifyDataSetChanged();
 
         // --- ZOOM LIMITS (X & Y) ---
@@ -224,9 +320,33 @@ public class DevFragment extends Fragment {
         chart.moveViewToX(currentX);
     }
 
+    // --- METRICS OVERLAY ---
+    private void toggleMetrics() {
+        boolean show = textMetrics.getVisibility() != View.VISIBLE;
+        textMetrics.setVisibility(show ? View.VISIBLE : View.GONE);
+        metricsHandler.removeCallbacks(refreshMetrics);
+        if (show) refreshMetrics.run();
+    }
+
+    private final Runnable refreshMetrics = new Runnable() {
+        @Override
+        public void run() {
+            metricsText.setLength(0);
+            viewModel.getMetrics().appendSummary(metricsText);
+            metricsText.append("\nui dropped ").append(viewModel.liveSamples.getDroppedCount())
+                    .append("  log dropped ").append(viewModel.getDroppedLogRows());
+            CommandWriter commands = viewModel.getCommandWriter();
+            if (commands != null && commands.getLastRoundTripNanos() >= 0) {
+                metricsText.append(String.format(Locale.US, "\ncmd rtt %.1f ms (max %.1f)",
+                        commands.getLastRoundTripNanos() / 1e6, commands.getMaxRoundTripNanos() / 1e6));
+            }
+            textMetrics.setText(metricsText);
+            metricsHandler.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
+
     // --- OFFLINE LOGIC ---
-    private void loadOfflineFileHeaders(String fileName) {
-        List<String> headers = viewModel.getCsvHeaders(fileName);
+    private void loadOfflineFileHeaders(List<String> headers) {
         availableMotors.clear();
         offlineHeaders.clear();
         offlineHeaders.addAll(headers);
@@ -260,20 +380,23 @@ public class DevFragment extends Fragment {
             }
         }
         Collections.sort(currentProps, (p1, p2) -> p1.name.compareTo(p2.name));
-        adapter.updateData(currentProps, activeLeftPlots, activeRightPlots);
+        updatePropertyList();
     }
 
-    private void plotOfflineColumn(String shortPropertyName, boolean isLeft) {
-        if (selectedFileName == null || selectedMotorKey == null) return;
-        String fullKey = selectedMotorKey + "." + shortPropertyName;
+    private void plotOfflineColumn(String fullKey, boolean isLeft) {
+        if (selectedFileName == null) return;
+
+        MinMaxPyramid pyramid = viewModel.getColumnPyramid(selectedFileName, fullKey);
+        if (pyramid == null || pyramid.size() == 0) return;
+        offlinePyramids.put(fullKey, pyramid);
 
-        List<Entry> entries = viewModel.getColumnData(selectedFileName, fullKey);
-        if (entries.isEmpty()) return;
+        // Start with the whole session at screen resolution; zooming fetches more detail
+        List<Entry> entries = queryLod(pyramid, pyramid.getMinX(), pyramid.getMaxX());
 
         LineData data = chart.getData();
         if (data == null) { data = new LineData(); chart.setData(data); }
 
-        LineDataSet set = createDataSet(shortPropertyName, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
+        LineDataSet set = createDataSet(fullKey, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
         set.setValues(entries);
         set.setDrawCircles(false);
         data.addDataSet(set);
@@ -290,9 +413,40 @@ public class DevFragment extends Fragment {
         chart.setVisibleYRangeMinimum(0.5f, YAxis.AxisDependency.LEFT);  // Limit Left Y Zoom
         chart.setVisibleYRangeMinimum(0.5f, YAxis.AxisDependency.RIGHT); // Limit Right Y Zoom
 
+        // fitScreen() reset the zoom, so bring the other offline series back to full range too
+        refreshOfflineDetail();
+    }
+
+    // Swaps every offline series for the detail of what is currently on screen
+    private void refreshOfflineDetail() {
+        if (isLive || offlinePyramids.isEmpty() || chart.getData() == null) return;
+        float from = chart.getLowestVisibleX();
+        float to = chart.getHighestVisibleX();
+        for (Map.Entry<String, MinMaxPyramid> plot : offlinePyramids.entrySet()) {
+            ILineDataSet set = chart.getData().getDataSetByLabel(plot.getKey(), false);
+            if (set instanceof LineDataSet) {
+                ((LineDataSet) set).setValues(queryLod(plot.getValue(), from, to));
+            }
+        }
+        chart.getData().notifyDataChanged();
+        chart.notifyDataSetChanged();
         chart.invalidate();
     }
 
+    private List<Entry> queryLod(MinMaxPyramid pyramid, float from, float to) {
+        int maxPoints = (int) chart.getViewPortHandler().contentWidth();
+        if (maxPoints <= 0) maxPoints = 1000;
+        int capacity = MinMaxPyramid.capacityFor(maxPoints);
+        if (lodX.length < capacity) {
+            lodX = new float[capacity];
+            lodY = new float[capacity];
+        }
+        int count = pyramid.query(from, to, maxPoints, lodX, lodY);
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) entries.add(new Entry(lodX[i], lodY[i]));
+        return entries;
+    }
+
     // --- HELPERS ---
     private void wipeScreen() {
         activeLeftPlots.clear();
@@ -302,14 +456,36 @@ public class DevFragment extends Fragment {
         adapter.updateData(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
     }
 
+    // Property list rows are short names of the selected motor
+    private String plotKeyFor(String propertyName) {
+        return selectedMotorKey + "." + propertyName;
+    }
+
+    private void updatePropertyList() {
+        shownLeftPlots.clear();
+        shownRightPlots.clear();
+        if (selectedMotorKey != null) {
+            String prefix = selectedMotorKey + ".";
+            for (String key : activeLeftPlots) {
+                if (key.startsWith(prefix)) shownLeftPlots.add(key.substring(prefix.length()));
+            }
+            for (String key : activeRightPlots) {
+                if (key.startsWith(prefix)) shownRightPlots.add(key.substring(prefix.length()));
+            }
+        }
+        adapter.updateData(currentProps, shownLeftPlots, shownRightPlots);
+    }
+
     private void removePlot(String propertyName) {
-        activeLeftPlots.remove(propertyName);
-        activeRightPlots.remove(propertyName);
-        removeDataSet(propertyName);
-        adapter.updateData(currentProps, activeLeftPlots, activeRightPlots);
+        String plotKey = plotKeyFor(propertyName);
+        activeLeftPlots.remove(plotKey);
+        activeRightPlots.remove(plotKey);
+        removeDataSet(plotKey);
+        updatePropertyList();
     }
 
     private void showPlotMenu(View view, String propertyName) {
+        String plotKey = plotKeyFor(propertyName);
         PopupMenu popup = new PopupMenu(requireContext(), view);
         popup.getMenu().add(0, 1, 0, "Plot Left Axis");
         popup.getMenu().add(0, 2, 0, "Plot Right Axis");
@@ -317,20 +493,20 @@ public class DevFragment extends Fragment {
         popup.setOnMenuItemClickListener(item -> {
             boolean isLeft = (item.getItemId() == 1);
             if (isLeft) {
-                activeLeftPlots.add(propertyName);
-                activeRightPlots.remove(propertyName);
+                activeLeftPlots.add(plotKey);
+                activeRightPlots.remove(plotKey);
             } else {
-                activeRightPlots.add(propertyName);
-                activeLeftPlots.remove(propertyName);
+                activeRightPlots.add(plotKey);
+                activeLeftPlots.remove(plotKey);
             }
 
             if (isLive) {
-                refreshChartConfig(propertyName, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
+                refreshChartConfig(plotKey, isLeft ? YAxis.AxisDependency.LEFT : YAxis.AxisDependency.RIGHT);
             } else {
-                removeDataSet(propertyName);
-                plotOfflineColumn(propertyName, isLeft);
+                removeDataSet(plotKey);
+                plotOfflineColumn(plotKey, isLeft);
             }
-            adapter.updateData(currentProps, activeLeftPlots, activeRightPlots);
+            updatePropertyList();
             return true;
         });
         popup.show();
@@ -338,6 +514,11 @@ public class DevFragment extends Fragment {
 
     private LineDataSet createDataSet(String label, YAxis.AxisDependency axis) {
         LineDataSet set = new LineDataSet(null, label);
+        styleDataSet(set, axis);
+        return set;
+    }
+
+    private void styleDataSet(LineDataSet set, YAxis.AxisDependency axis) {
         set.setAxisDependency(axis);
         int color = COLORS[colorIndex % COLORS.length];
         set.setColor(color);
@@ -347,7 +528,6 @@ public class DevFragment extends Fragment {
         set.setDrawValues(false);
         set.setDrawCircles(false);
         colorIndex++;
-        return set;
     }
 
     private void refreshChartConfig(String label, YAxis.AxisDependency axis) {
@@ -364,6 +544,7 @@ public class DevFragment extends Fragment {
     }
 
     private void removeDataSet(String label) {
+        offlinePyramids.remove(label);
         if (chart.getData() != null) {
             ILineDataSet set = chart.getData().getDataSetByLabel(label, false);
             if (set != null) {
@@ -381,6 +562,22 @@ public class DevFragment extends Fragment {
         chart.setScaleEnabled(true);
         chart.setPinchZoom(true);
         chart.setBackgroundColor(Color.WHITE);
+        chart.setOnChartGestureListener(new OnChartGestureListener() {
+            @Override public void onChartScale(MotionEvent me, float scaleX, float scaleY) { refreshOfflineDetail(); }
+            @Override public void onChartTranslate(MotionEvent me, float dX, float dY) { refreshOfflineDetail(); }
+            @Override public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) { refreshOfflineDetail(); }
+            @Override public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture lastPerformedGesture) {}
+            @Override public void onChartLongPressed(MotionEvent me) { toggleMetrics(); }
+            @Override public void onChartDoubleTapped(MotionEvent me) {}
+            @Override public void onChartSingleTapped(MotionEvent me) {}
+            @Override public void onChartFling(MotionEvent me1, MotionEvent me2, float velocityX, float velocityY) {}
+        });
+
+        chart.getViewTreeObserver().addOnDrawListener(() -> {
+            if (pendingDrawNanos == 0) return;
+            viewModel.getChartDrawLatency().recordNanos(System.nanoTime() - pendingDrawNanos);
+            pendingDrawNanos = 0;
+        });
 
         XAxis xAxis = chart.getXAxis();
         xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
@@ -409,6 +606,7 @@ public class DevFragment extends Fragment {
         activeLeftPlots.clear();
         activeRightPlots.clear();
         colorIndex = 0;
+        offlinePyramids.clear();
         // startTime = 0; // Handled by File/Live logic
         if (chart.getData() != null) {
             chart.getData().clearValues();
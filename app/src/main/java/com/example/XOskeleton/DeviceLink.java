@@ -0,0 +1,374 @@
+package com.example.XOskeleton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One device of a session: its transport, a session thread that reads and reconnects, the
+ * command writer, its own log file and its own metrics.
+ *
+ * {@link TelemetryConnection} runs one link per device and all of them publish into the same
+ * {@link TelemetryDispatcher}, so the UI sees one stream ordered by arrival time. With more
+ * than one device every key is prefixed with the device label ("left.right(1).Position") and the
+ * log file carries the label too ("Log_20260101_120000_left.xlog"); a lone device keeps the
+ * plain keys and file names.
+ */
+public class DeviceLink {
+
+    // A link that cannot reconnect within this long is closed
+    public static final long MAX_OUTAGE_MS = 10 * 60 * 1000;
+
+    // Called from the link's session thread
+    interface Listener {
+        void onLinkUp(DeviceLink link);
+        void onLinkDown(DeviceLink link);
+        void onStatus(DeviceLink link, String message);
+        void onEnded(DeviceLink link);
+    }
+
+    private final String address;
+    private final String label; // null for a lone device
+    private final DataLogger logger;
+    private final TelemetryDispatcher liveSamples;
+    private final Listener listener;
+
+    private volatile Transport transport;
+    private volatile CommandWriter commandWriter;
+    private volatile boolean isRunning = false;        // A transport is up and being read
+    private volatile boolean closeRequested = false;
+    private final Object reconnectWait = new Object(); // close() cuts a backoff sleep short
+
+    // Pipeline latency of this device (UI stages shared with the session); written next to its log when the link ends
+    private final TelemetryMetrics metrics;
+    // This device's clock on the phone's; re-learned on every connection
+    private final ClockSync clock = new ClockSync();
+    // Credits for the device, granted as frames are handled and repeated while it is quiet
+    private final FlowControl flow = new FlowControl();
+    private volatile DataLogger.LogSession log;
+
+    // Receive-thread decoding (one reused sample record per connection, JSON or binary)
+    private TelemetryDecoder decoder;
+    private volatile FrameDecoder frameDecoder; // Created with the connection, read by the receive thread
+    private TelemetrySchema idSchema; // Where packet_id sits in the last schema seen (see packetIdOf)
+    private int idSlot = -1;
+    // Dynamic Logging (columns of every layout seen so far, plus phone_time)
+    private final LogColumns logColumns = new LogColumns();
+    // Decoder schema -> the same layout under "label.", one per channel group
+    private final Map<TelemetrySchema, TelemetrySchema> taggedSchemas = new IdentityHashMap<>();
+
+    DeviceLink(String address, String label, DataLogger logger, TelemetryDispatcher liveSamples,
+               TelemetryMetrics metrics, Listener listener) {
+        this.address = address;
+        this.label = label;
+        this.logger = logger;
+        this.liveSamples = liveSamples;
+        this.metrics = metrics;
+        this.listener = listener;
+        metrics.setClock(clock);
+    }
+
+    public String getAddress() { return address; }
+
+    public String getLabel() { return label; }
+
+    public TelemetryMetrics getMetrics() { return metrics; }
+
+    public ClockSync getClock() { return clock; }
+
+    // Round-trip stats of the current transport, null before the first one
+    public CommandWriter getCommandWriter() { return commandWriter; }
+
+    public long getDroppedLogRows() {
+        DataLogger.LogSession session = log;
+        return session != null ? session.getDroppedRows() : 0;
+    }
+
+    // Queued on this device's single writer; false if the link is down
+    public boolean send(String command) {
+        CommandWriter writer = commandWriter;
+        return writer != null && isRunning && writer.send(command);
+    }
+
+    void start() {
+        new Thread(this::runSession, "DeviceLink-" + (label != null ? label : address)).start();
+    }
+
+    // Ends the link: no further reconnects, the log is closed on the session thread
+    public void close() {
+        closeRequested = true;
+        isRunning = false;
+        closeTransport();
+        synchronized (reconnectWait) { reconnectWait.notifyAll(); }
+    }
+
+    // ==========================================
+    //           SESSION THREAD
+    // ==========================================
+    /**
+     * A dropped link is retried with jittered backoff and resumes into the same log; the
+     * outage is written to the log as a pair of gap rows. Only the first connect failing, an outage
+     * longer than MAX_OUTAGE_MS or close() end the link.
+     */
+    private void runSession() {
+        ReconnectBackoff backoff = new ReconnectBackoff();
+        long lostAt = 0;
+        double lostPhoneMillis = 0;
+        try {
+            while (!closeRequested) {
+                long attemptStart = System.nanoTime();
+                try {
+                    openTransport();
+                } catch (Exception e) {
+                    closeTransport();
+                    if (closeRequested) break;
+                    if (log == null) {
+                        listener.onStatus(this, "Connection Failed");
+                        return;
+                    }
+                    if (System.currentTimeMillis() - lostAt > MAX_OUTAGE_MS) {
+                        listener.onStatus(this, "Connection Lost");
+                        return;
+                    }
+                    long delay = backoff.nextDelayMillis();
+                    listener.onStatus(this, String.format(Locale.US, "Reconnecting in %.1f s (attempt %d)", delay / 1000.0, backoff.getAttempts()));
+                    sleepUnlessClosed(delay);
+                    continue;
+                }
+
+                if (log == null) {
+                    log = logger.startSession(label);
+                } else {
+                    // Same session: mark the hole in the log and account for it
+                    long resumedAt = System.currentTimeMillis();
+                    metrics.onReconnected(lostAt, resumedAt, System.nanoTime() - attemptStart);
+                    if (logColumns.hasColumns()) logGap(lostPhoneMillis, ClockSync.toWallMillis(System.nanoTime()));
+                }
+                backoff.reset();
+                isRunning = true;
+                listener.onLinkUp(this);
+                listener.onStatus(this, "Connected!");
+
+                readUntilLost();
+
+                isRunning = false;
+                closeTransport();
+                listener.onLinkDown(this);
+                if (closeRequested) break;
+                lostAt = System.currentTimeMillis();
+                lostPhoneMillis = ClockSync.toWallMillis(System.nanoTime());
+                listener.onStatus(this, "Connection Lost, reconnecting...");
+            }
+            listener.onStatus(this, "Disconnected");
+        } finally {
+            isRunning = false;
+            closeTransport();
+            endLog();
+            listener.onEnded(this);
+        }
+    }
+
+    private void openTransport() throws IOException {
+        Transport t = Transport.forAddress(address);
+        transport = t;
+        if (closeRequested) throw new IOException("Disconnected");
+        t.connect();
+        decoder = new TelemetryDecoder(); // The device resends its schema on every connection
+        FrameDecoder frames = new FrameDecoder();
+        frameDecoder = frames;
+        clock.reset(); // ...and may have rebooted with a different clock
+        flow.reset();
+        CommandWriter writer = new CommandWriter(t.getOutputStream(), e -> listener.onStatus(this, "Send Failed"));
+        writer.setTick(() -> regrantIfQuiet(writer), FlowControl.GRANT_INTERVAL_NS / 1_000_000);
+        writer.start();
+        commandWriter = writer;
+    }
+
+    // Command writer thread: the receive thread sits in a blocking read while the device sends
+    // nothing, so a device out of credit because a grant was lost gets it again from here
+    private void regrantIfQuiet(CommandWriter writer) {
+        if (flow.onQuiet(System.nanoTime())) {
+            writer.sendCredits(flow.getPacketId(), flow.getWindow());
+        }
+    }
+
+    private void closeTransport() {
+        CommandWriter writer = commandWriter;
+        if (writer != null) writer.close();
+        Transport t = transport;
+        try { if (t != null) t.close(); } catch (IOException ignored) {}
+    }
+
+    private void sleepUnlessClosed(long millis) {
+        long until = System.currentTimeMillis() + millis;
+        synchronized (reconnectWait) {
+            long left;
+            while (!closeRequested && (left = until - System.currentTimeMillis()) > 0) {
+                try {
+                    reconnectWait.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void endLog() {
+        DataLogger.LogSession session = log;
+        if (session == null) return;
+        try {
+            metrics.exportJson(TelemetryMetrics.sidecarFor(session.getFile()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        session.close(); // Flushes buffered rows on the logger's own thread
+    }
+
+    // ==========================================
+    //           READING
+    // ==========================================
+    // Returns when the link drops or close() closes the transport
+    private void readUntilLost() {
+        FrameDecoder frameDecoder = this.frameDecoder;
+        CommandWriter writer = commandWriter;
+        FrameDecoder.FrameListener onFrame = (buffer, offset, length) -> {
+            // Commands and pings go out in whichever framing the device streams with
+            writer.setFramingVersion(frameDecoder.getVersion());
+            handleFrame(buffer, offset, length);
+        };
+        metrics.setFrameDecoder(frameDecoder);
+        metrics.setTelemetryDecoder(decoder);
+        try {
+            InputStream inputStream = transport.getInputStream();
+            while (isRunning) {
+                if (frameDecoder.readFrom(inputStream, onFrame) == -1) break;
+            }
+        } catch (IOException ignored) {
+            // Lost link; runSession decides whether to reconnect
+        }
+    }
+
+    private void handleFrame(byte[] buffer, int offset, int length) {
+        long readNanos = System.nanoTime();
+        long readMillis = System.currentTimeMillis();
+        if (length > 0 && buffer[offset] == TelemetryProtocol.TYPE_TIME_PONG) {
+            clock.onPong(buffer, offset, length, readNanos);
+            return;
+        }
+        if (clock.isPingDue(readNanos)) commandWriter.sendTimePing();
+
+        // Control frames (e.g. binary schema) yield no sample, a batch frame several: one
+        // at a time, in the decoder's reused record
+        long packetId = -1;
+        long parseStart = readNanos;
+        for (TelemetrySample sample = decode(buffer, offset, length); sample != null; sample = decodeNext()) {
+            metrics.parse.recordNanos(System.nanoTime() - parseStart);
+            onSample(sample, readNanos, readMillis);
+            long id = packetIdOf(sample);
+            if (id >= 0) packetId = id;
+            parseStart = System.nanoTime();
+        }
+
+        // Off the link, decodable or not: let the device send more, as far as the queues behind us have room
+        DataLogger.LogSession session = log;
+        double fill = Math.max(liveSamples.getFill(), session != null ? session.getQueueFill() : 0);
+        if (flow.onFrame(readNanos, fill, packetId)) commandWriter.sendCredits(flow.getPacketId(), flow.getWindow());
+    }
+
+    // decoder.decode(), or null for a frame it cannot make sense of (counted in the metrics)
+    private TelemetrySample decode(byte[] buffer, int offset, int length) {
+        try {
+            return decoder.decode(buffer, offset, length);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            metrics.onDecodeError();
+            return null;
+        }
+    }
+
+    // decoder.next(), the same way; the rest of a batch that breaks off is lost
+    private TelemetrySample decodeNext() {
+        try {
+            return decoder.next();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            metrics.onDecodeError();
+            return null;
+        }
+    }
+
+    // The device's packet_id, which grants are counted in; -1 if the sample has none
+    private long packetIdOf(TelemetrySample sample) {
+        if (sample.getSchema() != idSchema) {
+            idSchema = sample.getSchema();
+            idSlot = idSchema.indexOf(TelemetryProtocol.PACKET_ID_KEY);
+        }
+        double id = idSlot >= 0 ? sample.get(idSlot) : Double.NaN;
+        return id >= 0 ? (long) id : -1;
+    }
+
+    private void onSample(TelemetrySample sample, long readNanos, long readMillis) {
+        long sampleNanos = clock.samplePhoneNanos(sample, readNanos);
+        metrics.onSample(sample, readMillis, clock.isSynced() ? readNanos - sampleNanos : -1);
+        commandWriter.onTelemetry(sample); // Picks up command acks echoed by the device
+        double sampleMillis = ClockSync.toWallMillis(sampleNanos);
+        liveSamples.publish(sample, tagged(sample.getSchema()), (long) sampleMillis, readNanos);
+
+        // We don't parse voltage/current here anymore (Stats are Uptime only)
+        // Just log it
+        long logStart = System.nanoTime();
+        List<String> columns = logColumns.update(sample);
+        if (columns != null) log.setColumns(columns);
+        log.save(logColumns.getStreamColumns(), logColumns.row(sample, sampleMillis));
+        metrics.logEnqueue.recordNanos(System.nanoTime() - logStart);
+    }
+
+    // Both ends of an outage on the phone clock, like phone_time; see LogColumns.gapRow
+    private void logGap(double lostMillis, double resumedMillis) {
+        List<String> columns = logColumns.updateGap();
+        if (columns != null) log.setColumns(columns);
+        int[] gapColumns = logColumns.getGapColumns();
+        log.save(gapColumns, logColumns.gapRow(lostMillis, resumedMillis - lostMillis));
+        log.save(gapColumns, logColumns.gapRow(resumedMillis, resumedMillis - lostMillis));
+    }
+
+    private TelemetrySchema tagged(TelemetrySchema schema) {
+        if (label == null) return schema;
+        TelemetrySchema tagged = taggedSchemas.get(schema);
+        if (tagged == null) {
+            // Groups take turns, so a handful of layouts; a device that keeps changing its layout starts it over
+            if (taggedSchemas.size() >= 16) taggedSchemas.clear();
+            tagged = schema.withPrefix(label);
+            taggedSchemas.put(schema, tagged);
+        }
+        return tagged;
+    }
+
+    // ==========================================
+    //           LABELS
+    // ==========================================
+    /**
+     * Key and file-name label for each device: null for a lone device, otherwise its name
+     * reduced to [A-Za-z0-9_-] (no dots, they separate key segments) and made unique.
+     */
+    static String[] labelsFor(List<String> names, int count) {
+        String[] labels = new String[count];
+        if (count < 2) return labels;
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String name = names != null && i < names.size() && names.get(i) != null ? names.get(i) : "";
+            String label = name.trim().replaceAll("[^A-Za-z0-9_-]+", "_");
+            if (label.isEmpty() || label.equals("_")) label = "dev" + (i + 1);
+            if (!used.add(label)) {
+                label = label + "_" + (i + 1);
+                used.add(label);
+            }
+            labels[i] = label;
+        }
+        return labels;
+    }
+}
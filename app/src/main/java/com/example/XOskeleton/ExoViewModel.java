@@ -1,130 +1,83 @@
 package com.example.XOskeleton;
 
-import android.annotation.SuppressLint;
 import android.app.Application;
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.github.mikephil.charting.data.BarEntry; // Required for Stats Chart
 import com.github.mikephil.charting.data.Entry;    // Required for Dev Chart
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Method;
-import java.nio.charset.StandardCharsets;
+import java.nio.DoubleBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.TreeMap;
 
 public class ExoViewModel extends AndroidViewModel {
 
+    // The connection itself lives in TelemetryConnection, kept alive by TelemetryService,
+    // so it outlives this ViewModel (rotation, backgrounding, the Activity being destroyed)
+    private final TelemetryConnection connection;
+
     // --- Live Connection Data ---
-    public final MutableLiveData<String> statusMessage = new MutableLiveData<>();
-    public final MutableLiveData<Boolean> isConnected = new MutableLiveData<>(false);
-    public final MutableLiveData<JSONObject> liveDataPacket = new MutableLiveData<>();
+    public final LiveData<String> statusMessage;
+    public final LiveData<Boolean> isConnected;
+    // Live samples reach the UI once per display frame, in batches (see TelemetryDispatcher)
+    public final TelemetryDispatcher liveSamples;
 
     // --- NEW: STATS (Uptime & History) ---
-    public final MutableLiveData<String> liveUptime = new MutableLiveData<>("00:00:00");
+    public final LiveData<String> liveUptime;
     public final MutableLiveData<List<BarEntry>> historyEntries = new MutableLiveData<>();
     public final MutableLiveData<List<String>> historyLabels = new MutableLiveData<>();
 
-    private BluetoothSocket socket;
-    private volatile boolean isRunning = false;
     private final DataLogger logger;
 
-    // Timer for Live Uptime
-    private Timer uptimeTimer;
-    private long connectionStartTime = 0;
+    // Offline file picked in the Dev tab, posted once its sidecar is ready (see loadOfflineFile)
+    public static class OfflineFile {
+        public final String fileName;
+        public final List<String> headers;
+        public final long startTime;
 
-    // Dynamic Logging Variables
-    private List<String> csvHeaders = null;
-    private final StringBuilder csvBuilder = new StringBuilder();
+        OfflineFile(String fileName, List<String> headers, long startTime) {
+            this.fileName = fileName;
+            this.headers = headers;
+            this.startTime = startTime;
+        }
+    }
+    public final MutableLiveData<OfflineFile> offlineFile = new MutableLiveData<>();
+
+    // Offline plotting: pyramids for the file currently open in the Dev tab
+    private final Map<String, MinMaxPyramid> pyramidCache = new HashMap<>();
+    private String pyramidCacheFile = null;
 
     public ExoViewModel(@NonNull Application application) {
         super(application);
-        logger = new DataLogger(application);
+        connection = TelemetryConnection.getInstance(application);
+        statusMessage = connection.statusMessage;
+        isConnected = connection.isConnected;
+        liveSamples = connection.liveSamples;
+        liveUptime = connection.liveUptime;
+        logger = connection.getDataLogger();
     }
 
-    @SuppressLint("MissingPermission")
-    public void connect(String macAddress) {
-        if (isRunning || macAddress == null) return;
-        statusMessage.setValue("Connecting...");
-        new Thread(() -> {
-            try {
-                BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(macAddress);
-                Method m = device.getClass().getMethod("createRfcommSocket", int.class);
-                socket = (BluetoothSocket) m.invoke(device, 1);
-                if (socket != null) {
-                    socket.connect();
-                    isRunning = true;
-                    isConnected.postValue(true);
-                    statusMessage.postValue("Connected!");
-
-                    // 1. START UPTIME TIMER
-                    startUptimeTimer();
-
-                    // 2. Start Logging
-                    csvHeaders = null;
-                    logger.createNewFile();
-                    startReadingLoop();
-                }
-            } catch (Exception e) {
-                disconnect();
-                statusMessage.postValue("Connection Failed");
-            }
-        }).start();
+    // Opens a session over every saved device (BluetoothPrefs); a no-op if that session is already open.
+    // Addresses are Bluetooth MACs, or "tcp://host:port" for a simulator (see Transport.forAddress)
+    public void connectSavedDevices() {
+        ArrayList<String> addresses = new ArrayList<>(BluetoothPrefs.getAddresses(getApplication()));
+        if (addresses.isEmpty() || connection.isStreamingFrom(addresses)) return;
+        TelemetryService.connect(getApplication(), addresses, new ArrayList<>(BluetoothPrefs.getNames(getApplication())));
     }
 
     public void disconnect() {
-        isRunning = false;
-        stopUptimeTimer(); // Stop the timer
-        try { if (socket != null) socket.close(); } catch (IOException ignored) {}
-        isConnected.postValue(false);
-        statusMessage.postValue("Disconnected");
-    }
-
-    // ==========================================
-    //           1. LIVE UPTIME LOGIC
-    // ==========================================
-    private void startUptimeTimer() {
-        connectionStartTime = System.currentTimeMillis();
-        uptimeTimer = new Timer();
-        uptimeTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                long millis = System.currentTimeMillis() - connectionStartTime;
-                long seconds = millis / 1000;
-                long h = seconds / 3600;
-                long m = (seconds % 3600) / 60;
-                long s = seconds % 60;
-                liveUptime.postValue(String.format(Locale.US, "%02d:%02d:%02d", h, m, s));
-            }
-        }, 0, 1000);
-    }
-
-    private void stopUptimeTimer() {
-        if (uptimeTimer != null) {
-            uptimeTimer.cancel();
-            uptimeTimer = null;
-        }
+        connection.disconnect(); // The service stops itself once the connection is closed
     }
 
     // ==========================================
@@ -132,13 +85,7 @@ public class ExoViewModel extends AndroidViewModel {
     // ==========================================
     // Mode: 0 = Daily (Last 7 Days), 1 = Hourly (Strictly Today)
     public void calculateUsageHistory(int mode) {
-        new Thread(() -> {
-            File dir = getApplication().getExternalFilesDir(null);
-            if (dir == null || dir.listFiles() == null) return;
-
-            Map<String, Float> groupedData = new HashMap<>();
-            SimpleDateFormat fileFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
-
+        logger.execute(() -> {
             SimpleDateFormat dayLabel = new SimpleDateFormat("MMM dd", Locale.US); // "Feb 10"
             SimpleDateFormat hourLabel = new SimpleDateFormat("HH:00", Locale.US); // "14:00"
 
@@ -161,213 +108,163 @@ public class ExoViewModel extends AndroidViewModel {
                 cutoff = cal.getTimeInMillis();
             }
 
-            for (File f : Objects.requireNonNull(dir.listFiles())) {
-                if (!f.getName().startsWith("Log_")) continue;
-
-                try {
-                    String datePart = f.getName().substring(4, 19);
-                    Date startDate = fileFormat.parse(datePart);
-                    if (startDate == null) continue;
-
-                    long start = startDate.getTime();
-
-                    // FILTER: If the file started before our cutoff, SKIP IT.
-                    if (start < cutoff) continue;
-
-                    long end = f.lastModified();
-                    float durationMinutes = (end - start) / 60000f;
-                    if (durationMinutes < 0.1) durationMinutes = 0.1f;
-
-                    String key;
-                    if (mode == 0) key = dayLabel.format(startDate);
-                    else key = hourLabel.format(startDate);
-
-                    float currentTotal = groupedData.getOrDefault(key, 0f);
-                    groupedData.put(key, currentTotal + durationMinutes);
-
-                } catch (Exception ignored) {}
+            // Finished sessions come from the index, so nothing is listed or parsed here
+            List<SessionIndex.Session> sessions = new ArrayList<>(logger.getSessionIndex().getSessions(cutoff, Long.MAX_VALUE));
+            long now = System.currentTimeMillis();
+            long connectionStartTime = connection.getConnectionStartTime();
+            if (connection.isActive() && connectionStartTime >= cutoff) { // Includes an ongoing reconnect
+                sessions.add(new SessionIndex.Session("", connectionStartTime, now, 0, 0));
+            }
+            sessions = SessionIndex.mergeOverlapping(sessions); // Devices logging side by side count once
+
+            // Bucket start -> minutes; TreeMap keeps buckets in time order across month boundaries
+            Map<Long, Float> groupedData = new TreeMap<>();
+            Calendar bucket = Calendar.getInstance();
+            for (SessionIndex.Session session : sessions) {
+                float durationMinutes = session.getDurationMillis() / 60000f;
+                if (durationMinutes < 0.1) durationMinutes = 0.1f;
+
+                bucket.setTimeInMillis(session.startMillis);
+                if (mode == 0) bucket.set(Calendar.HOUR_OF_DAY, 0);
+                bucket.set(Calendar.MINUTE, 0);
+                bucket.set(Calendar.SECOND, 0);
+                bucket.set(Calendar.MILLISECOND, 0);
+                long key = bucket.getTimeInMillis();
+
+                float currentTotal = groupedData.getOrDefault(key, 0f);
+                groupedData.put(key, currentTotal + durationMinutes);
             }
-
-            // Sort and Post
-            List<String> sortedKeys = new ArrayList<>(groupedData.keySet());
-            Collections.sort(sortedKeys);
 
             List<BarEntry> entries = new ArrayList<>();
             List<String> labels = new ArrayList<>();
 
-            for (int i = 0; i < sortedKeys.size(); i++) {
-                String key = sortedKeys.get(i);
-                entries.add(new BarEntry(i, groupedData.get(key)));
-                labels.add(key);
+            for (Map.Entry<Long, Float> e : groupedData.entrySet()) {
+                Date date = new Date(e.getKey());
+                entries.add(new BarEntry(entries.size(), e.getValue()));
+                labels.add(mode == 0 ? dayLabel.format(date) : hourLabel.format(date));
             }
 
             historyEntries.postValue(entries);
             historyLabels.postValue(labels);
-
-        }).start();
+        });
     }
 
     // ==========================================
-    //           3. COMMANDS & READING
+    //           3. COMMANDS & METRICS
     // ==========================================
-    public void sendCommand(String command) {
-        if (socket == null || !Boolean.TRUE.equals(isConnected.getValue())) {
-            statusMessage.postValue("Not Connected");
-            return;
-        }
-        new Thread(() -> {
-            try {
-                byte[] bytes = (command).getBytes(StandardCharsets.UTF_8);
-                socket.getOutputStream().write(bytes);
-                socket.getOutputStream().flush();
-            } catch (IOException e) {
-                statusMessage.postValue("Send Failed");
-            }
-        }).start();
-    }
+    // Queued on the connection's single writer; stale SET_POWER/SET_MODE values are replaced
+    public void sendCommand(String command) { connection.sendCommand(command); }
 
-    private void startReadingLoop() {
-        byte[] lengthHeader = new byte[2];
-        try {
-            InputStream inputStream = socket.getInputStream();
-            while (isRunning) {
-                if (readExactly(inputStream, lengthHeader, 2) == -1) break;
-                int payloadSize = ((lengthHeader[0] & 0xFF) << 8) | (lengthHeader[1] & 0xFF);
-                byte[] payload = new byte[payloadSize];
-                if (readExactly(inputStream, payload, payloadSize) == -1) break;
-
-                String jsonString = new String(payload, StandardCharsets.UTF_8);
-                try {
-                    JSONObject json = new JSONObject(jsonString);
-                    liveDataPacket.postValue(json);
-
-                    Map<String, String> flatMap = new HashMap<>();
-                    flatten(json, "", flatMap);
-
-                    // We don't parse voltage/current here anymore (Stats are Uptime only)
-                    // Just log it
-                    logDynamicJson(flatMap);
-
-                } catch (Exception ignored) {}
-            }
-        } catch (IOException e) {
-            statusMessage.postValue("Connection Lost");
-        } finally {
-            disconnect();
-        }
-    }
+    // Round-trip stats of the current connection, null before the first one
+    public CommandWriter getCommandWriter() { return connection.getCommandWriter(); }
 
-    // ==========================================
-    //           4. LOGGING & HELPERS
-    // ==========================================
-    private void logDynamicJson(Map<String, String> flatMap) {
-        if (csvHeaders == null) {
-            csvHeaders = new ArrayList<>(flatMap.keySet());
-            Collections.sort(csvHeaders);
-            logger.save(String.join(",", csvHeaders));
-        }
-        synchronized (csvBuilder) {
-            csvBuilder.setLength(0);
-            for (int i = 0; i < csvHeaders.size(); i++) {
-                String key = csvHeaders.get(i);
-                String value = flatMap.get(key);
-                csvBuilder.append(value != null ? value : "0");
-                if (i < csvHeaders.size() - 1) csvBuilder.append(",");
-            }
-            logger.save(csvBuilder.toString());
-        }
-    }
+    public TelemetryMetrics getMetrics() { return connection.getMetrics(); }
 
-    private void flatten(JSONObject json, String prefix, Map<String, String> out) throws JSONException {
-        Iterator<String> keys = json.keys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            Object value = json.get(key);
-            String newKey = prefix.isEmpty() ? key : prefix + "." + key;
-            if (value instanceof JSONObject) flatten((JSONObject) value, newKey, out);
-            else out.put(newKey, String.valueOf(value));
-        }
-    }
+    public LatencyHistogram getChartDrawLatency() { return connection.getChartDrawLatency(); }
 
-    private int readExactly(InputStream in, byte[] buffer, int numBytes) throws IOException {
-        int bytesRead = 0;
-        while (bytesRead < numBytes) {
-            int result = in.read(buffer, bytesRead, numBytes - bytesRead);
-            if (result == -1) return -1;
-            bytesRead += result;
-        }
-        return bytesRead;
-    }
+    public long getDroppedLogRows() { return connection.getDroppedLogRows(); }
 
     // ==========================================
-    //           5. FILE HELPERS (DevFragment)
+    //           4. FILE HELPERS (DevFragment)
     // ==========================================
     public List<String> getLogFiles() { return logger.getAllFiles(); }
 
-    public List<String> getCsvHeaders(String fileName) {
-        List<String[]> lines = logger.readFile(fileName);
-        if (!lines.isEmpty()) {
-            List<String> headers = new ArrayList<>();
-            Collections.addAll(headers, lines.get(0));
-            return headers;
-        }
-        return new ArrayList<>();
+    // Builds the file's columnar sidecar on the logger's thread, then posts its headers to offlineFile
+    public void loadOfflineFile(String fileName) {
+        logger.execute(() -> {
+            ColumnarLog log = logger.openColumnar(fileName);
+            List<String> headers = log != null ? new ArrayList<>(log.getColumnNames()) : new ArrayList<>();
+            offlineFile.postValue(new OfflineFile(fileName, headers, getFileStartTime(log)));
+        });
     }
 
     public List<Entry> getColumnData(String fileName, String columnName) {
         List<Entry> entries = new ArrayList<>();
-        List<String[]> lines = logger.readFile(fileName);
-        if (lines.size() < 2) return entries;
-
-        String[] headers = lines.get(0);
-        int colIndex = -1, timeIndex = -1;
-        for (int i = 0; i < headers.length; i++) {
-            if (headers[i].trim().equals(columnName)) colIndex = i;
-            if (headers[i].toLowerCase().contains("timestamp") || headers[i].equals("ts")) timeIndex = i;
-        }
-        if (colIndex == -1) return entries;
+        float[][] points = readColumnPoints(fileName, columnName);
+        if (points == null) return entries;
+        for (int i = 0; i < points[0].length; i++) entries.add(new Entry(points[0][i], points[1][i]));
+        return entries;
+    }
 
-        double startTime = 0;
-        for (int i = 1; i < lines.size(); i++) {
-            String[] row = lines.get(i);
-            if (row.length <= colIndex) continue;
-            try {
-                float y = Float.parseFloat(row[colIndex]);
-                float x = i;
-                if (timeIndex != -1 && row.length > timeIndex) {
-                    double ts = Double.parseDouble(row[timeIndex]);
-                    if (ts < 10000000000.0) ts *= 1000.0;
-                    if (startTime == 0) startTime = ts;
-                    x = (float) ((ts - startTime) / 1000.0);
-                }
-                entries.add(new Entry(x, y));
-            } catch (Exception ignored) {}
+    // Level-of-detail view of a column, built once per file/column and reused while zooming
+    public MinMaxPyramid getColumnPyramid(String fileName, String columnName) {
+        String key = fileName + "|" + columnName;
+        synchronized (pyramidCache) {
+            if (!fileName.equals(pyramidCacheFile)) {
+                pyramidCache.clear();
+                pyramidCacheFile = fileName;
+            }
+            MinMaxPyramid pyramid = pyramidCache.get(key);
+            if (pyramid == null) {
+                float[][] points = readColumnPoints(fileName, columnName);
+                if (points == null) return null;
+                pyramid = new MinMaxPyramid(points[0], points[1], points[0].length);
+                pyramidCache.put(key, pyramid);
+            }
+            return pyramid;
         }
-        return entries;
     }
 
-    public long getFileStartTime(String fileName) {
-        List<String[]> lines = logger.readFile(fileName);
-        if (lines.size() < 2) return 0;
-        String[] headers = lines.get(0);
-        int timeIndex = -1;
-        for (int i = 0; i < headers.length; i++) {
-            if (headers[i].toLowerCase().contains("timestamp") || headers[i].equals("ts")) {
-                timeIndex = i;
-                break;
+    // {x seconds since start (or row number), y} for every row with a value; null if nothing to plot
+    // or the file has not been loaded yet (loadOfflineFile)
+    private float[][] readColumnPoints(String fileName, String columnName) {
+        ColumnarLog log = logger.getOpenedColumnar(fileName);
+        if (log == null || log.getRowCount() == 0) return null;
+
+        DoubleBuffer column = log.getColumn(columnName.trim());
+        if (column == null) return null;
+        DoubleBuffer time = findTimeColumn(log);
+        double toMillis = timeColumnScale(log, time);
+
+        int rows = log.getRowCount();
+        float[] xs = new float[rows];
+        float[] ys = new float[rows];
+        int count = 0;
+        double startTime = 0;
+        for (int i = 0; i < rows; i++) {
+            double y = column.get(i);
+            if (Double.isNaN(y)) continue;
+            float x = i + 1;
+            if (time != null) {
+                double ts = time.get(i);
+                if (Double.isNaN(ts)) continue;
+                ts *= toMillis;
+                if (startTime == 0) startTime = ts;
+                x = (float) ((ts - startTime) / 1000.0);
             }
+            xs[count] = x;
+            ys[count] = (float) y;
+            count++;
         }
-        if (timeIndex != -1) {
-            try {
-                String val = lines.get(1)[timeIndex];
-                double ts = Double.parseDouble(val);
-                if (ts < 10000000000.0) ts *= 1000.0;
-                return (long) ts;
-            } catch (Exception e) { return 0; }
+        if (count == 0) return null;
+        return new float[][]{Arrays.copyOf(xs, count), Arrays.copyOf(ys, count)};
+    }
+
+    private long getFileStartTime(ColumnarLog log) {
+        if (log == null || log.getRowCount() == 0) return 0;
+        DoubleBuffer time = findTimeColumn(log);
+        if (time == null) return 0;
+        double ts = time.get(0);
+        if (Double.isNaN(ts)) return 0;
+        return (long) (ts * timeColumnScale(log, time));
+    }
+
+    // The app's own phone_time column (synchronized clock, millis) if the log has one, else the device's timestamp
+    private DoubleBuffer findTimeColumn(ColumnarLog log) {
+        DoubleBuffer phoneTime = log.getColumn(TelemetryProtocol.PHONE_TIME_KEY);
+        if (phoneTime != null) return phoneTime;
+        List<String> headers = log.getColumnNames();
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.get(i).toLowerCase().contains("timestamp") || headers.get(i).equals("ts")) return log.getColumn(i);
         }
-        return 0;
+        return null;
     }
 
-    @Override
-    protected void onCleared() { super.onCleared(); disconnect(); }
+    // Multiplier to millis: phone_time already is; device timestamps of older logs are guessed from their size
+    private double timeColumnScale(ColumnarLog log, DoubleBuffer time) {
+        if (time == null || log.getColumnNames().contains(TelemetryProtocol.PHONE_TIME_KEY)) return 1.0;
+        double first = Double.NaN;
+        for (int i = 0; i < log.getRowCount() && Double.isNaN(first); i++) first = time.get(i);
+        return first < 10000000000.0 ? 1000.0 : 1.0;
+    }
 }
\ No newline at end of file
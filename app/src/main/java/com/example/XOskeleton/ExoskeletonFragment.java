@@ -22,6 +22,7 @@ import com.google.android.material.slider.Slider;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 
@@ -31,6 +32,9 @@ public class ExoskeletonFragment extends Fragment {
 
     // UI References
     private LinearLayout jsonContainer;
+    private JsonUiRenderer jsonRenderer;
+    private final TelemetrySchema[] renderedSchemas = new TelemetrySchema[8]; // Scratch, per frame
+    private final int[] renderedSamples = new int[8];
     private View layoutDisconnected; // The "Add Device" container
     private Button btnChangeDevice, btnReload;
     private TextView statusText;
@@ -69,6 +73,7 @@ public class ExoskeletonFragment extends Fragment {
         // 1. Bind Views
         statusText = view.findViewById(R.id.statusText);
         jsonContainer = view.findViewById(R.id.jsonContainer);
+        jsonRenderer = new JsonUiRenderer(requireContext(), jsonContainer);
         layoutDisconnected = view.findViewById(R.id.layoutDisconnected);
         btnChangeDevice = view.findViewById(R.id.btnChangeDevice);
         btnReload = view.findViewById(R.id.btnReload);
@@ -160,9 +165,21 @@ public class ExoskeletonFragment extends Fragment {
         });
 
         // 4. Live Data Observer
-        viewModel.liveDataPacket.observe(getViewLifecycleOwner(), json -> {
-            JsonUiRenderer.render(requireContext(), json, jsonContainer);
-            String ts = DateFormat.getTimeInstance().format(new Date());
+        viewModel.liveSamples.observe(getViewLifecycleOwner(), batch -> {
+            // Only the newest sample of each layout (one per device or channel group) is worth laying out
+            int rendered = 0;
+            for (int i = batch.size() - 1; i >= 0 && rendered < renderedSchemas.length; i--) {
+                TelemetrySchema schema = batch.get(i).getSchema();
+                boolean seen = false;
+                for (int r = 0; r < rendered && !seen; r++) seen = renderedSchemas[r] == schema;
+                if (seen) continue;
+                renderedSchemas[rendered] = schema;
+                renderedSamples[rendered++] = i;
+            }
+            // Oldest first: keys every group has (timestamp) end up showing the newest value
+            for (int r = rendered - 1; r >= 0; r--) jsonRenderer.render(batch.get(renderedSamples[r]));
+            Arrays.fill(renderedSchemas, 0, rendered, null);
+            String ts = DateFormat.getTimeInstance().format(new Date(batch.getSampleMillis(batch.size() - 1)));
             if(Boolean.TRUE.equals(viewModel.isConnected.getValue())) {
                 statusText.setText("Active: " + ts);
             }
@@ -215,11 +232,13 @@ public class ExoskeletonFragment extends Fragment {
         });
 
         btnChangeDevice.setOnClickListener(v -> startActivity(new Intent(requireContext(), ScanActivity.class)));
-
-        btnReload.setOnClickListener(v -> {
-            String savedMac = BluetoothPrefs.getLastAddress(requireContext());
-            if (savedMac != null) viewModel.connect(savedMac);
+        // Long press: add another unit (e.g. the other limb's controller) instead of replacing
+        btnChangeDevice.setOnLongClickListener(v -> {
+            startActivity(new Intent(requireContext(), ScanActivity.class).putExtra(ScanActivity.EXTRA_ADD_DEVICE, true));
+            return true;
         });
+
+        btnReload.setOnClickListener(v -> viewModel.connectSavedDevices());
     }
 
     private void setupModeButtons() {
@@ -272,10 +291,8 @@ public class ExoskeletonFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        if (Boolean.FALSE.equals(viewModel.isConnected.getValue())) {
-            String savedMac = BluetoothPrefs.getLastAddress(requireContext());
-            if (savedMac != null) viewModel.connect(savedMac);
-        }
+        // Connects if needed, or moves the session over to a rig changed in ScanActivity
+        viewModel.connectSavedDevices();
     }
 
     private void setupGridItem(View view, String title, int iconRes) {
@@ -0,0 +1,83 @@
+package com.example.XOskeleton;
+
+/**
+ * Credit-based flow control, app side: how far ahead of the app the device may run.
+ *
+ * A grant ({@link TelemetryProtocol#TYPE_CREDIT}) says "I have handled your frames up to the
+ * one carrying packet_id N, have at most W beyond it in flight". N is the device's own
+ * counter, so frames lost on the way (corrupted, or skipped while resyncing) are covered by
+ * the next one that gets through: nothing is counted on this side, and no loss shrinks the
+ * window. It is cumulative, so a newer grant supersedes an older one and a lost one costs
+ * nothing. N only moves when the receive thread has handled a frame: if the receive thread
+ * stalls (GC, a slow write), the device runs dry after W frames instead of piling seconds of
+ * telemetry into the socket buffers. The live backlog, and with it the latency, stays
+ * within W frames.
+ *
+ * The device MUST keep alive: held back for a while (the simulator: KEEPALIVE_S, 0.5 s), it
+ * sends a frame anyway. If every frame in flight is lost, no grant can name a newer
+ * packet_id until one more frame gets through, and only the device can send it. The app
+ * repeats its last grant every GRANT_INTERVAL_NS while no frame arrives (onQuiet(), from the
+ * command writer's thread); that covers a lost grant, nothing more.
+ *
+ * W is WINDOW, shrunk as the queues behind the receive thread (log writer, UI ring) fill up,
+ * down to MIN_CREDITS. While held back the device does not send every sample: the next one
+ * it sends reports how many it skipped ({@link TelemetryProtocol#SKIPPED_KEY}).
+ *
+ * Frames without a packet_id (binary schemas) are covered by the next one with it.
+ * A device that never sees a grant (older app) is not flow-controlled at all.
+ */
+public class FlowControl {
+
+    public static final int WINDOW = 32;
+    public static final int MIN_CREDITS = 2;
+    // Grants are refreshed after half a window of frames, or this often at the least
+    static final long GRANT_INTERVAL_NS = 100_000_000L;
+
+    private long packetId = 0;
+    private long lastGrantNanos = 0;
+    private int lastWindow = 0;
+    private int framesSinceGrant = 0;
+
+    public synchronized void reset() {
+        packetId = 0;
+        lastGrantNanos = 0;
+        lastWindow = 0;
+        framesSinceGrant = 0;
+    }
+
+    /**
+     * Call after each telemetry frame is handled. queueFill: how full the fullest queue
+     * downstream is, 0..1; packetId: the last packet_id the frame carried, -1 for none.
+     * Returns true if a grant is due; it is then available from getPacketId()/getWindow().
+     */
+    public synchronized boolean onFrame(long nowNanos, double queueFill, long packetId) {
+        if (packetId >= 0) this.packetId = packetId;
+        framesSinceGrant++;
+        boolean due = lastWindow == 0 // Nothing granted yet
+                || framesSinceGrant >= lastWindow / 2
+                || nowNanos - lastGrantNanos >= GRANT_INTERVAL_NS;
+        if (!due) return false;
+
+        double free = 1 - Math.max(0, Math.min(1, queueFill));
+        lastWindow = Math.max(MIN_CREDITS, (int) (WINDOW * free));
+        lastGrantNanos = nowNanos;
+        framesSinceGrant = 0;
+        return true;
+    }
+
+    /**
+     * Call every so often while no frame may be arriving (from another thread: the receive
+     * thread is blocked reading). Returns true if nothing has been granted for
+     * GRANT_INTERVAL_NS; the last grant is then available from getPacketId()/getWindow() to
+     * send again.
+     */
+    public synchronized boolean onQuiet(long nowNanos) {
+        if (lastWindow == 0 || nowNanos - lastGrantNanos < GRANT_INTERVAL_NS) return false;
+        lastGrantNanos = nowNanos;
+        return true;
+    }
+
+    public synchronized long getPacketId() { return packetId; }
+
+    public synchronized int getWindow() { return lastWindow; }
+}
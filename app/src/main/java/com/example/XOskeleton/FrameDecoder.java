@@ -0,0 +1,252 @@
+package com.example.XOskeleton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Checksum;
+
+/**
+ * Reassembles frames (see sender/framing.py) out of one reusable buffer. Complete frames
+ * are handed to the listener as a view into that buffer, so nothing is allocated per packet.
+ *
+ * Two framings, told apart by the first byte of the stream:
+ *   v1  [u16 BE length][payload]
+ *       One lost or corrupted byte desyncs the stream for good.
+ *   v2  [0xA5 0x5A][0x02][u16 BE length][CRC-8 of the 3 bytes before][payload][u32 BE CRC32C]
+ *       The CRC32C covers everything after the sync marker. A frame that fails either check
+ *       is dropped and the decoder scans for the next sync marker from the byte after the
+ *       bad one, so the stream resyncs within the next intact frame. The header check
+ *       keeps a corrupted length from stalling the decoder while it waits for up to 64 KB;
+ *       a header that passes it by chance (1 in 256) is given up on after
+ *       PARTIAL_FRAME_TIMEOUT_NS, once more bytes arrive.
+ * A v1 stream never starts with 0xA5 (that would be a frame of over 42 KB).
+ */
+public class FrameDecoder {
+
+    public interface FrameListener {
+        // The view (buffer, offset, length) is only valid until this call returns.
+        void onFrame(byte[] buffer, int offset, int length);
+    }
+
+    public static final int HEADER_SIZE = 2;
+    public static final int MAX_PAYLOAD_SIZE = 65535;
+
+    public static final byte SYNC_0 = (byte) 0xA5;
+    public static final byte SYNC_1 = 0x5A;
+    public static final byte VERSION_2 = 2;
+    public static final int V2_HEADER_SIZE = 6;
+    public static final int V2_TRAILER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = V2_HEADER_SIZE + MAX_PAYLOAD_SIZE + V2_TRAILER_SIZE;
+    // A device writes a frame in one go; one still incomplete after this had a bogus length.
+    // While the device is out of credit only its keepalive arrives to fill it (see FlowControl)
+    static final long PARTIAL_FRAME_TIMEOUT_NS = 1_000_000_000L;
+
+    private final byte[] buffer;
+    private int start = 0; // First byte not yet consumed
+    private int end = 0;   // One past the last byte received
+    private int version = 0; // 0 until the first byte arrives
+
+    // v2 only
+    private final Checksum crc = Crc32c.create();
+    private boolean inSync = true;
+    private boolean waiting = false; // For the rest of the frame at start, since waitingSinceNanos
+    private long waitingSinceNanos = 0;
+    private volatile long corruptFrames = 0, resyncs = 0, skippedBytes = 0; // Read by the stats
+
+    public FrameDecoder() {
+        this(4 * MAX_FRAME_SIZE);
+    }
+
+    public FrameDecoder(int capacity) {
+        if (capacity < MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Capacity must fit at least one max-size frame (" + MAX_FRAME_SIZE + " bytes)");
+        }
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Performs one blocking read from the stream and dispatches every frame it completed.
+     * Returns the number of bytes read, or -1 when the stream has ended.
+     */
+    public int readFrom(InputStream in, FrameListener listener) throws IOException {
+        ensureRoomForFrame();
+        int n = in.read(buffer, end, buffer.length - end);
+        if (n == -1) return -1;
+        end += n;
+        drain(listener, System.nanoTime());
+        return n;
+    }
+
+    // Same as readFrom, but for bytes that already sit in memory (tests, other transports)
+    public void feed(byte[] src, int offset, int length, FrameListener listener) {
+        feed(src, offset, length, listener, System.nanoTime());
+    }
+
+    // nowNanos: when these bytes arrived
+    void feed(byte[] src, int offset, int length, FrameListener listener, long nowNanos) {
+        while (length > 0) {
+            ensureRoomForFrame();
+            int chunk = Math.min(length, buffer.length - end);
+            System.arraycopy(src, offset, buffer, end, chunk);
+            end += chunk;
+            offset += chunk;
+            length -= chunk;
+            drain(listener, nowNanos);
+        }
+    }
+
+    // Bytes of a partial frame still waiting for the rest of their data
+    public int getPendingBytes() {
+        return end - start;
+    }
+
+    public void reset() {
+        start = 0;
+        end = 0;
+        version = 0;
+        inSync = true;
+        waiting = false;
+    }
+
+    // 1 or 2 once the stream's first byte is in, 0 before
+    public int getVersion() { return version; }
+
+    // Frames dropped for a bad header check, CRC or timeout (damage spanning adjacent frames may count once)
+    public long getCorruptFrameCount() { return corruptFrames; }
+
+    // Times the decoder lost the frame boundary and found it again
+    public long getResyncCount() { return resyncs; }
+
+    // Bytes thrown away while looking for the next valid frame
+    public long getSkippedBytes() { return skippedBytes; }
+
+    // ==========================================
+    //           ENCODING
+    // ==========================================
+    // Frames a payload the way a stream of this version expects (v1 for 0 and 1)
+    public static byte[] frame(int version, byte[] payload, int offset, int length) {
+        if (length > MAX_PAYLOAD_SIZE) throw new IllegalArgumentException("Payload too long: " + length + " bytes");
+        if (version != VERSION_2) {
+            byte[] frame = new byte[HEADER_SIZE + length];
+            frame[0] = (byte) (length >> 8);
+            frame[1] = (byte) length;
+            System.arraycopy(payload, offset, frame, HEADER_SIZE, length);
+            return frame;
+        }
+        byte[] frame = new byte[V2_HEADER_SIZE + length + V2_TRAILER_SIZE];
+        frame[0] = SYNC_0;
+        frame[1] = SYNC_1;
+        frame[2] = VERSION_2;
+        frame[3] = (byte) (length >> 8);
+        frame[4] = (byte) length;
+        frame[5] = crc8(frame, 2);
+        System.arraycopy(payload, offset, frame, V2_HEADER_SIZE, length);
+        int crc = Crc32c.compute(frame, 2, V2_HEADER_SIZE - 2 + length);
+        int at = V2_HEADER_SIZE + length;
+        frame[at] = (byte) (crc >>> 24);
+        frame[at + 1] = (byte) (crc >>> 16);
+        frame[at + 2] = (byte) (crc >>> 8);
+        frame[at + 3] = (byte) crc;
+        return frame;
+    }
+
+    // CRC-8 (poly 0x07) of the version and length bytes at 'at'
+    static byte crc8(byte[] b, int at) {
+        int crc = CRC8[b[at] & 0xFF] & 0xFF;
+        crc = CRC8[crc ^ (b[at + 1] & 0xFF)] & 0xFF;
+        return CRC8[crc ^ (b[at + 2] & 0xFF)];
+    }
+
+    private static final byte[] CRC8 = new byte[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int k = 0; k < 8; k++) crc = (crc & 0x80) != 0 ? (crc << 1) ^ 0x07 : crc << 1;
+            CRC8[i] = (byte) crc;
+        }
+    }
+
+    // ==========================================
+    //           DECODING
+    // ==========================================
+    private void drain(FrameListener listener, long nowNanos) {
+        if (version == 0 && end > start) version = buffer[start] == SYNC_0 ? VERSION_2 : 1;
+        if (version == VERSION_2) drainV2(listener, nowNanos);
+        else drainV1(listener);
+        // Common case: the read ended exactly on a frame boundary, so no copy is ever needed
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+
+    private void drainV1(FrameListener listener) {
+        while (end - start >= HEADER_SIZE) {
+            int payloadSize = ((buffer[start] & 0xFF) << 8) | (buffer[start + 1] & 0xFF);
+            if (end - start - HEADER_SIZE < payloadSize) break;
+            int payloadStart = start + HEADER_SIZE;
+            start = payloadStart + payloadSize;
+            listener.onFrame(buffer, payloadStart, payloadSize);
+        }
+    }
+
+    private void drainV2(FrameListener listener, long nowNanos) {
+        while (end - start >= V2_HEADER_SIZE) {
+            if (buffer[start] != SYNC_0 || buffer[start + 1] != SYNC_1
+                    || buffer[start + 2] != VERSION_2 || buffer[start + 5] != crc8(buffer, start + 2)) {
+                if (inSync) corruptFrames++; // A damaged header; damaged bytes between frames count too
+                skipToNextSync();
+                continue;
+            }
+            int payloadSize = ((buffer[start + 3] & 0xFF) << 8) | (buffer[start + 4] & 0xFF);
+            int frameSize = V2_HEADER_SIZE + payloadSize + V2_TRAILER_SIZE;
+            if (end - start < frameSize) {
+                if (!waiting) {
+                    waiting = true;
+                    waitingSinceNanos = nowNanos;
+                }
+                if (nowNanos - waitingSinceNanos < PARTIAL_FRAME_TIMEOUT_NS) break;
+                // Whatever arrived since is scanned again: it may hold the frames we need
+                if (inSync) corruptFrames++;
+                skipToNextSync();
+                continue;
+            }
+            waiting = false;
+
+            int at = start + V2_HEADER_SIZE + payloadSize;
+            int expected = (buffer[at] & 0xFF) << 24 | (buffer[at + 1] & 0xFF) << 16 | (buffer[at + 2] & 0xFF) << 8 | (buffer[at + 3] & 0xFF);
+            crc.reset();
+            crc.update(buffer, start + 2, V2_HEADER_SIZE - 2 + payloadSize);
+            if ((int) crc.getValue() != expected) {
+                corruptFrames++;
+                skipToNextSync();
+                continue;
+            }
+            if (!inSync) {
+                inSync = true;
+                resyncs++;
+            }
+            int payloadStart = start + V2_HEADER_SIZE;
+            start += frameSize;
+            listener.onFrame(buffer, payloadStart, payloadSize);
+        }
+    }
+
+    // Drops the byte at start and everything up to the next possible sync marker
+    private void skipToNextSync() {
+        inSync = false;
+        waiting = false;
+        int next = start + 1;
+        while (next < end && buffer[next] != SYNC_0) next++;
+        skippedBytes += next - start;
+        start = next;
+    }
+
+    // Only the tail of one partial frame is ever moved, and only when we near the end
+    private void ensureRoomForFrame() {
+        if (buffer.length - end >= MAX_FRAME_SIZE) return;
+        int pending = end - start;
+        System.arraycopy(buffer, start, buffer, 0, pending);
+        start = 0;
+        end = pending;
+    }
+}
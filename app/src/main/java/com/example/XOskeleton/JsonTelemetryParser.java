@@ -0,0 +1,429 @@
+package com.example.XOskeleton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming parser for the sender's JSON packets. The first packet is walked once to learn
+ * its key layout; every later packet is matched against that layout token by token and its
+ * numbers are written straight into the slots of a reused {@link TelemetrySample}.
+ * Any added, dropped or reordered key makes the parser re-learn the layout from that packet.
+ *
+ * A device that sends channel groups (see {@link TelemetryProtocol#isPacketKey}) alternates
+ * between a few layouts, so the last MAX_LAYOUTS are kept, each with its own sample, and a
+ * packet is matched against the most recently used first. A mismatch is found at the first
+ * differing key, so trying the next layout is cheap; only a layout never seen is learned.
+ *
+ * Leaves are stored as doubles: true/false become 1/0, null/arrays become NaN. A string is
+ * stored as its number if it holds one, else NaN, and its text is kept on the sample
+ * ({@link TelemetrySample#getText}) for display; an unchanged string is not re-decoded.
+ */
+public class JsonTelemetryParser {
+
+    private static final int EVENT_OPEN = -1;  // "key": {
+    private static final int EVENT_CLOSE = -2; // }
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_LAYOUTS = 8;
+
+    // Learned layout: for every token, the raw key bytes and either a slot or an OPEN/CLOSE marker
+    private static class Layout {
+        final byte[][] names;
+        final int[] slots;
+        final TelemetrySample sample;
+
+        Layout(byte[][] names, int[] slots, TelemetrySchema schema) {
+            this.names = names;
+            this.slots = slots;
+            this.sample = new TelemetrySample(schema);
+        }
+    }
+
+    // Most recently used first
+    private final Layout[] layouts = new Layout[MAX_LAYOUTS];
+    private int layoutCount = 0;
+    private TelemetrySample sample = new TelemetrySample();
+    private int schemaChanges = 0;
+
+    // The layout being matched
+    private byte[][] layoutNames;
+    private int[] layoutSlots;
+    private TelemetrySample layoutSample;
+    private double[] layoutValues;
+    private int layoutCursor;
+
+    // Learning state (only touched when the layout changes)
+    private boolean learning;
+    private final List<byte[]> learnedNames = new ArrayList<>();
+    private final List<Integer> learnedSlots = new ArrayList<>();
+    private final List<String> learnedKeys = new ArrayList<>();
+    private final List<String> learnedPath = new ArrayList<>();
+    private double[] learnedValues = new double[64];
+    private String[] learnedTexts = new String[64];
+
+    // Raw bytes of the last string value parsed, textStart -1 if the last value was not one
+    private int textStart = -1, textEnd;
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    /**
+     * Decodes one payload. The returned sample is owned by the parser and is overwritten by
+     * the next call. Throws IllegalArgumentException for malformed packets.
+     */
+    public TelemetrySample parse(byte[] buffer, int offset, int length) {
+        buf = buffer;
+        limit = offset + length;
+
+        for (int i = 0; i < layoutCount; i++) {
+            Layout layout = layouts[i];
+            layoutNames = layout.names;
+            layoutSlots = layout.slots;
+            layoutSample = layout.sample;
+            layoutValues = layout.sample.getValues();
+            pos = offset;
+            layoutCursor = 0;
+            if (parseRoot() && layoutCursor == layoutSlots.length) {
+                System.arraycopy(layouts, 0, layouts, 1, i);
+                layouts[0] = layout;
+                sample = layout.sample;
+                return sample;
+            }
+        }
+
+        // Layout changed (or first packet): walk it again and remember the new shape
+        learning = true;
+        try {
+            pos = offset;
+            learnedNames.clear();
+            learnedSlots.clear();
+            learnedKeys.clear();
+            learnedPath.clear();
+            parseRoot();
+            applyLearnedLayout();
+        } finally {
+            learning = false;
+        }
+        return sample;
+    }
+
+    // The sample the last packet was decoded into
+    public TelemetrySample getSample() { return sample; }
+
+    // How many distinct key layouts were learned; one per channel group for a stable stream
+    public int getSchemaChanges() { return schemaChanges; }
+
+    private void applyLearnedLayout() {
+        int n = learnedSlots.size();
+        int[] slots = new int[n];
+        for (int i = 0; i < n; i++) slots[i] = learnedSlots.get(i);
+
+        // Same keys through a different token sequence (e.g. nesting) keep their schema
+        TelemetrySchema schema = new TelemetrySchema(learnedKeys);
+        boolean known = false;
+        for (int i = 0; i < layoutCount && !known; i++) {
+            TelemetrySchema existing = layouts[i].sample.getSchema();
+            if (existing.hasSameLayout(schema)) {
+                schema = existing;
+                known = true;
+            }
+        }
+        if (!known) schemaChanges++;
+
+        Layout layout = new Layout(learnedNames.toArray(new byte[0][]), slots, schema);
+        if (layoutCount < MAX_LAYOUTS) layoutCount++;
+        System.arraycopy(layouts, 0, layouts, 1, layoutCount - 1); // The least recently used falls off
+        layouts[0] = layout;
+        System.arraycopy(learnedValues, 0, layout.sample.getValues(), 0, learnedKeys.size());
+        for (int i = 0; i < learnedKeys.size(); i++) layout.sample.setText(i, learnedTexts[i]);
+        sample = layout.sample;
+    }
+
+    // ==========================================
+    //           TOKEN WALK
+    // ==========================================
+    private boolean parseRoot() {
+        skipWhitespace();
+        if (!parseObject()) return false;
+        skipWhitespace();
+        if (pos != limit) throw error("Trailing data");
+        return true;
+    }
+
+    // Returns false as soon as the packet stops matching the learned layout
+    private boolean parseObject() {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return true;
+        }
+        while (true) {
+            expect('"');
+            int keyStart = pos;
+            skipStringBody();
+            int keyEnd = pos - 1;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (peek() == '{') {
+                if (!onOpen(keyStart, keyEnd)) return false;
+                if (!parseObject()) return false;
+                if (!onClose()) return false;
+            } else {
+                if (!onLeaf(keyStart, keyEnd, parseValue())) return false;
+            }
+
+            skipWhitespace();
+            byte c = next();
+            if (c == ',') {
+                skipWhitespace();
+                continue;
+            }
+            if (c == '}') return true;
+            throw error("Expected ',' or '}'");
+        }
+    }
+
+    private boolean onOpen(int keyStart, int keyEnd) {
+        if (learning) {
+            learnedNames.add(copyName(keyStart, keyEnd));
+            learnedSlots.add(EVENT_OPEN);
+            learnedPath.add(decodeName(keyStart, keyEnd));
+            return true;
+        }
+        return matches(EVENT_OPEN, keyStart, keyEnd);
+    }
+
+    private boolean onClose() {
+        if (learning) {
+            learnedNames.add(null);
+            learnedSlots.add(EVENT_CLOSE);
+            learnedPath.remove(learnedPath.size() - 1);
+            return true;
+        }
+        if (layoutCursor >= layoutSlots.length || layoutSlots[layoutCursor] != EVENT_CLOSE) return false;
+        layoutCursor++;
+        return true;
+    }
+
+    private boolean onLeaf(int keyStart, int keyEnd, double value) {
+        if (learning) {
+            int slot = learnedKeys.size();
+            StringBuilder key = new StringBuilder();
+            for (String segment : learnedPath) key.append(segment).append('.');
+            key.append(decodeName(keyStart, keyEnd));
+            learnedKeys.add(key.toString());
+            learnedNames.add(copyName(keyStart, keyEnd));
+            learnedSlots.add(slot);
+            if (slot == learnedValues.length) {
+                learnedValues = Arrays.copyOf(learnedValues, slot * 2);
+                learnedTexts = Arrays.copyOf(learnedTexts, slot * 2);
+            }
+            learnedValues[slot] = value;
+            learnedTexts[slot] = textStart >= 0 ? decodeName(textStart, textEnd) : null;
+            return true;
+        }
+        int slot = layoutCursor < layoutSlots.length ? layoutSlots[layoutCursor] : EVENT_CLOSE;
+        if (slot < 0 || !matches(slot, keyStart, keyEnd)) return false;
+        layoutValues[slot] = value;
+        String text = layoutSample.getText(slot);
+        if (textStart < 0) {
+            if (text != null) layoutSample.setText(slot, null);
+        } else if (text == null || !sameText(text, textStart, textEnd)) {
+            layoutSample.setText(slot, decodeName(textStart, textEnd));
+        }
+        return true;
+    }
+
+    private boolean sameText(String text, int start, int end) {
+        if (text.length() != end - start) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != buf[start + i]) return false; // Non-ASCII never matches: decoded again
+        }
+        return true;
+    }
+
+    // Compares the raw key bytes in place against the learned token at the cursor
+    private boolean matches(int expectedSlot, int keyStart, int keyEnd) {
+        if (layoutCursor >= layoutSlots.length || layoutSlots[layoutCursor] != expectedSlot) return false;
+        byte[] name = layoutNames[layoutCursor];
+        int len = keyEnd - keyStart;
+        if (name.length != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (name[i] != buf[keyStart + i]) return false;
+        }
+        layoutCursor++;
+        return true;
+    }
+
+    private byte[] copyName(int start, int end) {
+        byte[] name = new byte[end - start];
+        System.arraycopy(buf, start, name, 0, name.length);
+        return name;
+    }
+
+    // Keys from the sender are plain ASCII; escapes are kept verbatim rather than decoded
+    private String decodeName(int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // ==========================================
+    //           VALUES
+    // ==========================================
+    private double parseValue() {
+        textStart = -1;
+        byte c = peek();
+        switch (c) {
+            case '"':
+                pos++;
+                int start = pos;
+                skipStringBody();
+                textStart = start;
+                textEnd = pos - 1;
+                return parseTextNumber(start, pos - 1);
+            case 't':
+                expectLiteral("true");
+                return 1;
+            case 'f':
+                expectLiteral("false");
+                return 0;
+            case 'n':
+                expectLiteral("null");
+                return Double.NaN;
+            case '[':
+                skipArray();
+                return Double.NaN;
+            default:
+                return parseNumber();
+        }
+    }
+
+    private double parseNumber() {
+        int start = pos;
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+
+        while (pos < limit && isDigit(buf[pos])) {
+            mantissa = accumulate(mantissa, buf[pos++]);
+            if (mantissa != 0) digits++;
+            any = true;
+        }
+        if (pos < limit && buf[pos] == '.') {
+            pos++;
+            while (pos < limit && isDigit(buf[pos])) {
+                mantissa = accumulate(mantissa, buf[pos++]);
+                if (mantissa != 0) digits++;
+                exponent--;
+                any = true;
+            }
+        }
+        if (!any) throw error("Expected a value");
+        if (pos < limit && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            pos++;
+            boolean negativeExp = false;
+            if (peek() == '+' || peek() == '-') negativeExp = buf[pos++] == '-';
+            int exp = 0;
+            while (pos < limit && isDigit(buf[pos])) {
+                if (exp < 10000) exp = exp * 10 + (buf[pos] - '0');
+                pos++;
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        // Exact when both the mantissa and the power of ten are representable (Clinger's fast path)
+        if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+            double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            return negative ? -value : value;
+        }
+        // Long mantissas (e.g. time.time() with 17 digits) take the slow but exact route
+        return Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+    }
+
+    // A string holding a number (some firmware quotes them) counts as that number
+    private double parseTextNumber(int start, int end) {
+        if (start == end) return Double.NaN;
+        byte c = buf[start];
+        if (!isDigit(c) && c != '-' && c != '.') return Double.NaN;
+        try {
+            return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long accumulate(long mantissa, byte digit) {
+        // Past 18 digits only the slow path is used, so overflow here is harmless
+        return mantissa * 10 + (digit - '0');
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // ==========================================
+    //           LOW LEVEL
+    // ==========================================
+    private void skipStringBody() {
+        while (pos < limit) {
+            byte c = buf[pos++];
+            if (c == '\\') pos++;
+            else if (c == '"') return;
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipArray() {
+        int depth = 0;
+        while (pos < limit) {
+            byte c = buf[pos++];
+            if (c == '"') skipStringBody();
+            else if (c == '[' || c == '{') depth++;
+            else if ((c == ']' || c == '}') && --depth == 0) return;
+        }
+        throw error("Unterminated array");
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+            pos++;
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) expect(literal.charAt(i));
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw error("Expected '" + c + "'");
+    }
+
+    private byte peek() {
+        if (pos >= limit) throw error("Unexpected end of packet");
+        return buf[pos];
+    }
+
+    private byte next() {
+        if (pos >= limit) throw error("Unexpected end of packet");
+        return buf[pos++];
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at byte " + pos);
+    }
+}
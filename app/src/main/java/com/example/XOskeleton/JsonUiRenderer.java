@@ -3,95 +3,189 @@ package com.example.XOskeleton;
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import org.json.JSONObject;
-
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders telemetry as nested sections of key/value rows.
+ *
+ * Views are bound to schema slots once per layout: rows and sections are kept in maps keyed
+ * by their flattened key path ("right(1).Position"), so a packet never searches the view tree.
+ * Per packet, only slots whose value changed are formatted (into a reused buffer) and set.
+ *
+ * Several layouts can be shown at once (one per device, keys prefixed with the device
+ * label, and one per channel group). A new layout that shares a key with a bound one
+ * replaces it, as that is the same device changing its packet; keys every group's packet
+ * has (TelemetryProtocol.isPacketKey) don't count.
+ */
 public class JsonUiRenderer {
 
-    public static void render(Context ctx, JSONObject json, LinearLayout parent) {
-
-        // --- STEP 1: CLEANUP (Garbage Collection) ---
-        // Remove views that are no longer present in the JSON
-        // We iterate backwards to safely remove items
-        for (int i = parent.getChildCount() - 1; i >= 0; i--) {
-            View child = parent.getChildAt(i);
-            Object tag = child.getTag();
-            // If the view has a tag (key) but that key is NOT in the new JSON, delete it
-            if (tag instanceof String && !json.has((String) tag)) {
-                parent.removeViewAt(i);
-            }
+    // Never produced by the decoders, so every slot is drawn after a (re)bind
+    private static final long NOT_SHOWN = 0x7FF0_0000_0000_0BADL;
+
+    private final Context ctx;
+    private final LinearLayout root;
+
+    // Flattened key path -> row / section, kept across layout changes
+    private final Map<String, View> rows = new HashMap<>();
+    private final Map<String, View> sections = new HashMap<>();
+
+    // Bound layouts: value TextView and last drawn value bits per slot
+    private static final int MAX_LAYOUTS = 8;
+    private final Map<TelemetrySchema, Binding> bindings = new LinkedHashMap<>();
+    private TelemetrySchema lastSchema = null;
+    private Binding lastBinding = null;
+
+    private static class Binding {
+        final TextView[] valueViews;
+        final long[] shownBits;
+        final String[] shownTexts; // String leaves: the parser keeps the same String while it is unchanged
+
+        Binding(int size) {
+            valueViews = new TextView[size];
+            shownBits = new long[size];
+            shownTexts = new String[size];
+            Arrays.fill(shownBits, NOT_SHOWN);
         }
+    }
 
-        // --- STEP 2: UPDATE or CREATE ---
-        Iterator<String> keys = json.keys();
+    private final StringBuilder text = new StringBuilder(32);
+    private char[] chars = new char[32];
 
-        while (keys.hasNext()) {
-            String key = keys.next();
-            Object value = json.opt(key);
+    public JsonUiRenderer(Context ctx, LinearLayout root) {
+        this.ctx = ctx;
+        this.root = root;
+    }
 
-            // Try to find the existing view for this key in this specific container
-            // findViewWithTag searches the hierarchy, which is perfect for this
-            View existingView = parent.findViewWithTag(key);
+    public void render(TelemetrySample sample) {
+        if (sample.getSchema() != lastSchema) {
+            lastSchema = sample.getSchema();
+            lastBinding = bindings.get(lastSchema);
+            if (lastBinding == null) lastBinding = bind(lastSchema);
+        }
+        TextView[] valueViews = lastBinding.valueViews;
+        long[] shownBits = lastBinding.shownBits;
+        String[] shownTexts = lastBinding.shownTexts;
+
+        double[] values = sample.getValues();
+        for (int slot = 0; slot < valueViews.length; slot++) {
+            long bits = Double.doubleToRawLongBits(values[slot]);
+            String textValue = sample.getText(slot);
+            if (bits == shownBits[slot] && textValue == shownTexts[slot]) continue; // Unchanged: no formatting, no text layout
+            shownBits[slot] = bits;
+            shownTexts[slot] = textValue;
+            TextView view = valueViews[slot];
+            if (view == null) continue;
+
+            text.setLength(0);
+            sample.appendValue(text, slot);
+            int length = text.length();
+            if (length > chars.length) chars = new char[Math.max(length, chars.length * 2)];
+            text.getChars(0, length, chars, 0);
+            view.setText(chars, 0, length);
+        }
+    }
 
-            if (value instanceof JSONObject) {
-                // --- CASE A: SECTION (Nested Object) ---
-                if (existingView == null) {
-                    // Create New Section
-                    existingView = addSection(ctx, key, parent);
-                    existingView.setTag(key); // CRITICAL: Tag it so we find it next time
+    // ==========================================
+    //           BINDING (once per layout)
+    // ==========================================
+    private Binding bind(TelemetrySchema schema) {
+        // A bound layout sharing a key with this one is the same device's previous packet
+        Iterator<TelemetrySchema> bound = bindings.keySet().iterator();
+        while (bound.hasNext()) {
+            TelemetrySchema old = bound.next();
+            for (int slot = 0; slot < schema.size(); slot++) {
+                String[] segments = schema.getSegments(slot);
+                if (TelemetryProtocol.isPacketKey(segments[segments.length - 1])) continue;
+                if (old.indexOf(schema.getKey(slot)) >= 0) {
+                    bound.remove();
+                    break;
                 }
-
-                // RECURSION: Update the container INSIDE this section
-                // IMPORTANT: Your item_section.xml MUST have a LinearLayout with id 'section_container'
-                // If it doesn't, add one to the XML, or use the root view if appropriate.
-                LinearLayout sectionContainer = existingView.findViewById(R.id.section_container);
-                if (sectionContainer != null) {
-                    render(ctx, (JSONObject) value, sectionContainer);
+            }
+        }
+        if (bindings.size() >= MAX_LAYOUTS) bindings.remove(bindings.keySet().iterator().next());
+
+        Binding binding = new Binding(schema.size());
+        bindings.put(schema, binding);
+
+        StringBuilder path = new StringBuilder();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            String[] segments = schema.getSegments(slot);
+            LinearLayout parent = root;
+            path.setLength(0);
+            for (int depth = 0; depth < segments.length - 1; depth++) {
+                if (depth > 0) path.append('.');
+                path.append(segments[depth]);
+                String sectionPath = path.toString();
+
+                View section = sections.get(sectionPath);
+                if (section == null) {
+                    section = addSection(ctx, segments[depth], parent);
+                    sections.put(sectionPath, section);
                 }
+                // IMPORTANT: item_section.xml MUST have a LinearLayout with id 'section_container'
+                LinearLayout container = section.findViewById(R.id.section_container);
+                if (container == null) break;
+                parent = container;
+            }
 
-            } else {
-                // --- CASE B: KEY-VALUE PAIR ---
-                String stringValue = String.valueOf(value);
+            String key = schema.getKey(slot);
+            View row = rows.get(key);
+            if (row == null) {
+                row = addKeyValue(ctx, segments[segments.length - 1], parent);
+                rows.put(key, row);
+            }
+            binding.valueViews[slot] = row.findViewById(R.id.value);
+        }
 
-                if (existingView == null) {
-                    // Create New Row
-                    addKeyValue(ctx, key, stringValue, parent);
-                } else {
-                    // Update Existing Row (NO FLICKER)
-                    updateKeyValue(existingView, stringValue);
+        // --- CLEANUP: drop rows and sections no bound layout has ---
+        Set<String> liveRows = new HashSet<>();
+        Set<String> liveSections = new HashSet<>();
+        for (TelemetrySchema live : bindings.keySet()) {
+            for (int slot = 0; slot < live.size(); slot++) {
+                String[] segments = live.getSegments(slot);
+                path.setLength(0);
+                for (int depth = 0; depth < segments.length - 1; depth++) {
+                    if (depth > 0) path.append('.');
+                    path.append(segments[depth]);
+                    liveSections.add(path.toString());
                 }
+                liveRows.add(live.getKey(slot));
             }
         }
+        removeStale(rows, liveRows);
+        removeStale(sections, liveSections);
+        return binding;
     }
 
-    private static void addKeyValue(Context ctx, String key, String value, LinearLayout parent) {
-        View v = LayoutInflater.from(ctx).inflate(R.layout.item_key_value, parent, false);
+    private static void removeStale(Map<String, View> views, Set<String> live) {
+        Iterator<Map.Entry<String, View>> it = views.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, View> entry = it.next();
+            if (live.contains(entry.getKey())) continue;
+            View view = entry.getValue();
+            if (view.getParent() instanceof ViewGroup) ((ViewGroup) view.getParent()).removeView(view);
+            it.remove();
+        }
+    }
 
-        // CRITICAL: Set the tag so 'render' can find this view later
-        v.setTag(key);
+    private static View addKeyValue(Context ctx, String key, LinearLayout parent) {
+        View v = LayoutInflater.from(ctx).inflate(R.layout.item_key_value, parent, false);
 
         TextView tKey = v.findViewById(R.id.key);
-        TextView tValue = v.findViewById(R.id.value);
-
         if (tKey != null) tKey.setText(key);
-        if (tValue != null) tValue.setText(value);
 
         parent.addView(v);
-    }
-
-    private static void updateKeyValue(View v, String newValue) {
-        TextView tValue = v.findViewById(R.id.value);
-        if (tValue != null) {
-            // Optimization: Only setText if the value actually changed
-            // This prevents the Android text layout engine from running unnecessarily
-            if (!tValue.getText().toString().equals(newValue)) {
-                tValue.setText(newValue);
-            }
-        }
+        return v;
     }
 
     private static View addSection(Context ctx, String title, LinearLayout parent) {
@@ -104,4 +198,4 @@ public class JsonUiRenderer {
         parent.addView(v);
         return v;
     }
-}
\ No newline at end of file
+}
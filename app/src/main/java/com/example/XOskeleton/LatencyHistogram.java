@@ -0,0 +1,84 @@
+package com.example.XOskeleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory latency histogram in the HdrHistogram style: values below 256 ns are counted
+ * exactly, above that every power of two is split into 128 linear sub-buckets, so any
+ * reported value is within 1% of the true one. Recording is lock-free and allocation-free
+ * and may happen on any thread; percentiles are read from a single pass over the counts.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;      // 128 per power of two
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;          // 0..255 counted exactly
+    private static final int MAX_SHIFT = 34;                          // Tops out around 2^41 ns (~36 min)
+    private static final int BUCKETS = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public void recordNanos(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        total.incrementAndGet();
+        sum.addAndGet(nanos);
+        long currentMax;
+        while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) { }
+    }
+
+    public long getCount() { return total.get(); }
+
+    public long getMaxNanos() { return max.get(); }
+
+    public double getMeanNanos() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    // Smallest recorded value v such that 'percentile' percent of samples are <= v (0 if empty)
+    public long getPercentileNanos(double percentile) {
+        long n = total.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueAt(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS; // >= 1
+        if (shift > MAX_SHIFT) return BUCKETS - 1;
+        int sub = (int) (value >>> shift); // SUB_BUCKETS..2*SUB_BUCKETS-1
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (sub - SUB_BUCKETS);
+    }
+
+    static long highestValueAt(int index) {
+        if (index < LINEAR_LIMIT) return index;
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long sub = SUB_BUCKETS + (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
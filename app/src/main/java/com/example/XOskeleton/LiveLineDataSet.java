@@ -0,0 +1,76 @@
+package com.example.XOskeleton;
+
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineDataSet;
+
+import java.util.AbstractList;
+
+/**
+ * LineDataSet backed by a {@link LiveSeries} instead of an ArrayList. Old points fall off
+ * in O(1) and calcMinMax() reads the series' running range instead of walking every entry,
+ * so appending a frame's worth of samples and refreshing the chart stays cheap.
+ */
+public class LiveLineDataSet extends LineDataSet {
+
+    public LiveLineDataSet(String label, int capacity) {
+        super(new SeriesEntries(new LiveSeries(capacity)), label);
+    }
+
+    public LiveSeries getSeries() { return ((SeriesEntries) mEntries).series; }
+
+    // Call LineData.notifyDataChanged() (once per frame) after appending
+    public void append(float x, float y) {
+        getSeries().add(x, y);
+    }
+
+    @Override
+    public boolean addEntry(Entry e) {
+        if (e == null) return false;
+        append(e.getX(), e.getY());
+        calcMinMax();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        getSeries().clear();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void calcMinMax() {
+        mYMax = -Float.MAX_VALUE;
+        mYMin = Float.MAX_VALUE;
+        mXMax = -Float.MAX_VALUE;
+        mXMin = Float.MAX_VALUE;
+        LiveSeries series = getSeries();
+        if (series.size() == 0) return;
+        mYMax = series.getMaxY();
+        mYMin = series.getMinY();
+        mXMax = series.getMaxX();
+        mXMin = series.getMinX();
+    }
+
+    // Read-only list view for the renderer; one reused Entry per ring slot
+    private static class SeriesEntries extends AbstractList<Entry> {
+        final LiveSeries series;
+        private final Entry[] entries;
+
+        SeriesEntries(LiveSeries series) {
+            this.series = series;
+            entries = new Entry[series.capacity()];
+            for (int i = 0; i < entries.length; i++) entries[i] = new Entry();
+        }
+
+        @Override
+        public Entry get(int index) {
+            Entry e = entries[series.slotOf(index)];
+            e.setX(series.getX(index));
+            e.setY(series.getY(index));
+            return e;
+        }
+
+        @Override
+        public int size() { return series.size(); }
+    }
+}
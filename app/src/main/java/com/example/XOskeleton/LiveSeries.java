@@ -0,0 +1,74 @@
+package com.example.XOskeleton;
+
+/**
+ * Fixed-capacity circular store for one live plot. Appending past capacity overwrites the
+ * oldest point in O(1), and the Y range of what is currently held is kept up to date with
+ * two monotonic queues (amortized O(1) per point), so the chart never rescans the series.
+ *
+ * X values must be non-decreasing.
+ */
+public class LiveSeries {
+
+    private final float[] x;
+    private final float[] y;
+    private final int mask;
+    private long start = 0; // Logical index of the oldest point
+    private long end = 0;   // One past the newest
+
+    // Logical indices whose Y is increasing (min queue) / decreasing (max queue) front to back
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private long minHead = 0, minTail = 0;
+    private long maxHead = 0, maxTail = 0;
+
+    public LiveSeries(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        x = new float[size];
+        y = new float[size];
+        mask = size - 1;
+        minQueue = new long[size];
+        maxQueue = new long[size];
+    }
+
+    public int capacity() { return mask + 1; }
+
+    public int size() { return (int) (end - start); }
+
+    public void clear() {
+        start = end = 0;
+        minHead = minTail = maxHead = maxTail = 0;
+    }
+
+    public void add(float xValue, float yValue) {
+        if (end - start == x.length) {
+            if (minQueue[(int) (minHead & mask)] == start) minHead++;
+            if (maxQueue[(int) (maxHead & mask)] == start) maxHead++;
+            start++;
+        }
+        int slot = (int) (end & mask);
+        x[slot] = xValue;
+        y[slot] = yValue;
+
+        while (minTail > minHead && y[(int) (minQueue[(int) ((minTail - 1) & mask)] & mask)] >= yValue) minTail--;
+        minQueue[(int) (minTail++ & mask)] = end;
+        while (maxTail > maxHead && y[(int) (maxQueue[(int) ((maxTail - 1) & mask)] & mask)] <= yValue) maxTail--;
+        maxQueue[(int) (maxTail++ & mask)] = end;
+        end++;
+    }
+
+    // i = 0 is the oldest point held
+    public float getX(int i) { return x[slotOf(i)]; }
+
+    public float getY(int i) { return y[slotOf(i)]; }
+
+    // Physical array position of point i; stable until that point is overwritten
+    public int slotOf(int i) { return (int) ((start + i) & mask); }
+
+    public float getMinX() { return x[(int) (start & mask)]; }
+
+    public float getMaxX() { return x[(int) ((end - 1) & mask)]; }
+
+    public float getMinY() { return y[(int) (minQueue[(int) (minHead & mask)] & mask)]; }
+
+    public float getMaxY() { return y[(int) (maxQueue[(int) (maxHead & mask)] & mask)]; }
+}
@@ -0,0 +1,121 @@
+package com.example.XOskeleton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns samples into log rows for one session. The first sample fixes the first columns
+ * (keys sorted) plus "phone_time", the sample's time on the synchronized phone clock (see
+ * ClockSync). Keys that show up later (a new joint, a new diagnostic field) are added as
+ * new columns after those, so the columns are the union of every layout seen.
+ *
+ * A row only holds the columns of its own sample's layout, in the order of
+ * getStreamColumns(): with channel groups (see TelemetryProtocol.isPacketKey) the layouts
+ * take turns, and a row as wide as the union would be mostly NaN. The log keeps each set
+ * of columns as a stream of its own (BlockLog.Writer.addStream). Link outages are a stream
+ * of their own too, see gapRow().
+ */
+public class LogColumns {
+
+    // Layouts seen this session; more than this and the cache starts over
+    private static final int MAX_CACHED_SCHEMAS = 64;
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> columnOf = new HashMap<>();
+    private int phoneColumn = -1;
+    private int[] gapColumns = null;
+
+    private static class Stream {
+        int[] columns;   // Ascending, phone_time included; shared by layouts with the same keys
+        int[] positions; // Sample slot -> position in the row
+        int phonePosition;
+    }
+
+    private final Map<TelemetrySchema, Stream> streams = new IdentityHashMap<>();
+    private final Map<String, int[]> columnSets = new HashMap<>();
+    private TelemetrySchema schema = null;
+    private Stream stream = null;
+
+    public boolean hasColumns() { return !names.isEmpty(); }
+
+    /**
+     * Call for every sample before row(). Returns all columns if this sample's layout added
+     * any (the first sample always does), else null.
+     */
+    public List<String> update(TelemetrySample sample) {
+        // Column lookup only changes when the packet layout does
+        if (sample.getSchema() == schema) return null;
+        schema = sample.getSchema();
+        stream = streams.get(schema);
+        if (stream != null) return null;
+
+        int before = names.size();
+        for (String key : schema.getSortedKeys()) {
+            if (!columnOf.containsKey(key)) add(key);
+        }
+        if (phoneColumn < 0) phoneColumn = add(TelemetryProtocol.PHONE_TIME_KEY);
+
+        int[] slotColumns = new int[schema.size()];
+        for (int slot = 0; slot < slotColumns.length; slot++) slotColumns[slot] = columnOf.get(schema.getKey(slot));
+        int[] columns = Arrays.copyOf(slotColumns, slotColumns.length + 1);
+        columns[slotColumns.length] = phoneColumn;
+        Arrays.sort(columns);
+        int[] shared = columnSets.get(Arrays.toString(columns));
+        if (shared == null) columnSets.put(Arrays.toString(columns), shared = columns);
+
+        stream = new Stream();
+        stream.columns = shared;
+        stream.positions = new int[slotColumns.length];
+        for (int slot = 0; slot < slotColumns.length; slot++) stream.positions[slot] = Arrays.binarySearch(shared, slotColumns[slot]);
+        stream.phonePosition = Arrays.binarySearch(shared, phoneColumn);
+        if (streams.size() >= MAX_CACHED_SCHEMAS) streams.clear();
+        streams.put(schema, stream);
+        return names.size() > before ? Collections.unmodifiableList(new ArrayList<>(names)) : null;
+    }
+
+    private int add(String name) {
+        columnOf.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    // Columns of the last update()'s sample, ascending; the same array for the same set of columns
+    public int[] getStreamColumns() { return stream.columns; }
+
+    // A new row (it is handed to the writer thread) in the order of getStreamColumns()
+    public double[] row(TelemetrySample sample, double phoneMillis) {
+        double[] row = new double[stream.columns.length];
+        int[] positions = stream.positions;
+        for (int slot = 0; slot < positions.length; slot++) row[positions[slot]] = sample.get(slot);
+        row[stream.phonePosition] = phoneMillis;
+        return row;
+    }
+
+    /**
+     * Call before gapRow(). Returns all columns if this added the link_gap column (the
+     * session's first outage), else null.
+     */
+    public List<String> updateGap() {
+        if (gapColumns != null) return null;
+        gapColumns = new int[]{phoneColumn, add(TelemetryProtocol.LINK_GAP_KEY)};
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    // Columns of the gap rows: phone_time and link_gap
+    public int[] getGapColumns() { return gapColumns; }
+
+    /**
+     * Row marking a link outage inside the session, in the order of getGapColumns(). An
+     * outage is two of them, one at the phone time the link was lost and one at the time it
+     * came back, both holding the outage length: every series has a hole between them and
+     * analysis scripts find it without guessing from timestamps.
+     */
+    public double[] gapRow(double phoneMillis, double outageMillis) {
+        return new double[]{phoneMillis, outageMillis};
+    }
+}
@@ -5,6 +5,7 @@ import android.annotation.SuppressLint;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.View;
 import android.widget.ImageButton;
 import android.widget.TextView;
@@ -120,6 +121,13 @@ public class MainActivity extends AppCompatActivity {
             }
         }
 
+        // Android 13+ hides the streaming notification without this
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+                requiredPermissions.add(Manifest.permission.POST_NOTIFICATIONS);
+            }
+        }
+
         if (!requiredPermissions.isEmpty()) {
             ActivityCompat.requestPermissions(this, requiredPermissions.toArray(new String[0]), 100);
         }
@@ -134,6 +142,11 @@ public class MainActivity extends AppCompatActivity {
     private void updateHeaderInfo() {
         String name = BluetoothPrefs.getLastName(this);
         String mac = BluetoothPrefs.getLastAddress(this);
+        List<String> names = BluetoothPrefs.getNames(this);
+        if (names.size() > 1) {
+            name = TextUtils.join(" + ", names);
+            mac = names.size() + " units";
+        }
 
         if (mac != null) {
             deviceNameText.setText(name != null ? name : "Unknown");
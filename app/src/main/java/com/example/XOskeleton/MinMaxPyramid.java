@@ -0,0 +1,168 @@
+package com.example.XOskeleton;
+
+/**
+ * Level-of-detail index for one plotted column. Level k keeps, for every bucket of 2^k
+ * consecutive samples, the index of its minimum and maximum. A query for any X range then
+ * picks the level whose bucket count fits the screen and emits min/max pairs, so spikes
+ * survive downsampling and the chart only ever gets about screen-width points.
+ *
+ * X values must be non-decreasing (they are seconds since the session start).
+ */
+public class MinMaxPyramid {
+
+    // Buckets left and right of the visible range, so the chart keeps the full X extent
+    private static final int CONTEXT_BUCKETS = 32;
+
+    private final float[] x;
+    private final float[] y;
+    private final int size;
+    private final int[][] minIndex; // [level][bucket], buckets of 2^(level + 1) samples
+    private final int[][] maxIndex;
+
+    public MinMaxPyramid(float[] x, float[] y, int size) {
+        this.x = x;
+        this.y = y;
+        this.size = size;
+
+        int levels = 0;
+        for (int n = size; n > 1; n = (n + 1) / 2) levels++;
+        minIndex = new int[levels][];
+        maxIndex = new int[levels][];
+
+        int[] prevMin = null, prevMax = null;
+        int prevCount = size;
+        for (int level = 0; level < levels; level++) {
+            int count = (prevCount + 1) / 2;
+            int[] mins = new int[count];
+            int[] maxs = new int[count];
+            for (int b = 0; b < count; b++) {
+                int left = 2 * b, right = Math.min(2 * b + 1, prevCount - 1);
+                int lMin = prevMin == null ? left : prevMin[left];
+                int rMin = prevMin == null ? right : prevMin[right];
+                int lMax = prevMax == null ? left : prevMax[left];
+                int rMax = prevMax == null ? right : prevMax[right];
+                mins[b] = y[rMin] < y[lMin] ? rMin : lMin;
+                maxs[b] = y[rMax] > y[lMax] ? rMax : lMax;
+            }
+            minIndex[level] = mins;
+            maxIndex[level] = maxs;
+            prevMin = mins;
+            prevMax = maxs;
+            prevCount = count;
+        }
+    }
+
+    public int size() { return size; }
+
+    public float getMinX() { return size > 0 ? x[0] : 0f; }
+
+    public float getMaxX() { return size > 0 ? x[size - 1] : 0f; }
+
+    /**
+     * Fills outX/outY (sorted by X) with at most about maxPoints points covering [xFrom, xTo]
+     * at the best resolution that fits, plus a coarse outline of the rest of the column.
+     * Both arrays need room for {@link #capacityFor(int)} points. Returns the number written.
+     */
+    public int query(float xFrom, float xTo, int maxPoints, float[] outX, float[] outY) {
+        if (size == 0) return 0;
+        int from = Math.min(lowerBound(xFrom), size - 1);
+        int to = Math.min(Math.max(from, upperBound(xTo) - 1), size - 1);
+        int out = 0;
+        out = emit(0, from, CONTEXT_BUCKETS * 2, outX, outY, out);
+        out = emit(from, to + 1, Math.max(2, maxPoints), outX, outY, out);
+        out = emit(to + 1, size, CONTEXT_BUCKETS * 2, outX, outY, out);
+        return out;
+    }
+
+    public static int capacityFor(int maxPoints) {
+        // Each of the three ranges may add a partial bucket pair at each end plus its end points
+        return Math.max(2, maxPoints) + 4 * CONTEXT_BUCKETS + 18;
+    }
+
+    // Emits samples [from, to) using the finest level that needs no more than 'budget' points
+    private int emit(int from, int to, int budget, float[] outX, float[] outY, int out) {
+        if (from >= to) return out;
+        int count = to - from;
+        if (count <= budget) {
+            for (int i = from; i < to; i++) {
+                outX[out] = x[i];
+                outY[out] = y[i];
+                out++;
+            }
+            return out;
+        }
+
+        int level = 0;
+        while (level < minIndex.length - 1 && 2 * (count >> (level + 1)) > budget) level++;
+        int shift = level + 1;
+        int firstBucket = from >> shift;
+        int lastBucket = (to - 1) >> shift;
+        int[] mins = minIndex[level];
+        int[] maxs = maxIndex[level];
+
+        // Range end points are always kept so the chart sees the true X extent
+        int last = from;
+        outX[out] = x[from];
+        outY[out] = y[from];
+        out++;
+        for (int b = firstBucket; b <= lastBucket; b++) {
+            int lo, hi;
+            int bucketStart = b << shift;
+            int bucketEnd = Math.min(bucketStart + (1 << shift), size);
+            if (bucketStart >= from && bucketEnd <= to) {
+                lo = mins[b];
+                hi = maxs[b];
+            } else {
+                // Edge bucket sticks out of the range: scan just the overlap so output stays sorted by X
+                int start = Math.max(bucketStart, from), end = Math.min(bucketEnd, to);
+                lo = start;
+                hi = start;
+                for (int i = start + 1; i < end; i++) {
+                    if (y[i] < y[lo]) lo = i;
+                    if (y[i] > y[hi]) hi = i;
+                }
+            }
+            int first = Math.min(lo, hi), second = Math.max(lo, hi);
+            if (first > last) {
+                outX[out] = x[first];
+                outY[out] = y[first];
+                out++;
+                last = first;
+            }
+            if (second > last) {
+                outX[out] = x[second];
+                outY[out] = y[second];
+                out++;
+                last = second;
+            }
+        }
+        if (to - 1 > last) {
+            outX[out] = x[to - 1];
+            outY[out] = y[to - 1];
+            out++;
+        }
+        return out;
+    }
+
+    // First index with x >= value
+    private int lowerBound(float value) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x[mid] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index with x > value
+    private int upperBound(float value) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x[mid] <= value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
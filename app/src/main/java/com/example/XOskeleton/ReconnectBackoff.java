@@ -0,0 +1,37 @@
+package com.example.XOskeleton;
+
+import java.util.Random;
+
+/**
+ * Delays between reconnect attempts: exponential growth from BASE_MS up to MAX_MS with
+ * "equal jitter" (half fixed, half random), so a flaky link is retried quickly at first
+ * and several phones never hammer a rebooting device in lockstep.
+ */
+public class ReconnectBackoff {
+
+    public static final long BASE_MS = 250;
+    public static final long MAX_MS = 10_000;
+
+    private final Random random;
+    private int attempt = 0;
+
+    public ReconnectBackoff() {
+        this(new Random());
+    }
+
+    ReconnectBackoff(Random random) {
+        this.random = random;
+    }
+
+    // Delay before the next attempt; grows with every call until reset()
+    public long nextDelayMillis() {
+        long ceiling = Math.min(MAX_MS, BASE_MS << Math.min(attempt, 16));
+        attempt++;
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+
+    public int getAttempts() { return attempt; }
+
+    public void reset() { attempt = 0; }
+}
@@ -0,0 +1,58 @@
+package com.example.XOskeleton;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+
+/** Bluetooth Classic (RFCOMM channel 1) connection to a paired device. */
+public class RfcommTransport implements Transport {
+
+    private static final int CHANNEL = 1;
+
+    private final String macAddress;
+    private volatile BluetoothSocket socket;
+
+    public RfcommTransport(String macAddress) {
+        this.macAddress = macAddress;
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void connect() throws IOException {
+        try {
+            BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(macAddress);
+            // Insecure fixed-channel socket: the sender binds RFCOMM channel 1 without SDP
+            Method m = device.getClass().getMethod("createRfcommSocket", int.class);
+            socket = (BluetoothSocket) m.invoke(device, CHANNEL);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Could not create RFCOMM socket for " + macAddress, e);
+        }
+        if (socket == null) throw new IOException("No RFCOMM socket for " + macAddress);
+        socket.connect();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        BluetoothSocket s = socket;
+        if (s != null) s.close();
+    }
+
+    @Override
+    public String toString() { return macAddress; }
+}
@@ -29,6 +29,9 @@ import java.util.Set;
 
 public class ScanActivity extends AppCompatActivity {
 
+    // Add the picked device to the rig instead of replacing it
+    public static final String EXTRA_ADD_DEVICE = "add_device";
+
     private static final int REQ_BT_PERMISSIONS = 101;
     private List<BluetoothDevice> devices = new ArrayList<>();
     private DeviceListAdapter adapter;
@@ -131,7 +134,11 @@ public class ScanActivity extends AppCompatActivity {
         if (name == null) name = "Unknown Device";
 
 
-        BluetoothPrefs.saveDevice(this, name, device.getAddress());
+        if (getIntent().getBooleanExtra(EXTRA_ADD_DEVICE, false)) {
+            BluetoothPrefs.addDevice(this, name, device.getAddress());
+        } else {
+            BluetoothPrefs.saveDevice(this, name, device.getAddress());
+        }
         finish();
     }
 
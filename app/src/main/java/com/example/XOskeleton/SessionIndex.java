@@ -0,0 +1,292 @@
+package com.example.XOskeleton;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent list of finished sessions (start, end, sample count, size), kept in
+ * "sessions.idx" next to the logs. The logger appends one record per closed session, so
+ * usage history never has to parse the logs. The file is rebuilt from the Log_* files only
+ * when it is missing or fails its checksums; on load, logs the index does not know yet
+ * (the app was killed before the session closed) are scanned and added. Records of logs
+ * deleted since stay: they still count as usage.
+ *
+ * Format: "XOSIDX1\0", then records of [u16 length][payload][u32 CRC32 of payload].
+ */
+public class SessionIndex {
+
+    public static final String FILE_NAME = "sessions.idx";
+    private static final byte[] MAGIC = {'X', 'O', 'S', 'I', 'D', 'X', '1', 0};
+
+    public static class Session {
+        public final String fileName;
+        public final long startMillis;
+        public final long endMillis;
+        public final long samples;
+        public final long bytes;
+
+        public Session(String fileName, long startMillis, long endMillis, long samples, long bytes) {
+            this.fileName = fileName;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.samples = samples;
+            this.bytes = bytes;
+        }
+
+        public long getDurationMillis() { return Math.max(0, endMillis - startMillis); }
+    }
+
+    private final File dir;
+    private final File file;
+    private List<Session> sessions = null; // Sorted by start; loaded lazily
+
+    public SessionIndex(File dir) {
+        this.dir = dir;
+        this.file = new File(dir, FILE_NAME);
+    }
+
+    // Sessions that started in [fromMillis, toMillis), oldest first
+    public synchronized List<Session> getSessions(long fromMillis, long toMillis) {
+        ensureLoaded();
+        int from = firstStartingAtOrAfter(fromMillis);
+        int to = firstStartingAtOrAfter(toMillis);
+        return new ArrayList<>(sessions.subList(from, Math.max(from, to)));
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return sessions.size();
+    }
+
+    public synchronized void add(Session session) {
+        ensureLoaded();
+        // A rebuild triggered by this very call may already have picked the file up
+        for (int i = 0; i < sessions.size(); i++) {
+            if (sessions.get(i).fileName.equals(session.fileName)) {
+                sessions.set(i, session);
+                writeAll();
+                return;
+            }
+        }
+        int at = firstStartingAtOrAfter(session.startMillis + 1);
+        sessions.add(at, session);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(encode(session));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Drops the index and rebuilds it from the log files
+    public synchronized void rebuild() {
+        sessions = scanLogFiles();
+        writeAll();
+    }
+
+    // ==========================================
+    //           LOADING
+    // ==========================================
+    private void ensureLoaded() {
+        if (sessions != null) return;
+        List<Session> loaded = load();
+        if (loaded == null) {
+            rebuild();
+        } else {
+            sessions = loaded;
+            reconcile();
+        }
+    }
+
+    // Adds the Log_* files missing from the index; only those are opened
+    private void reconcile() {
+        Set<String> known = new HashSet<>();
+        for (Session s : sessions) known.add(s.fileName);
+        boolean added = false;
+        for (File f : listLogFiles()) {
+            if (known.contains(f.getName())) continue;
+            Session s = scan(f);
+            if (s == null) continue;
+            sessions.add(firstStartingAtOrAfter(s.startMillis + 1), s);
+            added = true;
+        }
+        if (added) writeAll();
+    }
+
+    // Returns null if the file is missing or corrupt
+    private List<Session> load() {
+        if (!file.exists()) return null;
+        List<Session> loaded = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) return null;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readUnsignedShort();
+                } catch (EOFException end) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != in.readInt()) return null;
+                loaded.add(decode(payload));
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        Collections.sort(loaded, (a, b) -> Long.compare(a.startMillis, b.startMillis));
+        return loaded;
+    }
+
+    /**
+     * Wall-clock usage: sessions that overlap in time (several devices of one rig, each with
+     * its own log) are merged into one. The result is sorted by start; file name and
+     * counters of a merged entry are those of its first session.
+     */
+    public static List<Session> mergeOverlapping(List<Session> sessions) {
+        List<Session> sorted = new ArrayList<>(sessions);
+        Collections.sort(sorted, (a, b) -> Long.compare(a.startMillis, b.startMillis));
+        List<Session> merged = new ArrayList<>(sorted.size());
+        for (Session s : sorted) {
+            Session last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && s.startMillis <= last.endMillis) {
+                if (s.endMillis > last.endMillis) {
+                    merged.set(merged.size() - 1, new Session(last.fileName, last.startMillis, s.endMillis, last.samples, last.bytes));
+                }
+            } else {
+                merged.add(s);
+            }
+        }
+        return merged;
+    }
+
+    private List<Session> scanLogFiles() {
+        List<Session> scanned = new ArrayList<>();
+        for (File f : listLogFiles()) {
+            Session s = scan(f);
+            if (s != null) scanned.add(s);
+        }
+        Collections.sort(scanned, (a, b) -> Long.compare(a.startMillis, b.startMillis));
+        return scanned;
+    }
+
+    private File[] listLogFiles() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("Log_") && (name.endsWith(BlockLog.EXTENSION) || name.endsWith(".csv")));
+        return files != null ? files : new File[0];
+    }
+
+    // Start from the file name, end from its last write; null if it is not a readable log
+    private static Session scan(File f) {
+        try {
+            Date startDate = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).parse(f.getName().substring(4, 19));
+            if (startDate == null) return null;
+            // First CSV row is the header
+            long rows = f.getName().endsWith(BlockLog.EXTENSION) ? countBlockRows(f) : Math.max(0, countLines(f) - 1);
+            return new Session(f.getName(), startDate.getTime(), f.lastModified(), rows, f.length());
+        } catch (ParseException | IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static long countBlockRows(File f) throws IOException {
+        BlockLog log = BlockLog.open(f);
+        try {
+            return log.getRowCount();
+        } finally {
+            log.close();
+        }
+    }
+
+    private static long countLines(File f) throws IOException {
+        long lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(f)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) if (buffer[i] == '\n') lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void writeAll() {
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(MAGIC);
+            for (Session s : sessions) bytes.write(encode(s));
+            out.write(bytes.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+
+    // ==========================================
+    //           RECORDS
+    // ==========================================
+    private static byte[] encode(Session s) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeLong(s.startMillis);
+        payload.writeLong(s.endMillis);
+        payload.writeLong(s.samples);
+        payload.writeLong(s.bytes);
+        payload.writeUTF(s.fileName);
+        byte[] body = payloadBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(body.length + 6);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeShort(body.length);
+        record.write(body);
+        record.writeInt((int) crc.getValue());
+        return recordBytes.toByteArray();
+    }
+
+    private static Session decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long start = in.readLong();
+        long end = in.readLong();
+        long samples = in.readLong();
+        long bytes = in.readLong();
+        String name = in.readUTF();
+        return new Session(name, start, end, samples, bytes);
+    }
+
+    private int firstStartingAtOrAfter(long millis) {
+        int lo = 0, hi = sessions.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sessions.get(mid).startMillis < millis) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
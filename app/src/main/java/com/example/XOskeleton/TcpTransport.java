@@ -0,0 +1,59 @@
+package com.example.XOskeleton;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/** TCP connection to a simulator or bridge, addressed as "tcp://host:port". */
+public class TcpTransport implements Transport {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final String host;
+    private final int port;
+    private final Socket socket = new Socket();
+
+    public TcpTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static TcpTransport parse(String address) {
+        String hostPort = address.startsWith(TCP_SCHEME) ? address.substring(TCP_SCHEME.length()) : address;
+        int colon = hostPort.lastIndexOf(':');
+        if (colon <= 0 || colon == hostPort.length() - 1) {
+            throw new IllegalArgumentException("Expected tcp://host:port, got " + address);
+        }
+        String host = hostPort.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) host = host.substring(1, host.length() - 1); // IPv6 literal
+        return new TcpTransport(host, Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+
+    @Override
+    public void connect() throws IOException {
+        socket.setTcpNoDelay(true); // Commands are tiny; don't hold them back for Nagle
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return TCP_SCHEME + (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.XOskeleton;
+
+import android.content.Context;
+
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The connection engine: one session over one or more devices (e.g. a controller per limb).
+ *
+ * There is one per process, owned by nothing on the UI side. {@link TelemetryService} keeps
+ * the process in the foreground while a session is open, so rotation, backgrounding or the
+ * screen turning off never touch the stream or the logs. Each device gets a
+ * {@link DeviceLink} with its own reader thread, reconnects and log file. All of them publish
+ * into {@link #liveSamples}; fragments subscribe to it (through ExoViewModel) and read the
+ * same preallocated ring the receive threads write, so nothing is copied per subscriber.
+ */
+public class TelemetryConnection implements DeviceLink.Listener {
+
+    private static TelemetryConnection instance;
+
+    public static synchronized TelemetryConnection getInstance(Context context) {
+        if (instance == null) instance = new TelemetryConnection(context.getApplicationContext());
+        return instance;
+    }
+
+    // --- Live Connection Data ---
+    public final MutableLiveData<String> statusMessage = new MutableLiveData<>();
+    public final MutableLiveData<Boolean> isConnected = new MutableLiveData<>(false); // Any device up
+    public final MutableLiveData<String> liveUptime = new MutableLiveData<>("00:00:00");
+    // Live samples of every device reach the UI once per display frame, in batches (see TelemetryDispatcher)
+    public final TelemetryDispatcher liveSamples = new TelemetryDispatcher();
+
+    private final DataLogger logger;
+
+    // Devices of the current (or last) session
+    private final List<DeviceLink> links = new CopyOnWriteArrayList<>();
+    private final AtomicInteger linksUp = new AtomicInteger();
+    private volatile boolean isActive = false; // From connect() until every link has ended
+    private int linksRunning = 0;
+    private Runnable onClosed = null;
+    private final TelemetryMetrics idleMetrics = new TelemetryMetrics(); // Before the first session
+    // UI stages of the current session, whichever device the samples came from
+    private volatile LatencyHistogram uiDispatch = idleMetrics.uiDispatch;
+    private volatile LatencyHistogram chartDraw = idleMetrics.chartDraw;
+
+    // Timer for Live Uptime (from the first device up to the end of the session)
+    private Timer uptimeTimer;
+    private volatile long connectionStartTime = 0;
+
+    private TelemetryConnection(Context context) {
+        logger = new DataLogger(context);
+    }
+
+    // ==========================================
+    //           1. CONNECT / DISCONNECT
+    // ==========================================
+    /**
+     * Opens a session over the given devices: Bluetooth MAC addresses, or "tcp://host:port"
+     * for a simulator (see Transport.forAddress). Names label the devices' keys and log files
+     * when there is more than one. Returns false if a session is already open. Otherwise
+     * onClosed runs once, on any thread, when the last device of the session has ended.
+     */
+    public synchronized boolean connect(List<String> addresses, List<String> names, Runnable onClosed) {
+        if (isActive || addresses == null || addresses.isEmpty()) return false;
+        isActive = true;
+        this.onClosed = onClosed;
+        linksUp.set(0);
+        linksRunning = addresses.size();
+        statusMessage.postValue("Connecting...");
+
+        String[] labels = DeviceLink.labelsFor(names, addresses.size());
+        uiDispatch = new LatencyHistogram("ui dispatch");
+        chartDraw = new LatencyHistogram("chart draw");
+        List<DeviceLink> session = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            TelemetryMetrics metrics = new TelemetryMetrics(uiDispatch, chartDraw);
+            session.add(new DeviceLink(addresses.get(i), labels[i], logger, liveSamples, metrics, this));
+        }
+        links.clear();
+        links.addAll(session);
+        liveSamples.setDispatchLatency(uiDispatch);
+        for (DeviceLink link : session) link.start();
+        return true;
+    }
+
+    // Ends the session on every device; each closes its log on its own session thread
+    public void disconnect() {
+        for (DeviceLink link : links) link.close();
+    }
+
+    // True for the whole session, including while devices are reconnecting
+    public boolean isActive() { return isActive; }
+
+    // True if the open session streams from exactly these devices, in this order
+    public boolean isStreamingFrom(List<String> addresses) {
+        if (!isActive || addresses == null || addresses.size() != links.size()) return false;
+        for (int i = 0; i < addresses.size(); i++) {
+            if (!addresses.get(i).equals(links.get(i).getAddress())) return false;
+        }
+        return true;
+    }
+
+    // Wall-clock start of the current session (0 before the first one)
+    public long getConnectionStartTime() { return connectionStartTime; }
+
+    public DataLogger getDataLogger() { return logger; }
+
+    // ==========================================
+    //           2. DEVICE LINK EVENTS
+    // ==========================================
+    @Override
+    public void onLinkUp(DeviceLink link) {
+        if (linksUp.incrementAndGet() == 1) isConnected.postValue(true);
+        synchronized (this) {
+            if (uptimeTimer == null) startUptimeTimer();
+        }
+    }
+
+    @Override
+    public void onLinkDown(DeviceLink link) {
+        if (linksUp.decrementAndGet() == 0) isConnected.postValue(false);
+    }
+
+    @Override
+    public void onStatus(DeviceLink link, String message) {
+        String label = link.getLabel();
+        statusMessage.postValue(label == null ? message : label + ": " + message);
+    }
+
+    @Override
+    public void onEnded(DeviceLink link) {
+        Runnable closed;
+        synchronized (this) {
+            if (--linksRunning > 0) return;
+            stopUptimeTimer(); // Stop the timer
+            isActive = false;
+            closed = onClosed;
+            onClosed = null;
+        }
+        isConnected.postValue(false);
+        if (closed != null) closed.run();
+    }
+
+    // ==========================================
+    //           3. LIVE UPTIME LOGIC
+    // ==========================================
+    private void startUptimeTimer() {
+        connectionStartTime = System.currentTimeMillis();
+        uptimeTimer = new Timer();
+        uptimeTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                long millis = System.currentTimeMillis() - connectionStartTime;
+                long seconds = millis / 1000;
+                long h = seconds / 3600;
+                long m = (seconds % 3600) / 60;
+                long s = seconds % 60;
+                liveUptime.postValue(String.format(Locale.US, "%02d:%02d:%02d", h, m, s));
+            }
+        }, 0, 1000);
+    }
+
+    private void stopUptimeTimer() {
+        if (uptimeTimer != null) {
+            uptimeTimer.cancel();
+            uptimeTimer = null;
+        }
+    }
+
+    // ==========================================
+    //           4. COMMANDS & METRICS
+    // ==========================================
+    // Goes to every device of the session (e.g. the same assist level on both legs)
+    public void sendCommand(String command) {
+        boolean sent = false;
+        for (DeviceLink link : links) sent |= link.send(command);
+        if (!sent) statusMessage.postValue("Not Connected");
+    }
+
+    // Round-trip stats of the first device, null before the first connection
+    public CommandWriter getCommandWriter() {
+        return links.isEmpty() ? null : links.get(0).getCommandWriter();
+    }
+
+    // Metrics of the first device, for the overlay; the UI stages in it are the session's
+    public TelemetryMetrics getMetrics() {
+        return links.isEmpty() ? idleMetrics : links.get(0).getMetrics();
+    }
+
+    // Main thread: sample read -> chart drawn with it, for whichever device sent it
+    public LatencyHistogram getChartDrawLatency() { return chartDraw; }
+
+    public long getDroppedLogRows() {
+        long dropped = 0;
+        for (DeviceLink link : links) dropped += link.getDroppedLogRows();
+        return dropped;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.XOskeleton;
+
+/**
+ * Picks the right decoder for each frame by looking at its first payload byte,
+ * so a device may send JSON, binary, or switch between them mid-stream.
+ *
+ * A batch frame holds several samples: decode() returns the first, next() each of the
+ * others, all in the same reused sample. For any other frame next() returns null, so
+ * callers can always loop {@code for (s = decode(..); s != null; s = next())}.
+ */
+public class TelemetryDecoder {
+
+    private final JsonTelemetryParser jsonParser = new JsonTelemetryParser();
+    private final BinaryTelemetryDecoder binaryDecoder = new BinaryTelemetryDecoder();
+    private boolean inBatch = false;
+
+    /**
+     * Returns the decoded sample (owned by the decoder and reused for the next frame),
+     * or null for control frames that carry no sample, such as a binary schema.
+     */
+    public TelemetrySample decode(byte[] buffer, int offset, int length) {
+        inBatch = false;
+        if (length == 0) return null;
+        byte type = buffer[offset];
+        switch (type) {
+            case TelemetryProtocol.TYPE_SCHEMA:
+                binaryDecoder.readSchema(buffer, offset, length);
+                return null;
+            case TelemetryProtocol.TYPE_TIME_PONG:
+                return null; // Read by the link's ClockSync before it gets here
+            case TelemetryProtocol.TYPE_BINARY_SAMPLE:
+                return binaryDecoder.decodeSample(buffer, offset, length);
+            case TelemetryProtocol.TYPE_KEYFRAME:
+                return binaryDecoder.decodeKeyframe(buffer, offset, length);
+            case TelemetryProtocol.TYPE_DELTA:
+                return binaryDecoder.decodeDelta(buffer, offset, length); // null if out of step
+            case TelemetryProtocol.TYPE_BINARY_BATCH:
+                TelemetrySample first = binaryDecoder.decodeBatch(buffer, offset, length);
+                inBatch = first != null;
+                return first;
+            case TelemetryProtocol.TYPE_JSON:
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                return jsonParser.parse(buffer, offset, length);
+            default:
+                throw new IllegalArgumentException("Unknown frame type 0x" + Integer.toHexString(type & 0xFF));
+        }
+    }
+
+    // The next sample of the frame last passed to decode(), while its buffer is still valid
+    public TelemetrySample next() {
+        if (!inBatch) return null;
+        TelemetrySample sample = binaryDecoder.nextInBatch();
+        inBatch = sample != null;
+        return sample;
+    }
+
+    // See BinaryTelemetryDecoder.getDroppedDeltaCount()
+    public long getDroppedDeltaCount() { return binaryDecoder.getDroppedDeltaCount(); }
+}
@@ -0,0 +1,179 @@
+package com.example.XOskeleton;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands decoded samples from the receive thread to the UI once per display frame.
+ *
+ * The receive thread copies each sample into a preallocated single-producer/single-consumer
+ * ring (no locks, no allocation). At most one Choreographer callback is pending at a time;
+ * when it runs, every sample received since the previous frame is delivered to the
+ * listeners as one {@link Batch}. The UI thread therefore does a fixed amount of layout and
+ * drawing per frame whether the device sends 20 Hz or 1 kHz, while charts still see every
+ * sample. If the UI falls behind by a full ring, the newest samples are dropped and counted.
+ *
+ * Several receive threads (one per device) may publish; they take turns on a short lock so
+ * the ring holds one stream in arrival order. The UI side never takes that lock.
+ */
+public class TelemetryDispatcher {
+
+    public interface Listener {
+        // Runs on the main thread. The batch and its samples are only valid during the call.
+        void onBatch(Batch batch);
+    }
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final TelemetrySample[] ring;
+    private final long[] sampleMillis;
+    private final long[] receivedNanos;
+    private final int mask;
+
+    // Producers (under producerLock) own head, the consumer owns tail; each only reads the other's
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object producerLock = new Object();
+
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback frameCallback = this::onFrame;
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    private volatile LatencyHistogram dispatchLatency; // Read -> frame callback, per sample
+
+    private final List<Listener> listeners = new ArrayList<>(); // Main thread only
+    private final Batch batch = new Batch();
+
+    public TelemetryDispatcher() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TelemetryDispatcher(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new TelemetrySample[size];
+        for (int i = 0; i < size; i++) ring[i] = new TelemetrySample();
+        sampleMillis = new long[size];
+        receivedNanos = new long[size];
+        mask = size - 1;
+    }
+
+    // ==========================================
+    //           PRODUCERS (receive threads)
+    // ==========================================
+    // sampleTimeMillis: wall-clock time of the sample on the phone (see ClockSync), receivedNanosTime: read time
+    public void publish(TelemetrySample sample, long sampleTimeMillis, long receivedNanosTime) {
+        publish(sample, sample.getSchema(), sampleTimeMillis, receivedNanosTime);
+    }
+
+    // Publishes the sample's values under another schema of the same layout (e.g. device-prefixed keys)
+    public void publish(TelemetrySample sample, TelemetrySchema schema, long sampleTimeMillis, long receivedNanosTime) {
+        synchronized (producerLock) {
+            long h = head.get();
+            if (h - tail.get() > mask) {
+                dropped.incrementAndGet();
+            } else {
+                int index = (int) (h & mask);
+                TelemetrySample slot = ring[index];
+                slot.setSchema(schema); // Grows to the widest layout once, then reuses its arrays
+                slot.setValues(sample);
+                sampleMillis[index] = sampleTimeMillis;
+                receivedNanos[index] = receivedNanosTime;
+                head.lazySet(h + 1); // Publishes the slot contents to the consumer
+            }
+        }
+        if (frameScheduled.compareAndSet(false, true)) mainHandler.post(scheduleFrame);
+    }
+
+    public long getDroppedCount() { return dropped.get(); }
+
+    // Share of the ring the UI has yet to take, 0..1 (any thread)
+    public double getFill() {
+        return (head.get() - tail.get()) / (double) ring.length;
+    }
+
+    public void setDispatchLatency(LatencyHistogram histogram) { dispatchLatency = histogram; }
+
+    // ==========================================
+    //           CONSUMER (main thread)
+    // ==========================================
+    public void observe(LifecycleOwner owner, Listener listener) {
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner o) {
+                addListener(listener);
+            }
+
+            @Override
+            public void onStop(@NonNull LifecycleOwner o) {
+                listeners.remove(listener);
+            }
+
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner o) {
+                o.getLifecycle().removeObserver(this);
+            }
+        });
+    }
+
+    void addListener(Listener listener) {
+        if (listeners.isEmpty()) skipPending(); // Don't replay what arrived while nobody was looking
+        listeners.add(listener);
+    }
+
+    private void skipPending() {
+        tail.lazySet(head.get());
+    }
+
+    // Package-private so tests can play the frame callback
+    void onFrame(long frameTimeNanos) {
+        // Clear first: a sample published from here on schedules the next frame
+        frameScheduled.set(false);
+        long t = tail.get();
+        long h = head.get();
+        if (h == t) return;
+        if (listeners.isEmpty()) {
+            tail.lazySet(h);
+            return;
+        }
+        batch.start = t;
+        batch.count = (int) (h - t);
+        LatencyHistogram latency = dispatchLatency;
+        if (latency != null) {
+            long now = System.nanoTime();
+            for (int i = 0; i < batch.count; i++) latency.recordNanos(now - batch.getReceivedNanos(i));
+        }
+        for (int i = 0; i < listeners.size(); i++) listeners.get(i).onBatch(batch);
+        batch.count = 0;
+        tail.lazySet(h); // Hands the slots back to the producer
+    }
+
+    /** Every sample received since the previous frame, oldest first. */
+    public class Batch {
+        private long start;
+        private int count;
+
+        public int size() { return count; }
+
+        public TelemetrySample get(int i) { return ring[(int) ((start + i) & mask)]; }
+
+        // When the sample was taken, on the phone's clock (device timestamp once clocks are synchronized)
+        public long getSampleMillis(int i) { return sampleMillis[(int) ((start + i) & mask)]; }
+
+        // System.nanoTime() when the frame was read, for latency measurements
+        public long getReceivedNanos(int i) { return receivedNanos[(int) ((start + i) & mask)]; }
+
+        public TelemetrySample latest() { return get(count - 1); }
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.XOskeleton;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-stage latency of the live pipeline, from the device's timestamp to the chart draw,
+ * plus packet-id gaps (drops; a late packet that fills one is a reorder, not a drop) and reorders, samples the device held back for lack of flow
+ * control credit (shed, not counted as drops), and the frames the FrameDecoder (and, for
+ * keyframe/delta streams, the TelemetryDecoder) had to throw away or could not decode at all.
+ * One instance per connection.
+ *
+ * Stages:
+ *   device -> read   one-way delay from the device's timestamp to the socket read, on the clock
+ *                    synchronized by ClockSync. A device that does not answer time pings only
+ *                    gives the delay above the best seen so far (the jitter, not the delay).
+ *   parse            decoding one frame
+ *   log enqueue      building the log row and queueing it
+ *   ui dispatch      socket read -> sample handed to the UI in a frame callback
+ *   chart draw       socket read -> chart drawn with the sample
+ *
+ * Link outages within the session are recorded too: how long the successful reconnect
+ * attempt took, and how long the stream was down in total (loss -> link back up).
+ *
+ * The UI stages belong to the session, not to a device: every device of a session shares the
+ * two histograms its TelemetryConnection owns, and reports them along with its own stages.
+ */
+public class TelemetryMetrics {
+
+    public static final String EXTENSION = ".metrics.json";
+    // Ids remembered behind the newest one, so a late packet can tell a hole from a duplicate
+    private static final int ID_WINDOW = 1024;
+
+    public final LatencyHistogram deviceToRead = new LatencyHistogram("device -> read");
+    public final LatencyHistogram parse = new LatencyHistogram("parse");
+    public final LatencyHistogram logEnqueue = new LatencyHistogram("log enqueue");
+    public final LatencyHistogram uiDispatch;
+    public final LatencyHistogram chartDraw;
+
+    public final LatencyHistogram reconnect = new LatencyHistogram("reconnect");
+    public final LatencyHistogram outage = new LatencyHistogram("outage");
+
+    private final LatencyHistogram[] stages;
+
+    private final long startedMillis = System.currentTimeMillis();
+    private volatile ClockSync clock = null;
+
+    // Receive thread only
+    private TelemetrySchema schema = null;
+    private int idSlot = -1;
+    private int timestampSlot = -1;
+    private int skippedSlot = -1;
+    private long lastPacketId = -1;
+    private final long[] seenIds = new long[ID_WINDOW / 64]; // Bit per id, modulo ID_WINDOW
+    private boolean resyncIds = false;
+    private double minOffsetMillis = Double.POSITIVE_INFINITY;
+
+    private volatile long packets = 0, gaps = 0, reorders = 0, shed = 0;
+    private volatile long decodeErrors = 0;
+
+    // The current connection's decoder, plus the totals of the ones before it
+    private volatile FrameDecoder frames = null;
+    private volatile long corruptBefore = 0, resyncsBefore = 0, skippedBefore = 0;
+    private volatile TelemetryDecoder decoder = null;
+    private volatile long droppedDeltasBefore = 0;
+
+    public TelemetryMetrics() {
+        this(new LatencyHistogram("ui dispatch"), new LatencyHistogram("chart draw"));
+    }
+
+    public TelemetryMetrics(LatencyHistogram uiDispatch, LatencyHistogram chartDraw) {
+        this.uiDispatch = uiDispatch;
+        this.chartDraw = chartDraw;
+        stages = new LatencyHistogram[]{deviceToRead, parse, logEnqueue, uiDispatch, chartDraw, reconnect, outage};
+    }
+
+    // Reported along with the stages
+    public void setClock(ClockSync clock) { this.clock = clock; }
+
+    /**
+     * Called on the receive thread for every decoded sample. oneWayNanos is the synchronized
+     * device -> read delay, or -1 while the clocks are not synchronized.
+     */
+    public void onSample(TelemetrySample sample, long receivedMillis, long oneWayNanos) {
+        if (sample.getSchema() != schema) {
+            schema = sample.getSchema();
+            idSlot = schema.indexOf(TelemetryProtocol.PACKET_ID_KEY);
+            timestampSlot = schema.indexOf(TelemetryProtocol.TIMESTAMP_KEY);
+            skippedSlot = schema.indexOf(TelemetryProtocol.SKIPPED_KEY);
+        }
+        packets++;
+
+        // Samples the device held back for lack of credit (see FlowControl) are not lost ones
+        if (skippedSlot >= 0) {
+            double skipped = sample.get(skippedSlot);
+            if (skipped > 0) {
+                shed += (long) skipped;
+                if (lastPacketId >= 0) {
+                    markIds(lastPacketId + 1, lastPacketId + (long) skipped, true);
+                    lastPacketId += (long) skipped;
+                }
+            }
+        }
+
+        if (idSlot >= 0) {
+            double value = sample.get(idSlot);
+            if (!Double.isNaN(value)) onPacketId((long) value);
+        }
+        if (oneWayNanos >= 0) {
+            deviceToRead.recordNanos(oneWayNanos);
+        } else if (timestampSlot >= 0) {
+            double ts = sample.get(timestampSlot);
+            if (!Double.isNaN(ts)) {
+                if (ts < 10000000000.0) ts *= 1000.0; // Seconds -> millis, same rule as the offline plots
+                double offset = receivedMillis - ts;
+                if (offset < minOffsetMillis) minOffsetMillis = offset;
+                deviceToRead.recordNanos((long) ((offset - minOffsetMillis) * 1_000_000));
+            }
+        }
+    }
+
+    void onPacketId(long id) {
+        if (resyncIds) {
+            // First packet after a reconnect: a device that rebooted starts counting again
+            resyncIds = false;
+            if (id <= lastPacketId) lastPacketId = -1;
+        }
+        if (lastPacketId < 0) {
+            Arrays.fill(seenIds, -1L); // Nothing before the first id counts as missing
+        } else if (id > lastPacketId + 1) {
+            gaps += id - lastPacketId - 1;
+            markIds(lastPacketId + 1, id - 1, false);
+        } else if (id <= lastPacketId) {
+            reorders++;
+            // A late packet that fills a hole was counted as lost when the hole opened
+            if (id > lastPacketId - ID_WINDOW && !isSeen(id)) gaps--;
+        }
+        markIds(id, id, true);
+        if (id > lastPacketId) lastPacketId = id;
+    }
+
+    // Inclusive range; only the newest ID_WINDOW ids of it matter
+    private void markIds(long from, long to, boolean seen) {
+        from = Math.max(from, to - ID_WINDOW + 1);
+        for (long id = from; id <= to; id++) {
+            int bit = (int) (id & (ID_WINDOW - 1));
+            if (seen) seenIds[bit >>> 6] |= 1L << bit;
+            else seenIds[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+
+    private boolean isSeen(long id) {
+        int bit = (int) (id & (ID_WINDOW - 1));
+        return (seenIds[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    // Called on the receive (session) thread once a dropped link is back
+    public void onReconnected(long lostMillis, long resumedMillis, long connectNanos) {
+        reconnect.recordNanos(connectNanos);
+        outage.recordNanos((resumedMillis - lostMillis) * 1_000_000);
+        resyncIds = true;
+    }
+
+    // Called on the receive thread for a frame that arrived intact but did not decode
+    public void onDecodeError() {
+        decodeErrors++;
+    }
+
+    public long getPacketCount() { return packets; }
+
+    public long getGapCount() { return gaps; }
+
+    public long getReorderCount() { return reorders; }
+
+    public long getShedCount() { return shed; }
+
+    public long getDecodeErrorCount() { return decodeErrors; }
+
+    // Called on the session thread for each new connection's decoder
+    public void setFrameDecoder(FrameDecoder decoder) {
+        FrameDecoder previous = frames;
+        if (previous != null) {
+            corruptBefore += previous.getCorruptFrameCount();
+            resyncsBefore += previous.getResyncCount();
+            skippedBefore += previous.getSkippedBytes();
+        }
+        frames = decoder;
+    }
+
+    // Same for the sample decoder
+    public void setTelemetryDecoder(TelemetryDecoder decoder) {
+        TelemetryDecoder previous = this.decoder;
+        if (previous != null) droppedDeltasBefore += previous.getDroppedDeltaCount();
+        this.decoder = decoder;
+    }
+
+    public long getDroppedDeltaCount() {
+        TelemetryDecoder d = decoder;
+        return droppedDeltasBefore + (d != null ? d.getDroppedDeltaCount() : 0);
+    }
+
+    public long getCorruptFrameCount() {
+        FrameDecoder f = frames;
+        return corruptBefore + (f != null ? f.getCorruptFrameCount() : 0);
+    }
+
+    public long getResyncCount() {
+        FrameDecoder f = frames;
+        return resyncsBefore + (f != null ? f.getResyncCount() : 0);
+    }
+
+    public long getSkippedBytes() {
+        FrameDecoder f = frames;
+        return skippedBefore + (f != null ? f.getSkippedBytes() : 0);
+    }
+
+    public static File sidecarFor(File csv) {
+        return new File(csv.getParentFile(), csv.getName() + EXTENSION);
+    }
+
+    // ==========================================
+    //           REPORTING
+    // ==========================================
+    // Short multi-line summary for the Dev overlay
+    public void appendSummary(StringBuilder sb) {
+        sb.append(String.format(Locale.US, "%-15s %7s %7s %7s %7s%n", "ms", "p50", "p99", "max", "n"));
+        for (LatencyHistogram h : stages) {
+            sb.append(String.format(Locale.US, "%-15s %7.2f %7.2f %7.2f %7d%n", h.getName(),
+                    h.getPercentileNanos(50) / 1e6, h.getPercentileNanos(99) / 1e6, h.getMaxNanos() / 1e6, h.getCount()));
+        }
+        sb.append(String.format(Locale.US, "packets %d  lost %d  reordered %d", packets, gaps, reorders));
+        if (shed > 0) sb.append(String.format(Locale.US, "  shed %d", shed));
+        FrameDecoder f = frames;
+        if (f != null && f.getVersion() == FrameDecoder.VERSION_2 || getCorruptFrameCount() > 0) {
+            sb.append(String.format(Locale.US, "%nframes corrupt %d  resynced %d  skipped %d B",
+                    getCorruptFrameCount(), getResyncCount(), getSkippedBytes()));
+        }
+        if (getDroppedDeltaCount() > 0) {
+            sb.append(String.format(Locale.US, "%ndeltas dropped %d (waiting for a keyframe)", getDroppedDeltaCount()));
+        }
+        if (decodeErrors > 0) {
+            sb.append(String.format(Locale.US, "%nframes undecodable %d", decodeErrors));
+        }
+        ClockSync c = clock;
+        if (c != null && c.isSynced()) {
+            sb.append(String.format(Locale.US, "%nclock %+.1f ms  drift %+.1f ppm  sync rtt %.2f ms",
+                    c.getOffsetMillis(), c.getDriftPpm(), c.getBestRoundTripNanos() / 1e6));
+        }
+    }
+
+    public void exportJson(File file) throws IOException {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\n  \"started\": ").append(startedMillis)
+                .append(",\n  \"ended\": ").append(System.currentTimeMillis())
+                .append(",\n  \"packets\": ").append(packets)
+                .append(",\n  \"lost\": ").append(gaps)
+                .append(",\n  \"reordered\": ").append(reorders)
+                .append(",\n  \"shed\": ").append(shed)
+                .append(",\n  \"frames\": {\"corrupt\": ").append(getCorruptFrameCount())
+                .append(", \"resynced\": ").append(getResyncCount())
+                .append(", \"skipped_bytes\": ").append(getSkippedBytes())
+                .append(", \"dropped_deltas\": ").append(getDroppedDeltaCount())
+                .append(", \"decode_errors\": ").append(decodeErrors).append('}');
+        ClockSync c = clock;
+        if (c != null && c.isSynced()) {
+            sb.append(",\n  \"clock\": {\"offset_ms\": ").append(String.format(Locale.US, "%.3f", c.getOffsetMillis()))
+                    .append(", \"drift_ppm\": ").append(String.format(Locale.US, "%.2f", c.getDriftPpm()))
+                    .append(", \"best_rtt_ns\": ").append(c.getBestRoundTripNanos())
+                    .append(", \"exchanges\": ").append(c.getExchangeCount()).append('}');
+        }
+        sb.append(",\n  \"stages_ns\": {");
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram h = stages[i];
+            sb.append(i == 0 ? "\n" : ",\n").append("    \"").append(h.getName()).append("\": {")
+                    .append("\"count\": ").append(h.getCount())
+                    .append(", \"mean\": ").append((long) h.getMeanNanos())
+                    .append(", \"p50\": ").append(h.getPercentileNanos(50))
+                    .append(", \"p90\": ").append(h.getPercentileNanos(90))
+                    .append(", \"p99\": ").append(h.getPercentileNanos(99))
+                    .append(", \"p999\": ").append(h.getPercentileNanos(99.9))
+                    .append(", \"max\": ").append(h.getMaxNanos()).append('}');
+        }
+        sb.append("\n  }\n}\n");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+    }
+}
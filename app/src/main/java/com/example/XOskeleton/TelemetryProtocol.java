@@ -0,0 +1,99 @@
+package com.example.XOskeleton;
+
+/**
+ * Payload type markers shared with sender/telemetry_codec.py.
+ * Every payload inside a [2 bytes length][payload] frame starts with one of these.
+ */
+public class TelemetryProtocol {
+
+    // JSON packets need no marker: they always start with '{'
+    public static final byte TYPE_JSON = '{';
+
+    // [0x01][schema_id u8][field_count u16 LE][per field: type char, name_len u8, name utf8]
+    public static final byte TYPE_SCHEMA = 0x01;
+
+    // [0x02][schema_id u8][fixed-width little-endian values in schema order]
+    public static final byte TYPE_BINARY_SAMPLE = 0x02;
+
+    // N consecutive samples of one schema in one frame:
+    // [0x04][schema_id u8][count u8][base timestamp f64 LE], then per sample
+    // [timestamp delta f32 LE][the sample's values in schema order, "timestamp" left out].
+    // Sample i's "timestamp" is base + delta i, in whatever unit the device uses for it.
+    public static final byte TYPE_BINARY_BATCH = 0x04;
+    public static final int BATCH_HEADER_SIZE = 1 + 1 + 1 + 8;
+    public static final int MAX_BATCH_SIZE = 255;
+    public static final String TIMESTAMP_KEY = "timestamp";
+
+    // Keyframe/delta mode. Every frame has a sequence number, +1 (mod 256) per keyframe or delta
+    // of the same schema (each channel group keeps its own).
+    // Keyframe: [0x05][schema_id u8][seq u8][every value, as in a sample frame]
+    // Delta:    [0x06][schema_id u8][seq u8][changed bitmap, one bit per field, LSB first,
+    //           (field_count + 7) / 8 bytes][the changed values in schema order]
+    // A delta only applies on top of the schema's frame right before it; after a lost frame the
+    // app drops that schema's deltas until its next keyframe.
+    public static final byte TYPE_KEYFRAME = 0x05;
+    public static final byte TYPE_DELTA = 0x06;
+
+    // Device -> app, answering a time ping: [0x03][t0 i64 LE, echoed][t1 f64 LE][t2 f64 LE]
+    // t1/t2: device clock (same clock as the "timestamp" key) in millis when the ping arrived / the pong left
+    public static final byte TYPE_TIME_PONG = 0x03;
+    public static final int TIME_PONG_SIZE = 1 + 8 + 8 + 8;
+
+    // App -> device: [0x10][sequence u32 LE][command utf8, e.g. "SET_POWER:40"]
+    public static final byte TYPE_COMMAND = 0x10;
+
+    // App -> device: [0x11][t0 i64 LE, phone monotonic nanos]; see ClockSync
+    public static final byte TYPE_TIME_PING = 0x11;
+    public static final int TIME_PING_SIZE = 1 + 8;
+
+    // App -> device: [0x12][packet_id u32 LE][window u16 LE]. The app has handled the device's
+    // telemetry frames (everything but pongs) up to the one carrying packet_id, lost ones
+    // included; the device may have 'window' frames beyond that one in flight. A device that has
+    // seen a grant holds samples back when it gets there and reports how many under SKIPPED_KEY
+    // in the next one it sends. Held back for long (0.5 s), the device MUST send a frame anyway:
+    // if the frames in flight were lost, nothing else moves the grant on. See FlowControl.
+    public static final byte TYPE_CREDIT = 0x12;
+    public static final int CREDIT_SIZE = 1 + 4 + 2;
+    public static final String SKIPPED_KEY = "skipped";
+
+    // Telemetry key the device echoes the highest command sequence it has applied in
+    public static final String ACK_KEY = "ack";
+
+    public static final String PACKET_ID_KEY = "packet_id";
+
+    // Channel groups: a device may send slow channels (supply voltage, fault flags) in packets of
+    // their own at a lower rate instead of in every packet. Each group's packet is a layout of its
+    // own with its own TIMESTAMP_KEY; the packet keys below may appear in every group, any other
+    // key belongs to exactly one. Nothing announces the groups: a layout is a group.
+    public static boolean isPacketKey(String key) {
+        return key.equals(TIMESTAMP_KEY) || key.equals(PACKET_ID_KEY) || key.equals(ACK_KEY) || key.equals(SKIPPED_KEY);
+    }
+
+    // Log column added by the app: when the sample was taken, on the synchronized phone clock (ms)
+    public static final String PHONE_TIME_KEY = "phone_time";
+
+    // Log column added by the app on the rows that bound a link outage: its length (ms). See LogColumns.gapRow
+    public static final String LINK_GAP_KEY = "link_gap";
+
+    // Field types, named after Python struct format characters
+    public static final byte FIELD_U8 = 'B';
+    public static final byte FIELD_I16 = 'h';
+    public static final byte FIELD_I32 = 'i';
+    public static final byte FIELD_U32 = 'I';
+    public static final byte FIELD_F32 = 'f';
+    public static final byte FIELD_F64 = 'd';
+
+    private TelemetryProtocol() {}
+
+    public static int fieldWidth(byte type) {
+        switch (type) {
+            case FIELD_U8: return 1;
+            case FIELD_I16: return 2;
+            case FIELD_I32:
+            case FIELD_U32:
+            case FIELD_F32: return 4;
+            case FIELD_F64: return 8;
+            default: return -1;
+        }
+    }
+}
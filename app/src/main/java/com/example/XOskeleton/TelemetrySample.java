@@ -0,0 +1,170 @@
+package com.example.XOskeleton;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * One decoded telemetry packet: a schema plus a primitive value per slot.
+ * The decoders reuse a single instance for every frame; hand {@link #copy()} to
+ * anything that outlives the current frame (e.g. the UI thread).
+ */
+public class TelemetrySample {
+
+    private TelemetrySchema schema;
+    private double[] values;
+    // Text of JSON string leaves, whose value is NaN unless the text is a number; null until one shows up
+    private String[] texts;
+
+    public TelemetrySample() {
+        this(new TelemetrySchema(Collections.<String>emptyList()));
+    }
+
+    public TelemetrySample(TelemetrySchema schema) {
+        this.schema = schema;
+        this.values = new double[schema.size()];
+    }
+
+    public TelemetrySchema getSchema() { return schema; }
+
+    // Direct access for decoders and same-thread consumers, indexed by schema slot. May be longer
+    // than the schema (see setSchema): slots from getSchema().size() on are leftovers
+    public double[] getValues() { return values; }
+
+    public double get(int slot) { return values[slot]; }
+
+    public double get(String key, double fallback) {
+        int slot = schema.indexOf(key);
+        return slot >= 0 ? values[slot] : fallback;
+    }
+
+    public String getText(int slot) { return texts != null ? texts[slot] : null; }
+
+    public void setText(int slot, String text) {
+        if (texts == null) {
+            if (text == null) return;
+            texts = new String[values.length];
+        }
+        texts[slot] = text;
+    }
+
+    // Switches to a new layout. The arrays only ever grow, so a record that alternates between
+    // layouts (channel groups) allocates once per size, not once per switch
+    public void setSchema(TelemetrySchema newSchema) {
+        if (newSchema == schema) return;
+        schema = newSchema;
+        if (values.length < newSchema.size()) {
+            values = new double[newSchema.size()];
+            texts = null;
+        } else if (texts != null) {
+            Arrays.fill(texts, null);
+        }
+    }
+
+    // Copies the values (and texts) of a sample of the same layout
+    public void setValues(TelemetrySample source) {
+        int size = schema.size();
+        System.arraycopy(source.values, 0, values, 0, size);
+        if (source.texts != null) {
+            if (texts == null) texts = new String[values.length];
+            System.arraycopy(source.texts, 0, texts, 0, size);
+        } else if (texts != null) {
+            Arrays.fill(texts, 0, size, null);
+        }
+    }
+
+    public TelemetrySample copy() {
+        TelemetrySample copy = new TelemetrySample(schema);
+        copy.setValues(this);
+        return copy;
+    }
+
+    public String formatValue(int slot) {
+        StringBuilder sb = new StringBuilder(16);
+        appendValue(sb, slot);
+        return sb.toString();
+    }
+
+    public void appendValue(StringBuilder sb, int slot) {
+        double value = values[slot];
+        if (Double.isNaN(value) && texts != null && texts[slot] != null) {
+            sb.append(texts[slot]);
+        } else if (schema.isSinglePrecision(slot) && value != (long) value && Math.abs(value) >= 1e-3 && Math.abs(value) < 1e7) {
+            if (!appendFixed(sb, value, true)) sb.append((float) value);
+        } else {
+            appendValue(sb, value);
+        }
+    }
+
+    // Writes a value without scientific notation for timestamps and without ".0" for counters
+    public static void appendValue(StringBuilder sb, double value) {
+        if (Double.isNaN(value)) {
+            sb.append("NaN");
+            return;
+        }
+        double abs = Math.abs(value);
+        if (abs < 1e15 && value == (long) value) {
+            sb.append((long) value);
+        } else if (abs >= 1e-3 && abs < 1e7) {
+            if (!appendFixed(sb, value, false)) sb.append(value); // 16-17 digit noise only
+        } else if (abs >= 1e7 && abs < MAX_MICROS) {
+            // Epoch seconds (or millis): keep microsecond resolution, trim trailing zeros. Whole
+            // part and fraction apart, as abs * 1e6 is already off by tens at epoch millis
+            long whole = (long) abs;
+            long micros = whole * 1_000_000 + Math.round((abs - whole) * 1_000_000d);
+            if (value < 0) sb.append('-');
+            sb.append(micros / 1_000_000);
+            int fraction = (int) (micros % 1_000_000);
+            if (fraction != 0) {
+                sb.append('.');
+                int div = 100_000;
+                while (fraction != 0) {
+                    sb.append((char) ('0' + fraction / div));
+                    fraction %= div;
+                    div /= 10;
+                }
+            }
+        } else {
+            sb.append(value);
+        }
+    }
+
+    // Micros of anything below this fit a long (Long.MAX_VALUE is ~9.22e18); epoch millis stay
+    // below it until the year 2255. Larger values take the generic formatter
+    private static final double MAX_MICROS = 9e12;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    /**
+     * Appends the fewest decimals that read back as 'value' (as a float when 'single'), written
+     * digit by digit so nothing is allocated. Returns false, appending nothing, if that needs more
+     * digits than a long holds exactly (m / 10^d is then no longer a correctly rounded parse).
+     */
+    private static boolean appendFixed(StringBuilder sb, double value, boolean single) {
+        double abs = Math.abs(value);
+        for (int d = 1; d < POW10.length && abs * POW10[d] < 1e15; d++) {
+            long m = Math.round(abs * POW10[d]);
+            // The product is rounded, so the right digits may be one off
+            if (!readsBack(m, d, abs, single)) {
+                if (readsBack(m - 1, d, abs, single)) m--;
+                else if (readsBack(m + 1, d, abs, single)) m++;
+                else continue;
+            }
+            long scale = (long) POW10[d];
+            if (value < 0) sb.append('-');
+            sb.append(m / scale).append('.');
+            long fraction = m % scale;
+            while (fraction % 10 == 0 && d > 1) { // Trailing zeros (a shorter d would have matched)
+                fraction /= 10;
+                scale /= 10;
+                d--;
+            }
+            for (long div = scale / 10; div > 0; div /= 10) sb.append((char) ('0' + fraction / div % 10));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean readsBack(long m, int d, double abs, boolean single) {
+        double parsed = m / POW10[d];
+        return single ? (float) parsed == (float) abs : parsed == abs;
+    }
+}
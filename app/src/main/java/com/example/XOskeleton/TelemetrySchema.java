@@ -0,0 +1,72 @@
+package com.example.XOskeleton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The flattened key layout of a telemetry packet, e.g. "packet_id", "right(1).Position".
+ * Each key owns one slot in {@link TelemetrySample#getValues()}. Immutable, so it can be
+ * shared between the receive thread and the UI.
+ */
+public class TelemetrySchema {
+
+    private final String[] keys;
+    private final String[][] segments;
+    private final boolean[] singlePrecision;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    public TelemetrySchema(List<String> keys) {
+        this(keys, null);
+    }
+
+    // singlePrecision marks slots that arrived as float32, so they print as "12.34" not "12.340000152"
+    public TelemetrySchema(List<String> keys, boolean[] singlePrecision) {
+        this.keys = keys.toArray(new String[0]);
+        this.singlePrecision = singlePrecision != null ? singlePrecision.clone() : new boolean[this.keys.length];
+        this.segments = new String[this.keys.length][];
+        for (int i = 0; i < this.keys.length; i++) {
+            segments[i] = this.keys[i].split("\\.");
+            slots.put(this.keys[i], i);
+        }
+    }
+
+    public int size() { return keys.length; }
+
+    public String getKey(int slot) { return keys[slot]; }
+
+    // "right(1).Position" -> ["right(1)", "Position"]
+    public String[] getSegments(int slot) { return segments[slot]; }
+
+    public boolean isSinglePrecision(int slot) { return singlePrecision[slot]; }
+
+    public int indexOf(String key) {
+        Integer slot = slots.get(key);
+        return slot != null ? slot : -1;
+    }
+
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    public List<String> getSortedKeys() {
+        List<String> sorted = new ArrayList<>(Arrays.asList(keys));
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    // Same layout with every key under "prefix.", e.g. one device's keys in a multi-device stream
+    public TelemetrySchema withPrefix(String prefix) {
+        List<String> prefixed = new ArrayList<>(keys.length);
+        for (String key : keys) prefixed.add(prefix + "." + key);
+        return new TelemetrySchema(prefixed, singlePrecision);
+    }
+
+    public boolean hasSameLayout(TelemetrySchema other) {
+        return other != null && Arrays.equals(keys, other.keys)
+                && Arrays.equals(singlePrecision, other.singlePrecision);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.XOskeleton;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Foreground service that owns the lifetime of a {@link TelemetryConnection} session.
+ *
+ * It is started when a session is requested and stops itself when that session ends.
+ * While it runs, the process is foreground and holds a partial wake lock, so the read loop
+ * and the log writer keep going with the screen off or the Activity gone.
+ */
+public class TelemetryService extends Service {
+
+    private static final String ACTION_CONNECT = "com.example.XOskeleton.action.CONNECT";
+    private static final String ACTION_DISCONNECT = "com.example.XOskeleton.action.DISCONNECT";
+    private static final String EXTRA_ADDRESSES = "addresses";
+    private static final String EXTRA_NAMES = "names";
+
+    private static final String CHANNEL_ID = "telemetry";
+    private static final int NOTIFICATION_ID = 1;
+    // The wake lock is held in slices renewed while a session runs, so a session that never
+    // reports its end cannot keep the CPU awake forever
+    private static final long WAKE_LOCK_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TelemetryConnection connection;
+    private PowerManager.WakeLock wakeLock;
+    private Object activeSession = null; // Token of the session this service is running for
+    private Intent pendingConnect = null; // Different rig requested while a session was open
+
+    private final Runnable renewWakeLock = new Runnable() {
+        @Override
+        public void run() {
+            if (activeSession == null) return;
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+            mainHandler.postDelayed(this, WAKE_LOCK_TIMEOUT_MS / 2);
+        }
+    };
+
+    // ==========================================
+    //           ENTRY POINTS
+    // ==========================================
+    // One session over all of these devices; an open session over a different set is closed first
+    public static void connect(Context context, ArrayList<String> addresses, ArrayList<String> names) {
+        Intent intent = new Intent(context, TelemetryService.class)
+                .setAction(ACTION_CONNECT)
+                .putStringArrayListExtra(EXTRA_ADDRESSES, addresses)
+                .putStringArrayListExtra(EXTRA_NAMES, names);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    // ==========================================
+    //           SERVICE LIFECYCLE
+    // ==========================================
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        connection = TelemetryConnection.getInstance(this);
+        PowerManager power = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = power.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "XOskeleton:telemetry");
+        wakeLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+
+        if (ACTION_CONNECT.equals(action)) {
+            List<String> addresses = intent.getStringArrayListExtra(EXTRA_ADDRESSES);
+            // startForegroundService() promises a startForeground() call, even for a request we ignore
+            startInForeground(addresses);
+            if (connection.isActive() && !connection.isStreamingFrom(addresses)) {
+                // The rig changed: close this session, open the new one once it is down
+                pendingConnect = intent;
+                connection.disconnect();
+            } else {
+                startSession(intent);
+            }
+        } else if (ACTION_DISCONNECT.equals(action)) {
+            pendingConnect = null;
+            connection.disconnect();
+        }
+
+        if (activeSession == null && !connection.isActive()) stopService();
+        // Reconnecting after the process was killed is the user's call, not ours
+        return START_NOT_STICKY;
+    }
+
+    private void startSession(Intent intent) {
+        Object session = new Object();
+        List<String> addresses = intent.getStringArrayListExtra(EXTRA_ADDRESSES);
+        List<String> names = intent.getStringArrayListExtra(EXTRA_NAMES);
+        if (connection.connect(addresses, names, () -> mainHandler.post(() -> onConnectionClosed(session)))) {
+            activeSession = session;
+            mainHandler.removeCallbacks(renewWakeLock);
+            renewWakeLock.run();
+        }
+    }
+
+    private void onConnectionClosed(Object session) {
+        if (session != activeSession) return; // A newer session owns the service now
+        activeSession = null;
+        if (pendingConnect != null) {
+            Intent next = pendingConnect;
+            pendingConnect = null;
+            startInForeground(next.getStringArrayListExtra(EXTRA_ADDRESSES));
+            startSession(next);
+            if (activeSession != null) return;
+        }
+        stopService();
+    }
+
+    private void stopService() {
+        mainHandler.removeCallbacks(renewWakeLock);
+        if (wakeLock.isHeld()) wakeLock.release();
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
+    @Override
+    public void onDestroy() {
+        mainHandler.removeCallbacks(renewWakeLock);
+        if (wakeLock.isHeld()) wakeLock.release();
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null; // Fragments reach the connection through ExoViewModel
+    }
+
+    // ==========================================
+    //           NOTIFICATION
+    // ==========================================
+    private void startInForeground(List<String> addresses) {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager.getNotificationChannel(CHANNEL_ID) == null) {
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Telemetry stream", NotificationManager.IMPORTANCE_LOW));
+        }
+
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class).setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP),
+                PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent stop = PendingIntent.getService(this, 1,
+                new Intent(this, TelemetryService.class).setAction(ACTION_DISCONNECT),
+                PendingIntent.FLAG_IMMUTABLE);
+
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.reconnect)
+                .setContentTitle(addresses != null && addresses.size() > 1 ? addresses.size() + " exoskeleton units" : "Exoskeleton")
+                .setContentText(addresses != null && !addresses.isEmpty()
+                        ? "Streaming and logging from " + TextUtils.join(", ", addresses) : "Streaming and logging")
+                .setContentIntent(open)
+                .addAction(0, "Disconnect", stop)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+
+        ServiceCompat.startForeground(this, NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.XOskeleton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A byte stream to the exoskeleton. The read loop, decoders and logger only ever see
+ * these streams, so the same pipeline runs over Bluetooth or over TCP to a simulator.
+ */
+public interface Transport extends Closeable {
+
+    String TCP_SCHEME = "tcp://";
+
+    // Blocks until connected
+    void connect() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * "tcp://host:port" opens a TCP connection (e.g. to sender/Sender.py --transport tcp);
+     * anything else is taken as a Bluetooth MAC address.
+     */
+    static Transport forAddress(String address) {
+        if (address.startsWith(TCP_SCHEME)) return TcpTransport.parse(address);
+        return new RfcommTransport(address);
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.XOskeleton;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlockLogTest {
+
+    private static final List<String> NAMES = Arrays.asList("packet_id", "pos", "torque", "noise", "phone_time");
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xo-blocklog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    // Counter, 2-decimal JSON value, float telemetry, arbitrary double, time with jitter; some rows without any value
+    private static double[][] rows(int count) {
+        Random random = new Random(7);
+        double[][] rows = new double[count][];
+        for (int i = 0; i < count; i++) {
+            if (i % 1000 == 999) {
+                double[] gap = new double[NAMES.size()];
+                Arrays.fill(gap, Double.NaN);
+                rows[i] = gap;
+                continue;
+            }
+            rows[i] = new double[]{
+                    i,
+                    Math.round(50 + 40 * Math.sin(i * 0.01) * 100) / 100.0,
+                    (float) (random.nextGaussian() * 3),
+                    random.nextDouble(),
+                    1767268800000.0 + i * 5 + random.nextInt(1000) / 1000.0
+            };
+        }
+        return rows;
+    }
+
+    private File write(double[][] rows) throws IOException {
+        File file = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+        BlockLog.Writer writer = new BlockLog.Writer(file, NAMES, NAMES.size() - 1);
+        try {
+            for (double[] row : rows) writer.append(row);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    // What a killed writer leaves behind: the blocks without the index after them
+    private static void dropIndex(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] indexOffset = new byte[8];
+            raf.seek(raf.length() - 16);
+            raf.readFully(indexOffset);
+            raf.setLength(ByteBuffer.wrap(indexOffset).order(ByteOrder.LITTLE_ENDIAN).getLong());
+        }
+    }
+
+    @Test
+    public void roundTripsEveryValueExactly() throws IOException {
+        double[][] rows = rows(10_000);
+        BlockLog log = BlockLog.open(write(rows));
+        try {
+            assertEquals(NAMES, log.getColumnNames());
+            assertEquals(NAMES.size() - 1, log.getTimeColumn());
+            assertEquals(rows.length, log.getRowCount());
+            assertEquals(3, log.getBlockCount());
+
+            double[][] block = new double[NAMES.size()][BlockLog.BLOCK_ROWS];
+            int at = 0;
+            for (int b = 0; b < log.getBlockCount(); b++) {
+                int n = log.readBlock(b, block);
+                for (int r = 0; r < n; r++, at++) {
+                    for (int c = 0; c < NAMES.size(); c++) {
+                        assertEquals("row " + at + " col " + c,
+                                Double.doubleToLongBits(rows[at][c]), Double.doubleToLongBits(block[c][r]));
+                    }
+                }
+            }
+            assertEquals(rows.length, at);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void readRangeReturnsOnlyRowsInTheRange() throws IOException {
+        double[][] rows = rows(20_000);
+        BlockLog log = BlockLog.open(write(rows));
+        try {
+            double from = rows[9000][4], to = rows[9500][4];
+            double[][] range = log.readRange(from, to);
+            assertEquals(501, range[0].length);
+            assertEquals(9000, range[0][0], 0);
+            assertEquals(9500, range[0][range[0].length - 1], 0);
+
+            // The block index brackets the range
+            assertTrue(log.getBlockFirstTime(2) <= from && log.getBlockLastTime(2) >= to);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void unclosedLogIsReadByScanningBlocks() throws IOException {
+        double[][] rows = rows(5000);
+        File file = write(rows);
+        dropIndex(file);
+        // It can also leave half a block behind
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[]{10, 0, 0, 0, 1, 0});
+        }
+        BlockLog log = BlockLog.open(file);
+        try {
+            assertEquals(rows.length, log.getRowCount());
+            assertEquals(2, log.getBlockCount());
+            assertEquals(rows[BlockLog.BLOCK_ROWS][4], log.getBlockFirstTime(1), 0);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void addedColumnsAreNaNBeforeTheirSegment() throws IOException {
+        double[][] rows = rows(3000);
+        File file = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+        List<String> extra = Arrays.asList("knee.pos", "knee.torque");
+        for (boolean close : new boolean[]{true, false}) {
+            BlockLog.Writer writer = new BlockLog.Writer(file, NAMES, NAMES.size() - 1);
+            try {
+                for (int i = 0; i < 1000; i++) writer.append(rows[i]);
+                writer.addColumns(extra);
+                for (int i = 1000; i < rows.length; i++) {
+                    double[] row = Arrays.copyOf(rows[i], NAMES.size() + extra.size());
+                    row[NAMES.size()] = i;
+                    row[NAMES.size() + 1] = -i;
+                    // A row queued before the writer saw the new columns is shorter
+                    writer.append(i == 1000 ? rows[i] : row);
+                }
+            } finally {
+                writer.close();
+            }
+            if (!close) dropIndex(file); // The added names are then only in the segment
+
+            BlockLog log = BlockLog.open(file);
+            try {
+                assertEquals("closed " + close, 7, log.getColumnNames().size());
+                assertEquals(extra, log.getColumnNames().subList(5, 7));
+                assertEquals(2, log.getBlockCount());
+                double[][] block = new double[7][BlockLog.BLOCK_ROWS];
+                log.readBlock(0, block);
+                assertTrue(Double.isNaN(block[5][0]) && Double.isNaN(block[6][999]));
+                assertEquals(rows[999][4], block[4][999], 0);
+                log.readBlock(1, block);
+                assertTrue(Double.isNaN(block[5][0]));
+                assertEquals(1001, block[5][1], 0);
+                assertEquals(-2999, block[6][1999], 0);
+                assertEquals(rows[2999][4], block[4][1999], 0);
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    @Test
+    public void streamsReadBackInTimeOrder() throws IOException {
+        // A fast group (packet_id, pos) every 5 ms and a slow one (noise) every 50 ms, each with its time
+        File file = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+        BlockLog.Writer writer = new BlockLog.Writer(file, NAMES, NAMES.size() - 1);
+        try {
+            int fast = writer.addStream(new int[]{0, 1, 4});
+            int slow = writer.addStream(new int[]{3, 4});
+            for (int i = 0; i < 10_000; i++) {
+                double time = 1767268800000.0 + i * 5;
+                writer.append(fast, new double[]{i, i * 0.5, time});
+                if (i % 10 == 0) writer.append(slow, new double[]{-i, time + 1});
+            }
+            writer.append(new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN});
+        } finally {
+            writer.close();
+        }
+
+        BlockLog log = BlockLog.open(file);
+        try {
+            assertEquals(11_001, log.getRowCount());
+            // The slow stream's only block comes after the fast stream's: read in time order all the same
+            double from = 1767268800000.0 + 4000 * 5, to = from + 100;
+            double[][] range = log.readRange(from, to);
+            assertEquals(21 + 2, range[0].length);
+            for (int r = 1; r < range[0].length; r++) assertTrue(range[4][r] >= range[4][r - 1]);
+            assertEquals(4000, range[0][0], 0);
+            assertTrue(Double.isNaN(range[3][0]) && Double.isNaN(range[2][0]));
+            assertEquals(-4000, range[3][1], 0);
+            assertTrue(Double.isNaN(range[0][1]));
+        } finally {
+            log.close();
+        }
+
+        ColumnarLog columns = ColumnarLog.open(ColumnarLog.convertBlockLog(file));
+        assertEquals(11_001, columns.getRowCount());
+        double last = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < 11_000; r++) {
+            double time = columns.getColumn(4).get(r);
+            assertTrue("row " + r, time >= last);
+            last = time;
+        }
+        assertEquals(-9990, columns.getColumn(3).get(10_990), 0);
+        assertTrue(Double.isNaN(columns.getColumn(3).get(10_991)));
+        assertTrue(Double.isNaN(columns.getColumn(4).get(11_000))); // The row without a time stays last
+    }
+
+    @Test
+    public void reconnectGapSurvivesReadRange() throws IOException {
+        // As DeviceLink writes an outage: samples up to 1000, the two gap rows once back, samples from 1400
+        List<String> names = Arrays.asList("packet_id", "pos", "noise", "phone_time", "link_gap");
+        File file = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+        double start = 1767268800000.0, lost = start + 1000 * 5 + 2, resumed = start + 1400 * 5 - 2;
+        BlockLog.Writer writer = new BlockLog.Writer(file, names, 3);
+        try {
+            int fast = writer.addStream(new int[]{0, 1, 3});
+            int gap = writer.addStream(new int[]{3, 4});
+            for (int i = 0; i < 2000; i++) {
+                if (i > 1000 && i < 1400) continue;
+                if (i == 1400) {
+                    writer.append(gap, new double[]{lost, resumed - lost});
+                    writer.append(gap, new double[]{resumed, resumed - lost});
+                }
+                writer.append(fast, new double[]{i, i * 0.5, start + i * 5});
+            }
+        } finally {
+            writer.close();
+        }
+
+        BlockLog log = BlockLog.open(file);
+        try {
+            double[][] range = log.readRange(start + 990 * 5, start + 1410 * 5);
+            assertEquals(11 + 2 + 11, range[0].length);
+            assertEquals(1000, range[0][10], 0);
+            assertEquals(lost, range[3][11], 0);
+            assertEquals(resumed, range[3][12], 0);
+            assertEquals(resumed - lost, range[4][11], 0);
+            assertEquals(resumed - lost, range[4][12], 0);
+            assertTrue(Double.isNaN(range[0][11]) && Double.isNaN(range[1][12]));
+            assertEquals(1400, range[0][13], 0);
+            assertTrue(Double.isNaN(range[4][13]));
+
+            // Either end alone still carries the outage
+            range = log.readRange(resumed - 1, resumed + 1);
+            assertEquals(1, range[0].length);
+            assertEquals(resumed - lost, range[4][0], 0);
+            assertEquals(0, log.readRange(lost + 1, resumed - 1)[0].length);
+        } finally {
+            log.close();
+        }
+    }
+
+    // ==========================================
+    //           SENDER FIXTURE
+    // ==========================================
+    // sender/test_xlog.py reads this file back; rewrite it with writeFixture() when the format changes
+    static final File FIXTURE = new File("../sender/testdata/session.xlog");
+    static final int FIXTURE_ROWS = 5000;
+    static final double FIXTURE_START = 1767268800000.0;
+
+    /**
+     * Every encoding and layout change a session can hold: a counter and a clock (decimal
+     * deltas of deltas), a 2-place decimal, float telemetry, an arbitrary double with a NaN,
+     * a slow stream, and link_gap added mid-file with an outage's two rows.
+     */
+    static void writeFixture(File file) throws IOException {
+        List<String> names = Arrays.asList("packet_id", "pos", "torque", "noise", "phone_time");
+        BlockLog.Writer writer = new BlockLog.Writer(file, names, 4);
+        try {
+            int fast = writer.addStream(new int[]{0, 1, 2, 4});
+            int slow = writer.addStream(new int[]{3, 4});
+            for (int i = 0; i < FIXTURE_ROWS; i++) {
+                double time = FIXTURE_START + i * 5;
+                if (i == 3000) {
+                    writer.addColumns(Arrays.asList("link_gap"));
+                    int gap = writer.addStream(new int[]{4, 5});
+                    writer.append(gap, new double[]{time - 2, 100});
+                    writer.append(gap, new double[]{time + 98, 100});
+                }
+                writer.append(fast, new double[]{i, i / 4.0, (float) (i * 0.1), time});
+                if (i % 10 == 0) writer.append(slow, new double[]{i == 500 ? Double.NaN : 1.0 / (i + 3), time + 1});
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void senderFixtureReadsBack() throws IOException {
+        File fresh = new File(dir, "fixture" + BlockLog.EXTENSION);
+        writeFixture(fresh);
+        assertTrue("missing " + FIXTURE.getAbsolutePath(), FIXTURE.isFile());
+        for (File file : new File[]{fresh, FIXTURE}) {
+            BlockLog log = BlockLog.open(file);
+            try {
+                assertEquals(Arrays.asList("packet_id", "pos", "torque", "noise", "phone_time", "link_gap"), log.getColumnNames());
+                assertEquals(FIXTURE_ROWS + FIXTURE_ROWS / 10 + 2, log.getRowCount());
+                double[][] rows = log.readRange(FIXTURE_START + 2990 * 5, FIXTURE_START + 3000 * 5);
+                assertEquals(11 + 1 + 1, rows[0].length);
+                assertEquals(2990, rows[0][0], 0);
+                assertEquals(747.5, rows[1][0], 0);
+                assertEquals((float) (2990 * 0.1), rows[2][0], 0);
+                assertEquals(1.0 / 2993, rows[3][1], 0);
+                assertEquals(100, rows[5][11], 0); // Lost 2 ms before sample 3000
+                assertEquals(3000, rows[0][12], 0);
+                assertTrue(Double.isNaN(log.readRange(FIXTURE_START + 2501, FIXTURE_START + 2501)[3][0]));
+            } finally {
+                log.close();
+            }
+        }
+    }
+
+    @Test
+    public void conversionMatchesReadRange() throws IOException {
+        // Three streams' blocks interleave in the file; the sidecar holds them in time order
+        File file = new File(dir, "fixture" + BlockLog.EXTENSION);
+        writeFixture(file);
+        ColumnarLog columns = ColumnarLog.open(ColumnarLog.convertBlockLog(file));
+        BlockLog log = BlockLog.open(file);
+        try {
+            double[][] all = log.readRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            assertEquals(all[0].length, columns.getRowCount());
+            for (int c = 0; c < all.length; c++) {
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (int r = 0; r < all[c].length; r++) {
+                    assertEquals("column " + c + " row " + r, all[c][r], columns.getColumn(c).get(r), 0);
+                    if (!Double.isNaN(all[c][r])) {
+                        min = Math.min(min, all[c][r]);
+                        max = Math.max(max, all[c][r]);
+                    }
+                }
+                assertEquals(min, columns.getMin(c), 0);
+                assertEquals(max, columns.getMax(c), 0);
+            }
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptBlockFailsItsChecksum() throws IOException {
+        File file = write(rows(100));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long at = 100; // Inside the first block's compressed bytes
+            raf.seek(at);
+            int b = raf.read();
+            raf.seek(at);
+            raf.write(b ^ 0xFF);
+        }
+        BlockLog log = BlockLog.open(file);
+        try {
+            log.readBlock(0, new double[NAMES.size()][BlockLog.BLOCK_ROWS]);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void decimalScaleFindsFewestPlaces() {
+        assertEquals(0, BlockLog.decimalScale(new double[]{1, 2, -30}, 3));
+        assertEquals(2, BlockLog.decimalScale(new double[]{1.25, 0.1, 3}, 3));
+        assertEquals(-1, BlockLog.decimalScale(new double[]{Math.PI}, 1));
+        assertEquals(-1, BlockLog.decimalScale(new double[]{Double.NaN}, 1));
+    }
+}
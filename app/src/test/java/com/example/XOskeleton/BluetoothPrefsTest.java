@@ -0,0 +1,32 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BluetoothPrefsTest {
+
+    @Test
+    public void devicesRoundTrip() {
+        List<String> addresses = Arrays.asList("00:11:22:33:44:55", "tcp://10.0.2.2:5555", "AA:BB:CC:DD:EE:FF");
+        List<String> names = Arrays.asList("XO Left", "Sim\ttab\nnewline", "back\\slash\\t not a tab");
+        List<String[]> devices = BluetoothPrefs.decodeDevices(BluetoothPrefs.encodeDevices(addresses, names));
+        assertEquals(3, devices.size());
+        for (int i = 0; i < devices.size(); i++) {
+            assertEquals(addresses.get(i), devices.get(i)[0]);
+            assertEquals(names.get(i), devices.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void linesSavedBeforeEscapingStillRead() {
+        List<String[]> devices = BluetoothPrefs.decodeDevices("00:11:22:33:44:55\tXO Left\n\nAA:BB:CC:DD:EE:FF");
+        assertEquals(2, devices.size());
+        assertEquals("XO Left", devices.get(0)[1]);
+        assertEquals("AA:BB:CC:DD:EE:FF", devices.get(1)[0]);
+        assertEquals("Unknown Device", devices.get(1)[1]);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChannelStateTest {
+
+    private static TelemetrySample sample(TelemetrySchema schema, double... values) {
+        TelemetrySample sample = new TelemetrySample(schema);
+        System.arraycopy(values, 0, sample.getValues(), 0, values.length);
+        return sample;
+    }
+
+    private static TelemetrySchema schema(String... keys) {
+        return new TelemetrySchema(Arrays.asList(keys));
+    }
+
+    @Test
+    public void groupsKeepTheirNewestValues() {
+        TelemetrySchema fast = schema("timestamp", "packet_id", "knee.pos");
+        TelemetrySchema slow = schema("timestamp", "knee.voltage", "knee.fault");
+        ChannelState state = new ChannelState();
+
+        assertTrue(state.update(sample(slow, 1000, 24.1, 0), 1000));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i == 0, state.update(sample(fast, 1000 + i * 10, i, i * 0.5), 1000 + i * 10));
+        }
+        // Sharing "timestamp" does not make the fast group replace the slow one
+        assertEquals(2, state.size());
+        assertSame(fast, state.get(0).getSchema());
+        assertEquals(24.5, state.get(0).get(2), 0);
+        assertEquals(1490, state.getSampleMillis(0));
+        assertEquals(24.1, state.get(1).get("knee.voltage", -1), 0);
+        assertEquals(1000, state.getSampleMillis(1));
+    }
+
+    @Test
+    public void newLayoutWithTheSameChannelReplacesTheOld() {
+        ChannelState state = new ChannelState();
+        state.update(sample(schema("timestamp", "knee.pos"), 1, 2), 1);
+        state.update(sample(schema("timestamp", "knee.voltage"), 1, 24), 1);
+        state.update(sample(schema("timestamp", "knee.pos", "knee.torque"), 2, 3, 4), 2);
+        assertEquals(2, state.size());
+        assertEquals(3, state.get(0).get("knee.pos", -1), 0);
+        assertEquals(24, state.get(1).get("knee.voltage", -1), 0);
+
+        for (int i = 0; i < ChannelState.MAX_LAYOUTS + 2; i++) state.update(sample(schema("timestamp", "k" + i), i, i), i);
+        assertEquals(ChannelState.MAX_LAYOUTS, state.size());
+        assertEquals(ChannelState.MAX_LAYOUTS + 1, state.get(0).get(1), 0);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    // Device clock: wall millis 12.5 s ahead of the phone and 80 ppm fast
+    private static final double OFFSET_MS = 12_500;
+    private static final double DRIFT = 80e-6;
+    private static final long PHONE_START = 5_000_000_000L;
+
+    private static double deviceMillis(long phoneNanos) {
+        return 1.7e12 + OFFSET_MS + (phoneNanos - PHONE_START) / 1e6 * (1 + DRIFT);
+    }
+
+    @Test
+    public void estimatesOffsetAndDriftThroughJitteryLinks() {
+        ClockSync clock = new ClockSync();
+        Random random = new Random(7);
+        long t = PHONE_START;
+        for (int i = 0; i < 600; i++, t += 1_000_000_000L) {
+            // 4 ms each way, plus queueing of up to 30 ms on either leg
+            long out = 4_000_000L + (random.nextInt(4) == 0 ? 0 : random.nextInt(30_000_000));
+            long back = 4_000_000L + (random.nextInt(4) == 0 ? 0 : random.nextInt(30_000_000));
+            double t1 = deviceMillis(t + out);
+            double t2 = deviceMillis(t + out + 200_000);
+            clock.onExchange(t, t1, t2, t + out + 200_000 + back);
+        }
+        assertTrue(clock.isSynced());
+        assertEquals(80, clock.getDriftPpm(), 20);
+        assertEquals(8_000_000, clock.getBestRoundTripNanos(), 1_000_000);
+
+        long now = t;
+        assertEquals(deviceMillis(now), clock.toDeviceMillis(now), 1.0);
+        assertEquals(now, clock.toPhoneNanos(deviceMillis(now)), 1_000_000);
+    }
+
+    @Test
+    public void samplesAreMappedAndNeverLaterThanTheirRead() {
+        ClockSync clock = new ClockSync();
+        TelemetrySample sample = new TelemetrySample(new TelemetrySchema(Arrays.asList("packet_id", "timestamp")));
+
+        // Not synced yet: read time
+        sample.getValues()[1] = deviceMillis(PHONE_START) / 1000;
+        assertEquals(PHONE_START + 5_000_000, clock.samplePhoneNanos(sample, PHONE_START + 5_000_000));
+
+        long t = PHONE_START + 10_000_000;
+        clock.onExchange(t, deviceMillis(t + 2_000_000), deviceMillis(t + 2_000_000), t + 4_000_000);
+
+        // A timestamp in seconds, taken 3 ms before it was read
+        long read = t + 50_000_000;
+        sample.getValues()[1] = deviceMillis(read - 3_000_000) / 1000;
+        assertEquals(read - 3_000_000, clock.samplePhoneNanos(sample, read), 100_000);
+
+        // A device clock running ahead of the estimate still can't put a sample after its read
+        sample.getValues()[1] = deviceMillis(read + 60_000_000) / 1000;
+        assertEquals(read + 10_000_000, clock.samplePhoneNanos(sample, read + 10_000_000));
+    }
+
+    @Test
+    public void timestampUnitFollowsTheDeviceClock() {
+        double now = 1.7e12;
+        assertEquals(1000, ClockSync.scaleFor(now / 1000, now), 0);
+        assertEquals(1, ClockSync.scaleFor(now, now), 0);
+        assertEquals(0.001, ClockSync.scaleFor(now * 1000, now), 0);
+        // Millis since boot: the old "< 1e10 means seconds" rule got this wrong
+        assertEquals(1, ClockSync.scaleFor(86_400_000, 86_400_050), 0);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.XOskeleton;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarLogTest {
+
+    private static final List<String> NAMES = Arrays.asList("phone_time", "right(1).Position", "mode");
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xo-columnar").toFile();
+        file = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION + ColumnarLog.EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    private void writeSample() throws IOException {
+        int rows = 1000;
+        double[][] columns = new double[NAMES.size()][rows];
+        for (int r = 0; r < rows; r++) {
+            columns[0][r] = 1767268800000.0 + r * 5;
+            columns[1][r] = r % 100 == 0 ? Double.NaN : Math.sin(r * 0.01) * 40;
+            columns[2][r] = Double.NaN; // A column that never had a number
+        }
+        ColumnarLog.write(file, NAMES, columns, rows);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        writeSample();
+        assertFalse(new File(dir, file.getName() + ".tmp").exists());
+
+        ColumnarLog log = ColumnarLog.open(file);
+        assertEquals(NAMES, log.getColumnNames());
+        assertEquals(1000, log.getRowCount());
+        assertEquals(1, log.indexOf("right(1).Position"));
+        assertEquals(-1, log.indexOf("missing"));
+        assertNull(log.getColumn("missing"));
+
+        DoubleBuffer time = log.getColumn("phone_time");
+        DoubleBuffer pos = log.getColumn(1);
+        assertEquals(1000, time.remaining());
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int r = 0; r < 1000; r++) {
+            assertEquals(1767268800000.0 + r * 5, time.get(r), 0);
+            if (r % 100 == 0) {
+                assertTrue(Double.isNaN(pos.get(r)));
+                continue;
+            }
+            assertEquals(Math.sin(r * 0.01) * 40, pos.get(r), 0);
+            min = Math.min(min, pos.get(r));
+            max = Math.max(max, pos.get(r));
+        }
+        // Min/max skip the NaN rows; an all-NaN column has none
+        assertEquals(min, log.getMin(1), 0);
+        assertEquals(max, log.getMax(1), 0);
+        assertTrue(Double.isNaN(log.getMin(2)) && Double.isNaN(log.getMax(2)));
+    }
+
+    @Test
+    public void emptyLogRoundTrips() throws IOException {
+        ColumnarLog.write(file, NAMES, new double[NAMES.size()][0], 0);
+        ColumnarLog log = ColumnarLog.open(file);
+        assertEquals(NAMES, log.getColumnNames());
+        assertEquals(0, log.getRowCount());
+        assertEquals(0, log.getColumn(0).remaining());
+    }
+
+    @Test
+    public void truncatedSidecarIsRejected() throws IOException {
+        writeSample();
+        long length = file.length();
+        // Cut inside the last column's data, then inside the header
+        for (long cut : new long[]{length - 8, 20}) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(cut);
+            }
+            try {
+                ColumnarLog.open(file);
+                fail("Opened a sidecar cut to " + cut + " bytes");
+            } catch (IOException expected) {
+                // Caller converts the log again
+            }
+        }
+    }
+
+    @Test
+    public void corruptSidecarIsRejected() throws IOException {
+        writeSample();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(0);
+            raf.write('Y'); // Bad magic
+        }
+        try {
+            ColumnarLog.open(file);
+            fail("Opened a sidecar with a bad magic");
+        } catch (IOException expected) {
+        }
+
+        writeSample();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            raf.writeInt(-1); // Column count
+        }
+        try {
+            ColumnarLog.open(file);
+            fail("Opened a sidecar with a negative column count");
+        } catch (IOException expected) {
+        }
+
+        writeSample();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // First column's data offset: past magic, count, rows, name length and name
+            raf.seek(8 + 4 + 8 + 2 + NAMES.get(0).length());
+            raf.writeLong(Long.MAX_VALUE / 2);
+        }
+        try {
+            ColumnarLog.open(file);
+            fail("Opened a sidecar whose column points past the end");
+        } catch (IOException expected) {
+        }
+    }
+}
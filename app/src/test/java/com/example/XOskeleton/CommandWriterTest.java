@@ -0,0 +1,151 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CommandWriterTest {
+
+    // Device side: collects commands from the frames it receives, optionally stalling on the first
+    private static class Device extends OutputStream {
+        final List<Long> seqs = new ArrayList<>();
+        final List<String> commands = new ArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final FrameDecoder frames = new FrameDecoder();
+        boolean stallFirst;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (stallFirst) {
+                stallFirst = false;
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            synchronized (this) {
+                frames.feed(b, off, len, (buffer, offset, length) -> {
+                    assertEquals(TelemetryProtocol.TYPE_COMMAND, buffer[offset]);
+                    long seq = (buffer[offset + 1] & 0xFF) | (buffer[offset + 2] & 0xFF) << 8
+                            | (buffer[offset + 3] & 0xFF) << 16 | (long) (buffer[offset + 4] & 0xFF) << 24;
+                    seqs.add(seq);
+                    commands.add(new String(buffer, offset + 5, length - 5, StandardCharsets.UTF_8));
+                });
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitCommands(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (commands.size() < count && System.currentTimeMillis() < deadline) wait(50);
+        }
+    }
+
+    private static TelemetrySample ack(long seq) {
+        TelemetrySample sample = new TelemetrySample(new TelemetrySchema(Arrays.asList("packet_id", TelemetryProtocol.ACK_KEY)));
+        sample.getValues()[1] = seq;
+        return sample;
+    }
+
+    @Test
+    public void supersededSetpointsAreCoalescedInOrder() throws Exception {
+        Device device = new Device();
+        device.stallFirst = true;
+        CommandWriter writer = new CommandWriter(device, null);
+        writer.setFramingVersion(1);
+        writer.start();
+
+        writer.send("SET_MODE:1");         // Written immediately, then the device stalls
+        Thread.sleep(100);
+        for (int power = 0; power <= 50; power++) writer.send("SET_POWER:" + power);
+        writer.send("SMART_ASSIST:ON");    // Not a setpoint: never dropped
+        writer.send("SET_MODE:2");
+        writer.send("SET_POWER:60");
+        device.release.countDown();
+        device.awaitCommands(4);
+        Thread.sleep(100);
+
+        // Each key goes out where it was first queued, with its newest value
+        assertEquals(Arrays.asList("SET_MODE:1", "SET_POWER:60", "SMART_ASSIST:ON", "SET_MODE:2"), device.commands);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), device.seqs);
+        assertEquals(50 + 1, writer.getCoalescedCount()); // SET_MODE:1 was already on the wire
+        writer.close();
+    }
+
+    @Test
+    public void cumulativeAcksMeasureRoundTrip() throws Exception {
+        Device device = new Device();
+        CommandWriter writer = new CommandWriter(device, null);
+        writer.setFramingVersion(1);
+        writer.start();
+        writer.send("A");
+        writer.send("B");
+        writer.send("C");
+        device.awaitCommands(3);
+        assertEquals(3, writer.getInFlightCount());
+        assertEquals(-1, writer.getLastRoundTripNanos());
+
+        writer.onTelemetry(ack(0));
+        assertEquals(3, writer.getInFlightCount());
+        writer.onTelemetry(ack(2));
+        assertEquals(1, writer.getInFlightCount());
+        assertEquals(2, writer.getAckedCount());
+        assertTrue(writer.getLastRoundTripNanos() >= 0);
+
+        writer.onTelemetry(ack(2)); // Echoed again in the next packet: no double counting
+        writer.onTelemetry(ack(3));
+        assertEquals(0, writer.getInFlightCount());
+        assertEquals(3, writer.getAckedCount());
+        writer.close();
+    }
+
+    @Test
+    public void commandsWaitForTheDevicesFraming() throws Exception {
+        Device device = new Device();
+        CommandWriter writer = new CommandWriter(device, null);
+        writer.start();
+        writer.send("SET_MODE:1"); // Before the device's first frame
+        Thread.sleep(100);
+        assertEquals(0, writer.getSentCount());
+
+        writer.setFramingVersion(FrameDecoder.VERSION_2);
+        device.awaitCommands(1);
+        assertEquals(Arrays.asList("SET_MODE:1"), device.commands);
+        assertEquals(FrameDecoder.VERSION_2, device.frames.getVersion());
+        assertEquals(0, device.frames.getCorruptFrameCount());
+        writer.close();
+    }
+
+    @Test
+    public void tickRunsWhileNothingIsQueued() throws Exception {
+        CommandWriter writer = new CommandWriter(new Device(), null);
+        CountDownLatch ticks = new CountDownLatch(3);
+        writer.setTick(ticks::countDown, 10);
+        writer.start(); // Framing not even known yet
+        assertTrue(ticks.await(2, TimeUnit.SECONDS));
+        writer.close();
+    }
+
+    @Test
+    public void closedWriterRefusesCommands() {
+        CommandWriter writer = new CommandWriter(new Device(), null);
+        writer.start();
+        writer.close();
+        assertFalse(writer.send("SET_POWER:1"));
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DeviceLinkTest {
+
+    @Test
+    public void loneDeviceKeepsPlainKeys() {
+        assertArrayEquals(new String[] { null }, DeviceLink.labelsFor(Arrays.asList("XO Left"), 1));
+    }
+
+    @Test
+    public void labelsAreSafeKeySegmentsAndUnique() {
+        String[] labels = DeviceLink.labelsFor(Arrays.asList("XO.Left leg", "XO.Left leg", "", null), 4);
+        assertArrayEquals(new String[] { "XO_Left_leg", "XO_Left_leg_2", "dev3", "dev4" }, labels);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlowControlTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void grantsEveryHalfWindowOfFrames() {
+        FlowControl flow = new FlowControl();
+        long now = 1000 * MS;
+        assertTrue("first frame announces flow control", flow.onFrame(now, 0, 1));
+        assertEquals(1, flow.getPacketId());
+        assertEquals(FlowControl.WINDOW, flow.getWindow());
+
+        int grants = 0;
+        for (int i = 0; i < 4 * FlowControl.WINDOW; i++) {
+            if (flow.onFrame(now, 0, 2 + i)) grants++;
+        }
+        assertEquals(8, grants);
+        assertEquals(1 + 4 * FlowControl.WINDOW, flow.getPacketId());
+    }
+
+    @Test
+    public void slowFramesStillRefreshTheGrant() {
+        FlowControl flow = new FlowControl();
+        assertTrue(flow.onFrame(0, 0, 1));
+        assertFalse(flow.onFrame(50 * MS, 0, 2));
+        assertTrue(flow.onFrame(FlowControl.GRANT_INTERVAL_NS + 1, 0, 3));
+        assertEquals(3, flow.getPacketId());
+    }
+
+    @Test
+    public void fullQueuesShrinkTheWindow() {
+        FlowControl flow = new FlowControl();
+        flow.onFrame(0, 0.5, 1);
+        assertEquals(FlowControl.WINDOW / 2, flow.getWindow());
+        flow.onFrame(FlowControl.GRANT_INTERVAL_NS, 1.0, 2);
+        // Never zero, so the device keeps sending and its frames bring the next grant
+        assertEquals(FlowControl.MIN_CREDITS, flow.getWindow());
+        flow.onFrame(2 * FlowControl.GRANT_INTERVAL_NS, 0, 3);
+        assertEquals(FlowControl.WINDOW, flow.getWindow());
+    }
+
+    @Test
+    public void quietDeviceGetsTheGrantAgain() {
+        FlowControl flow = new FlowControl();
+        assertFalse("nothing granted yet", flow.onQuiet(FlowControl.GRANT_INTERVAL_NS));
+        flow.onFrame(0, 0.5, 1);
+        assertFalse(flow.onQuiet(50 * MS));
+        // The grant never arrived: the same one again
+        assertTrue(flow.onQuiet(FlowControl.GRANT_INTERVAL_NS));
+        assertEquals(1, flow.getPacketId());
+        assertEquals(FlowControl.WINDOW / 2, flow.getWindow());
+        assertFalse(flow.onQuiet(FlowControl.GRANT_INTERVAL_NS + 50 * MS));
+        assertTrue(flow.onQuiet(2 * FlowControl.GRANT_INTERVAL_NS));
+    }
+
+    @Test
+    public void lostFramesAreCoveredByTheNextPacketId() {
+        FlowControl flow = new FlowControl();
+        flow.onFrame(0, 0, 1);
+        flow.onFrame(FlowControl.GRANT_INTERVAL_NS, 0, 7); // 2..6 lost on the way
+        assertEquals(7, flow.getPacketId());
+        // A schema frame carries no packet_id
+        flow.onFrame(2 * FlowControl.GRANT_INTERVAL_NS, 0, -1);
+        assertEquals(7, flow.getPacketId());
+
+        flow.reset();
+        assertTrue(flow.onFrame(0, 0, -1));
+        assertEquals(0, flow.getPacketId());
+    }
+}
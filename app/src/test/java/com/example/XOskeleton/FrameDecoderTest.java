@@ -0,0 +1,322 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    // Mirrors framing.encode() from sender/framing.py
+    private static byte[] encode(byte[] payload) {
+        byte[] frame = new byte[2 + payload.length];
+        frame[0] = (byte) (payload.length >> 8);
+        frame[1] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 2, payload.length);
+        return frame;
+    }
+
+    private static byte[] packet(int id) {
+        String json = "{\"packet_id\": " + id + ", \"timestamp\": 1739182345." + id
+                + ", \"right(1)\": {\"fault\": 0, \"Position\": 12.5, \"velocity\": -3.25}}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<byte[]> samplePayloads() {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) payloads.add(packet(i));
+        payloads.add(new byte[0]);
+        payloads.add(new byte[]{'{', '}'});
+        byte[] big = new byte[FrameDecoder.MAX_PAYLOAD_SIZE];
+        new Random(7).nextBytes(big);
+        payloads.add(big);
+        payloads.add(packet(99));
+        return payloads;
+    }
+
+    private static byte[] stream(List<byte[]> payloads) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : payloads) out.write(encode(p), 0, p.length + 2);
+        return out.toByteArray();
+    }
+
+    private static byte[] streamV2(List<byte[]> payloads) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : payloads) {
+            byte[] frame = FrameDecoder.frame(FrameDecoder.VERSION_2, p, 0, p.length);
+            out.write(frame, 0, frame.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Collector implements FrameDecoder.FrameListener {
+        final List<byte[]> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+        }
+    }
+
+    // Returns at most a fixed pattern of chunk sizes per read(), like a slow RFCOMM link
+    private static class ChunkedInputStream extends InputStream {
+        private final byte[] data;
+        private final int[] chunks;
+        private int pos = 0;
+        private int call = 0;
+
+        ChunkedInputStream(byte[] data, int... chunks) {
+            this.data = data;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= data.length) return -1;
+            int n = Math.min(Math.min(len, chunks[call++ % chunks.length]), data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("frame " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    private static Collector readAll(FrameDecoder decoder, InputStream in) throws IOException {
+        Collector collector = new Collector();
+        while (decoder.readFrom(in, collector) != -1) { /* keep reading */ }
+        return collector;
+    }
+
+    @Test
+    public void singleByteReads() throws IOException {
+        List<byte[]> payloads = samplePayloads();
+        Collector c = readAll(new FrameDecoder(), new ChunkedInputStream(stream(payloads), 1));
+        assertFrames(payloads, c.frames);
+    }
+
+    @Test
+    public void splitInsideLengthHeader() throws IOException {
+        List<byte[]> payloads = samplePayloads();
+        // 1 byte, then header+payload remainder, then odd sizes that keep landing mid-header
+        Collector c = readAll(new FrameDecoder(), new ChunkedInputStream(stream(payloads), 1, 3, 7, 2, 131, 1));
+        assertFrames(payloads, c.frames);
+    }
+
+    @Test
+    public void manyFramesInOneRead() throws IOException {
+        List<byte[]> payloads = samplePayloads();
+        Collector c = readAll(new FrameDecoder(), new ChunkedInputStream(stream(payloads), Integer.MAX_VALUE));
+        assertFrames(payloads, c.frames);
+    }
+
+    @Test
+    public void randomSplitsWithMinimumBuffer() throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int round = 0; round < 5; round++) payloads.addAll(samplePayloads());
+        byte[] data = stream(payloads);
+
+        Random random = new Random(42);
+        int[] chunks = new int[64];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = 1 + random.nextInt(2000);
+
+        // Smallest legal buffer forces the compaction path on almost every big frame
+        Collector c = readAll(new FrameDecoder(FrameDecoder.MAX_FRAME_SIZE), new ChunkedInputStream(data, chunks));
+        assertFrames(payloads, c.frames);
+    }
+
+    @Test
+    public void feedKeepsPartialFrameUntilComplete() {
+        byte[] frame = encode(packet(1));
+        FrameDecoder decoder = new FrameDecoder();
+        Collector c = new Collector();
+
+        decoder.feed(frame, 0, 1, c);
+        decoder.feed(frame, 1, 10, c);
+        assertEquals(0, c.frames.size());
+        assertEquals(11, decoder.getPendingBytes());
+
+        decoder.feed(frame, 11, frame.length - 11, c);
+        assertEquals(1, c.frames.size());
+        assertEquals(0, decoder.getPendingBytes());
+        assertArrayEquals(packet(1), c.frames.get(0));
+    }
+
+    @Test
+    public void viewPointsIntoSharedBuffer() {
+        byte[] data = stream(Arrays.asList(packet(1), packet(2)));
+        final byte[][] seen = new byte[2][];
+        final int[] count = {0};
+        new FrameDecoder().feed(data, 0, data.length, (buffer, offset, length) -> seen[count[0]++] = buffer);
+        assertEquals(2, count[0]);
+        assertSame(seen[0], seen[1]);
+    }
+
+    @Test
+    public void v2MatchesSenderFraming() {
+        // framing.encode_v2(b'{"a": 1}') from sender/framing.py
+        byte[] payload = "{\"a\": 1}".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = {(byte) 0xa5, 0x5a, 0x02, 0x00, 0x08, (byte) 0xee, '{', '"', 'a', '"', ':', ' ', '1', '}',
+                (byte) 0xfa, (byte) 0xad, 0x39, 0x30};
+        assertArrayEquals(expected, FrameDecoder.frame(FrameDecoder.VERSION_2, payload, 0, payload.length));
+
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xE3069283, Crc32c.compute(check, 0, check.length));
+        // The table version older Androids get
+        byte[] random = new byte[1000];
+        new Random(3).nextBytes(random);
+        for (int length = 0; length < random.length; length += 37) {
+            Crc32c table = new Crc32c();
+            table.update(random, 1, length);
+            assertEquals(Crc32c.compute(random, 1, length), (int) table.getValue());
+        }
+        Crc32c table = new Crc32c();
+        table.update(check, 0, check.length);
+        assertEquals(0xE3069283L, table.getValue());
+    }
+
+    @Test
+    public void v2RandomSplits() throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int round = 0; round < 3; round++) payloads.addAll(samplePayloads());
+        Random random = new Random(11);
+        int[] chunks = new int[64];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = 1 + random.nextInt(2000);
+
+        FrameDecoder decoder = new FrameDecoder(FrameDecoder.MAX_FRAME_SIZE);
+        Collector c = readAll(decoder, new ChunkedInputStream(streamV2(payloads), chunks));
+        assertFrames(payloads, c.frames);
+        assertEquals(2, decoder.getVersion());
+        assertEquals(0, decoder.getCorruptFrameCount());
+        assertEquals(0, decoder.getSkippedBytes());
+    }
+
+    @Test
+    public void v2GivesUpOnAStalledFrame() {
+        // Damage that leaves a header passing its CRC-8 with a bogus length: ~60 KB the device never sends
+        byte[] bogus = {FrameDecoder.SYNC_0, FrameDecoder.SYNC_1, FrameDecoder.VERSION_2, (byte) 0xEA, 0x60, 0};
+        bogus[5] = FrameDecoder.crc8(bogus, 2);
+        byte[] keepalive = streamV2(Arrays.asList(packet(1)));
+
+        FrameDecoder decoder = new FrameDecoder();
+        Collector c = new Collector();
+        long t = 5_000_000_000L;
+        decoder.feed(bogus, 0, bogus.length, c, t);
+        decoder.feed(keepalive, 0, keepalive.length, c, t + FrameDecoder.PARTIAL_FRAME_TIMEOUT_NS / 2);
+        assertTrue("still waiting", c.frames.isEmpty());
+        // Out of credit, the device's next keepalive comes: the bogus frame is dropped, both are found
+        decoder.feed(keepalive, 0, keepalive.length, c, t + FrameDecoder.PARTIAL_FRAME_TIMEOUT_NS);
+        assertFrames(Arrays.asList(packet(1), packet(1)), c.frames);
+        assertEquals(1, decoder.getCorruptFrameCount());
+        assertEquals(0, decoder.getPendingBytes());
+    }
+
+    @Test
+    public void v2DropsOnlyTheDamagedFrame() {
+        List<byte[]> payloads = Arrays.asList(packet(1), packet(2), packet(3), packet(4));
+        byte[] data = streamV2(payloads);
+        int second = FrameDecoder.V2_HEADER_SIZE + packet(1).length + FrameDecoder.V2_TRAILER_SIZE;
+
+        // A flipped payload byte, a flipped length byte, and a lost byte
+        for (int damage = 0; damage < 3; damage++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(data, 0, data.length);
+            byte[] damaged = out.toByteArray();
+            if (damage == 0) damaged[second + 20] ^= 0x10;
+            if (damage == 1) damaged[second + 3] ^= 0x01;
+            if (damage == 2) {
+                byte[] shorter = new byte[damaged.length - 1];
+                System.arraycopy(damaged, 0, shorter, 0, second + 20);
+                System.arraycopy(damaged, second + 21, shorter, second + 20, damaged.length - second - 21);
+                damaged = shorter;
+            }
+            FrameDecoder decoder = new FrameDecoder();
+            Collector c = new Collector();
+            decoder.feed(damaged, 0, damaged.length, c);
+            assertFrames(Arrays.asList(packet(1), packet(3), packet(4)), c.frames);
+            assertEquals("damage " + damage, 1, decoder.getCorruptFrameCount());
+            assertEquals(1, decoder.getResyncCount());
+            // Resync costs the damaged frame's bytes, nothing more
+            assertTrue(decoder.getSkippedBytes() <= second);
+        }
+    }
+
+    @Test
+    public void v2FuzzKeepsEveryIntactFrame() {
+        Random random = new Random(2024);
+        List<byte[]> intact = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int damagedFrames = 0;
+        long damagedBytes = 0;
+        for (int i = 0; i < 20_000; i++) {
+            byte[] frame = FrameDecoder.frame(FrameDecoder.VERSION_2, packet(i), 0, packet(i).length);
+            if (random.nextInt(100) == 0) {
+                // 1%: flip a bit, drop a byte or splice in line noise
+                int at = random.nextInt(frame.length);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        frame[at] ^= (byte) (1 << random.nextInt(8));
+                        break;
+                    case 1:
+                        out.write(frame, 0, at);
+                        out.write(frame, at + 1, frame.length - at - 1);
+                        frame = null;
+                        break;
+                    default:
+                        byte[] noise = new byte[1 + random.nextInt(40)];
+                        random.nextBytes(noise);
+                        at = Math.max(at, 1); // Noise in front of a frame would leave it intact
+                        out.write(frame, 0, at);
+                        out.write(noise, 0, noise.length);
+                        out.write(frame, at, frame.length - at);
+                        frame = null;
+                        break;
+                }
+                damagedFrames++;
+                damagedBytes += packet(i).length + 10;
+                if (frame != null) out.write(frame, 0, frame.length);
+                continue;
+            }
+            intact.add(packet(i));
+            out.write(frame, 0, frame.length);
+        }
+        byte[] data = out.toByteArray();
+
+        FrameDecoder decoder = new FrameDecoder();
+        Collector c = new Collector();
+        for (int at = 0; at < data.length; ) {
+            int n = Math.min(data.length - at, 1 + random.nextInt(990));
+            decoder.feed(data, at, n, c);
+            at += n;
+        }
+        assertFrames(intact, c.frames);
+        // Back-to-back damaged frames can count as one
+        assertTrue(decoder.getCorruptFrameCount() <= damagedFrames && decoder.getCorruptFrameCount() >= damagedFrames * 0.95);
+        assertTrue(decoder.getResyncCount() <= decoder.getCorruptFrameCount());
+        // Bytes lost to resync stay within the damaged frames (plus the noise spliced in)
+        assertTrue(decoder.getSkippedBytes() <= damagedBytes + damagedFrames * 40L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBufferSmallerThanMaxFrame() {
+        new FrameDecoder(1024);
+    }
+}
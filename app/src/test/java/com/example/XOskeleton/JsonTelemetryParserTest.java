@@ -0,0 +1,93 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class JsonTelemetryParserTest {
+
+    private static TelemetrySample parse(JsonTelemetryParser parser, String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void sameLayoutReusesTheSample() {
+        JsonTelemetryParser parser = new JsonTelemetryParser();
+        TelemetrySample first = parse(parser, "{\"packet_id\": 1, \"right(1)\": {\"Position\": 50.5, \"fault\": false}}");
+        TelemetrySchema schema = first.getSchema();
+        assertEquals(3, schema.size());
+        assertEquals(50.5, first.get("right(1).Position", -1), 0);
+        assertEquals(0, first.get("right(1).fault", -1), 0);
+
+        for (int i = 2; i < 10; i++) {
+            TelemetrySample sample = parse(parser, "{ \"packet_id\": " + i + ",\"right(1)\":{\"Position\": -" + i + ".25, \"fault\": true} }");
+            assertSame(first, sample);
+            assertSame(schema, sample.getSchema());
+            assertEquals(i, sample.get("packet_id", -1), 0);
+            assertEquals(-i - 0.25, sample.get("right(1).Position", -1), 0);
+            assertEquals(1, sample.get("right(1).fault", -1), 0);
+        }
+        assertEquals(1, parser.getSchemaChanges());
+    }
+
+    @Test
+    public void changedLayoutIsLearnedAgain() {
+        JsonTelemetryParser parser = new JsonTelemetryParser();
+        TelemetrySchema first = parse(parser, "{\"packet_id\": 1, \"left(2)\": {\"torque\": 2}}").getSchema();
+
+        // A new key, then a reordered one: each is a new layout
+        TelemetrySample sample = parse(parser, "{\"packet_id\": 2, \"left(2)\": {\"torque\": 3, \"current\": 4}}");
+        assertNotSame(first, sample.getSchema());
+        assertEquals(4, sample.get("left(2).current", -1), 0);
+        sample = parse(parser, "{\"left(2)\": {\"torque\": 5}, \"packet_id\": 3}");
+        assertEquals(5, sample.get("left(2).torque", -1), 0);
+        assertEquals(3, sample.get("packet_id", -1), 0);
+        assertEquals(3, parser.getSchemaChanges());
+
+        // Back to the first layout: still cached, not learned again
+        sample = parse(parser, "{\"packet_id\": 4, \"left(2)\": {\"torque\": 6}}");
+        assertSame(first, sample.getSchema());
+        assertEquals(6, sample.get("left(2).torque", -1), 0);
+        assertEquals(3, parser.getSchemaChanges());
+    }
+
+    @Test
+    public void longNumbersTakeTheExactRoute() {
+        JsonTelemetryParser parser = new JsonTelemetryParser();
+        // time.time() prints 17 significant digits, more than the fast path can take exactly
+        String[] values = {"1767268800.1234567", "1767268800.0000002", "1e300", "-2.5e-30", "123456789012345678"};
+        for (String value : values) {
+            TelemetrySample sample = parse(parser, "{\"timestamp\": " + value + "}");
+            assertEquals(value, Double.parseDouble(value), sample.get(0), 0);
+        }
+    }
+
+    @Test
+    public void stringsKeepTheirText() {
+        JsonTelemetryParser parser = new JsonTelemetryParser();
+        TelemetrySample sample = parse(parser, "{\"mode\": \"walk\", \"gain\": \"1.5\", \"ids\": [1, 2], \"note\": null}");
+        assertTrue(Double.isNaN(sample.get(0)));
+        assertEquals("walk", sample.getText(0));
+        assertEquals("walk", sample.formatValue(0));
+        assertEquals(1.5, sample.get(1), 0); // A quoted number is still a number
+        assertTrue(Double.isNaN(sample.get(2)) && Double.isNaN(sample.get(3)));
+        assertNull(sample.getText(2));
+
+        String walk = sample.getText(0);
+        sample = parse(parser, "{\"mode\": \"walk\", \"gain\": 2, \"ids\": [], \"note\": null}");
+        assertSame(walk, sample.getText(0)); // Unchanged: not decoded again
+        assertNull(sample.getText(1));
+        sample = parse(parser, "{\"mode\": \"stairs\", \"gain\": 2, \"ids\": [], \"note\": null}");
+        assertEquals("stairs", sample.copy().getText(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedPacketIsRejected() {
+        JsonTelemetryParser parser = new JsonTelemetryParser();
+        parse(parser, "{\"packet_id\": 1}");
+        parse(parser, "{\"packet_id\": 1");
+    }
+}
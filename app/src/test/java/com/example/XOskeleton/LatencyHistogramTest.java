@@ -0,0 +1,40 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        long[] values = new long[100000];
+        Random random = new Random(7);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20); // 1 ns .. ~0.5 s
+            histogram.recordNanos(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double p : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = histogram.getPercentileNanos(p);
+            assertTrue(p + ": " + reported + " vs " + exact, reported >= exact && reported <= exact * 1.01 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxNanos());
+        assertEquals(values[values.length - 1], histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long v = 0; v < 1 << 20; v++) {
+            int index = LatencyHistogram.indexOf(v);
+            assertTrue(v <= LatencyHistogram.highestValueAt(index));
+            if (index > 0) assertTrue(v > LatencyHistogram.highestValueAt(index - 1));
+        }
+    }
+}
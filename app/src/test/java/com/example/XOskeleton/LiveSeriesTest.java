@@ -0,0 +1,58 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LiveSeriesTest {
+
+    @Test
+    public void keepsNewestPointsInOrder() {
+        LiveSeries series = new LiveSeries(8);
+        for (int i = 0; i < 20; i++) series.add(i, i * 10);
+
+        assertEquals(8, series.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(12 + i, series.getX(i), 0f);
+            assertEquals((12 + i) * 10, series.getY(i), 0f);
+        }
+        assertEquals(12f, series.getMinX(), 0f);
+        assertEquals(19f, series.getMaxX(), 0f);
+    }
+
+    @Test
+    public void runningRangeMatchesBruteForce() {
+        LiveSeries series = new LiveSeries(64);
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            // Repeated values are the awkward case for the queues
+            float y = i > 0 && random.nextInt(4) == 0 ? series.getY(series.size() - 1) : random.nextInt(50) - 25;
+            series.add(i, y);
+
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int j = 0; j < series.size(); j++) {
+                min = Math.min(min, series.getY(j));
+                max = Math.max(max, series.getY(j));
+            }
+            assertEquals("min at " + i, min, series.getMinY(), 0f);
+            assertEquals("max at " + i, max, series.getMaxY(), 0f);
+        }
+    }
+
+    @Test
+    public void clearStartsOver() {
+        LiveSeries series = new LiveSeries(4);
+        for (int i = 0; i < 10; i++) series.add(i, 100 - i);
+        series.clear();
+        assertEquals(0, series.size());
+
+        series.add(50, 3);
+        series.add(51, -2);
+        assertEquals(2, series.size());
+        assertEquals(-2f, series.getMinY(), 0f);
+        assertEquals(3f, series.getMaxY(), 0f);
+        assertEquals(50f, series.getX(0), 0f);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogColumnsTest {
+
+    private static TelemetrySample sample(List<String> keys, double... values) {
+        TelemetrySample sample = new TelemetrySample(new TelemetrySchema(keys));
+        System.arraycopy(values, 0, sample.getValues(), 0, values.length);
+        return sample;
+    }
+
+    @Test
+    public void laterKeysBecomeNewColumns() {
+        LogColumns columns = new LogColumns();
+        TelemetrySample first = sample(Arrays.asList("timestamp", "b", "a"), 1, 2, 3);
+        assertEquals(Arrays.asList("a", "b", "timestamp", "phone_time"), columns.update(first));
+        assertArrayEquals(new double[]{3, 2, 1, 100}, columns.row(first, 100), 0);
+        assertNull(columns.update(first));
+
+        // A new joint shows up and "b" goes away: the row only holds this layout's columns
+        int[] firstColumns = columns.getStreamColumns();
+        TelemetrySample second = sample(Arrays.asList("timestamp", "knee", "a"), 2, 7, 4);
+        assertEquals(Arrays.asList("a", "b", "timestamp", "phone_time", "knee"), columns.update(second));
+        assertArrayEquals(new int[]{0, 2, 3, 4}, columns.getStreamColumns());
+        assertArrayEquals(new double[]{4, 2, 200, 7}, columns.row(second, 200), 0);
+
+        // Back to the first set of keys, in another order: no new columns, the same stream
+        TelemetrySample third = sample(Arrays.asList("a", "b", "timestamp"), 5, 6, 3);
+        assertNull(columns.update(third));
+        assertSame(firstColumns, columns.getStreamColumns());
+        assertArrayEquals(new double[]{5, 6, 3, 300}, columns.row(third, 300), 0);
+
+        // The first outage adds link_gap; its rows hold only that and phone_time
+        assertEquals(Arrays.asList("a", "b", "timestamp", "phone_time", "knee", "link_gap"), columns.updateGap());
+        assertNull(columns.updateGap());
+        assertArrayEquals(new int[]{3, 5}, columns.getGapColumns());
+        assertArrayEquals(new double[]{400, 250}, columns.gapRow(400, 250), 0);
+    }
+}
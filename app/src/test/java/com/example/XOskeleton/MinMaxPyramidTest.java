@@ -0,0 +1,106 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinMaxPyramidTest {
+
+    private static final int SCREEN_POINTS = 1080;
+
+    // One hour and a bit at ~280 Hz: position-like sine plus noise and a few spikes
+    private static float[][] column(int n) {
+        float[] x = new float[n];
+        float[] y = new float[n];
+        Random random = new Random(3);
+        for (int i = 0; i < n; i++) {
+            x[i] = i * 0.0036f;
+            y[i] = (float) (50 + 40 * Math.sin(x[i] * Math.PI) + random.nextGaussian());
+        }
+        y[n / 3] = 500f;
+        y[2 * n / 3] = -500f;
+        return new float[][]{x, y};
+    }
+
+    private static void assertSortedAndInRange(float[] outX, int count, float min, float max) {
+        for (int i = 0; i < count; i++) {
+            assertTrue(outX[i] >= min && outX[i] <= max);
+            if (i > 0) assertTrue("unsorted at " + i, outX[i] >= outX[i - 1]);
+        }
+    }
+
+    @Test
+    public void smallRangeReturnsRawSamples() {
+        float[][] c = column(1000);
+        MinMaxPyramid pyramid = new MinMaxPyramid(c[0], c[1], 1000);
+        float[] outX = new float[MinMaxPyramid.capacityFor(SCREEN_POINTS)];
+        float[] outY = new float[outX.length];
+
+        int n = pyramid.query(c[0][0], c[0][999], SCREEN_POINTS, outX, outY);
+        assertEquals(1000, n);
+        for (int i = 0; i < n; i++) assertEquals(c[1][i], outY[i], 0f);
+    }
+
+    @Test
+    public void fullRangeKeepsSpikesAndFitsScreen() {
+        int size = 1_000_000;
+        float[][] c = column(size);
+        MinMaxPyramid pyramid = new MinMaxPyramid(c[0], c[1], size);
+        float[] outX = new float[MinMaxPyramid.capacityFor(SCREEN_POINTS)];
+        float[] outY = new float[outX.length];
+
+        int n = pyramid.query(pyramid.getMinX(), pyramid.getMaxX(), SCREEN_POINTS, outX, outY);
+        assertTrue("too many points: " + n, n <= SCREEN_POINTS + 4);
+        assertTrue("too few points: " + n, n >= SCREEN_POINTS / 4);
+        assertSortedAndInRange(outX, n, pyramid.getMinX(), pyramid.getMaxX());
+
+        float max = -Float.MAX_VALUE, min = Float.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, outY[i]);
+            min = Math.min(min, outY[i]);
+        }
+        assertEquals(500f, max, 0f);
+        assertEquals(-500f, min, 0f);
+    }
+
+    @Test
+    public void zoomedRangeIsDetailedAndKeepsExtent() {
+        int size = 1_000_000;
+        float[][] c = column(size);
+        MinMaxPyramid pyramid = new MinMaxPyramid(c[0], c[1], size);
+        float[] outX = new float[MinMaxPyramid.capacityFor(SCREEN_POINTS)];
+        float[] outY = new float[outX.length];
+
+        float from = c[0][400_000], to = c[0][400_500];
+        int n = pyramid.query(from, to, SCREEN_POINTS, outX, outY);
+        assertSortedAndInRange(outX, n, pyramid.getMinX(), pyramid.getMaxX());
+        assertEquals(pyramid.getMinX(), outX[0], 0f);
+        assertEquals(pyramid.getMaxX(), outX[n - 1], 0f);
+
+        int inside = 0;
+        for (int i = 0; i < n; i++) if (outX[i] >= from && outX[i] <= to) inside++;
+        assertEquals(501, inside); // Fewer samples than pixels: every one of them is drawn
+    }
+
+    @Test
+    public void oneMillionSamplesAtEveryZoom() {
+        // Timing lives in the JMH module (OfflineLogBenchmark); this only checks the answers
+        int size = 1_000_000;
+        float[][] c = column(size);
+        MinMaxPyramid pyramid = new MinMaxPyramid(c[0], c[1], size);
+
+        float[] outX = new float[MinMaxPyramid.capacityFor(SCREEN_POINTS)];
+        float[] outY = new float[outX.length];
+        Random random = new Random(11);
+        for (int q = 0; q < 1000; q++) {
+            float span = pyramid.getMaxX() * (float) Math.pow(2, -random.nextInt(16));
+            float from = random.nextFloat() * (pyramid.getMaxX() - span);
+            int n = pyramid.query(from, from + span, SCREEN_POINTS, outX, outY);
+            assertTrue("too many points: " + n, n <= MinMaxPyramid.capacityFor(SCREEN_POINTS));
+            assertTrue("nothing for " + from + "+" + span, n > 0);
+            assertSortedAndInRange(outX, n, pyramid.getMinX(), pyramid.getMaxX());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReconnectBackoffTest {
+
+    @Test
+    public void growsWithJitterUpToTheCap() {
+        ReconnectBackoff backoff = new ReconnectBackoff(new Random(1));
+        long ceiling = ReconnectBackoff.BASE_MS;
+        for (int attempt = 0; attempt < 12; attempt++) {
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+            ceiling = Math.min(ReconnectBackoff.MAX_MS, ceiling * 2);
+        }
+        assertEquals(12, backoff.getAttempts());
+
+        backoff.reset();
+        assertTrue(backoff.nextDelayMillis() <= ReconnectBackoff.BASE_MS);
+    }
+}
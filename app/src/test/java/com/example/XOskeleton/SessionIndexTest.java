@@ -0,0 +1,118 @@
+package com.example.XOskeleton;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionIndexTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xo-sessions").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    // A pre-BlockLog CSV log: header plus 'rows' rows
+    private File csvLog(String name, int rows) throws IOException {
+        File f = new File(dir, name);
+        try (FileWriter writer = new FileWriter(f)) {
+            writer.write("timestamp,pos\n");
+            for (int i = 0; i < rows; i++) writer.write(i + ",1.5\n");
+        }
+        return f;
+    }
+
+    @Test
+    public void addedSessionsAreReadBack() {
+        SessionIndex index = new SessionIndex(dir);
+        assertEquals(0, index.size()); // No logs: an empty index is written
+        index.add(new SessionIndex.Session("Log_b.xlog", 2000, 3000, 20, 200));
+        index.add(new SessionIndex.Session("Log_a.xlog", 1000, 1500, 10, 100));
+        index.add(new SessionIndex.Session("Log_b.xlog", 2000, 3500, 25, 250)); // Same file: replaced
+
+        SessionIndex reloaded = new SessionIndex(dir);
+        List<SessionIndex.Session> sessions = reloaded.getSessions(0, Long.MAX_VALUE);
+        assertEquals(2, sessions.size());
+        assertEquals("Log_a.xlog", sessions.get(0).fileName);
+        SessionIndex.Session b = sessions.get(1);
+        assertEquals("Log_b.xlog", b.fileName);
+        assertEquals(2000, b.startMillis);
+        assertEquals(3500, b.endMillis);
+        assertEquals(25, b.samples);
+        assertEquals(250, b.bytes);
+        assertEquals(1500, b.getDurationMillis());
+
+        // Start in [from, to)
+        assertEquals(1, reloaded.getSessions(1001, 2001).size());
+        assertEquals(0, reloaded.getSessions(2001, 5000).size());
+    }
+
+    @Test
+    public void corruptIndexIsRebuiltFromTheLogs() throws IOException {
+        csvLog("Log_20260101_120000.csv", 3);
+        SessionIndex index = new SessionIndex(dir);
+        index.add(new SessionIndex.Session("Log_20260101_120000.csv", 1000, 2000, 3, 10));
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, SessionIndex.FILE_NAME), "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write(raf.read() ^ 0xFF); // Breaks the record's CRC
+        }
+
+        List<SessionIndex.Session> sessions = new SessionIndex(dir).getSessions(0, Long.MAX_VALUE);
+        assertEquals(1, sessions.size());
+        assertEquals(3, sessions.get(0).samples); // Counted from the file, not the lost record
+    }
+
+    @Test
+    public void logsMissingFromTheIndexAreAddedOnLoad() throws IOException {
+        SessionIndex index = new SessionIndex(dir);
+        index.add(new SessionIndex.Session("Log_20260101_090000.csv", 1000, 2000, 5, 50));
+        // The app was killed mid-session: the log exists, its record was never written
+        csvLog("Log_20260102_080000.csv", 4);
+
+        SessionIndex reloaded = new SessionIndex(dir);
+        List<SessionIndex.Session> sessions = reloaded.getSessions(0, Long.MAX_VALUE);
+        assertEquals(2, sessions.size());
+        assertEquals("Log_20260101_090000.csv", sessions.get(0).fileName); // Its log is gone; still usage
+        SessionIndex.Session killed = sessions.get(1);
+        assertEquals("Log_20260102_080000.csv", killed.fileName);
+        assertEquals(4, killed.samples);
+        assertTrue(killed.startMillis > 2000);
+
+        // Written back, so the next load does not scan it again
+        new File(dir, "Log_20260102_080000.csv").delete();
+        assertEquals(2, new SessionIndex(dir).size());
+    }
+
+    @Test
+    public void overlappingSessionsMerge() {
+        List<SessionIndex.Session> merged = SessionIndex.mergeOverlapping(Arrays.asList(
+                new SessionIndex.Session("c", 5000, 6000, 1, 1),
+                new SessionIndex.Session("a", 1000, 3000, 1, 1),
+                new SessionIndex.Session("b", 2000, 4000, 1, 1), // Overlaps a: extends it
+                new SessionIndex.Session("d", 5500, 5800, 1, 1))); // Inside c
+        assertEquals(2, merged.size());
+        assertEquals("a", merged.get(0).fileName);
+        assertEquals(1000, merged.get(0).startMillis);
+        assertEquals(4000, merged.get(0).endMillis);
+        assertEquals("c", merged.get(1).fileName);
+        assertEquals(6000, merged.get(1).endMillis);
+    }
+}
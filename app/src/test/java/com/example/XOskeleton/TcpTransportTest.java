@@ -0,0 +1,80 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TcpTransportTest {
+
+    @Test
+    public void parsesAddresses() {
+        assertEquals("tcp://10.0.2.2:5555", TcpTransport.parse("tcp://10.0.2.2:5555").toString());
+        assertEquals("tcp://[::1]:7000", TcpTransport.parse("tcp://[::1]:7000").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingPort() {
+        TcpTransport.parse("tcp://localhost");
+    }
+
+    // Loopback "device" streams framed JSON; the real frame decoder and parser read it back
+    @Test
+    public void decodesFramesOverLoopback() throws Exception {
+        int packets = 5000;
+        // A failed assert on the device thread would only kill that thread; it is rethrown below
+        AtomicReference<Throwable> deviceError = new AtomicReference<>();
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread device = new Thread(() -> {
+                try (Socket client = server.accept(); OutputStream out = client.getOutputStream()) {
+                    ByteArrayOutputStream frames = new ByteArrayOutputStream();
+                    for (int i = 0; i < packets; i++) {
+                        byte[] payload = ("{\"packet_id\": " + i + ", \"motor\": {\"pos\": " + (i * 0.5) + "}}")
+                                .getBytes(StandardCharsets.UTF_8);
+                        frames.write(payload.length >> 8);
+                        frames.write(payload.length);
+                        frames.write(payload);
+                    }
+                    out.write(frames.toByteArray());
+                    // Commands flow the other way on the same connection
+                    assertEquals('S', client.getInputStream().read());
+                } catch (Throwable e) {
+                    deviceError.set(e);
+                }
+            });
+            device.start();
+
+            TcpTransport transport = TcpTransport.parse("tcp://127.0.0.1:" + server.getLocalPort());
+            transport.connect();
+            TelemetryDecoder decoder = new TelemetryDecoder();
+            FrameDecoder frames = new FrameDecoder();
+            int[] received = {0};
+            FrameDecoder.FrameListener listener = (buffer, offset, length) -> {
+                TelemetrySample sample = decoder.decode(buffer, offset, length);
+                assertEquals(received[0], sample.get("packet_id", -1), 0);
+                assertEquals(received[0] * 0.5, sample.get("motor.pos", -1), 0);
+                received[0]++;
+            };
+
+            InputStream in = transport.getInputStream();
+            while (received[0] < packets && frames.readFrom(in, listener) != -1) { }
+            transport.getOutputStream().write("SET_VAL:1".getBytes(StandardCharsets.UTF_8));
+            transport.getOutputStream().flush();
+            device.join(5000);
+            transport.close();
+
+            assertFalse("device thread still running", device.isAlive());
+            if (deviceError.get() != null) throw new AssertionError("device thread failed", deviceError.get());
+            assertEquals(packets, received[0]);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TelemetryDecoderTest {
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return b;
+    }
+
+    // Schema 0: packet_id u32, knee.pos f32 (no timestamp)
+    private static byte[] schemaWithoutTimestamp() {
+        ByteBuffer buf = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(TelemetryProtocol.TYPE_SCHEMA).put((byte) 0).putShort((short) 2);
+        for (String name : new String[]{"packet_id", "knee.pos"}) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            buf.put(name.equals("packet_id") ? TelemetryProtocol.FIELD_U32 : TelemetryProtocol.FIELD_F32);
+            buf.put((byte) bytes.length).put(bytes);
+        }
+        byte[] out = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, out, 0, out.length);
+        return out;
+    }
+
+    private static byte[] batchWithoutTimestamp(int count) {
+        ByteBuffer buf = ByteBuffer.allocate(TelemetryProtocol.BATCH_HEADER_SIZE + count * 12).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(TelemetryProtocol.TYPE_BINARY_BATCH).put((byte) 0).put((byte) count).putDouble(0);
+        for (int i = 0; i < count; i++) buf.putFloat(0).putInt(100 + i).putFloat(i * 0.5f);
+        return buf.array();
+    }
+
+    private static TelemetrySample decode(TelemetryDecoder decoder, byte[] payload) {
+        return decoder.decode(payload, 0, payload.length);
+    }
+
+    @Test
+    public void batchMatchesSenderCodec() {
+        // BinaryEncoder().encode_batch() from sender/telemetry_codec.py, three packets of
+        // {"packet_id": 7 + i, "timestamp": 1767268800.0 + i * 0.002, "knee": {"pos": 1.5 * i, "torque": -2}}
+        byte[] schema = hex("0100040049097061636b65745f6964640974696d657374616d7066086b6e65652e706f73690b6b6e65652e746f72717565");
+        byte[] batch = hex("040003000000709855da41000000000700000000000000feffffff0014033b080000000000c03ffeffffff"
+                + "0012833b0900000000004040feffffff");
+
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        assertNull(decode(decoder, schema));
+        int i = 0;
+        for (TelemetrySample sample = decode(decoder, batch); sample != null; sample = decoder.next(), i++) {
+            assertEquals(7 + i, sample.get("packet_id", -1), 0);
+            assertEquals(1767268800.0 + i * 0.002, sample.get("timestamp", -1), 1e-6);
+            assertEquals(1.5 * i, sample.get("knee.pos", -1), 0);
+            assertEquals(-2, sample.get("knee.torque", -1), 0);
+        }
+        assertEquals(3, i);
+        assertNull(decoder.next());
+    }
+
+    @Test
+    public void nextOnlyContinuesBatches() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        byte[] json = "{\"packet_id\": 1}".getBytes(StandardCharsets.UTF_8);
+        assertNotNull(decode(decoder, json));
+        assertNull(decoder.next());
+
+        decode(decoder, schemaWithoutTimestamp());
+        assertNull(decode(decoder, batchWithoutTimestamp(0)));
+        assertNull(decoder.next());
+
+        // A schema without "timestamp" still batches; the deltas are ignored
+        TelemetrySample sample = decode(decoder, batchWithoutTimestamp(2));
+        assertEquals(100, sample.get(0), 0);
+        // A frame decoded halfway through a batch ends it
+        assertNotNull(decode(decoder, json));
+        assertNull(decoder.next());
+
+        sample = decode(decoder, batchWithoutTimestamp(2));
+        assertEquals(100, sample.get(0), 0);
+        sample = decoder.next();
+        assertEquals(101, sample.get(0), 0);
+        assertEquals(0.5, sample.get(1), 0);
+        assertNull(decoder.next());
+    }
+
+    // DeltaEncoder(3).encode() from sender/telemetry_codec.py for packets 1..4 of
+    // {"packet_id", "timestamp": 1767268800.0 + 0.01 * (id - 1), "knee": {"fault", "pos"}},
+    // fault 0 -> 1 and pos 1.5 -> 2.25 at packet 3
+    private static final byte[][] DELTA_STREAM = {
+            hex("0100040049097061636b65745f6964640974696d657374616d70490a6b6e65652e6661756c7466086b6e65652e706f73"),
+            hex("05000001000000000000709855da41000000000000c03f"),
+            hex("0600010302000000d7a300709855da41"),
+            hex("0600020f03000000ae4701709855da410100000000001040"),
+            hex("0500030400000085eb01709855da410100000000001040"),
+    };
+
+    @Test
+    public void deltasRebuildTheFullSample() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        assertNull(decode(decoder, DELTA_STREAM[0]));
+        for (int id = 1; id <= 4; id++) {
+            TelemetrySample sample = decode(decoder, DELTA_STREAM[id]);
+            assertEquals(id, sample.get("packet_id", -1), 0);
+            assertEquals(1767268800.0 + 0.01 * (id - 1), sample.get("timestamp", -1), 1e-6);
+            assertEquals(id >= 3 ? 1 : 0, sample.get("knee.fault", -1), 0);
+            assertEquals(id >= 3 ? 2.25 : 1.5, sample.get("knee.pos", -1), 0);
+        }
+        assertEquals(0, decoder.getDroppedDeltaCount());
+    }
+
+    @Test
+    public void lostFrameDropsDeltasUntilTheNextKeyframe() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        decode(decoder, DELTA_STREAM[0]);
+        decode(decoder, DELTA_STREAM[1]);
+        // Packet 2's delta never arrives: packet 3's would rebuild the wrong state
+        assertNull(decode(decoder, DELTA_STREAM[3]));
+        assertEquals(1, decoder.getDroppedDeltaCount());
+        TelemetrySample sample = decode(decoder, DELTA_STREAM[4]);
+        assertEquals(4, sample.get("packet_id", -1), 0);
+        assertEquals(2.25, sample.get("knee.pos", -1), 0);
+
+        // A plain sample in between leaves nothing for a delta to build on either
+        decoder = new TelemetryDecoder();
+        decode(decoder, DELTA_STREAM[0]);
+        decode(decoder, DELTA_STREAM[1]);
+        byte[] keyframe = DELTA_STREAM[1];
+        byte[] sampleFrame = new byte[keyframe.length - 1];
+        sampleFrame[0] = TelemetryProtocol.TYPE_BINARY_SAMPLE;
+        System.arraycopy(keyframe, 3, sampleFrame, 2, keyframe.length - 3);
+        assertNotNull(decode(decoder, sampleFrame));
+        assertNull(decode(decoder, DELTA_STREAM[2]));
+    }
+
+    @Test
+    public void malformedDeltaIsDroppedAndCounted() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        decode(decoder, DELTA_STREAM[0]);
+        decode(decoder, DELTA_STREAM[1]);
+        // Packet 2's delta with a byte too many
+        assertNull(decode(decoder, Arrays.copyOf(DELTA_STREAM[2], DELTA_STREAM[2].length + 1)));
+        assertEquals(1, decoder.getDroppedDeltaCount());
+        assertNull(decode(decoder, DELTA_STREAM[3])); // Out of step after it
+        assertEquals(2, decoder.getDroppedDeltaCount());
+        assertNotNull(decode(decoder, DELTA_STREAM[4]));
+        assertNull(decode(decoder, new byte[]{TelemetryProtocol.TYPE_DELTA, 0, 4})); // No room for its bitmap
+        assertEquals(3, decoder.getDroppedDeltaCount());
+    }
+
+    // DeltaEncoder(3).encode() for two channel groups taking turns, packets 1..3 of
+    // {"timestamp", "knee": {"pos": 1.5 * id}} and {"timestamp", "knee": {"voltage": 24}}
+    private static final byte[][] GROUPED_DELTA_STREAM = {
+            hex("01000200640974696d657374616d7066086b6e65652e706f73"),
+            hex("050000000000709855da410000c03f"),
+            hex("01010200640974696d657374616d70660c6b6e65652e766f6c74616765"),
+            hex("050100000000709855da410000c041"),
+            hex("06000103d7a300709855da4100004040"),
+            hex("06010101d7a300709855da41"),
+            hex("06000203ae4701709855da4100009040"),
+            hex("06010201ae4701709855da41"),
+    };
+
+    @Test
+    public void channelGroupsKeepTheirOwnDeltas() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        int id = 0;
+        for (byte[] frame : GROUPED_DELTA_STREAM) {
+            TelemetrySample sample = decode(decoder, frame);
+            if (sample == null) continue;
+            if (sample.getSchema().indexOf("knee.pos") >= 0) {
+                id++;
+                assertEquals(1.5 * id, sample.get("knee.pos", -1), 0);
+            } else {
+                assertEquals(24, sample.get("knee.voltage", -1), 0);
+            }
+            assertEquals(1767268800.0 + 0.01 * (id - 1), sample.get("timestamp", -1), 1e-6);
+        }
+        assertEquals(3, id);
+        assertEquals(0, decoder.getDroppedDeltaCount());
+    }
+
+    @Test
+    public void jsonGroupsKeepTheirLayouts() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        TelemetrySchema fast = null, slow = null;
+        for (int i = 0; i < 20; i++) {
+            byte[] json = ("{\"packet_id\": " + i + ", \"timestamp\": " + i + ", \"knee\": {\"pos\": " + i * 0.5 + "}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            TelemetrySample sample = decode(decoder, json);
+            if (fast == null) fast = sample.getSchema();
+            assertSame(fast, sample.getSchema());
+            assertEquals(i * 0.5, sample.get("knee.pos", -1), 0);
+            if (i % 5 != 0) continue;
+
+            json = ("{\"timestamp\": " + i + ", \"knee\": {\"voltage\": " + (24 - i) + ", \"fault\": 0}}")
+                    .getBytes(StandardCharsets.UTF_8);
+            sample = decode(decoder, json);
+            if (slow == null) slow = sample.getSchema();
+            assertSame(slow, sample.getSchema());
+            assertEquals(24 - i, sample.get("knee.voltage", -1), 0);
+            assertEquals(i, sample.get("timestamp", -1), 0);
+        }
+        assertNotSame(fast, slow);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchOfTheWrongSizeIsRejected() {
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        decode(decoder, schemaWithoutTimestamp());
+        byte[] batch = batchWithoutTimestamp(3);
+        batch[2] = 4;
+        decode(decoder, batch);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TelemetryDispatcherTest {
+
+    private static final int PRODUCERS = 4;
+
+    // One receive thread per device, each publishing ids 0..count-1 with pos = id * 2
+    private static Thread[] startProducers(TelemetryDispatcher dispatcher, int count, CountDownLatch go) {
+        Thread[] threads = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            TelemetrySchema schema = new TelemetrySchema(Arrays.asList("d" + p + ".packet_id", "d" + p + ".pos"));
+            threads[p] = new Thread(() -> {
+                TelemetrySample sample = new TelemetrySample(schema);
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int id = 0; id < count; id++) {
+                    sample.getValues()[0] = id;
+                    sample.getValues()[1] = id * 2;
+                    dispatcher.publish(sample, id, System.nanoTime());
+                }
+            });
+            threads[p].start();
+        }
+        return threads;
+    }
+
+    private static int producerOf(TelemetrySample sample) {
+        return sample.getSchema().getKey(0).charAt(1) - '0';
+    }
+
+    @Test
+    public void concurrentProducersKeepTheirOwnOrder() throws Exception {
+        int count = 20_000;
+        TelemetryDispatcher dispatcher = new TelemetryDispatcher(PRODUCERS * count); // Never full
+        long[] next = new long[PRODUCERS];
+        List<String> errors = new ArrayList<>();
+        dispatcher.addListener(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                TelemetrySample sample = batch.get(i);
+                int p = producerOf(sample);
+                double id = sample.get(0);
+                // A torn slot would pair one publish's id with another's pos or time
+                if (sample.get(1) != id * 2 || batch.getSampleMillis(i) != (long) id) errors.add("torn sample " + id);
+                if (id != next[p]) errors.add("producer " + p + ": " + id + " instead of " + next[p]);
+                next[p] = (long) id + 1;
+            }
+        });
+
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = startProducers(dispatcher, count, go);
+        go.countDown();
+        // The test thread plays the UI: frame callbacks while the devices publish
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread t : producers) running |= t.isAlive();
+            dispatcher.onFrame(0);
+        }
+        dispatcher.onFrame(0);
+
+        assertEquals(new ArrayList<String>(), errors.subList(0, Math.min(5, errors.size())));
+        for (int p = 0; p < PRODUCERS; p++) assertEquals(count, next[p]);
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(0, dispatcher.getFill(), 0);
+    }
+
+    @Test
+    public void everySampleIsDeliveredOrCountedAsDropped() throws Exception {
+        int count = 5000;
+        TelemetryDispatcher dispatcher = new TelemetryDispatcher(256);
+        int[] delivered = new int[PRODUCERS];
+        dispatcher.addListener(batch -> {
+            for (int i = 0; i < batch.size(); i++) delivered[producerOf(batch.get(i))]++;
+        });
+
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = startProducers(dispatcher, count, go);
+        go.countDown();
+        int frames = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread t : producers) running |= t.isAlive();
+            if (++frames % 4 == 0) dispatcher.onFrame(0); // A slow UI: the ring fills up
+            else Thread.yield();
+        }
+        dispatcher.onFrame(0);
+
+        long total = 0;
+        for (int d : delivered) total += d;
+        assertEquals((long) PRODUCERS * count, total + dispatcher.getDroppedCount());
+    }
+}
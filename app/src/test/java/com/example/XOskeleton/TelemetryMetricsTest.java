@@ -0,0 +1,107 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TelemetryMetricsTest {
+
+    @Test
+    public void countsGapsAndReorders() {
+        TelemetryMetrics metrics = new TelemetryMetrics();
+        for (long id : new long[] {1, 2, 3, 6, 5, 7, 7, 8}) metrics.onPacketId(id);
+        assertEquals(1, metrics.getGapCount());     // 4 and 5 missing when 6 arrived, then 5 came late
+        assertEquals(2, metrics.getReorderCount()); // Late 5 and duplicate 7
+    }
+
+    @Test
+    public void latePacketFillsItsHoleOnce() {
+        TelemetryMetrics metrics = new TelemetryMetrics();
+        for (long id : new long[] {10, 14, 12, 12, 11, 13}) metrics.onPacketId(id);
+        assertEquals(0, metrics.getGapCount());
+        assertEquals(4, metrics.getReorderCount());
+
+        // Too late to remember: stays a loss
+        metrics.onPacketId(5000);
+        metrics.onPacketId(20);
+        assertEquals(5000 - 14 - 1, metrics.getGapCount());
+        assertEquals(5, metrics.getReorderCount());
+    }
+
+    @Test
+    public void restartedIdsAfterReconnectAreNotReorders() {
+        TelemetryMetrics metrics = new TelemetryMetrics();
+        for (long id : new long[] {10, 11, 12}) metrics.onPacketId(id);
+        metrics.onReconnected(0, 1000, 0);
+        for (long id : new long[] {0, 1, 3}) metrics.onPacketId(id);
+        assertEquals(1, metrics.getGapCount());
+        assertEquals(0, metrics.getReorderCount());
+
+        metrics.onReconnected(0, 1000, 0);
+        metrics.onPacketId(8); // Same device kept counting: 4..7 were lost in the outage
+        assertEquals(5, metrics.getGapCount());
+    }
+
+    // What the device sends: its packet id and how many samples it held back just before this one
+    private static void receive(TelemetryMetrics metrics, TelemetrySchema schema, long id, long skipped) {
+        TelemetrySample sample = new TelemetrySample(schema);
+        sample.getValues()[0] = id;
+        sample.getValues()[1] = skipped;
+        metrics.onSample(sample, 0, -1);
+    }
+
+    @Test
+    public void shedSamplesAreNotGaps() {
+        TelemetrySchema schema = new TelemetrySchema(Arrays.asList(TelemetryProtocol.PACKET_ID_KEY, TelemetryProtocol.SKIPPED_KEY));
+        TelemetryMetrics metrics = new TelemetryMetrics();
+        receive(metrics, schema, 5, 4); // Held back before the first id we saw: shed, nothing to skip over
+        receive(metrics, schema, 6, 0);
+        receive(metrics, schema, 10, 3); // 7..9 held back
+        assertEquals(7, metrics.getShedCount());
+        assertEquals(0, metrics.getGapCount());
+        assertEquals(0, metrics.getReorderCount());
+
+        // 11..12 held back and 13 lost; 13 turning up late fills its hole
+        receive(metrics, schema, 14, 2);
+        assertEquals(1, metrics.getGapCount());
+        receive(metrics, schema, 13, 0);
+        assertEquals(0, metrics.getGapCount());
+        assertEquals(1, metrics.getReorderCount());
+
+        // A shed id is never a late packet's hole: it stays out of the gap count
+        receive(metrics, schema, 12, 0);
+        assertEquals(0, metrics.getGapCount());
+        assertEquals(9, metrics.getShedCount());
+        assertEquals(6, metrics.getPacketCount());
+    }
+
+    @Test
+    public void decodeErrorsAreReported() throws IOException {
+        TelemetryMetrics metrics = new TelemetryMetrics();
+        StringBuilder sb = new StringBuilder();
+        metrics.appendSummary(sb);
+        assertFalse(sb.toString().contains("undecodable"));
+
+        metrics.onDecodeError();
+        metrics.onDecodeError();
+        assertEquals(2, metrics.getDecodeErrorCount());
+        sb.setLength(0);
+        metrics.appendSummary(sb);
+        assertTrue(sb.toString(), sb.toString().contains("frames undecodable 2"));
+
+        File file = File.createTempFile("xo-metrics", TelemetryMetrics.EXTENSION);
+        try {
+            metrics.exportJson(file);
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertTrue(json, json.contains("\"decode_errors\": 2"));
+        } finally {
+            file.delete();
+        }
+    }
+}
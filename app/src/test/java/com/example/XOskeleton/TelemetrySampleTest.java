@@ -0,0 +1,99 @@
+package com.example.XOskeleton;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TelemetrySampleTest {
+
+    private static String format(double value) {
+        StringBuilder sb = new StringBuilder();
+        TelemetrySample.appendValue(sb, value);
+        return sb.toString();
+    }
+
+    @Test
+    public void decimalsAreShortestAndExact() {
+        assertEquals("0.1", format(0.1));
+        assertEquals("-50.25", format(-50.25));
+        assertEquals("0.007", format(0.007));
+        assertEquals("1234567.5", format(1234567.5));
+        assertEquals("42", format(42.0));
+        assertEquals("1760000000.123456", format(1760000000.123456)); // Epoch seconds path
+        assertEquals("1760000000123.5", format(1760000000123.5)); // Epoch millis
+        // Too large for micros in a long: the generic formatter, not an overflowed number
+        assertEquals(Double.toString(1e13 + 0.5), format(1e13 + 0.5));
+        assertEquals(Double.toString(-5e14 - 0.25), format(-5e14 - 0.25));
+        for (double value : new double[]{8.999999e12 + 0.125, 9.3e12 + 0.5, 9.99e14 + 0.5}) {
+            assertEquals(value, Double.parseDouble(format(value)), 0);
+        }
+        Random millis = new Random(4);
+        for (int i = 0; i < 10_000; i++) {
+            double value = 1.7e12 + millis.nextInt(1_000_000_000) + millis.nextInt(1000) / 1000.0;
+            assertEquals(value, Double.parseDouble(format(value)), 0);
+        }
+
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            // JSON-style values with a few decimals, and full-precision noise
+            double value = i % 2 == 0
+                    ? Math.round(random.nextGaussian() * 1e6) / 100.0
+                    : random.nextDouble() * Math.pow(10, random.nextInt(10) - 3);
+            String text = format(value);
+            assertEquals(text, value, Double.parseDouble(text), 0);
+            assertTrue(text, text.length() <= Double.toString(value).length());
+        }
+    }
+
+    @Test
+    public void singlePrecisionSlotsPrintTheFloat() {
+        TelemetrySchema schema = new TelemetrySchema(Arrays.asList("a", "b"), new boolean[]{true, false});
+        TelemetrySample sample = new TelemetrySample(schema);
+        sample.getValues()[0] = 0.1f; // 0.10000000149011612 as a double
+        sample.getValues()[1] = 0.1f;
+        assertEquals("0.1", sample.formatValue(0));
+        assertEquals("0.10000000149011612", sample.formatValue(1));
+
+        Random random = new Random(6);
+        for (int i = 0; i < 10_000; i++) {
+            float value = (float) (random.nextGaussian() * 100);
+            sample.getValues()[0] = value;
+            String text = sample.formatValue(0);
+            assertEquals(text, value, Float.parseFloat(text), 0);
+        }
+    }
+
+    @Test
+    public void alternatingLayoutsReuseTheArrays() {
+        // Two channel groups, as a ring slot of the dispatcher sees them
+        TelemetrySchema fast = new TelemetrySchema(Arrays.asList("packet_id", "pos", "torque"));
+        TelemetrySchema slow = new TelemetrySchema(Arrays.asList("packet_id", "voltage"));
+        TelemetrySample fastSample = new TelemetrySample(fast);
+        TelemetrySample slowSample = new TelemetrySample(slow);
+        slowSample.getValues()[1] = 48.5;
+
+        TelemetrySample slot = new TelemetrySample();
+        slot.setSchema(fast);
+        slot.setText(2, "stall");
+        double[] values = slot.getValues();
+        for (int i = 0; i < 4; i++) {
+            slot.setSchema(slow);
+            slot.setValues(slowSample);
+            assertEquals(48.5, slot.get(1), 0);
+            assertNull(slot.getText(1));
+            slot.setSchema(fast);
+            slot.setValues(fastSample);
+        }
+        assertSame(values, slot.getValues());
+        assertNull(slot.getText(2));
+
+        slot.setSchema(slow);
+        slot.setValues(slowSample);
+        TelemetrySample copy = slot.copy();
+        assertEquals(slow.size(), copy.getValues().length);
+        assertEquals("48.5", copy.formatValue(1));
+    }
+}
@@ -0,0 +1,60 @@
+// JVM-only JMH benchmarks for the telemetry receive path.
+// Run:   ./gradlew :benchmarks:jmh                 (all, results in build/results/jmh/results.json)
+//        ./gradlew :benchmarks:jmh -Pjmh.includes=Json   (a subset, by regex)
+// LegacyBenchmark runs the old receive and offline-plot code next to the current code, so one
+// run shows before and after. To compare two commits, run both on the same machine, then:
+//        python3 benchmarks/compare.py before.json after.json
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The benchmarked classes are compiled straight from the app module. Only plain-Java files
+// belong here; anything touching android.* must stay out of this list.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/XOskeleton/FrameDecoder.java",
+                "com/example/XOskeleton/Crc32c.java",
+                "com/example/XOskeleton/TelemetryProtocol.java",
+                "com/example/XOskeleton/TelemetrySchema.java",
+                "com/example/XOskeleton/TelemetrySample.java",
+                "com/example/XOskeleton/JsonTelemetryParser.java",
+                "com/example/XOskeleton/BinaryTelemetryDecoder.java",
+                "com/example/XOskeleton/TelemetryDecoder.java",
+                "com/example/XOskeleton/ColumnarLog.java",
+                "com/example/XOskeleton/BlockLog.java",
+                "com/example/XOskeleton/LogColumns.java",
+                "com/example/XOskeleton/MinMaxPyramid.java",
+                "com/example/XOskeleton/LiveSeries.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    // The old receive path parsed with org.json, which Android ships and the JVM doesn't
+    jmh(libs.org.json)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    timeUnit.set("ns")
+    benchmarkMode.set(listOf("avgt"))
+    // "gc" adds gc.alloc.rate.norm, i.e. bytes allocated per op
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    (project.findProperty("jmh.includes") as String?)?.let { includes.set(listOf(it)) }
+}
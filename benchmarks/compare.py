@@ -0,0 +1,93 @@
+"""
+Compares two JMH JSON result files (benchmarks/build/results/jmh/results.json
+saved from two commits, run on the same machine) and flags regressions in time
+per op and in bytes allocated per op (gc.alloc.rate.norm, from the "gc" profiler).
+
+    python3 benchmarks/compare.py before.json after.json [--threshold 0.10]
+
+Results from different machines are not comparable, which is why no results
+file is kept in the repo. For the old-vs-new code paths see LegacyBenchmark.
+"""
+import argparse
+import json
+
+ALLOC_METRIC = "gc.alloc.rate.norm"
+ALLOC_SLACK_BYTES = 16 # JMH's B/op has a little noise even for allocation-free code
+
+
+def load(path):
+    """
+    Maps "Benchmark.method [param=value]" -> (score, error, unit, bytes_per_op)
+    """
+    with open(path) as f:
+        runs = json.load(f)
+    results = {}
+    for run in runs:
+        params = run.get("params") or {}
+        name = run["benchmark"].rsplit(".", 2)
+        name = ".".join(name[-2:])
+        if params:
+            name += " [" + ", ".join(f"{k}={v}" for k, v in sorted(params.items())) + "]"
+        primary = run["primaryMetric"]
+        alloc = (run.get("secondaryMetrics") or {}).get(ALLOC_METRIC)
+        error = primary.get("scoreError")
+        if not isinstance(error, (int, float)):
+            error = 0.0 # "NaN" when there was a single iteration
+        results[name] = (primary["score"], error, primary["scoreUnit"], alloc["score"] if alloc else None)
+    return results
+
+
+def compare(baseline, current, threshold):
+    regressions = []
+    print(f"{'benchmark':<60} {'baseline':>14} {'current':>14} {'change':>8} {'B/op':>16}")
+    for name in sorted(set(baseline) | set(current)):
+        if name not in current:
+            print(f"{name:<60} {'(removed)':>14}")
+            continue
+        if name not in baseline:
+            score, _, unit, alloc = current[name]
+            print(f"{name:<60} {'(new)':>14} {score:>10.1f} {unit:<3}")
+            continue
+
+        b_score, b_error, unit, b_alloc = baseline[name]
+        c_score, c_error, c_unit, c_alloc = current[name]
+        if unit != c_unit:
+            print(f"{name:<60} unit changed {unit} -> {c_unit}, skipped")
+            continue
+        change = (c_score - b_score) / b_score if b_score else 0.0
+        # Only count it when the gap is bigger than both the threshold and the error bars
+        slower = change > threshold and (c_score - c_error) > (b_score + b_error)
+
+        alloc_text = ""
+        more_alloc = False
+        if b_alloc is not None and c_alloc is not None:
+            alloc_text = f"{b_alloc:.0f} -> {c_alloc:.0f}"
+            more_alloc = c_alloc > b_alloc * (1 + threshold) + ALLOC_SLACK_BYTES
+
+        flag = ""
+        if slower:
+            flag += "  SLOWER"
+        if more_alloc:
+            flag += "  MORE ALLOC"
+        if flag:
+            regressions.append(name)
+        print(f"{name:<60} {b_score:>10.1f} {unit:<3} {c_score:>10.1f} {unit:<3} {change:>+7.1%} {alloc_text:>16}{flag}")
+    return regressions
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compare two JMH result files")
+    parser.add_argument("baseline", help="results.json of the earlier commit")
+    parser.add_argument("current", help="results.json of the later commit")
+    parser.add_argument("--threshold", type=float, default=0.10, help="allowed relative regression")
+    args = parser.parse_args()
+
+    regressions = compare(load(args.baseline), load(args.current), args.threshold)
+    if regressions:
+        print(f"\n{len(regressions)} regression(s): " + ", ".join(regressions))
+    else:
+        print("\nNo regressions")
+
+
+if __name__ == "__main__":
+    main()
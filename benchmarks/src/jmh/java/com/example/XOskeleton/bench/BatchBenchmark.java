@@ -0,0 +1,99 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.FrameDecoder;
+import com.example.XOskeleton.TelemetryDecoder;
+import com.example.XOskeleton.TelemetrySample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples per second one receive thread gets through (one core, so "at equal CPU") with
+ * 'batch' samples per frame: the stream hands out one frame per read(), as the socket does
+ * when every frame is its own send, then v2 reassembly and CRC, then decoding every sample
+ * of the frame. Batch 1 sends plain sample frames, as the sender does without a latency budget.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchBenchmark {
+
+    static final int SAMPLES = 4096;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    int batch;
+
+    private byte[][] frames;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(4);
+        byte[] schema = Payloads.binarySchema();
+        decoder.decode(schema, 0, schema.length);
+        frames = new byte[SAMPLES / batch][];
+        for (int f = 0; f < frames.length; f++) {
+            byte[] payload = batch == 1 ? Payloads.binary(f, random) : Payloads.binaryBatch(f * batch, batch, random);
+            frames[f] = FrameDecoder.frame(FrameDecoder.VERSION_2, payload, 0, payload.length);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int receive(Blackhole bh) throws IOException {
+        InputStream in = new FramePerReadInputStream(frames);
+        frameDecoder.reset();
+        int[] samples = {0};
+        FrameDecoder.FrameListener listener = (buffer, offset, length) -> {
+            for (TelemetrySample s = decoder.decode(buffer, offset, length); s != null; s = decoder.next()) {
+                bh.consume(s.get(1));
+                samples[0]++;
+            }
+        };
+        while (frameDecoder.readFrom(in, listener) != -1) { }
+        return samples[0];
+    }
+
+    static final class FramePerReadInputStream extends InputStream {
+        private final byte[][] frames;
+        private int frame;
+        private int pos;
+
+        FramePerReadInputStream(byte[][] frames) {
+            this.frames = frames;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (frame == frames.length) return -1;
+            byte[] current = frames[frame];
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            if (pos == current.length) {
+                frame++;
+                pos = 0;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.LogColumns;
+import com.example.XOskeleton.TelemetryDecoder;
+import com.example.XOskeleton.TelemetrySample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Per-packet cost after framing: decoding JSON or binary into the reused sample (this is
+ * what used to be new JSONObject + flatten), and building the log row handed to the logger.
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    private static final int PACKETS = 1024; // Power of two, cycled so values differ per op
+
+    private final byte[][] json = new byte[PACKETS][];
+    private final byte[][] binary = new byte[PACKETS][];
+    private final TelemetryDecoder jsonDecoder = new TelemetryDecoder();
+    private final TelemetryDecoder binaryDecoder = new TelemetryDecoder();
+    private final LogColumns logColumns = new LogColumns();
+    private TelemetrySample sample;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(2);
+        for (int i = 0; i < PACKETS; i++) json[i] = Payloads.json(i, random);
+        random = new Random(2);
+        for (int i = 0; i < PACKETS; i++) binary[i] = Payloads.binary(i, random);
+        byte[] schema = Payloads.binarySchema();
+        binaryDecoder.decode(schema, 0, schema.length);
+
+        sample = jsonDecoder.decode(json[0], 0, json[0].length).copy();
+        logColumns.update(sample);
+    }
+
+    @Benchmark
+    public TelemetrySample parseJson() {
+        byte[] payload = json[next++ & (PACKETS - 1)];
+        return jsonDecoder.decode(payload, 0, payload.length);
+    }
+
+    @Benchmark
+    public TelemetrySample decodeBinary() {
+        byte[] payload = binary[next++ & (PACKETS - 1)];
+        return binaryDecoder.decode(payload, 0, payload.length);
+    }
+
+    // As DeviceLink.onSample: the column lookup, then a fresh row for the writer thread
+    @Benchmark
+    public double[] logRow() {
+        logColumns.update(sample);
+        return logColumns.row(sample, 1767268800000.0);
+    }
+
+    // The whole receive-thread cost of one JSON packet apart from the socket and the file
+    @Benchmark
+    public double[] parseJsonAndBuildRow() {
+        byte[] payload = json[next++ & (PACKETS - 1)];
+        TelemetrySample decoded = jsonDecoder.decode(payload, 0, payload.length);
+        logColumns.update(decoded);
+        return logColumns.row(decoded, 1767268800000.0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.FrameDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Frame reassembly from a socket-like stream. Each op is one frame; the stream hands out
+ * at most 'chunk' bytes per read() like an RFCOMM socket does. Framing 2 adds the sync
+ * scan and the CRC32C check of every frame.
+ */
+@State(Scope.Thread)
+public class FrameDecoderBenchmark {
+
+    static final int FRAMES = 1024;
+
+    @Param({"64", "990"})
+    int chunk;
+
+    @Param({"1", "2"})
+    int framing;
+
+    private byte[] stream;
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] payload = Payloads.json(i, random);
+            byte[] framed = FrameDecoder.frame(framing, payload, 0, payload.length);
+            out.write(framed, 0, framed.length);
+        }
+        stream = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int reassemble(Blackhole bh) throws IOException {
+        InputStream in = new ChunkedInputStream(stream, chunk);
+        decoder.reset();
+        int[] frames = {0};
+        FrameDecoder.FrameListener listener = (buffer, offset, length) -> {
+            bh.consume(buffer[offset]);
+            frames[0]++;
+        };
+        while (decoder.readFrom(in, listener) != -1) { }
+        return frames[0];
+    }
+
+    static final class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        ChunkedInputStream(byte[] data, int chunk) {
+            super(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
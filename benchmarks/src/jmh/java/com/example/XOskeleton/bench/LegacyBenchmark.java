@@ -0,0 +1,245 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.ColumnarLog;
+import com.example.XOskeleton.FrameDecoder;
+import com.example.XOskeleton.TelemetryDecoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "before" numbers: the receive and offline-plot paths as the app had them before the
+ * decoder and columnar rewrites, copied here verbatim, each next to the current path on the
+ * same data. Comparing the pairs of one run needs no stored baseline.
+ *
+ * Receive (per frame): readExactly + new String + new JSONObject + flatten, against
+ * FrameDecoder + TelemetryDecoder. Offline (per column): the old DataLogger.readFile +
+ * ExoViewModel.getColumnData on the old CSV log, against ColumnarLog.
+ */
+@State(Scope.Benchmark)
+public class LegacyBenchmark {
+
+    static final int FRAMES = 1024;
+    static final int ROWS = 100_000;
+    private static final String COLUMN = "right(1).Position";
+
+    private byte[] stream;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final TelemetryDecoder decoder = new TelemetryDecoder();
+    private File dir;
+    private File csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JSONException {
+        Random random = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] payload = Payloads.json(i, random);
+            byte[] framed = FrameDecoder.frame(1, payload, 0, payload.length);
+            out.write(framed, 0, framed.length);
+        }
+        stream = out.toByteArray();
+
+        // Written the way logDynamicJson did: sorted keys, then String.valueOf of every JSON value
+        dir = Files.createTempDirectory("xo-legacy").toFile();
+        csv = new File(dir, "Log_20260101_120000.csv");
+        random = new Random(3);
+        List<String> headers = null;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(csv), 64 * 1024)) {
+            for (int i = 0; i < ROWS; i++) {
+                Map<String, String> flatMap = new HashMap<>();
+                flatten(new JSONObject(new String(Payloads.json(i, random), StandardCharsets.UTF_8)), "", flatMap);
+                if (headers == null) {
+                    headers = new ArrayList<>(flatMap.keySet());
+                    Collections.sort(headers);
+                    writer.write(String.join(",", headers));
+                    writer.write('\n');
+                }
+                for (int c = 0; c < headers.size(); c++) {
+                    if (c > 0) writer.write(',');
+                    String value = flatMap.get(headers.get(c));
+                    writer.write(value != null ? value : "0");
+                }
+                writer.write('\n');
+            }
+        }
+        ColumnarLog.convertCsv(csv);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    // ==========================================
+    //           RECEIVE
+    // ==========================================
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void receiveLegacy(Blackhole bh) throws IOException {
+        InputStream in = new FrameDecoderBenchmark.ChunkedInputStream(stream, 990);
+        byte[] lengthHeader = new byte[2];
+        while (true) {
+            if (readExactly(in, lengthHeader, 2) == -1) break;
+            int payloadSize = ((lengthHeader[0] & 0xFF) << 8) | (lengthHeader[1] & 0xFF);
+            byte[] payload = new byte[payloadSize];
+            if (readExactly(in, payload, payloadSize) == -1) break;
+
+            String jsonString = new String(payload, StandardCharsets.UTF_8);
+            try {
+                JSONObject json = new JSONObject(jsonString);
+                Map<String, String> flatMap = new HashMap<>();
+                flatten(json, "", flatMap);
+                bh.consume(flatMap);
+            } catch (Exception ignored) {}
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void receiveCurrent(Blackhole bh) throws IOException {
+        InputStream in = new FrameDecoderBenchmark.ChunkedInputStream(stream, 990);
+        frameDecoder.reset();
+        FrameDecoder.FrameListener listener = (buffer, offset, length) -> bh.consume(decoder.decode(buffer, offset, length));
+        while (frameDecoder.readFrom(in, listener) != -1) { }
+    }
+
+    // ==========================================
+    //           OFFLINE COLUMN
+    // ==========================================
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Point> readColumnLegacy() {
+        return getColumnData(readFile(csv), COLUMN);
+    }
+
+    // Same x/y extraction as ExoViewModel.readColumnPoints
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public float[][] readColumnCurrent() throws IOException {
+        ColumnarLog log = ColumnarLog.open(ColumnarLog.sidecarFor(csv));
+        DoubleBuffer column = log.getColumn(COLUMN);
+        DoubleBuffer time = log.getColumn("timestamp");
+        int n = log.getRowCount();
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        double start = time.get(0) * 1000.0;
+        for (int i = 0; i < n; i++) {
+            xs[i] = (float) ((time.get(i) * 1000.0 - start) / 1000.0);
+            ys[i] = (float) column.get(i);
+        }
+        return new float[][]{xs, ys};
+    }
+
+    // ==========================================
+    //           OLD CODE
+    // ==========================================
+    // Stands in for MPAndroidChart's Entry, one object per point like the old code made
+    static final class Point {
+        final float x;
+        final float y;
+
+        Point(float x, float y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static void flatten(JSONObject json, String prefix, Map<String, String> out) throws JSONException {
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.get(key);
+            String newKey = prefix.isEmpty() ? key : prefix + "." + key;
+            if (value instanceof JSONObject) flatten((JSONObject) value, newKey, out);
+            else out.put(newKey, String.valueOf(value));
+        }
+    }
+
+    private static int readExactly(InputStream in, byte[] buffer, int numBytes) throws IOException {
+        int bytesRead = 0;
+        while (bytesRead < numBytes) {
+            int result = in.read(buffer, bytesRead, numBytes - bytesRead);
+            if (result == -1) return -1;
+            bytesRead += result;
+        }
+        return bytesRead;
+    }
+
+    private static List<String[]> readFile(File file) {
+        List<String[]> data = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                // Split by comma, but handle empty values
+                data.add(line.split(",", -1));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return data;
+    }
+
+    private static List<Point> getColumnData(List<String[]> lines, String columnName) {
+        List<Point> entries = new ArrayList<>();
+        if (lines.size() < 2) return entries;
+
+        String[] headers = lines.get(0);
+        int colIndex = -1, timeIndex = -1;
+        for (int i = 0; i < headers.length; i++) {
+            if (headers[i].trim().equals(columnName)) colIndex = i;
+            if (headers[i].toLowerCase().contains("timestamp") || headers[i].equals("ts")) timeIndex = i;
+        }
+        if (colIndex == -1) return entries;
+
+        double startTime = 0;
+        for (int i = 1; i < lines.size(); i++) {
+            String[] row = lines.get(i);
+            if (row.length <= colIndex) continue;
+            try {
+                float y = Float.parseFloat(row[colIndex]);
+                float x = i;
+                if (timeIndex != -1 && row.length > timeIndex) {
+                    double ts = Double.parseDouble(row[timeIndex]);
+                    if (ts < 10000000000.0) ts *= 1000.0;
+                    if (startTime == 0) startTime = ts;
+                    x = (float) ((ts - startTime) / 1000.0);
+                }
+                entries.add(new Point(x, y));
+            } catch (Exception ignored) {}
+        }
+        return entries;
+    }
+}
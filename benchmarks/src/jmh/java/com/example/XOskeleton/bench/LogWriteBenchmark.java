@@ -0,0 +1,168 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.BlockLog;
+import com.example.XOskeleton.LogColumns;
+import com.example.XOskeleton.TelemetryDecoder;
+import com.example.XOskeleton.TelemetryProtocol;
+import com.example.XOskeleton.TelemetrySample;
+import com.example.XOskeleton.TelemetrySchema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing one session log the way the logger thread does: CSV rows (the format logs were
+ * written in before BlockLog) against block-compressed rows. The rows are built up front,
+ * so only formatting, encoding, compression and the file writes are timed. File sizes and
+ * the compression ratio are printed when each trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogWriteBenchmark {
+
+    @Param({"json", "binary"})
+    String source;
+
+    @Param({"100000"})
+    int rows;
+
+    private File dir;
+    private File csv;
+    private File xlog;
+    private TelemetrySample[] samples;
+    private double[][] rowValues;
+    private int[][] rowColumns;
+    private double[] phoneMillis;
+    private List<String> columns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xo-bench").toFile();
+        csv = new File(dir, "Log_20260101_120000.csv");
+        xlog = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+
+        Random random = new Random(5);
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        if (source.equals("binary")) {
+            byte[] schema = Payloads.binarySchema();
+            decoder.decode(schema, 0, schema.length);
+        }
+        LogColumns logColumns = new LogColumns();
+        samples = new TelemetrySample[rows];
+        rowValues = new double[rows][];
+        rowColumns = new int[rows][];
+        phoneMillis = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            byte[] payload = source.equals("binary") ? Payloads.binary(i, random) : Payloads.json(i, random);
+            samples[i] = decoder.decode(payload, 0, payload.length).copy();
+            // Synchronized phone time: the device's 20 Hz clock plus a little mapping jitter
+            phoneMillis[i] = 1767268800000.0 + i * 50.0 + random.nextInt(1000) / 1000.0;
+            List<String> grown = logColumns.update(samples[i]);
+            if (grown != null) columns = grown;
+            rowValues[i] = logColumns.row(samples[i], phoneMillis[i]);
+            rowColumns[i] = logColumns.getStreamColumns();
+        }
+
+        long csvBytes = writeCsv();
+        long xlogBytes = writeBlockLog();
+        System.out.printf(Locale.US, "%n%s, %d rows: csv %d bytes, xlog %d bytes, ratio %.1fx%n",
+                source, rows, csvBytes, xlogBytes, (double) csvBytes / xlogBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    // What the logger did before: a CSV row per sample (columns fixed by the first one, keys
+    // sorted, "0" for a missing key, phone_time last), buffered UTF-8 writes
+    @Benchmark
+    public long writeCsv() throws IOException {
+        List<String> headers = samples[0].getSchema().getSortedKeys();
+        TelemetrySchema schema = null;
+        int[] slots = null;
+        StringBuilder row = new StringBuilder(256);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8), 64 * 1024)) {
+            out.write(String.join(",", headers) + "," + TelemetryProtocol.PHONE_TIME_KEY + "\n");
+            for (int i = 0; i < rows; i++) {
+                TelemetrySample sample = samples[i];
+                if (sample.getSchema() != schema) {
+                    schema = sample.getSchema();
+                    slots = new int[headers.size()];
+                    for (int c = 0; c < slots.length; c++) slots[c] = schema.indexOf(headers.get(c));
+                }
+                row.setLength(0);
+                for (int c = 0; c < slots.length; c++) {
+                    if (slots[c] >= 0) sample.appendValue(row, slots[c]);
+                    else row.append('0');
+                    row.append(',');
+                }
+                // Whole microseconds
+                long micros = Math.round(phoneMillis[i] * 1000);
+                long fraction = micros % 1000;
+                row.append(micros / 1000).append('.');
+                if (fraction < 100) row.append('0');
+                if (fraction < 10) row.append('0');
+                row.append(fraction).append('\n');
+                out.write(row.toString());
+            }
+        }
+        return csv.length();
+    }
+
+    @Benchmark
+    public long writeBlockLog() throws IOException {
+        BlockLog.Writer out = new BlockLog.Writer(xlog, columns, columns.size() - 1);
+        // As DataLogger does: a stream per set of columns
+        Map<int[], Integer> streams = new IdentityHashMap<>();
+        for (int i = 0; i < rows; i++) {
+            Integer stream = streams.get(rowColumns[i]);
+            if (stream == null) {
+                stream = out.addStream(rowColumns[i]);
+                streams.put(rowColumns[i], stream);
+            }
+            out.append(stream, rowValues[i]);
+        }
+        out.close();
+        return out.getWrittenBytes();
+    }
+
+    // Seeking: one second out of the middle of the session
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[][] readOneSecond() throws IOException {
+        BlockLog log = BlockLog.open(xlog);
+        try {
+            double middle = phoneMillis[rows / 2];
+            return log.readRange(middle, middle + 1000);
+        } finally {
+            log.close();
+        }
+    }
+}
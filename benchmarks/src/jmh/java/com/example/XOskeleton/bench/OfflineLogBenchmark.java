@@ -0,0 +1,145 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.BlockLog;
+import com.example.XOskeleton.ColumnarLog;
+import com.example.XOskeleton.LogColumns;
+import com.example.XOskeleton.MinMaxPyramid;
+import com.example.XOskeleton.TelemetryDecoder;
+import com.example.XOskeleton.TelemetrySample;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline plotting on large synthetic sessions written exactly like the logger writes them:
+ * converting the block log to its columnar sidecar, reading one column as the Dev tab does
+ * (replacing readFile/getColumnData), and building/querying the level-of-detail pyramid
+ * (random zooms were a wall-clock check in MinMaxPyramidTest before).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OfflineLogBenchmark {
+
+    private static final String COLUMN = "right(1).Position";
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    private File dir;
+    private File xlog;
+    private ColumnarLog log;
+    private float[] x;
+    private float[] y;
+    private MinMaxPyramid pyramid;
+    private final float[] outX = new float[MinMaxPyramid.capacityFor(1080)];
+    private final float[] outY = new float[outX.length];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("xo-bench").toFile();
+        xlog = new File(dir, "Log_20260101_120000" + BlockLog.EXTENSION);
+        Random random = new Random(3);
+        TelemetryDecoder decoder = new TelemetryDecoder();
+        LogColumns logColumns = new LogColumns();
+        BlockLog.Writer out = null;
+        Map<int[], Integer> streams = new IdentityHashMap<>();
+        for (int i = 0; i < rows; i++) {
+            byte[] payload = Payloads.json(i, random);
+            TelemetrySample sample = decoder.decode(payload, 0, payload.length);
+            List<String> columns = logColumns.update(sample);
+            if (out == null) out = new BlockLog.Writer(xlog, columns, columns.size() - 1);
+            else if (columns != null) out.addColumns(columns.subList(out.getColumnCount(), columns.size()));
+            int[] streamColumns = logColumns.getStreamColumns();
+            Integer stream = streams.get(streamColumns);
+            if (stream == null) {
+                stream = out.addStream(streamColumns);
+                streams.put(streamColumns, stream);
+            }
+            out.append(stream, logColumns.row(sample, 1767268800000.0 + i * 50.0));
+        }
+        out.close();
+        ColumnarLog.convertBlockLog(xlog);
+        log = ColumnarLog.open(ColumnarLog.sidecarFor(xlog));
+        float[][] points = readColumn(log);
+        x = points[0];
+        y = points[1];
+        pyramid = new MinMaxPyramid(x, y, x.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public File convertBlockLog() throws IOException {
+        return ColumnarLog.convertBlockLog(xlog);
+    }
+
+    @Benchmark
+    public float[][] openAndReadColumn() throws IOException {
+        return readColumn(ColumnarLog.open(ColumnarLog.sidecarFor(xlog)));
+    }
+
+    @Benchmark
+    public MinMaxPyramid buildPyramid() {
+        return new MinMaxPyramid(x, y, x.length);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int queryPyramidTenth() {
+        float span = (pyramid.getMaxX() - pyramid.getMinX()) / 10;
+        return pyramid.query(pyramid.getMinX() + span * 4, pyramid.getMinX() + span * 5, 1080, outX, outY);
+    }
+
+    // Pan/zoom gestures: a random span from the whole session down to 1/32768 of it
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int queryPyramidRandomZoom(ZoomState zoom) {
+        float span = pyramid.getMaxX() * (float) Math.pow(2, -zoom.random.nextInt(16));
+        float from = zoom.random.nextFloat() * (pyramid.getMaxX() - span);
+        return pyramid.query(from, from + span, 1080, outX, outY);
+    }
+
+    @State(Scope.Thread)
+    public static class ZoomState {
+        final Random random = new Random(11);
+    }
+
+    // Same x/y extraction as ExoViewModel.readColumnPoints
+    private static float[][] readColumn(ColumnarLog log) {
+        DoubleBuffer column = log.getColumn(COLUMN);
+        DoubleBuffer time = log.getColumn("timestamp");
+        int n = log.getRowCount();
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        double start = time.get(0) * 1000.0;
+        for (int i = 0; i < n; i++) {
+            xs[i] = (float) ((time.get(i) * 1000.0 - start) / 1000.0);
+            ys[i] = (float) column.get(i);
+        }
+        return new float[][]{xs, ys};
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.XOskeleton.bench;
+
+import com.example.XOskeleton.TelemetryProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic packets shaped like sender/Sender.py build_packet(): same keys, same order,
+ * same value ranges, encoded like json.dumps() and like telemetry_codec.BinaryEncoder.
+ */
+final class Payloads {
+
+    static final String[] MOTORS = {"right(1)", "left(2)"};
+    static final String[] MOTOR_FIELDS = {"fault", "Position", "velocity", "torque", "voltage", "current", "user_setpoint"};
+
+    private Payloads() {}
+
+    // Values of one packet in schema order: packet_id, timestamp, then 7 fields per motor
+    static double[] values(int packetId, Random random) {
+        double t = packetId * 0.05;
+        double freq = 0.5;
+        double pos = 50 + 40 * Math.sin(2 * Math.PI * freq * t);
+        double vel = 40 * Math.cos(2 * Math.PI * freq * t);
+        double torque = vel * 0.2 + (random.nextDouble() - 0.5);
+        double volt = 48.0 - Math.abs(torque) * 0.05 + (random.nextDouble() - 0.5) * 0.2;
+        double posLeft = 50 + 40 * Math.sin(2 * Math.PI * freq * t + Math.PI);
+        double velLeft = 40 * Math.cos(2 * Math.PI * freq * t + Math.PI);
+        return new double[]{
+                packetId, 1739182345.0 + t,
+                0, round2(pos), round2(vel), round2(torque), round2(volt), packetId % 100, 0.0,
+                0, round2(posLeft), round2(velLeft), round2(-torque), round2(volt), packetId % 100, 0.0
+        };
+    }
+
+    static byte[] json(int packetId, Random random) {
+        double[] v = values(packetId, random);
+        StringBuilder sb = new StringBuilder(400);
+        sb.append("{\"packet_id\": ").append(packetId)
+                .append(", \"timestamp\": ").append(String.format(Locale.US, "%.6f", v[1]));
+        int i = 2;
+        for (String motor : MOTORS) {
+            sb.append(", \"").append(motor).append("\": {");
+            for (int f = 0; f < MOTOR_FIELDS.length; f++, i++) {
+                if (f > 0) sb.append(", ");
+                sb.append('"').append(MOTOR_FIELDS[f]).append("\": ");
+                // Python prints ints without a decimal point and floats with at least one
+                if (f == 0 || f == 5) sb.append((long) v[i]);
+                else sb.append(v[i]);
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Schema frame for binary(), schema id 0
+    static byte[] binarySchema() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(TelemetryProtocol.TYPE_SCHEMA);
+        out.write(0);
+        int count = 2 + MOTORS.length * MOTOR_FIELDS.length;
+        out.write(count);
+        out.write(count >> 8);
+        field(out, TelemetryProtocol.FIELD_U32, "packet_id");
+        field(out, TelemetryProtocol.FIELD_F64, "timestamp");
+        for (String motor : MOTORS) {
+            for (int f = 0; f < MOTOR_FIELDS.length; f++) {
+                byte type = f == 0 || f == 5 ? TelemetryProtocol.FIELD_U32 : TelemetryProtocol.FIELD_F32;
+                field(out, type, motor + "." + MOTOR_FIELDS[f]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] binary(int packetId, Random random) {
+        double[] v = values(packetId, random);
+        ByteBuffer buf = ByteBuffer.allocate(2 + 4 + 8 + MOTORS.length * MOTOR_FIELDS.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(TelemetryProtocol.TYPE_BINARY_SAMPLE).put((byte) 0);
+        buf.putInt(packetId).putDouble(v[1]);
+        int i = 2;
+        for (int m = 0; m < MOTORS.length; m++) {
+            for (int f = 0; f < MOTOR_FIELDS.length; f++, i++) {
+                if (f == 0 || f == 5) buf.putInt((int) v[i]);
+                else buf.putFloat((float) v[i]);
+            }
+        }
+        return buf.array();
+    }
+
+    // count consecutive packets from firstId as one batch frame of schema 0: header, then
+    // per packet the timestamp delta and the binary() values without the timestamp
+    static byte[] binaryBatch(int firstId, int count, Random random) {
+        int record = 4 + 4 + MOTORS.length * MOTOR_FIELDS.length * 4;
+        ByteBuffer buf = ByteBuffer.allocate(TelemetryProtocol.BATCH_HEADER_SIZE + count * record).order(ByteOrder.LITTLE_ENDIAN);
+        double base = values(firstId, new Random(0))[1];
+        buf.put(TelemetryProtocol.TYPE_BINARY_BATCH).put((byte) 0).put((byte) count).putDouble(base);
+        for (int n = 0; n < count; n++) {
+            double[] v = values(firstId + n, random);
+            buf.putFloat((float) (v[1] - base)).putInt(firstId + n);
+            int i = 2;
+            for (int m = 0; m < MOTORS.length; m++) {
+                for (int f = 0; f < MOTOR_FIELDS.length; f++, i++) {
+                    if (f == 0 || f == 5) buf.putInt((int) v[i]);
+                    else buf.putFloat((float) v[i]);
+                }
+            }
+        }
+        return buf.array();
+    }
+
+    private static void field(ByteArrayOutputStream out, byte type, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.write(type);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -5,13 +5,24 @@ import math
 import random
 import subprocess
 import re
-import select  # Required for non-blocking read
+import collections
+import select  # Waits for commands between packets
+import argparse
 import framing # <--- IMPORT YOUR MODULE
+import telemetry_codec
 
 # ==========================================
 # CONFIGURATION
 # ==========================================
 PORT = 1
+TCP_PORT = 5555
+
+# Channels that change slowly go out at their own rate (Hz), in packets of their own with
+# just a timestamp and those channels, instead of in every packet: a "channel group"
+# (see TelemetryProtocol.isPacketKey). Everything else goes out every tick.
+CHANNEL_RATES = {"voltage": 1.0, "fault": 1.0, "user_setpoint": 1.0}
+# ...but these go out as soon as they change: a fault or an applied setpoint can't wait a second
+SEND_ON_CHANGE = {"fault", "user_setpoint"}
 
 def get_local_bluetooth_mac():
     try:
@@ -22,15 +33,255 @@ def get_local_bluetooth_mac():
     except: pass
     return "00:00:00:00:00:00"
 
-def main():
-    print("=== SENDER (Interactive with framing.py) ===")
+def build_packet(packet_counter, t, user_setpoint, ack=0, skipped=0):
+    """
+    Simulated motor physics for one packet (also used by bench_formats.py).
+    'ack' echoes the sequence of the last command applied, 'skipped' counts the
+    packets held back for lack of flow-control credit since the previous one sent.
+    """
+    freq = 0.5 # 0.5Hz wave
+
+    pos_val = 50 + (40 * math.sin(2 * math.pi * freq * t))
+    vel_val = 40 * math.cos(2 * math.pi * freq * t)
+    torque_val = (vel_val * 0.2) + random.uniform(-0.5, 0.5)
+    volt_val = 48.0 - (abs(torque_val) * 0.05) + random.uniform(-0.1, 0.1)
+
+    return {
+        "packet_id": packet_counter,
+        "timestamp": time.time(),
+        telemetry_codec.ACK_KEY: ack,
+        telemetry_codec.SKIPPED_KEY: skipped,
+        "right(1)": {
+            "fault": 0, 
+            "Position": round(pos_val, 2),
+            "velocity": round(vel_val, 2),
+            "torque": round(torque_val, 2),
+            "voltage": round(volt_val, 2),
+            "current": packet_counter % 100,
+            # Feedback the user setpoint to prove it updated
+            "user_setpoint": user_setpoint  
+        },
+        "left(2)": {
+            "fault": 0,
+            "Position": round(50 + (40 * math.sin(2 * math.pi * freq * t + math.pi)), 2), 
+            "velocity": round(40 * math.cos(2 * math.pi * freq * t + math.pi), 2),
+            "torque": round(torque_val * -1, 2),
+            "voltage": round(volt_val, 2),
+            "current": packet_counter % 100,
+            "user_setpoint": user_setpoint 
+        }
+    }
+
+class ChannelGroups:
+    """
+    Splits each packet into the part sent every tick and one packet per channel rate
+    that is due: {"timestamp": t, joint: {that rate's channels}, ...}. Keys that are not
+    per joint (packet_id, ack, skipped) stay in the every-tick part, which comes first.
+    """
+
+    def __init__(self, rates, send_on_change=SEND_ON_CHANGE):
+        self.rates = dict(rates)
+        self.send_on_change = set(send_on_change)
+        self.next_due = {}  # Rate -> when its group is due again
+        self.last_values = {}  # (joint, channel) -> value in the previous packet
+
+    def split(self, packet, now):
+        fast = {}
+        groups = {}  # Rate -> group packet
+        changed = set()
+        for key, value in packet.items():
+            if not isinstance(value, dict):
+                fast[key] = value
+                continue
+            for channel, v in value.items():
+                rate = self.rates.get(channel)
+                if rate is None:
+                    fast.setdefault(key, {})[channel] = v
+                    continue
+                group = groups.setdefault(rate, {telemetry_codec.TIMESTAMP_KEY: packet[telemetry_codec.TIMESTAMP_KEY]})
+                group.setdefault(key, {})[channel] = v
+                if channel in self.send_on_change and self.last_values.get((key, channel), v) != v:
+                    changed.add(rate)
+                self.last_values[(key, channel)] = v
+        packets = [fast]
+        for rate, group in groups.items():
+            if now >= self.next_due.get(rate, 0.0) or rate in changed:
+                packets.append(group)
+                self.next_due[rate] = now + 1.0 / rate
+        return packets
+
+def encode_payloads(packets, fmt, binary_encoder, delta_encoder=None):
+    """
+    Returns the payloads for the packets to send now: one JSON object per packet, a
+    binary sample or keyframe/delta per packet, or with several packets one binary batch
+    frame (binary frames are preceded by a schema frame whenever the layout changes)
+    """
+    if delta_encoder is not None:
+        return [payload for packet in packets for payload in delta_encoder.encode(packet)]
+    if fmt == "binary":
+        if len(packets) > 1:
+            return binary_encoder.encode_batch(packets)
+        return binary_encoder.encode(packets[0])
+    return [telemetry_codec.encode_json(packet) for packet in packets]
+
+def batch_size_for(rate, latency_budget_ms):
+    """
+    Most samples per frame that keeps the oldest one within the latency budget: it waits
+    for the other batch_size - 1 to be taken, one every 1/rate seconds
+    """
+    if latency_budget_ms <= 0:
+        return 1
+    size = 1 + int(latency_budget_ms / 1000.0 * rate)
+    return max(1, min(size, telemetry_codec.MAX_BATCH_SIZE))
+
+class CreditGate:
+    """
+    Our side of the app's flow control. No limit until the app's first grant (an older app
+    never sends one), then at most 'window' frames in flight beyond the newest packet_id the
+    app has handled; frames lost on the way are covered by that packet_id too. Packets that
+    don't fit are held back and counted, and the next one sent reports the count, so the
+    app gets a summary instead of every sample.
+
+    The keepalive is required: blocked for KEEPALIVE_S, one goes out anyway. If every frame
+    in flight was lost, the app's grant cannot move past them until another frame reaches
+    it. (The app repeats its last grant every 100 ms while we are quiet; that only covers a
+    lost grant.)
+    """
+    KEEPALIVE_S = 0.5
+
+    def __init__(self, enabled=True):
+        self.enabled = enabled
+        self.sent_frames = 0
+        self.taken = 0 # sent_frames as of the newest packet_id the app has handled
+        self.in_flight = collections.deque() # (packet_id, sent_frames once it was sent), oldest first
+        self.window = None
+        self.skipped = 0
+        self.total_skipped = 0
+        self.last_sent = time.time()
+
+    def grant(self, packet_id, window):
+        if not self.enabled:
+            return
+        while self.in_flight and self.in_flight[0][0] <= packet_id:
+            self.taken = self.in_flight.popleft()[1]
+        self.window = window
+
+    def may_send(self, now):
+        if self.window is None or self.sent_frames - self.taken < self.window:
+            return True
+        return now - self.last_sent >= self.KEEPALIVE_S
+
+    def hold(self, packets):
+        self.skipped += packets
+        self.total_skipped += packets
+
+    def sent(self, frames, packet_id, now):
+        self.sent_frames += frames
+        if self.window is None:
+            self.taken = self.sent_frames # Nothing to account for until the first grant
+        else:
+            self.in_flight.append((packet_id, self.sent_frames))
+        self.skipped = 0
+        self.last_sent = now
+
+def open_server(transport, host, tcp_port):
+    """
+    Listening socket for the chosen transport. TCP lets the app (emulator: tcp://10.0.2.2:PORT,
+    phone: tcp://<this machine>:PORT) or a desktop test run the full pipeline without Bluetooth.
+    """
+    if transport == "tcp":
+        server_sock = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+        server_sock.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+        server_sock.bind((host, tcp_port))
+        print(f"✅ Listening on tcp://{host}:{tcp_port}")
+        return server_sock
+
     local_mac = get_local_bluetooth_mac()
     print(f"🔹 Local MAC: {local_mac}")
-
     server_sock = socket.socket(socket.AF_BLUETOOTH, socket.SOCK_STREAM, socket.BTPROTO_RFCOMM)
+    server_sock.bind((local_mac, PORT))
+    print(f"✅ Bound to Port {PORT}")
+    return server_sock
+
+def take_plain_commands(buffer: bytearray) -> list:
+    """
+    Removes and returns commands written as bare text ("SET_VAL:50", no frame, no sequence),
+    as app builds before command framing send them. Nothing framed starts with a letter:
+    v2 starts with 0xA5, and a v1 header of 0x41.. would announce a 16 KB command.
+    """
+    commands = []
+    while buffer[:1].isalpha():
+        end = buffer.find(b"\n")
+        end = len(buffer) if end < 0 else end + 1 # One write per command, as before
+        commands.append(bytes(buffer[:end]).decode("utf-8", "replace").strip())
+        del buffer[:end]
+    return commands
+
+
+def damage(frame: bytes) -> bytes:
+    """One flipped or one dropped byte, like a noisy RFCOMM link."""
+    i = random.randrange(len(frame))
+    if random.random() < 0.5:
+        return frame[:i] + bytes([frame[i] ^ (1 << random.randrange(8))]) + frame[i + 1:]
+    return frame[:i] + frame[i + 1:]
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Simulated exoskeleton telemetry sender")
+    parser.add_argument("--format", choices=["json", "binary"], default="json",
+                        help="payload encoding (the app auto-detects either)")
+    parser.add_argument("--transport", choices=["rfcomm", "tcp"], default="rfcomm",
+                        help="Bluetooth RFCOMM (real pairing) or TCP (simulator / load tests)")
+    parser.add_argument("--host", default="0.0.0.0", help="TCP bind address")
+    parser.add_argument("--port", type=int, default=TCP_PORT, help="TCP port")
+    parser.add_argument("--rate", type=float, default=20.0, help="packets per second")
+    parser.add_argument("--framing", type=int, choices=[1, 2], default=2,
+                        help="1: length prefix only; 2: sync marker + CRC32C (the app auto-detects either)")
+    parser.add_argument("--corrupt", type=float, default=0.0,
+                        help="fraction of frames sent with one byte flipped or dropped (resync testing)")
+    parser.add_argument("--latency-budget", type=float, default=0.0, metavar="MS",
+                        help="batch binary samples into one frame as long as the oldest waits at most MS "
+                             "milliseconds (0: one sample per frame)")
+    parser.add_argument("--record", metavar="FILE",
+                        help="also write every packet to FILE, one JSON object per line (replay with bench_formats.py)")
+    parser.add_argument("--ignore-credits", action="store_true",
+                        help="send at the full rate even when the app runs out of credit (to compare latency)")
+    parser.add_argument("--keyframe-every", type=int, default=0, metavar="N",
+                        help="send only changed fields, with a full keyframe every N packets (0: off)")
+    parser.add_argument("--channel-rate", action="append", default=[], metavar="NAME=HZ",
+                        help="send channel NAME (of every joint) at HZ in packets of its own; repeatable, "
+                             f"added to the defaults {CHANNEL_RATES}")
+    parser.add_argument("--no-channel-rates", action="store_true",
+                        help="send every channel in every packet")
+    args = parser.parse_args()
+    rates = {} if args.no_channel_rates else dict(CHANNEL_RATES)
+    for spec in args.channel_rate:
+        name, _, hz = spec.partition("=")
+        try:
+            rates[name] = float(hz)
+        except ValueError:
+            parser.error(f"--channel-rate wants NAME=HZ, got {spec}")
+        if rates[name] <= 0:
+            parser.error(f"--channel-rate {spec}: the rate must be positive")
+    if args.latency_budget > 0 and args.format != "binary":
+        parser.error("--latency-budget batches binary samples; use it with --format binary")
+    if args.keyframe_every > 0 and args.format != "binary":
+        parser.error("--keyframe-every encodes binary samples; use it with --format binary")
+    if args.keyframe_every > 0 and args.latency_budget > 0:
+        parser.error("--keyframe-every and --latency-budget are separate modes; pick one")
+    batch_size = batch_size_for(args.rate, args.latency_budget)
+    encode_frame = framing.encode_v2 if args.framing == 2 else framing.encode
+
+    print(f"=== SENDER (Interactive with framing.py, {args.format} over {args.transport} @ {args.rate:g} Hz) ===")
+    if batch_size > 1:
+        print(f"📦 {batch_size} samples per frame ({args.latency_budget:g} ms latency budget)")
+    if args.keyframe_every > 0:
+        print(f"🔑 Deltas, keyframe every {args.keyframe_every} packets")
+    if rates:
+        print(f"🐢 Own packets for {', '.join(f'{name} @ {hz:g} Hz' for name, hz in rates.items())}")
+
     try:
-        server_sock.bind((local_mac, PORT))
-        print(f"✅ Bound to Port {PORT}")
+        server_sock = open_server(args.transport, args.host, args.port)
     except Exception as e:
         print(f"❌ Bind failed: {e}")
         return
@@ -40,93 +291,120 @@ def main():
 
     client_sock, address = server_sock.accept()
     print(f"🚀 Connected to: {address}")
+    if args.transport == "tcp":
+        client_sock.setsockopt(socket.IPPROTO_TCP, socket.TCP_NODELAY, 1)
 
     packet_counter = 0
     start_time = time.time()
     
     # --- THIS IS THE VALUE YOU CONTROL FROM APP ---
     user_setpoint = 0.0 
+    last_ack = 0
+    rx_buffer = bytearray()
+    binary_encoder = telemetry_codec.BinaryEncoder()
+    delta_encoder = telemetry_codec.DeltaEncoder(args.keyframe_every) if args.keyframe_every > 0 else None
+    groups = ChannelGroups(rates)
+    pending = [] # Packets waiting for their batch to fill
+    pending_ticks = 0 # Ticks they came from (a tick can yield a packet per channel group)
+    gate = CreditGate(enabled=not args.ignore_credits)
+    record = open(args.record, "w", buffering=1) if args.record else None # Line-buffered: survives a kill
+    period = 1.0 / args.rate
+    next_send = time.time()
 
     try:
         while True:
-            # 1. READ COMMANDS (Non-Blocking)
-            # Check if there is data to read without pausing the script
-            ready_to_read, _, _ = select.select([client_sock], [], [], 0)
+            # 1. READ COMMANDS, waiting for them until the next packet is due
+            # (not in a sleep: a ping is answered as soon as it arrives, not a send period later)
+            ready_to_read, _, _ = select.select([client_sock], [], [], max(0.0, next_send - time.time()))
             
             if ready_to_read:
                 try:
-                    data = client_sock.recv(1024)
+                    data = client_sock.recv(4096)
+                    received_ms = time.time() * 1000.0
                     if not data: 
                         print("Client disconnected")
                         break
-                        
-                    cmd = data.decode('utf-8').strip()
-                    print(f"📥 Command Received: {cmd}")
-                    
-                    # PARSE: "SET_VAL:50" -> 50.0
-                    if cmd.startswith("SET_VAL:"):
-                        try:
-                            val_str = cmd.split(":")[1]
-                            user_setpoint = float(val_str)
-                            print(f"✅ Setpoint updated to: {user_setpoint}")
-                        except:
-                            print("❌ Invalid Number Format")
+                    rx_buffer += data
+
+                    commands = [(None, cmd) for cmd in take_plain_commands(rx_buffer)]
+                    for payload in framing.split_frames(rx_buffer, args.framing):
+                        if payload[:1] == bytes([telemetry_codec.TYPE_TIME_PING]):
+                            # Answer right away: the app pairs our clock with its own
+                            t0 = telemetry_codec.decode_time_ping(payload)
+                            pong = telemetry_codec.encode_time_pong(t0, received_ms, time.time() * 1000.0)
+                            client_sock.sendall(encode_frame(pong))
+                            continue
+                        if payload[:1] == bytes([telemetry_codec.TYPE_CREDIT]):
+                            gate.grant(*telemetry_codec.decode_credit(payload))
+                            continue
+                        if payload[:1] != bytes([telemetry_codec.TYPE_COMMAND]):
+                            commands.append((None, payload.decode("utf-8", "replace").strip())) # Framed, no sequence
+                            continue
+                        commands.append(telemetry_codec.decode_command(payload))
+
+                    for seq, cmd in commands:
+                        print(f"📥 Command #{seq} Received: {cmd}" if seq is not None else f"📥 Command Received: {cmd}")
+
+                        # PARSE: "SET_VAL:50" -> 50.0
+                        if cmd.startswith("SET_VAL:"):
+                            try:
+                                val_str = cmd.split(":")[1]
+                                user_setpoint = float(val_str)
+                                print(f"✅ Setpoint updated to: {user_setpoint}")
+                            except:
+                                print("❌ Invalid Number Format")
+                        # Applied (or rejected) in order: acknowledge it in the next packet
+                        if seq is not None:
+                            last_ack = seq
                 except Exception as e:
                     print(f"Read Error: {e}")
+            if time.time() < next_send:
+                continue # Woken early by the app: keep waiting
 
             # 2. GENERATE DATA (Physics Simulation)
             packet_counter += 1
             t = time.time() - start_time
-            freq = 0.5 # 0.5Hz wave
-            
-            # Simulated Motor Physics
-            pos_val = 50 + (40 * math.sin(2 * math.pi * freq * t))
-            vel_val = 40 * math.cos(2 * math.pi * freq * t)
-            torque_val = (vel_val * 0.2) + random.uniform(-0.5, 0.5)
-            volt_val = 48.0 - (abs(torque_val) * 0.05) + random.uniform(-0.1, 0.1)
-
-            simple_packet = {
-                "packet_id": packet_counter,
-                "timestamp": time.time(),
-                "right(1)": {
-                    "fault": 0, 
-                    "Position": round(pos_val, 2),
-                    "velocity": round(vel_val, 2),
-                    "torque": round(torque_val, 2),
-                    "voltage": round(volt_val, 2),
-                    "current": packet_counter % 100,
-                    # Feedback the user setpoint to prove it updated
-                    "user_setpoint": user_setpoint  
-                },
-                "left(2)": {
-                    "fault": 0,
-                    "Position": round(50 + (40 * math.sin(2 * math.pi * freq * t + math.pi)), 2), 
-                    "velocity": round(40 * math.cos(2 * math.pi * freq * t + math.pi), 2),
-                    "torque": round(torque_val * -1, 2),
-                    "voltage": round(volt_val, 2),
-                    "current": packet_counter % 100,
-                    "user_setpoint": user_setpoint 
-                }
-            }
+            simple_packet = build_packet(packet_counter, t, user_setpoint, last_ack)
+            pending += groups.split(simple_packet, time.time())
+            pending_ticks += 1
+            if record:
+                record.write(json.dumps(simple_packet) + "\n") # The whole packet, every channel
 
             # 3. SEND WITH FRAMING MODULE
-            json_str = json.dumps(simple_packet)
-            payload_bytes = json_str.encode('utf-8')
-            
             try:
                 # Use your imported framing logic here
-                framed_message = framing.encode(payload_bytes)
-                client_sock.send(framed_message)
+                payloads = []
+                if pending_ticks >= batch_size:
+                    now = time.time()
+                    if gate.may_send(now):
+                        pending[0][telemetry_codec.SKIPPED_KEY] = gate.skipped
+                        payloads = encode_payloads(pending, args.format, binary_encoder, delta_encoder)
+                        gate.sent(len(payloads), packet_counter, now)
+                    else:
+                        gate.hold(pending_ticks) # Out of credit: the app is behind
+                    pending = []
+                    pending_ticks = 0
+                for payload_bytes in payloads:
+                    framed_message = encode_frame(payload_bytes)
+                    if args.corrupt > 0 and random.random() < args.corrupt:
+                        framed_message = damage(framed_message)
+                    client_sock.sendall(framed_message)
             except framing.FramingError as e:
                 print(f"❌ Framing Error: {e}")
             except Exception as e:
                 print(f"❌ Send Error: {e}")
                 break
             
-            time.sleep(0.05) # 20Hz Update Rate
+            # Fixed-rate schedule (not sleep-after-send) so high rates don't drift low
+            next_send += period
+            if next_send - time.time() < -1.0:
+                next_send = time.time() # Fell far behind (e.g. the app paused): don't burst
 
     except Exception as e:
         print(f"❌ Critical Error: {e}")
+    finally:
+        if gate.total_skipped:
+            print(f"⏸ Held back {gate.total_skipped} packets for lack of credit")
         try:
             client_sock.close()
             server_sock.close()
@@ -0,0 +1,146 @@
+"""
+Compares JSON and binary telemetry payloads on the sender's simulated packets.
+
+    python3 bench_formats.py [--samples 20000] [--replay session.jsonl] [--keyframe-every 20]
+
+Reports wire bytes per sample (including the 2-byte framing header and the
+amortized schema frame) plus encode/decode time per sample, and the sample
+rate a link of a given throughput could sustain with each format. "binary xN"
+packs N samples into each batch frame; "delta kN" sends only changed fields with
+a keyframe every N packets. The "grp" rows send the slow channels in packets of
+their own (Sender.CHANNEL_RATES), still counted per original sample.
+
+--replay measures a recorded session instead of freshly simulated packets: a
+file written by Sender.py --record (one JSON packet per line) or a session log
+from the app (Log_*.xlog, read with xlog.py). A log row becomes a packet of the
+fields it holds, whole numbers as ints; phone_time, link_gap and the outage rows
+are left out.
+"""
+import argparse
+import json
+import math
+import time
+
+import framing
+import telemetry_codec
+import xlog
+from Sender import CHANNEL_RATES, ChannelGroups, build_packet
+
+# Usable RFCOMM throughput is far below the nominal rate; ~200 kbit/s is typical for SPP
+LINK_BYTES_PER_SECOND = 200_000 // 8
+
+
+def make_packets(count):
+    return [build_packet(i + 1, i * 0.05, 0.0) for i in range(count)]
+
+
+def load_session(path):
+    if path.endswith(".xlog"):
+        log = xlog.XLog(path)
+        app_columns = {telemetry_codec.PHONE_TIME_KEY, telemetry_codec.LINK_GAP_KEY}
+        packets = []
+        for row in log.rows():
+            packet = {}
+            for key, value in zip(log.names, row):
+                if key in app_columns or math.isnan(value):
+                    continue
+                packet[key] = int(value) if value.is_integer() else value
+            if packet:
+                packets.append(packet)
+        return packets
+    with open(path) as f:
+        return [json.loads(line) for line in f if line.strip()]
+
+
+def split_groups(packets):
+    """
+    The packets as the sender sends them with channel groups, at its default 20 Hz
+    """
+    groups = ChannelGroups(CHANNEL_RATES)
+    return [part for i, packet in enumerate(packets) for part in groups.split(packet, i * 0.05)]
+
+
+def bench(name, packets, encode, decoder, batch=1, samples=None):
+    start = time.perf_counter()
+    frames = []
+    for i in range(0, len(packets), batch):
+        group = packets[i:i + batch] if batch > 1 else packets[i]
+        for payload in encode(group):
+            frames.append(framing.encode(payload))
+    encode_s = time.perf_counter() - start
+
+    wire_bytes = sum(len(f) for f in frames)
+
+    start = time.perf_counter()
+    decoded = 0
+    for frame in frames:
+        result = decoder.decode(frame[2:])
+        if isinstance(result, list):
+            decoded += len(result)
+        elif result is not None:
+            decoded += 1
+    decode_s = time.perf_counter() - start
+
+    if decoded != len(packets):
+        raise RuntimeError(f"{name}: decoded {decoded} of {len(packets)} samples")
+
+    n = samples or len(packets) # Per sample of the session, however many packets it took
+    per_sample = wire_bytes / n
+    return {
+        "name": name,
+        "bytes": per_sample,
+        "encode_us": encode_s / n * 1e6,
+        "decode_us": decode_s / n * 1e6,
+        "max_hz": LINK_BYTES_PER_SECOND / per_sample,
+    }
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--samples", type=int, default=20000)
+    parser.add_argument("--replay", metavar="FILE", help="recorded session to encode instead of simulated packets")
+    parser.add_argument("--keyframe-every", type=int, default=20, metavar="N")
+    args = parser.parse_args()
+
+    packets = load_session(args.replay) if args.replay else make_packets(args.samples)
+    binary_encoder = telemetry_codec.BinaryEncoder()
+    results = [
+        bench("json", packets, lambda p: [telemetry_codec.encode_json(p)], telemetry_codec.Decoder()),
+        bench("binary", packets, binary_encoder.encode, telemetry_codec.Decoder()),
+    ]
+    for batch in (8, 64):
+        encoder = telemetry_codec.BinaryEncoder()
+        results.append(bench(f"binary x{batch}", packets, encoder.encode_batch, telemetry_codec.Decoder(), batch))
+    delta_encoder = telemetry_codec.DeltaEncoder(args.keyframe_every)
+    results.append(bench(f"delta k{args.keyframe_every}", packets, delta_encoder.encode, telemetry_codec.Decoder()))
+    delta = results[-1]
+
+    grouped = split_groups(packets)
+    n = len(packets)
+    results.append(bench("json grp", grouped, lambda p: [telemetry_codec.encode_json(p)], telemetry_codec.Decoder(), samples=n))
+    results.append(bench("binary grp", grouped, telemetry_codec.BinaryEncoder().encode, telemetry_codec.Decoder(), samples=n))
+    results.append(bench("x8 grp", grouped, telemetry_codec.BinaryEncoder().encode_batch, telemetry_codec.Decoder(), 8, samples=n))
+    results.append(bench("delta grp", grouped, telemetry_codec.DeltaEncoder(args.keyframe_every).encode,
+                         telemetry_codec.Decoder(), samples=n))
+
+    if not args.replay:
+        source = "simulated"
+    elif args.replay.endswith(".xlog"):
+        source = f"app session log {args.replay}"
+    else:
+        source = f"simulator recording {args.replay}"
+    print(f"{len(packets)} samples ({source}), link budget {LINK_BYTES_PER_SECOND} B/s")
+    print(f"{'format':<11}{'B/sample':>10}{'encode us':>12}{'decode us':>12}{'max Hz':>10}")
+    for r in results:
+        print(f"{r['name']:<11}{r['bytes']:>10.1f}{r['encode_us']:>12.2f}{r['decode_us']:>12.2f}{r['max_hz']:>10.0f}")
+    print(f"binary is {results[0]['bytes'] / results[1]['bytes']:.1f}x smaller on the wire")
+    print(f"{delta['name']} is {1 - delta['bytes'] / results[1]['bytes']:.0%} smaller than binary, "
+          f"{1 - delta['bytes'] / results[0]['bytes']:.0%} smaller than json")
+
+    json_grp, binary_grp = results[-4], results[-3]
+    print(f"channel groups: json {1 - json_grp['bytes'] / results[0]['bytes']:.0%} smaller, "
+          f"binary {1 - binary_grp['bytes'] / results[1]['bytes']:.0%} smaller")
+
+
+if __name__ == "__main__":
+    main()
@@ -2,6 +2,44 @@ import socket
 
 MAX_PAYLOAD_SIZE = 65535
 
+# v2 frames: [0xA5 0x5A][0x02][u16 BE length][CRC-8 of version+length][payload][u32 BE CRC32C]
+# The CRC32C covers everything after the sync marker. See FrameDecoder.java for the app side.
+SYNC = b"\xa5\x5a"
+VERSION_2 = 2
+V2_HEADER_SIZE = 6
+V2_TRAILER_SIZE = 4
+
+
+def _crc32c_table():
+    table = []
+    for i in range(256):
+        crc = i
+        for _ in range(8):
+            crc = (crc >> 1) ^ (0x82F63B78 if crc & 1 else 0)
+        table.append(crc)
+    return table
+
+
+_CRC32C_TABLE = _crc32c_table()
+
+
+def crc32c(data) -> int:
+    crc = 0xFFFFFFFF
+    table = _CRC32C_TABLE
+    for b in data:
+        crc = (crc >> 8) ^ table[(crc ^ b) & 0xFF]
+    return crc ^ 0xFFFFFFFF
+
+
+def crc8(data) -> int:
+    """CRC-8, polynomial 0x07, no reflection; guards the v2 header."""
+    crc = 0
+    for b in data:
+        crc ^= b
+        for _ in range(8):
+            crc = ((crc << 1) ^ 0x07) & 0xFF if crc & 0x80 else (crc << 1) & 0xFF
+    return crc
+
 # Exceptions:
 class FramingError(Exception):
     """Base exception for framing errors."""
@@ -39,6 +77,66 @@ def encode(payload: bytes) -> bytes:
     return length_bytes + payload
 
 
+def encode_v2(payload: bytes) -> bytes:
+    """
+    Encodes payload bytes as a v2 frame: sync marker, version, length, header
+    check, payload, CRC32C. A receiver can find the next frame after any
+    corrupted or lost byte.
+    """
+    if not isinstance(payload, (bytes, bytearray)):
+        raise TypeError("Payload must be bytes")
+    if len(payload) > MAX_PAYLOAD_SIZE:
+        raise FrameTooLargeError(
+            f"Payload size {len(payload)} exceeds max {MAX_PAYLOAD_SIZE}"
+        )
+    header = bytes([VERSION_2]) + len(payload).to_bytes(2, byteorder="big")
+    body = header + bytes([crc8(header)]) + payload
+    return SYNC + body + crc32c(body).to_bytes(4, byteorder="big")
+
+
+def split_frames(buffer: bytearray, version: int = 1) -> list:
+    """
+    Removes every complete frame from the front of buffer and returns their
+    payloads; a trailing partial frame stays in buffer for the next call.
+    For non-blocking readers that append whatever recv() returned.
+    With version 2, bytes that do not form a valid frame are dropped up to the
+    next sync marker.
+    """
+    if version == VERSION_2:
+        return _split_frames_v2(buffer)
+    payloads = []
+    while len(buffer) >= 2:
+        length = int.from_bytes(buffer[:2], byteorder="big")
+        if len(buffer) < 2 + length:
+            break
+        payloads.append(bytes(buffer[2:2 + length]))
+        del buffer[:2 + length]
+    return payloads
+
+
+def _split_frames_v2(buffer: bytearray) -> list:
+    payloads = []
+    while len(buffer) >= V2_HEADER_SIZE:
+        if buffer[:2] != SYNC or buffer[2] != VERSION_2 or buffer[5] != crc8(buffer[2:5]):
+            _skip_to_next_sync(buffer)
+            continue
+        length = int.from_bytes(buffer[3:5], byteorder="big")
+        end = V2_HEADER_SIZE + length
+        if len(buffer) < end + V2_TRAILER_SIZE:
+            break
+        if crc32c(buffer[2:end]) != int.from_bytes(buffer[end:end + V2_TRAILER_SIZE], byteorder="big"):
+            _skip_to_next_sync(buffer)
+            continue
+        payloads.append(bytes(buffer[V2_HEADER_SIZE:end]))
+        del buffer[:end + V2_TRAILER_SIZE]
+    return payloads
+
+
+def _skip_to_next_sync(buffer: bytearray):
+    next_sync = buffer.find(SYNC[:1], 1)
+    del buffer[:next_sync if next_sync > 0 else len(buffer)]
+
+
 def recv_exact(sock: socket.socket, size: int) -> bytes:
     """
     Recieves exactly "size" bytes from the socket
@@ -0,0 +1,408 @@
+import json
+import struct
+
+# First payload byte tells the app how to decode a frame.
+# JSON packets always start with '{', so they need no marker.
+TYPE_SCHEMA = 0x01
+TYPE_BINARY_SAMPLE = 0x02
+
+# N consecutive samples of one schema in one frame (see TelemetryProtocol.java):
+# [0x04][schema_id u8][count u8][base timestamp f64 LE], then per sample
+# [timestamp - base, f32 LE][values in schema order without "timestamp"]
+TYPE_BINARY_BATCH = 0x04
+MAX_BATCH_SIZE = 255
+TIMESTAMP_KEY = "timestamp"
+PHONE_TIME_KEY = "phone_time"  # Added by the app to its logs, never sent
+LINK_GAP_KEY = "link_gap"      # Same, on the two rows that bound a link outage
+
+# Keyframe/delta mode. Every frame carries a sequence number, +1 (mod 256) per frame of
+# the same schema (each channel group counts on its own).
+# Keyframe: [0x05][schema_id u8][seq u8][every value, as in a sample frame]
+# Delta:    [0x06][schema_id u8][seq u8][changed bitmap, bit i = field i, LSB first]
+#           [the changed values in field order]
+# A delta builds on its schema's frame right before it; the app drops that schema's deltas
+# after a lost frame until its next keyframe.
+TYPE_KEYFRAME = 0x05
+TYPE_DELTA = 0x06
+
+# App -> device: [0x10][sequence u32 LE][command utf-8]. The device echoes the
+# highest sequence it has applied in its telemetry under ACK_KEY.
+TYPE_COMMAND = 0x10
+ACK_KEY = "ack"
+
+# Clock sync (see ClockSync.java). App -> device: [0x11][t0 i64 LE], the phone's send
+# time. Device -> app: [0x03][t0 i64 LE][t1 f64 LE][t2 f64 LE], t0 echoed, t1/t2 the
+# device clock in milliseconds (same clock as "timestamp") at receive / reply.
+TYPE_TIME_PING = 0x11
+TYPE_TIME_PONG = 0x03
+
+# Flow control (see FlowControl.java). App -> device: [0x12][packet_id u32 LE][window u16 LE]:
+# the app has handled our telemetry frames (all but pongs) up to the one carrying packet_id,
+# lost ones included; we may have 'window' frames beyond that one in flight. Once granted,
+# packets held back for lack of credit are counted in the next one sent, under SKIPPED_KEY.
+# Held back for long we MUST send one anyway (see CreditGate in Sender.py).
+TYPE_CREDIT = 0x12
+SKIPPED_KEY = "skipped"
+
+# Field types use struct format characters (all little-endian, fixed width)
+FIELD_TYPES = {"B", "h", "i", "I", "f", "d"}
+
+# Fields that need more than float32 precision
+DOUBLE_FIELDS = {TIMESTAMP_KEY}
+
+
+class CodecError(Exception):
+    pass
+
+
+def flatten(packet: dict, prefix: str = "", out: dict = None) -> dict:
+    """
+    Flattens nested objects the same way the app does:
+        {"right(1)": {"Position": 1}} -> {"right(1).Position": 1}
+    """
+    if out is None:
+        out = {}
+    for key, value in packet.items():
+        name = f"{prefix}.{key}" if prefix else key
+        if isinstance(value, dict):
+            flatten(value, name, out)
+        else:
+            out[name] = value
+    return out
+
+
+def infer_fields(flat: dict) -> list:
+    """
+    Picks a fixed-width type for every key of a flattened packet
+    """
+    fields = []
+    for name, value in flat.items():
+        if name in DOUBLE_FIELDS:
+            fields.append((name, "d"))
+        elif isinstance(value, bool):
+            fields.append((name, "B"))
+        elif isinstance(value, int):
+            fields.append((name, "I" if value >= 0 else "i"))
+        else:
+            fields.append((name, "f"))
+    return fields
+
+
+class BinarySchema:
+    """
+    Schema frame:
+        [0x01][schema_id u8][field_count u16][per field: type char, name_len u8, name]
+    Sample frame:
+        [0x02][schema_id u8][values packed in field order]
+    Batch frame:
+        [0x04][schema_id u8][count u8][base timestamp f64]
+        count x [timestamp delta f32][values packed in field order, timestamp left out]
+    """
+
+    def __init__(self, schema_id: int, fields: list):
+        if not 0 <= schema_id <= 255:
+            raise CodecError(f"Schema id {schema_id} out of range")
+        for name, field_type in fields:
+            if field_type not in FIELD_TYPES:
+                raise CodecError(f"Unsupported type '{field_type}' for {name}")
+        self.schema_id = schema_id
+        self.fields = list(fields)
+        self.names = [name for name, _ in self.fields]
+        self.struct = struct.Struct("<BB" + "".join(t for _, t in self.fields))
+        # Where each value sits in a sample frame, for keyframe/delta frames
+        self.spans = []
+        pos = 2
+        for _, field_type in self.fields:
+            size = struct.calcsize("<" + field_type)
+            self.spans.append((pos, pos + size))
+            pos += size
+        self.bitmap_size = (len(self.fields) + 7) // 8
+        # Batch records carry the timestamp as a delta from the batch's base instead
+        self.has_timestamp = TIMESTAMP_KEY in self.names
+        self.record_names = [name for name in self.names if name != TIMESTAMP_KEY]
+        self.record_struct = struct.Struct("<f" + "".join(t for n, t in self.fields if n != TIMESTAMP_KEY))
+
+    def encode_schema(self) -> bytes:
+        out = bytearray(struct.pack("<BBH", TYPE_SCHEMA, self.schema_id, len(self.fields)))
+        for name, field_type in self.fields:
+            name_bytes = name.encode("utf-8")
+            if len(name_bytes) > 255:
+                raise CodecError(f"Field name too long: {name}")
+            out += field_type.encode("ascii") + bytes([len(name_bytes)]) + name_bytes
+        return bytes(out)
+
+    def encode_sample(self, flat: dict) -> bytes:
+        return self.struct.pack(TYPE_BINARY_SAMPLE, self.schema_id, *(flat[name] for name in self.names))
+
+    def encode_record(self, flat: dict, base: float) -> bytes:
+        delta = flat[TIMESTAMP_KEY] - base if self.has_timestamp else 0.0
+        return self.record_struct.pack(delta, *(flat[name] for name in self.record_names))
+
+    def encode_batch(self, base: float, records: list) -> bytes:
+        if len(records) > MAX_BATCH_SIZE:
+            raise CodecError(f"Batch of {len(records)} exceeds {MAX_BATCH_SIZE} samples")
+        return struct.pack("<BBBd", TYPE_BINARY_BATCH, self.schema_id, len(records), base) + b"".join(records)
+
+    def decode_batch(self, payload: bytes) -> list:
+        _, _, count, base = struct.unpack_from("<BBBd", payload)
+        if len(payload) != 11 + count * self.record_struct.size:
+            raise CodecError(f"Batch of {count} samples has the wrong size ({len(payload)} bytes)")
+        samples = []
+        for values in self.record_struct.iter_unpack(payload[11:]):
+            sample = dict(zip(self.record_names, values[1:]))
+            if self.has_timestamp:
+                sample[TIMESTAMP_KEY] = base + values[0]
+            samples.append({name: sample[name] for name in self.names})
+        return samples
+
+    def matches(self, flat: dict) -> bool:
+        return len(flat) == len(self.names) and all(a == b for a, b in zip(flat, self.names))
+
+
+class BinaryEncoder:
+    """
+    Turns packets into binary frames, emitting a schema frame the first time a packet
+    layout shows up. Layouts that take turns (channel groups) keep their schema ids, so
+    switching between them sends no schema frames.
+    """
+
+    def __init__(self):
+        self.schema = None  # Of the last packet
+        self.schemas = {}  # Tuple of field names -> schema
+        self.next_id = 0
+
+    def encode(self, packet: dict) -> list:
+        flat = flatten(packet)
+        frames = self._select(flat)
+        try:
+            sample = self.schema.encode_sample(flat)
+        except struct.error:
+            # A value no longer fits its inferred type (e.g. an int field went negative)
+            frames += self._new_schema(flat)
+            sample = self.schema.encode_sample(flat)
+        frames.append(sample)
+        return frames
+
+    def encode_batch(self, packets: list) -> list:
+        """
+        Like encode() for consecutive packets, but packed into batch frames: one per layout
+        (channel group) among the packets, up to MAX_BATCH_SIZE samples each. A new layout's
+        schema frame goes before its first batch.
+        """
+        frames = []
+        pending = {}  # Schema id -> (schema, base timestamp, records)
+        for packet in packets:
+            flat = flatten(packet)
+            frames += self._select(flat, pending)
+            bucket = pending.get(self.schema.schema_id)
+            if bucket is None:
+                bucket = pending[self.schema.schema_id] = (self.schema, flat.get(TIMESTAMP_KEY, 0.0), [])
+            try:
+                record = self.schema.encode_record(flat, bucket[1])
+            except struct.error:
+                frames += self._end_batch(pending, self.schema.schema_id)
+                frames += self._new_schema(flat, pending)
+                bucket = pending[self.schema.schema_id] = (self.schema, flat.get(TIMESTAMP_KEY, 0.0), [])
+                record = self.schema.encode_record(flat, bucket[1])
+            bucket[2].append(record)
+            if len(bucket[2]) == MAX_BATCH_SIZE:
+                frames += self._end_batch(pending, self.schema.schema_id)
+        for schema_id in list(pending):
+            frames += self._end_batch(pending, schema_id)
+        return frames
+
+    @staticmethod
+    def _end_batch(pending: dict, schema_id: int) -> list:
+        bucket = pending.pop(schema_id, None)
+        if bucket is None or not bucket[2]:
+            return []
+        schema, base, records = bucket
+        return [schema.encode_batch(base, records)]
+
+    def _select(self, flat: dict, pending: dict = None) -> list:
+        """
+        Makes this layout's schema current; returns the schema frame to send first, if any
+        """
+        schema = self.schemas.get(tuple(flat))
+        if schema is None:
+            return self._new_schema(flat, pending)
+        self.schema = schema
+        return []
+
+    def _new_schema(self, flat: dict, pending: dict = None) -> list:
+        frames = []
+        # The app keeps one schema per id: whatever had this id before is gone, once its
+        # pending samples are out
+        if pending:
+            frames += self._end_batch(pending, self.next_id)
+        for names in [n for n, old in self.schemas.items() if old.schema_id == self.next_id]:
+            del self.schemas[names]
+        self.schema = BinarySchema(self.next_id, infer_fields(flat))
+        self.schemas[tuple(flat)] = self.schema
+        self.next_id = (self.next_id + 1) % 256
+        frames.append(self.schema.encode_schema())
+        return frames
+
+
+class DeltaEncoder:
+    """
+    Keyframe/delta frames: a keyframe with every value every `keyframe_every` packets
+    and after a schema change, in between deltas with only the values that changed
+    since the previous packet. Each layout (channel group) counts on its own.
+    """
+
+    def __init__(self, keyframe_every: int):
+        if keyframe_every < 1:
+            raise CodecError("keyframe_every must be at least 1")
+        self.binary = BinaryEncoder()
+        self.keyframe_every = keyframe_every
+        # Schema id -> [sample frame of its previous packet, packets since keyframe, next seq]
+        self.states = {}
+
+    def encode(self, packet: dict) -> list:
+        frames = self.binary.encode(packet)
+        sample = frames.pop()
+        schema = self.binary.schema
+        state = self.states.get(schema.schema_id)
+        if frames or state is None:
+            state = self.states[schema.schema_id] = [None, 0, 0]
+        previous, since_keyframe, seq = state
+        header = bytes([schema.schema_id, seq])
+        if previous is None or since_keyframe >= self.keyframe_every:
+            frames.append(bytes([TYPE_KEYFRAME]) + header + sample[2:])
+            state[1] = 1
+        else:
+            bitmap = bytearray(schema.bitmap_size)
+            changed = bytearray()
+            for i, (start, end) in enumerate(schema.spans):
+                if sample[start:end] != previous[start:end]:
+                    bitmap[i >> 3] |= 1 << (i & 7)
+                    changed += sample[start:end]
+            frames.append(bytes([TYPE_DELTA]) + header + bytes(bitmap) + bytes(changed))
+            state[1] += 1
+        state[0] = sample
+        state[2] = (seq + 1) % 256
+        return frames
+
+
+def encode_command(seq: int, command: str) -> bytes:
+    return struct.pack("<BI", TYPE_COMMAND, seq) + command.encode("utf-8")
+
+
+def decode_command(payload: bytes):
+    """
+    Returns (sequence, command text) for a command payload
+    """
+    if len(payload) < 5 or payload[0] != TYPE_COMMAND:
+        raise CodecError("Not a command frame")
+    _, seq = struct.unpack_from("<BI", payload)
+    return seq, payload[5:].decode("utf-8")
+
+
+def decode_time_ping(payload: bytes) -> int:
+    """
+    Returns the phone send time carried by a time ping
+    """
+    if len(payload) < 9 or payload[0] != TYPE_TIME_PING:
+        raise CodecError("Not a time ping frame")
+    _, t0 = struct.unpack_from("<Bq", payload)
+    return t0
+
+
+def decode_credit(payload: bytes):
+    """
+    Returns (packet_id, window) for a credit grant
+    """
+    if len(payload) < 7 or payload[0] != TYPE_CREDIT:
+        raise CodecError("Not a credit frame")
+    _, packet_id, window = struct.unpack_from("<BIH", payload)
+    return packet_id, window
+
+
+def encode_time_pong(t0: int, received_ms: float, sent_ms: float) -> bytes:
+    return struct.pack("<Bqdd", TYPE_TIME_PONG, t0, received_ms, sent_ms)
+
+
+def encode_json(packet: dict) -> bytes:
+    return json.dumps(packet).encode("utf-8")
+
+
+class Decoder:
+    """
+    Decodes either payload type back into a flat dict, or a batch frame into a list of
+    them (used by tests and benchmarks). A delta that does not follow the previous
+    keyframe/delta decodes to None, like the app drops it.
+    """
+
+    def __init__(self):
+        self.schemas = {}
+        self.states = {}  # Schema id -> (schema, seq, sample frame) of its last keyframe/delta
+        self.dropped_deltas = 0
+
+    def decode(self, payload: bytes):
+        if not payload:
+            raise CodecError("Empty payload")
+        kind = payload[0]
+        if kind == ord("{"):
+            return flatten(json.loads(payload))
+        if kind == TYPE_SCHEMA:
+            self._read_schema(payload)
+            return None
+        if kind == TYPE_BINARY_SAMPLE:
+            schema = self.schemas.get(payload[1])
+            if schema is None:
+                raise CodecError(f"Unknown schema id {payload[1]}")
+            values = schema.struct.unpack(payload)
+            return dict(zip(schema.names, values[2:]))
+        if kind == TYPE_KEYFRAME:
+            schema = self._schema(payload[1])
+            sample = bytes([TYPE_BINARY_SAMPLE, payload[1]]) + payload[3:]
+            self.states[payload[1]] = (schema, payload[2], sample)
+            return dict(zip(schema.names, schema.struct.unpack(sample)[2:]))
+        if kind == TYPE_DELTA:
+            return self._apply_delta(payload)
+        if kind == TYPE_BINARY_BATCH:
+            schema = self.schemas.get(payload[1])
+            if schema is None:
+                raise CodecError(f"Unknown schema id {payload[1]}")
+            return schema.decode_batch(payload)
+        raise CodecError(f"Unknown frame type 0x{kind:02x}")
+
+    def _schema(self, schema_id: int):
+        schema = self.schemas.get(schema_id)
+        if schema is None:
+            raise CodecError(f"Unknown schema id {schema_id}")
+        return schema
+
+    def _apply_delta(self, payload: bytes):
+        schema = self._schema(payload[1])
+        state = self.states.get(payload[1])
+        if state is None or state[0] is not schema or payload[2] != (state[1] + 1) % 256:
+            self.states.pop(payload[1], None)
+            self.dropped_deltas += 1
+            return None
+        sample = bytearray(state[2])
+        bitmap = payload[3:3 + schema.bitmap_size]
+        pos = 3 + schema.bitmap_size
+        for i, (start, end) in enumerate(schema.spans):
+            if bitmap[i >> 3] & (1 << (i & 7)):
+                sample[start:end] = payload[pos:pos + end - start]
+                pos += end - start
+        if pos != len(payload):
+            raise CodecError(f"Delta of {len(payload)} bytes does not match its bitmap")
+        self.states[payload[1]] = (schema, payload[2], bytes(sample))
+        return dict(zip(schema.names, schema.struct.unpack(sample)[2:]))
+
+    def _read_schema(self, payload: bytes):
+        _, schema_id, count = struct.unpack_from("<BBH", payload)
+        pos = 4
+        fields = []
+        for _ in range(count):
+            field_type = chr(payload[pos])
+            name_len = payload[pos + 1]
+            name = payload[pos + 2:pos + 2 + name_len].decode("utf-8")
+            pos += 2 + name_len
+            fields.append((name, field_type))
+        previous = self.schemas.get(schema_id)
+        if previous is None or previous.fields != fields:
+            self.schemas[schema_id] = BinarySchema(schema_id, fields)
@@ -0,0 +1,89 @@
+"""
+Reads back testdata/session.xlog, written by BlockLogTest.writeFixture (BlockLog.Writer):
+
+    python3 -m unittest test_xlog
+"""
+import csv
+import io
+import math
+import os
+import struct
+import tempfile
+import unittest
+
+import xlog
+
+FIXTURE = os.path.join(os.path.dirname(os.path.abspath(__file__)), "testdata", "session.xlog")
+ROWS = 5000
+START = 1767268800000.0
+NAMES = ["packet_id", "pos", "torque", "noise", "phone_time", "link_gap"]
+
+
+def f32(v):
+    return struct.unpack("<f", struct.pack("<f", v))[0]
+
+
+class XLogTest(unittest.TestCase):
+
+    def check_rows(self, log):
+        self.assertEqual(NAMES, log.names)
+        rows = log.rows()
+        self.assertEqual(ROWS + ROWS // 10 + 2, len(rows))
+        times = [r[4] for r in rows]
+        self.assertEqual(sorted(times), times)
+
+        fast = [r for r in rows if not math.isnan(r[0])]
+        self.assertEqual(ROWS, len(fast))
+        for i, r in enumerate(fast):
+            self.assertEqual([i, i / 4.0, f32(i * 0.1), START + i * 5], [r[0], r[1], r[2], r[4]])
+            self.assertTrue(math.isnan(r[3]) and math.isnan(r[5]))
+
+        slow = [r for r in rows if not math.isnan(r[3])]
+        self.assertEqual(ROWS // 10 - 1, len(slow))  # Row 500's noise is NaN
+        self.assertEqual(1.0 / 2993, slow[298][3])
+        self.assertEqual(START + 2990 * 5 + 1, slow[298][4])
+
+        gap = [r for r in rows if not math.isnan(r[5])]
+        self.assertEqual([START + 15000 - 2, START + 15000 + 98], [r[4] for r in gap])
+        self.assertEqual([100, 100], [r[5] for r in gap])
+        self.assertLess(rows.index(gap[0]), rows.index(fast[3000]))
+
+    def test_reads_what_the_app_wrote(self):
+        log = xlog.XLog(FIXTURE)
+        self.assertEqual(3, log.version)
+        self.check_rows(log)
+
+    def test_unclosed_log_is_read_by_scanning_blocks(self):
+        with open(FIXTURE, "rb") as f:
+            data = f.read()
+        _, index_offset, _ = xlog.TRAILER.unpack_from(data, len(data) - xlog.TRAILER.size)
+        with tempfile.TemporaryDirectory() as tmp:
+            path = os.path.join(tmp, "Log_unclosed.xlog")
+            with open(path, "wb") as f:
+                f.write(data[:index_offset] + b"\x0a\x00\x00\x00\x01\x00")  # Half a block header
+            self.check_rows(xlog.XLog(path))
+
+    def test_corrupt_block_fails_its_checksum(self):
+        with open(FIXTURE, "rb") as f:
+            data = bytearray(f.read())
+        log = xlog.XLog(FIXTURE)
+        data[log.blocks[0][0] + xlog.BLOCK_HEADER.size + 3] ^= 0xFF
+        log.data = bytes(data)
+        with self.assertRaises(xlog.XLogError):
+            log.read_block(0)
+
+    def test_csv_export(self):
+        out = io.StringIO()
+        xlog.export_csv(xlog.XLog(FIXTURE), out)
+        rows = list(csv.reader(io.StringIO(out.getvalue())))
+        self.assertEqual(NAMES, rows[0])
+        self.assertEqual(["0", "0", "0", "", "1767268800000", ""], rows[1])
+        self.assertEqual(["", "", "", repr(1.0 / 3), "1767268800001", ""], rows[2])
+        self.assertEqual(["1", "0.25", repr(f32(0.1)), "", "1767268800005", ""], rows[3])
+        self.assertEqual(ROWS + ROWS // 10 + 2, len(rows) - 1)
+        gap = [r for r in rows[1:] if r[5]]
+        self.assertEqual([["", "", "", "", "1767268814998", "100"], ["", "", "", "", "1767268815098", "100"]], gap)
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -0,0 +1,253 @@
+"""
+Reads the app's session logs (Log_*.xlog, see BlockLog.java) and exports them to CSV.
+
+    python3 xlog.py Log_20260101_120000.xlog [-o session.csv]
+
+Every column the session ever had is in the output, in the log's order; a row is empty
+in the columns it does not hold (another channel group's, or a column added after it).
+Rows come out in time order (phone_time). A link outage is a pair of rows holding only
+phone_time and link_gap: the time the link was lost, then the time it came back, both
+with the outage length in ms.
+"""
+import argparse
+import csv
+import math
+import struct
+import sys
+import zlib
+
+MAGICS = {b"XOBLK3\0\0": 3, b"XOBLK2\0\0": 2, b"XOBLK1\0\0": 1}
+INDEX_MAGIC = b"XOBLKIDX"
+SEGMENT_MARK = 0xFFFFFFFF
+BLOCK_HEADER = struct.Struct("<IIddI")  # compressedLength, rowCount, firstTime, lastTime, CRC32
+INDEX_ENTRY = struct.Struct("<QIdd")    # offset, rowCount, firstTime, lastTime
+TRAILER = struct.Struct("<IQ8s")        # blockCount, indexOffset, INDEX_MAGIC
+BLOCK_ROWS = 4096
+
+DECIMAL_DELTA = 0
+DECIMAL_DOD = 1
+FLOAT_XOR = 2
+DOUBLE_XOR = 3
+
+
+class XLogError(Exception):
+    pass
+
+
+class _Reader:
+    def __init__(self, data: bytes, pos: int = 0):
+        self.data = data
+        self.pos = pos
+
+    def take(self, fmt: str):
+        values = struct.unpack_from(fmt, self.data, self.pos)
+        self.pos += struct.calcsize(fmt)
+        return values[0] if len(values) == 1 else values
+
+    def names(self) -> list:
+        names = []
+        for _ in range(self.take("<H")):
+            length = self.take("<H")
+            names.append(self.data[self.pos:self.pos + length].decode("utf-8"))
+            self.pos += length
+        return names
+
+    def varint(self) -> int:
+        value = 0
+        for shift in range(0, 64, 7):
+            b = self.data[self.pos]
+            self.pos += 1
+            value |= (b & 0x7F) << shift
+            if b < 0x80:
+                return value
+        raise XLogError("Malformed varint")
+
+
+def _unzigzag(v: int) -> int:
+    return (v >> 1) ^ -(v & 1)
+
+
+class XLog:
+    """
+    One log file, read whole. names/time_column as in the header plus any columns added
+    mid-session; blocks is a list of (offset, rows, first_time, last_time).
+    """
+
+    def __init__(self, path: str):
+        with open(path, "rb") as f:
+            self.data = f.read()
+        self.version = MAGICS.get(self.data[:8])
+        if self.version is None:
+            raise XLogError(f"Not a block log: {path}")
+        try:
+            header = _Reader(self.data, 8)
+            self.names = header.names()
+            self.time_column = header.take("<h")
+            self.blocks = self._read_index(header.pos)
+            if self.blocks is None:
+                self.blocks = self._scan_blocks(header.pos)
+        except struct.error as e:
+            raise XLogError(f"Corrupt block log: {path}") from e
+
+    # Same rules as BlockLog.readIndex: anything off and the blocks are scanned instead
+    def _read_index(self, blocks_start: int):
+        size = len(self.data)
+        if size < blocks_start + TRAILER.size:
+            return None
+        count, index_offset, magic = TRAILER.unpack_from(self.data, size - TRAILER.size)
+        index_length = size - TRAILER.size - index_offset
+        entries_length = count * INDEX_ENTRY.size
+        if magic != INDEX_MAGIC or index_offset < blocks_start or (
+                index_length != entries_length if self.version == 1 else index_length < entries_length + 2):
+            return None
+        blocks = [INDEX_ENTRY.unpack_from(self.data, index_offset + i * INDEX_ENTRY.size) for i in range(count)]
+        if self.version > 1:
+            added = _Reader(self.data, index_offset + entries_length)
+            names = added.names()
+            if added.pos != size - TRAILER.size:
+                return None
+            self.names += names
+        return blocks
+
+    # An unclosed log: walk the block headers up to the first incomplete block or segment
+    def _scan_blocks(self, offset: int) -> list:
+        data, size = self.data, len(self.data)
+        blocks = []
+        while offset + BLOCK_HEADER.size <= size:
+            if struct.unpack_from("<I", data, offset)[0] == SEGMENT_MARK:
+                segment = _Reader(data, offset + 4)
+                try:
+                    names = segment.names()
+                except (struct.error, UnicodeDecodeError):
+                    break
+                if segment.pos > size:
+                    break
+                self.names += names
+                offset = segment.pos
+                continue
+            compressed, rows, first, last, _ = BLOCK_HEADER.unpack_from(data, offset)
+            if rows <= 0 or rows > BLOCK_ROWS or offset + BLOCK_HEADER.size + compressed > size:
+                break
+            blocks.append((offset, rows, first, last))
+            offset += BLOCK_HEADER.size + compressed
+        return blocks
+
+    def read_block(self, block: int) -> list:
+        """
+        One block as a list of columns (one per name), NaN where the block holds no value
+        """
+        offset = self.blocks[block][0]
+        length, rows, _, _, crc = BLOCK_HEADER.unpack_from(self.data, offset)
+        compressed = self.data[offset + BLOCK_HEADER.size:offset + BLOCK_HEADER.size + length]
+        if zlib.crc32(compressed) != crc:
+            raise XLogError(f"Block {block} fails its checksum")
+        try:
+            raw = _Reader(zlib.decompress(compressed, -15))
+        except zlib.error as e:
+            raise XLogError(f"Block {block} is corrupt") from e
+
+        count = len(self.names)
+        header = count << 1 if self.version == 1 else raw.varint() << 1 if self.version == 2 else raw.varint()
+        stored = header >> 1
+        if stored > count:
+            raise XLogError(f"Block has {stored} columns, the log {count}")
+        held = list(range(stored))
+        if header & 1:
+            c = -1
+            for i in range(stored):
+                c += raw.varint() + 1
+                held[i] = c
+            if stored and held[-1] >= count:
+                raise XLogError(f"Block has column {held[-1]}, the log {count}")
+
+        columns = [None] * count
+        for c in held:
+            columns[c] = self._decode_column(raw, rows)
+        for c in range(count):
+            if columns[c] is None:
+                columns[c] = [math.nan] * rows
+        return columns
+
+    @staticmethod
+    def _decode_column(raw: _Reader, rows: int) -> list:
+        mode = raw.take("<B")
+        values = []
+        if mode in (DECIMAL_DELTA, DECIMAL_DOD):
+            p = 10.0 ** raw.take("<B")
+            prev = prev_delta = 0
+            for _ in range(rows):
+                d = _unzigzag(raw.varint())
+                delta = prev_delta + d if mode == DECIMAL_DOD else d
+                prev += delta
+                prev_delta = delta
+                values.append(prev / p)
+        elif mode == FLOAT_XOR:
+            prev = 0
+            for bits in struct.unpack_from(f"<{rows}I", raw.data, raw.pos):
+                prev ^= bits
+                values.append(struct.unpack("<f", struct.pack("<I", prev))[0])
+            raw.pos += rows * 4
+        elif mode == DOUBLE_XOR:
+            prev = 0
+            for bits in struct.unpack_from(f"<{rows}Q", raw.data, raw.pos):
+                prev ^= bits
+                values.append(struct.unpack("<d", struct.pack("<Q", prev))[0])
+            raw.pos += rows * 8
+        else:
+            raise XLogError(f"Unknown column encoding {mode}")
+        return values
+
+    def rows(self) -> list:
+        """
+        Every row as a list of values in column order, in time order like BlockLog.readRange:
+        stable, and a row without a time stays after every row before it in the file
+        """
+        rows = []
+        for b in range(len(self.blocks)):
+            rows.extend(zip(*self.read_block(b)))
+        if self.time_column < 0:
+            return [list(r) for r in rows]
+        keys = []
+        latest = -math.inf
+        for r in rows:
+            t = r[self.time_column]
+            if math.isnan(t):
+                keys.append(latest)
+            else:
+                keys.append(t)
+                latest = max(latest, t)
+        order = sorted(range(len(rows)), key=keys.__getitem__)
+        return [list(rows[i]) for i in order]
+
+
+def format_value(v: float) -> str:
+    if math.isnan(v):
+        return ""
+    if v.is_integer() and abs(v) < 1e15:
+        return str(int(v))
+    return repr(v)
+
+
+def export_csv(log: XLog, out):
+    writer = csv.writer(out, lineterminator="\n")
+    writer.writerow(log.names)
+    for row in log.rows():
+        writer.writerow([format_value(v) for v in row])
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("log", help="Log_*.xlog from the app")
+    parser.add_argument("-o", "--output", metavar="CSV", help="write here instead of to stdout")
+    args = parser.parse_args()
+
+    log = XLog(args.log)
+    if args.output:
+        with open(args.output, "w", newline="") as f:
+            export_csv(log, f)
+    else:
+        export_csv(log, sys.stdout)
+
+
+if __name__ == "__main__":
+    main()
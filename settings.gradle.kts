@@ -22,3 +22,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "BasicBluetoothApp"
 include(":app")
+include(":benchmarks")